@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import android.util.SparseArray;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * An {@link ExtractorOutput} that counts the samples output by an extractor, and otherwise discards
+ * them.
+ *
+ * <p>Unlike {@code FakeExtractorOutput}, it doesn't keep the sample data, so that the cost of doing
+ * so isn't included in the measurements.
+ */
+/* package */ final class CountingExtractorOutput implements ExtractorOutput {
+
+  private static final int SCRATCH_SIZE = 32 * 1024;
+
+  private final SparseArray<CountingTrackOutput> trackOutputs;
+  private final byte[] scratch;
+
+  private long sampleCount;
+
+  public CountingExtractorOutput() {
+    trackOutputs = new SparseArray<>();
+    scratch = new byte[SCRATCH_SIZE];
+  }
+
+  /** Returns the number of samples output since the output was created. */
+  public long getSampleCount() {
+    return sampleCount;
+  }
+
+  @Override
+  public TrackOutput track(int id, int type) {
+    CountingTrackOutput trackOutput = trackOutputs.get(id);
+    if (trackOutput == null) {
+      trackOutput = new CountingTrackOutput();
+      trackOutputs.put(id, trackOutput);
+    }
+    return trackOutput;
+  }
+
+  @Override
+  public void endTracks() {
+    // Do nothing.
+  }
+
+  @Override
+  public void seekMap(SeekMap seekMap) {
+    // Do nothing.
+  }
+
+  private final class CountingTrackOutput implements TrackOutput {
+
+    @Override
+    public void format(Format format) {
+      // Do nothing.
+    }
+
+    @Override
+    public int sampleData(ExtractorInput input, int length, boolean allowEndOfInput)
+        throws IOException, InterruptedException {
+      int bytesRead = input.read(scratch, 0, Math.min(length, scratch.length));
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        if (allowEndOfInput) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        throw new EOFException();
+      }
+      return bytesRead;
+    }
+
+    @Override
+    public void sampleData(ParsableByteArray data, int length) {
+      while (length > 0) {
+        int bytesToRead = Math.min(length, scratch.length);
+        data.readBytes(scratch, 0, bytesToRead);
+        length -= bytesToRead;
+      }
+    }
+
+    @Override
+    public void sampleMetadata(long timeUs, @C.BufferFlags int flags, int size, int offset,
+        CryptoData cryptoData) {
+      sampleCount++;
+    }
+
+  }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
+import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer2.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer2.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the throughput of extractors over in-memory inputs.
+ *
+ * <p>Each operation extracts all of the samples of a test asset. In addition to the number of
+ * operations, the following counters are reported per microsecond:
+ *
+ * <ul>
+ *   <li>{@code bytes}: Bytes of input extracted. Bytes per microsecond are MB/s.
+ *   <li>{@code samples}: Samples output.
+ *   <li>{@code allocatedBytes}: Bytes allocated by the extracting thread, if the JVM can measure
+ *       them. Dividing by {@code samples} gives the bytes allocated per sample.
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExtractorBenchmark {
+
+  /** The input to extract, and the extractor to extract it with. */
+  @State(Scope.Benchmark)
+  public static class Input {
+
+    @Param({"mp4", "fmp4", "ts", "mkv", "mp3"})
+    public String format;
+
+    public byte[] data;
+
+    @Setup
+    public void setUp() throws IOException {
+      data = readAsset(getAssetPath(format));
+    }
+
+    public Extractor createExtractor() {
+      switch (format) {
+        case "mp4":
+          return new Mp4Extractor();
+        case "fmp4":
+          return new FragmentedMp4Extractor();
+        case "ts":
+          return new TsExtractor();
+        case "mkv":
+          return new MatroskaExtractor();
+        case "mp3":
+          return new Mp3Extractor();
+        default:
+          throw new IllegalArgumentException(format);
+      }
+    }
+
+    private static String getAssetPath(String format) {
+      switch (format) {
+        case "mp4":
+          return "mp4/sample.mp4";
+        case "fmp4":
+          return "mp4/sample_fragmented.mp4";
+        case "ts":
+          return "ts/sample.ts";
+        case "mkv":
+          return "mkv/sample.mkv";
+        case "mp3":
+          return "mp3/bear.mp3";
+        default:
+          throw new IllegalArgumentException(format);
+      }
+    }
+
+    private static byte[] readAsset(String path) throws IOException {
+      InputStream inputStream = ExtractorBenchmark.class.getClassLoader().getResourceAsStream(path);
+      if (inputStream == null) {
+        throw new IOException("Asset not found: " + path);
+      }
+      try {
+        return Util.toByteArray(inputStream);
+      } finally {
+        inputStream.close();
+      }
+    }
+
+  }
+
+  /** Counters reported alongside the throughput. */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Counters {
+
+    public long bytes;
+    public long samples;
+    public long allocatedBytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      bytes = 0;
+      samples = 0;
+      allocatedBytes = 0;
+    }
+
+  }
+
+  @Benchmark
+  public long extract(Input input, Counters counters) throws IOException, InterruptedException {
+    long allocatedBytesBefore = getAllocatedBytes();
+    Extractor extractor = input.createExtractor();
+    FakeExtractorInput extractorInput = new FakeExtractorInput.Builder().setData(input.data).build();
+    CountingExtractorOutput output = new CountingExtractorOutput();
+    extractor.init(output);
+    PositionHolder positionHolder = new PositionHolder();
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      result = extractor.read(extractorInput, positionHolder);
+      if (result == Extractor.RESULT_SEEK) {
+        extractorInput.setPosition((int) positionHolder.position);
+      }
+    }
+    counters.bytes += input.data.length;
+    counters.samples += output.getSampleCount();
+    counters.allocatedBytes += getAllocatedBytes() - allocatedBytesBefore;
+    return output.getSampleCount();
+  }
+
+  /**
+   * Returns the number of bytes allocated by the current thread, or 0 if the JVM can't measure
+   * them.
+   */
+  private static long getAllocatedBytes() {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threadMXBean)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import java.io.IOException;
+import java.security.Security;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the throughput of decrypting an AES-128 encrypted HLS segment, comparing {@link
+ * Aes128DataSource} with the {@link CipherInputStreamAes128DataSource} baseline.
+ *
+ * <p>Each operation decrypts a 1 MiB segment held in memory, in reads of {@code readLength} bytes.
+ * A read length of 188 bytes corresponds to reading one transport stream packet at a time.
+ *
+ * <p>The baseline requests {@code AES/CBC/PKCS7Padding}, which on the host JVM only the Bouncy
+ * Castle provider supports. {@link Aes128DataSource} requests the equivalent {@code
+ * AES/CBC/PKCS5Padding} from the default provider, so the results include the difference between
+ * the providers as well as the difference between the read paths.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Aes128DataSourceBenchmark {
+
+  private static final int SEGMENT_LENGTH = 1024 * 1024;
+
+  /** The encrypted segment, and the implementation to decrypt it with. */
+  @State(Scope.Thread)
+  public static class Input {
+
+    @Param({"Aes128DataSource", "CipherInputStream"})
+    public String implementation;
+
+    @Param({"188", "4096", "65536"})
+    public int readLength;
+
+    public DataSource dataSource;
+    public DataSpec dataSpec;
+    public byte[] buffer;
+
+    @Setup
+    public void setUp() throws Exception {
+      Security.addProvider(new BouncyCastleProvider());
+      Random random = new Random(0);
+      byte[] key = new byte[16];
+      byte[] iv = new byte[16];
+      byte[] plainText = new byte[SEGMENT_LENGTH];
+      random.nextBytes(key);
+      random.nextBytes(iv);
+      random.nextBytes(plainText);
+      Cipher cipher = Cipher.getInstance("AES/CBC/PKCS7Padding");
+      cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+      DataSource upstream = new ByteArrayDataSource(cipher.doFinal(plainText));
+      dataSource =
+          "Aes128DataSource".equals(implementation)
+              ? new Aes128DataSource(upstream, key, iv)
+              : new CipherInputStreamAes128DataSource(upstream, key, iv);
+      dataSpec = new DataSpec(Uri.EMPTY);
+      buffer = new byte[readLength];
+    }
+
+  }
+
+  @Benchmark
+  public long decryptSegment(Input input) throws IOException {
+    DataSource dataSource = input.dataSource;
+    byte[] buffer = input.buffer;
+    long bytesDecrypted = 0;
+    try {
+      dataSource.open(input.dataSpec);
+      int bytesRead;
+      while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+        bytesDecrypted += bytesRead;
+      }
+    } finally {
+      dataSource.close();
+    }
+    return bytesDecrypted;
+  }
+
+}
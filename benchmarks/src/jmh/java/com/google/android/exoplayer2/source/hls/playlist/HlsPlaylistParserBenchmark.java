@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.ParsingLoadable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the throughput of parsing HLS playlists, comparing {@link HlsPlaylistParser} with the
+ * {@link RegexHlsPlaylistParser} baseline.
+ *
+ * <p>The media playlists resemble those of a live stream with a long window: each segment has an
+ * {@code #EXTINF} tag, every tenth segment has an {@code #EXT-X-PROGRAM-DATE-TIME} tag, and the key
+ * is rotated every hundred segments. Such playlists are parsed again on every refresh. The master
+ * playlist has a ladder of variants, alternative audio renditions, subtitles and closed captions.
+ *
+ * <p>{@link #refreshMediaPlaylist} measures a refresh of a live media playlist after one new
+ * segment is added, either by parsing the complete playlist or by parsing a delta update that skips
+ * all but the last six segments and merging it with the previous snapshot.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HlsPlaylistParserBenchmark {
+
+  private static final Uri PLAYLIST_URI = Uri.parse("https://example.com/playlist.m3u8");
+  private static final int VARIANT_COUNT = 24;
+
+  /** A media playlist, and the implementation to parse it with. */
+  @State(Scope.Thread)
+  public static class MediaPlaylistInput {
+
+    @Param({"HlsPlaylistParser", "Regex"})
+    public String implementation;
+
+    @Param({"100", "3000"})
+    public int segmentCount;
+
+    public ParsingLoadable.Parser<HlsPlaylist> parser;
+    public byte[] playlist;
+
+    @Setup
+    public void setUp() {
+      parser = createParser(implementation);
+      playlist =
+          createMediaPlaylist(/* firstSegment= */ 0, segmentCount, /* skippedSegmentCount= */ 0);
+    }
+
+  }
+
+  /** A previous snapshot of a media playlist, and the playlist that refreshes it. */
+  @State(Scope.Thread)
+  public static class RefreshInput {
+
+    @Param({"Complete", "DeltaUpdate"})
+    public String refresh;
+
+    @Param({"100", "3000"})
+    public int segmentCount;
+
+    public HlsPlaylistParser parser;
+    public HlsMediaPlaylist previousPlaylist;
+    public byte[] playlist;
+
+    @Setup
+    public void setUp() throws IOException {
+      parser = new HlsPlaylistParser();
+      byte[] previousPlaylistData =
+          createMediaPlaylist(/* firstSegment= */ 0, segmentCount, /* skippedSegmentCount= */ 0);
+      previousPlaylist =
+          (HlsMediaPlaylist)
+              parser.parse(PLAYLIST_URI, new ByteArrayInputStream(previousPlaylistData));
+      // The refreshed playlist starts and ends one segment later.
+      int skippedSegmentCount = "DeltaUpdate".equals(refresh) ? segmentCount - 6 : 0;
+      playlist = createMediaPlaylist(/* firstSegment= */ 1, segmentCount, skippedSegmentCount);
+    }
+
+  }
+
+  /** A master playlist, and the implementation to parse it with. */
+  @State(Scope.Thread)
+  public static class MasterPlaylistInput {
+
+    @Param({"HlsPlaylistParser", "Regex"})
+    public String implementation;
+
+    public ParsingLoadable.Parser<HlsPlaylist> parser;
+    public byte[] playlist;
+
+    @Setup
+    public void setUp() {
+      parser = createParser(implementation);
+      playlist = createMasterPlaylist();
+    }
+
+  }
+
+  @Benchmark
+  public HlsPlaylist parseMediaPlaylist(MediaPlaylistInput input) throws IOException {
+    return input.parser.parse(PLAYLIST_URI, new ByteArrayInputStream(input.playlist));
+  }
+
+  @Benchmark
+  public HlsMediaPlaylist refreshMediaPlaylist(RefreshInput input) throws IOException {
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            input.parser.parse(PLAYLIST_URI, new ByteArrayInputStream(input.playlist));
+    return playlist.copyWithSkippedSegmentsFrom(input.previousPlaylist);
+  }
+
+  @Benchmark
+  public HlsPlaylist parseMasterPlaylist(MasterPlaylistInput input) throws IOException {
+    return input.parser.parse(PLAYLIST_URI, new ByteArrayInputStream(input.playlist));
+  }
+
+  private static ParsingLoadable.Parser<HlsPlaylist> createParser(String implementation) {
+    return "Regex".equals(implementation)
+        ? new RegexHlsPlaylistParser()
+        : new HlsPlaylistParser();
+  }
+
+  /**
+   * Returns a media playlist.
+   *
+   * @param firstSegment The index of the first segment, which has media sequence 1000000 plus the
+   *     index.
+   * @param segmentCount The number of segments.
+   * @param skippedSegmentCount The number of the first segments to replace with #EXT-X-SKIP, making
+   *     the playlist a delta update.
+   */
+  private static byte[] createMediaPlaylist(
+      int firstSegment, int segmentCount, int skippedSegmentCount) {
+    long firstMediaSequence = 1_000_000;
+    StringBuilder builder = new StringBuilder();
+    builder
+        .append("#EXTM3U\n")
+        .append("#EXT-X-VERSION:9\n")
+        .append("#EXT-X-TARGETDURATION:6\n")
+        .append("#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL=36.0\n")
+        .append("#EXT-X-MEDIA-SEQUENCE:")
+        .append(firstMediaSequence + firstSegment)
+        .append('\n')
+        .append("#EXT-X-DISCONTINUITY-SEQUENCE:12\n")
+        .append("#EXT-X-INDEPENDENT-SEGMENTS\n")
+        .append("#EXT-X-MAP:URI=\"init.mp4\",BYTERANGE=\"720@0\"\n");
+    int firstListedSegment = firstSegment + skippedSegmentCount;
+    if (skippedSegmentCount > 0) {
+      builder.append("#EXT-X-SKIP:SKIPPED-SEGMENTS=").append(skippedSegmentCount).append('\n');
+    }
+    for (int i = firstListedSegment; i < firstSegment + segmentCount; i++) {
+      long mediaSequence = firstMediaSequence + i;
+      if (i % 100 == 0 || i == firstListedSegment) {
+        // The key of the segment, which was first declared by the segment that rotated it.
+        long keyMediaSequence = firstMediaSequence + i / 100 * 100;
+        builder
+            .append("#EXT-X-KEY:METHOD=AES-128,URI=\"https://keys.example.com/key?id=")
+            .append(keyMediaSequence)
+            .append("\",IV=0x")
+            .append(Long.toHexString(keyMediaSequence))
+            .append(",KEYFORMAT=\"identity\"\n");
+      }
+      if (i % 10 == 0) {
+        int startTimeSeconds = i * 6;
+        builder
+            .append("#EXT-X-PROGRAM-DATE-TIME:2018-06-01T")
+            .append(pad(12 + startTimeSeconds / 3600))
+            .append(':')
+            .append(pad((startTimeSeconds / 60) % 60))
+            .append(':')
+            .append(pad(startTimeSeconds % 60))
+            .append(".000Z\n");
+      }
+      builder
+          .append("#EXTINF:6.0,\n")
+          .append("https://cdn.example.com/live/stream/1080p/segment_")
+          .append(mediaSequence)
+          .append(".ts\n");
+    }
+    return builder.toString().getBytes(Charset.forName(C.UTF8_NAME));
+  }
+
+  private static byte[] createMasterPlaylist() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("#EXTM3U\n").append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+    String[] languages = {"en", "es", "fr", "de"};
+    for (String language : languages) {
+      builder
+          .append("#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",LANGUAGE=\"")
+          .append(language)
+          .append("\",NAME=\"Audio ")
+          .append(language)
+          .append("\",AUTOSELECT=YES,DEFAULT=")
+          .append("en".equals(language) ? "YES" : "NO")
+          .append(",URI=\"audio_")
+          .append(language)
+          .append(".m3u8\"\n")
+          .append("#EXT-X-MEDIA:TYPE=SUBTITLES,GROUP-ID=\"subs\",LANGUAGE=\"")
+          .append(language)
+          .append("\",NAME=\"Subtitles ")
+          .append(language)
+          .append("\",AUTOSELECT=YES,FORCED=NO,URI=\"subs_")
+          .append(language)
+          .append(".m3u8\"\n");
+    }
+    builder.append(
+        "#EXT-X-MEDIA:TYPE=CLOSED-CAPTIONS,GROUP-ID=\"cc\",LANGUAGE=\"en\",NAME=\"English\","
+            + "INSTREAM-ID=\"CC1\"\n");
+    for (int i = 0; i < VARIANT_COUNT; i++) {
+      int height = 144 + 40 * i;
+      int bandwidth = 200_000 + 250_000 * i;
+      builder
+          .append("#EXT-X-STREAM-INF:BANDWIDTH=")
+          .append(bandwidth)
+          .append(",AVERAGE-BANDWIDTH=")
+          .append(bandwidth * 9 / 10)
+          .append(",CODECS=\"avc1.640028,mp4a.40.2\",RESOLUTION=")
+          .append(height * 16 / 9)
+          .append('x')
+          .append(height)
+          .append(",FRAME-RATE=29.970,AUDIO=\"aac\",SUBTITLES=\"subs\",CLOSED-CAPTIONS=\"cc\"\n")
+          .append("video_")
+          .append(height)
+          .append("p.m3u8\n");
+    }
+    return builder.toString().getBytes(Charset.forName(C.UTF8_NAME));
+  }
+
+  private static String pad(int value) {
+    return value < 10 ? "0" + value : Integer.toString(value);
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.C;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures the throughput of {@link Allocator}s that are shared by several threads, as the
+ * allocator of a player is shared by its loading threads and its playback thread.
+ *
+ * <p>Each operation allocates a batch of allocations and releases them in one call, as a {@code
+ * SampleQueue} does when it discards samples. Compare {@code DefaultAllocator} with the
+ * synchronized baseline, and vary the number of threads with JMH's {@code -t} option.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AllocatorBenchmark {
+
+  private static final int BATCH_SIZE = 4;
+
+  /** The allocator shared by all of the benchmark threads. */
+  @State(Scope.Benchmark)
+  public static class SharedAllocator {
+
+    @Param({"DefaultAllocator", "SynchronizedAllocator"})
+    public String implementation;
+
+    public Allocator allocator;
+
+    @Setup
+    public void setUp() {
+      allocator =
+          "DefaultAllocator".equals(implementation)
+              ? new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE)
+              : new SynchronizedAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    }
+
+  }
+
+  /** The allocations held by a single benchmark thread. */
+  @State(Scope.Thread)
+  public static class Batch {
+
+    public final Allocation[] allocations = new Allocation[BATCH_SIZE];
+
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Allocation[] allocateAndReleaseSingleThread(SharedAllocator state, Batch batch) {
+    return allocateAndRelease(state.allocator, batch.allocations);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Allocation[] allocateAndReleaseFourThreads(SharedAllocator state, Batch batch) {
+    return allocateAndRelease(state.allocator, batch.allocations);
+  }
+
+  private static Allocation[] allocateAndRelease(Allocator allocator, Allocation[] allocations) {
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    allocator.release(allocations);
+    return allocations;
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the throughput of NAL unit start code scanning and unescaping, comparing {@link
+ * NalUnitUtil} with the word-at-a-time candidates in {@link WordAtATimeNalUnitUtil}.
+ *
+ * <p>Each operation processes 1 MiB of pseudo-random escaped NAL unit data, in chunks of {@code
+ * chunkSize} bytes. A chunk size of 184 bytes corresponds to the payload of a transport stream
+ * packet, which is how {@code H264Reader} and {@code H265Reader} receive their input.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NalUnitUtilBenchmark {
+
+  private static final int DATA_LENGTH = 1024 * 1024;
+  private static final int MIN_NAL_UNIT_LENGTH = 500;
+  private static final int MAX_NAL_UNIT_LENGTH = 5000;
+
+  /** The data to process, and the implementation to process it with. */
+  @State(Scope.Thread)
+  public static class Input {
+
+    @Param({"NalUnitUtil", "WordAtATime"})
+    public String implementation;
+
+    @Param({"184", "4096"})
+    public int chunkSize;
+
+    public byte[] data;
+    public byte[] scratch;
+
+    @Setup
+    public void setUp() {
+      data = createNalUnitData(new Random(0));
+      scratch = new byte[data.length];
+    }
+
+  }
+
+  @Benchmark
+  public int findNalUnit(Input input) {
+    byte[] data = input.data;
+    boolean wordAtATime = "WordAtATime".equals(input.implementation);
+    int count = 0;
+    for (int chunkOffset = 0; chunkOffset < data.length; chunkOffset += input.chunkSize) {
+      int chunkLimit = Math.min(chunkOffset + input.chunkSize, data.length);
+      int offset = chunkOffset;
+      while (offset < chunkLimit) {
+        int nalUnitOffset =
+            wordAtATime
+                ? WordAtATimeNalUnitUtil.findNalUnit(data, offset, chunkLimit)
+                : NalUnitUtil.findNalUnit(data, offset, chunkLimit, /* prefixFlags= */ null);
+        if (nalUnitOffset < chunkLimit) {
+          count++;
+        }
+        offset = nalUnitOffset + 3;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int unescapeStream(Input input) {
+    byte[] scratch = input.scratch;
+    System.arraycopy(input.data, 0, scratch, 0, scratch.length);
+    boolean wordAtATime = "WordAtATime".equals(input.implementation);
+    int unescapedLength = 0;
+    for (int chunkOffset = 0; chunkOffset < scratch.length; chunkOffset += input.chunkSize) {
+      // Unescaping works in place from the start of the array, so it's applied to a chunk copied
+      // to the start of the array. The unescaped chunk is never read again.
+      int chunkLength = Math.min(input.chunkSize, scratch.length - chunkOffset);
+      System.arraycopy(input.data, chunkOffset, scratch, 0, chunkLength);
+      unescapedLength +=
+          wordAtATime
+              ? WordAtATimeNalUnitUtil.unescapeStream(scratch, chunkLength)
+              : NalUnitUtil.unescapeStream(scratch, chunkLength);
+    }
+    return unescapedLength;
+  }
+
+  /**
+   * Returns pseudo-random NAL units of varying length, each preceded by a four byte start code and
+   * escaped so that the start code prefix doesn't occur inside them.
+   */
+  private static byte[] createNalUnitData(Random random) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(DATA_LENGTH);
+    while (output.size() < DATA_LENGTH) {
+      output.write(NalUnitUtil.NAL_START_CODE, 0, NalUnitUtil.NAL_START_CODE.length);
+      int nalUnitLength =
+          MIN_NAL_UNIT_LENGTH + random.nextInt(MAX_NAL_UNIT_LENGTH - MIN_NAL_UNIT_LENGTH);
+      int zeroCount = 0;
+      for (int i = 0; i < nalUnitLength; i++) {
+        int value = random.nextInt(256);
+        if (zeroCount == 2 && value <= 3) {
+          // Insert an emulation prevention byte.
+          output.write(3);
+          zeroCount = 0;
+        }
+        output.write(value);
+        zeroCount = value == 0 ? zeroCount + 1 : 0;
+      }
+      if (zeroCount > 0) {
+        // A NAL unit must not end with a zero byte.
+        output.write(0x80);
+      }
+    }
+    return Arrays.copyOf(output.toByteArray(), DATA_LENGTH);
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Candidate implementations of the scanning loops of {@link NalUnitUtil} that read eight bytes at a
+ * time with {@link ByteBuffer#getLong(int)}, and skip words that contain no zero byte. Neither a
+ * start code prefix nor an emulation prevention sequence can begin in such a word. Used by {@link
+ * NalUnitUtilBenchmark} for comparison with {@link NalUnitUtil}.
+ */
+/* package */ final class WordAtATimeNalUnitUtil {
+
+  private static final long LOW_BITS = 0x0101010101010101L;
+  private static final long HIGH_BITS = 0x8080808080808080L;
+
+  private static final Object scratchEscapePositionsLock = new Object();
+
+  private static int[] scratchEscapePositions = new int[10];
+
+  /**
+   * Equivalent to {@link NalUnitUtil#findNalUnit(byte[], int, int, boolean[])} with null {@code
+   * prefixFlags}.
+   */
+  public static int findNalUnit(byte[] data, int startOffset, int endOffset) {
+    // As in NalUnitUtil, the start code prefix must be followed by at least one byte.
+    return findSequence(
+        data, startOffset, endOffset, /* sequenceLimit= */ endOffset - 3, /* thirdByte= */ 1);
+  }
+
+  /** Equivalent to {@link NalUnitUtil#unescapeStream(byte[], int)}. */
+  public static int unescapeStream(byte[] data, int limit) {
+    synchronized (scratchEscapePositionsLock) {
+      int position = 0;
+      int scratchEscapeCount = 0;
+      while (position < limit) {
+        position =
+            findSequence(data, position, limit, /* sequenceLimit= */ limit - 2, /* thirdByte= */ 3);
+        if (position < limit) {
+          if (scratchEscapePositions.length <= scratchEscapeCount) {
+            scratchEscapePositions = Arrays.copyOf(scratchEscapePositions,
+                scratchEscapePositions.length * 2);
+          }
+          scratchEscapePositions[scratchEscapeCount++] = position;
+          position += 3;
+        }
+      }
+
+      int unescapedLength = limit - scratchEscapeCount;
+      int escapedPosition = 0;
+      int unescapedPosition = 0;
+      for (int i = 0; i < scratchEscapeCount; i++) {
+        int nextEscapePosition = scratchEscapePositions[i];
+        int copyLength = nextEscapePosition - escapedPosition;
+        System.arraycopy(data, escapedPosition, data, unescapedPosition, copyLength);
+        unescapedPosition += copyLength;
+        data[unescapedPosition++] = 0;
+        data[unescapedPosition++] = 0;
+        escapedPosition += copyLength + 3;
+      }
+
+      int remainingLength = unescapedLength - unescapedPosition;
+      System.arraycopy(data, escapedPosition, data, unescapedPosition, remainingLength);
+      return unescapedLength;
+    }
+  }
+
+  /**
+   * Returns the offset of the first sequence {0, 0, thirdByte} that starts between {@code offset}
+   * and {@code sequenceLimit}, or {@code limit} if there is none.
+   */
+  private static int findSequence(
+      byte[] data, int offset, int limit, int sequenceLimit, int thirdByte) {
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    int i = offset;
+    while (i + 8 <= limit) {
+      long word = buffer.getLong(i);
+      if (((word - LOW_BITS) & ~word & HIGH_BITS) != 0) {
+        int wordLimit = Math.min(i + 8, sequenceLimit);
+        for (int j = i; j < wordLimit; j++) {
+          if (data[j] == 0 && data[j + 1] == 0 && data[j + 2] == thirdByte) {
+            return j;
+          }
+        }
+      }
+      i += 8;
+    }
+    for (; i < sequenceLimit; i++) {
+      if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == thirdByte) {
+        return i;
+      }
+    }
+    return limit;
+  }
+
+  private WordAtATimeNalUnitUtil() {}
+
+}
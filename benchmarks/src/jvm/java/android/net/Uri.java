@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.net;
+
+/**
+ * JVM implementation of the parts of {@code android.net.Uri} used by the library, for running
+ * benchmarks on the host. A URI is represented by its string form, and isn't parsed.
+ */
+public final class Uri {
+
+  public static final Uri EMPTY = new Uri("");
+
+  private final String uriString;
+
+  private Uri(String uriString) {
+    this.uriString = uriString;
+  }
+
+  public static Uri parse(String uriString) {
+    return new Uri(uriString);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Uri && uriString.equals(((Uri) o).uriString);
+  }
+
+  @Override
+  public int hashCode() {
+    return uriString.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return uriString;
+  }
+
+}
@@ -28,6 +28,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.Collection;
 import java.util.Set;
 import org.junit.After;
@@ -294,6 +295,99 @@ public class CachedContentIndexTest {
     assertThat(index.get(cachedContent.key)).isNotNull();
   }
 
+  @Test
+  public void testJournaledStoreAndLoad() throws Exception {
+    CachedContentIndex journaledIndex = new CachedContentIndex(cacheDir, null, false, true);
+    journaledIndex.getOrAdd("key1");
+    journaledIndex.getOrAdd("key2");
+    journaledIndex.store();
+    File indexFile = new File(cacheDir, CachedContentIndex.FILE_NAME);
+    File journalFile = new File(cacheDir, CachedContentIndex.JOURNAL_FILE_NAME);
+    long indexFileLength = indexFile.length();
+    assertThat(journalFile.exists()).isFalse();
+
+    journaledIndex.getOrAdd("key3");
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataInternal.setContentLength(mutations, 2560);
+    journaledIndex.applyContentMetadataMutations("key1", mutations);
+    journaledIndex.maybeRemove("key2");
+    journaledIndex.store();
+
+    // The changes should have been appended to the journal without rewriting the index file.
+    assertThat(journalFile.exists()).isTrue();
+    assertThat(indexFile.length()).isEqualTo(indexFileLength);
+
+    CachedContentIndex loadedIndex = new CachedContentIndex(cacheDir, null, false, true);
+    loadedIndex.load();
+    assertThat(loadedIndex.getKeys()).containsExactly("key1", "key3");
+    assertThat(loadedIndex.get("key1")).isEqualTo(journaledIndex.get("key1"));
+    assertThat(loadedIndex.get("key3")).isEqualTo(journaledIndex.get("key3"));
+    assertThat(ContentMetadataInternal.getContentLength(loadedIndex.get("key1").getMetadata()))
+        .isEqualTo(2560);
+  }
+
+  @Test
+  public void testJournaledEncryption() throws Exception {
+    byte[] key = "Bar12345Bar12345".getBytes(C.UTF8_NAME); // 128 bit key
+    CachedContentIndex journaledIndex = new CachedContentIndex(cacheDir, key, true, true);
+    journaledIndex.getOrAdd("key1");
+    journaledIndex.store();
+    journaledIndex.getOrAdd("key2");
+    journaledIndex.store();
+
+    CachedContentIndex loadedIndex = new CachedContentIndex(cacheDir, key, true, true);
+    loadedIndex.load();
+    assertThat(loadedIndex.getKeys()).containsExactly("key1", "key2");
+
+    // The journal can't be read without the key, so the whole index should be discarded.
+    CachedContentIndex indexWithoutKey = new CachedContentIndex(cacheDir, null, false, true);
+    indexWithoutKey.load();
+    assertThat(indexWithoutKey.getKeys()).isEmpty();
+  }
+
+  @Test
+  public void testTruncatedJournalIsReplayedUpToLastCompleteRecord() throws Exception {
+    CachedContentIndex journaledIndex = new CachedContentIndex(cacheDir, null, false, true);
+    journaledIndex.getOrAdd("key1");
+    journaledIndex.store();
+    journaledIndex.getOrAdd("key2");
+    journaledIndex.store();
+    journaledIndex.getOrAdd("key3");
+    journaledIndex.store();
+
+    // Simulate a write interrupted part way through the last record.
+    File journalFile = new File(cacheDir, CachedContentIndex.JOURNAL_FILE_NAME);
+    RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw");
+    randomAccessFile.setLength(journalFile.length() - 2);
+    randomAccessFile.close();
+
+    CachedContentIndex loadedIndex = new CachedContentIndex(cacheDir, null, false, true);
+    loadedIndex.load();
+    assertThat(loadedIndex.getKeys()).containsExactly("key1", "key2");
+
+    // Storing should compact the journal into the index file.
+    loadedIndex.store();
+    assertThat(journalFile.exists()).isFalse();
+    CachedContentIndex reloadedIndex = new CachedContentIndex(cacheDir, null, false, true);
+    reloadedIndex.load();
+    assertThat(reloadedIndex.getKeys()).containsExactly("key1", "key2");
+  }
+
+  @Test
+  public void testJournalIsReplayedWhenJournalingDisabled() throws Exception {
+    CachedContentIndex journaledIndex = new CachedContentIndex(cacheDir, null, false, true);
+    journaledIndex.getOrAdd("key1");
+    journaledIndex.store();
+    journaledIndex.getOrAdd("key2");
+    journaledIndex.store();
+
+    CachedContentIndex loadedIndex = new CachedContentIndex(cacheDir);
+    loadedIndex.load();
+    assertThat(loadedIndex.getKeys()).containsExactly("key1", "key2");
+    loadedIndex.store();
+    assertThat(new File(cacheDir, CachedContentIndex.JOURNAL_FILE_NAME).exists()).isFalse();
+  }
+
   private void assertStoredAndLoadedEqual(CachedContentIndex index, CachedContentIndex index2)
       throws IOException {
     ContentMetadataMutations mutations1 = new ContentMetadataMutations();
@@ -15,6 +15,8 @@
  */
 package com.google.android.exoplayer2;
 
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.SharedBufferBudget.Participant;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.upstream.Allocator;
@@ -71,6 +73,8 @@ public class DefaultLoadControl implements LoadControl {
     private int targetBufferBytes;
     private boolean prioritizeTimeOverSizeThresholds;
     private PriorityTaskManager priorityTaskManager;
+    private SharedBufferBudget sharedBufferBudget;
+    private int sharedBufferBudgetWeight;
 
     /** Constructs a new instance. */
     public Builder() {
@@ -82,6 +86,7 @@ public class DefaultLoadControl implements LoadControl {
       targetBufferBytes = DEFAULT_TARGET_BUFFER_BYTES;
       prioritizeTimeOverSizeThresholds = DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS;
       priorityTaskManager = null;
+      sharedBufferBudget = null;
     }
 
     /**
@@ -153,6 +158,22 @@ public class DefaultLoadControl implements LoadControl {
       return this;
     }
 
+    /**
+     * Sets a {@link SharedBufferBudget} with which the load control registers. The load control
+     * then buffers no more than its share of the budget, in addition to the limit given by its
+     * target buffer size. The share can be changed later through {@link
+     * #getBudgetParticipant()}.
+     *
+     * @param sharedBufferBudget The {@link SharedBufferBudget}.
+     * @param weight The weight of the load control in the budget, which must be positive.
+     * @return This builder, for convenience.
+     */
+    public Builder setSharedBufferBudget(SharedBufferBudget sharedBufferBudget, int weight) {
+      this.sharedBufferBudget = sharedBufferBudget;
+      this.sharedBufferBudgetWeight = weight;
+      return this;
+    }
+
     /** Creates a {@link DefaultLoadControl}. */
     public DefaultLoadControl createDefaultLoadControl() {
       if (allocator == null) {
@@ -166,7 +187,10 @@ public class DefaultLoadControl implements LoadControl {
           bufferForPlaybackAfterRebufferMs,
           targetBufferBytes,
           prioritizeTimeOverSizeThresholds,
-          priorityTaskManager);
+          priorityTaskManager,
+          sharedBufferBudget == null
+              ? null
+              : sharedBufferBudget.register(sharedBufferBudgetWeight));
     }
   }
 
@@ -179,8 +203,10 @@ public class DefaultLoadControl implements LoadControl {
   private final int targetBufferBytesOverwrite;
   private final boolean prioritizeTimeOverSizeThresholds;
   private final PriorityTaskManager priorityTaskManager;
+  @Nullable private final Participant budgetParticipant;
 
   private int targetBufferSize;
+  private int budgetShareBytes;
   private boolean isBuffering;
 
   /**
@@ -235,6 +261,28 @@ public class DefaultLoadControl implements LoadControl {
       int targetBufferBytes,
       boolean prioritizeTimeOverSizeThresholds,
       PriorityTaskManager priorityTaskManager) {
+    this(
+        allocator,
+        minBufferMs,
+        maxBufferMs,
+        bufferForPlaybackMs,
+        bufferForPlaybackAfterRebufferMs,
+        targetBufferBytes,
+        prioritizeTimeOverSizeThresholds,
+        priorityTaskManager,
+        /* budgetParticipant= */ null);
+  }
+
+  private DefaultLoadControl(
+      DefaultAllocator allocator,
+      int minBufferMs,
+      int maxBufferMs,
+      int bufferForPlaybackMs,
+      int bufferForPlaybackAfterRebufferMs,
+      int targetBufferBytes,
+      boolean prioritizeTimeOverSizeThresholds,
+      PriorityTaskManager priorityTaskManager,
+      @Nullable Participant budgetParticipant) {
     assertGreaterOrEqual(bufferForPlaybackMs, 0, "bufferForPlaybackMs", "0");
     assertGreaterOrEqual(
         bufferForPlaybackAfterRebufferMs, 0, "bufferForPlaybackAfterRebufferMs", "0");
@@ -254,6 +302,16 @@ public class DefaultLoadControl implements LoadControl {
     targetBufferBytesOverwrite = targetBufferBytes;
     this.prioritizeTimeOverSizeThresholds = prioritizeTimeOverSizeThresholds;
     this.priorityTaskManager = priorityTaskManager;
+    this.budgetParticipant = budgetParticipant;
+    budgetShareBytes = Integer.MAX_VALUE;
+  }
+
+  /**
+   * Returns the participant through which the load control shares a {@link SharedBufferBudget},
+   * or null if it doesn't share a budget.
+   */
+  public @Nullable Participant getBudgetParticipant() {
+    return budgetParticipant;
   }
 
   @Override
@@ -268,7 +326,10 @@ public class DefaultLoadControl implements LoadControl {
         targetBufferBytesOverwrite == C.LENGTH_UNSET
             ? calculateTargetBufferSize(renderers, trackSelections)
             : targetBufferBytesOverwrite;
-    allocator.setTargetBufferSize(targetBufferSize);
+    if (budgetParticipant != null) {
+      budgetParticipant.setDemandBytes(targetBufferSize);
+    }
+    updateBudgetShare(/* targetBufferSizeChanged= */ true);
   }
 
   @Override
@@ -279,6 +340,9 @@ public class DefaultLoadControl implements LoadControl {
   @Override
   public void onReleased() {
     reset(true);
+    if (budgetParticipant != null) {
+      budgetParticipant.unregister();
+    }
   }
 
   @Override
@@ -298,7 +362,8 @@ public class DefaultLoadControl implements LoadControl {
 
   @Override
   public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
-    boolean targetBufferSizeReached = allocator.getTotalBytesAllocated() >= targetBufferSize;
+    updateBudgetShare(/* targetBufferSizeChanged= */ false);
+    boolean targetBufferSizeReached = allocator.getTotalBytesAllocated() >= getTargetBufferSize();
     boolean wasBuffering = isBuffering;
     long minBufferUs = this.minBufferUs;
     if (playbackSpeed > 1) {
@@ -331,7 +396,7 @@ public class DefaultLoadControl implements LoadControl {
     return minBufferDurationUs <= 0
         || bufferedDurationUs >= minBufferDurationUs
         || (!prioritizeTimeOverSizeThresholds
-            && allocator.getTotalBytesAllocated() >= targetBufferSize);
+            && allocator.getTotalBytesAllocated() >= getTargetBufferSize());
   }
 
   /**
@@ -353,8 +418,36 @@ public class DefaultLoadControl implements LoadControl {
     return targetBufferSize;
   }
 
+  /**
+   * Updates the share of the {@link SharedBufferBudget}, if one is shared. If the target buffer size
+   * or the share has changed, the resulting target is applied to the allocator, so that it releases
+   * allocations beyond a reduced share.
+   *
+   * @param targetBufferSizeChanged Whether {@link #targetBufferSize} has changed since the last
+   *     update.
+   */
+  private void updateBudgetShare(boolean targetBufferSizeChanged) {
+    int shareBytes =
+        budgetParticipant == null ? Integer.MAX_VALUE : budgetParticipant.getShareBytes();
+    if (targetBufferSizeChanged || shareBytes != budgetShareBytes) {
+      budgetShareBytes = shareBytes;
+      allocator.setTargetBufferSize(getTargetBufferSize());
+    }
+  }
+
+  /**
+   * Returns the target buffer size, limited to the share of the {@link SharedBufferBudget} as of
+   * the last call to {@link #updateBudgetShare(boolean)}.
+   */
+  private int getTargetBufferSize() {
+    return Math.min(targetBufferSize, budgetShareBytes);
+  }
+
   private void reset(boolean resetAllocator) {
     targetBufferSize = 0;
+    if (budgetParticipant != null) {
+      budgetParticipant.setDemandBytes(0);
+    }
     if (priorityTaskManager != null && isBuffering) {
       priorityTaskManager.remove(C.PRIORITY_PLAYBACK);
     }
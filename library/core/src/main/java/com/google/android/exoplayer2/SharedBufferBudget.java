@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+
+/**
+ * A byte budget for media buffers that's shared by several players in one process, for example
+ * the players of a multi-view grid.
+ *
+ * <p>Each player's {@link DefaultLoadControl} registers as a {@link Participant} with a weight,
+ * and declares the target buffer size it would use on its own as its demand. The budget is
+ * divided between participants with a non-zero demand in proportion to their weights, except that
+ * no participant is given more than its demand. What a participant doesn't need is divided
+ * between the others in the same way. The division is recomputed whenever a weight or demand
+ * changes, and load controls pick up their new share the next time they decide whether to
+ * continue loading.
+ *
+ * <p>Weights can express priority or visibility. For example, the focused player of a grid might
+ * be given a weight of 4 and the others a weight of 1.
+ */
+public final class SharedBufferBudget {
+
+  /** A participant in a {@link SharedBufferBudget}. */
+  public static final class Participant {
+
+    private final SharedBufferBudget budget;
+
+    // Guarded by budget.
+    private int weight;
+    private int demandBytes;
+
+    private volatile int shareBytes;
+
+    private Participant(SharedBufferBudget budget, int weight) {
+      this.budget = budget;
+      this.weight = weight;
+    }
+
+    /**
+     * Sets the weight of the participant.
+     *
+     * @param weight The weight, which must be positive.
+     */
+    public void setWeight(int weight) {
+      Assertions.checkArgument(weight > 0);
+      synchronized (budget) {
+        this.weight = weight;
+        budget.divide();
+      }
+    }
+
+    /**
+     * Sets the number of bytes the participant would buffer if it weren't sharing a budget. A
+     * participant with a demand of zero is given no share of the budget.
+     *
+     * @param demandBytes The demand in bytes.
+     */
+    public void setDemandBytes(int demandBytes) {
+      Assertions.checkArgument(demandBytes >= 0);
+      synchronized (budget) {
+        if (this.demandBytes != demandBytes) {
+          this.demandBytes = demandBytes;
+          budget.divide();
+        }
+      }
+    }
+
+    /** Returns the number of bytes the participant is currently allowed to buffer. */
+    public int getShareBytes() {
+      return shareBytes;
+    }
+
+    /** Removes the participant from the budget, so that its share is divided between the others. */
+    public void unregister() {
+      synchronized (budget) {
+        budget.participants.remove(this);
+        shareBytes = 0;
+        budget.divide();
+      }
+    }
+
+  }
+
+  private final int totalBytes;
+  private final ArrayList<Participant> participants;
+
+  /** @param totalBytes The number of bytes to divide between participants. */
+  public SharedBufferBudget(int totalBytes) {
+    this.totalBytes = totalBytes;
+    participants = new ArrayList<>();
+  }
+
+  /** Returns the number of bytes divided between participants. */
+  public int getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Registers a participant with a demand of zero.
+   *
+   * @param weight The weight of the participant, which must be positive.
+   * @return The participant.
+   */
+  public synchronized Participant register(int weight) {
+    Assertions.checkArgument(weight > 0);
+    Participant participant = new Participant(this, weight);
+    participants.add(participant);
+    return participant;
+  }
+
+  private void divide() {
+    int participantCount = participants.size();
+    boolean[] satisfied = new boolean[participantCount];
+    long remainingBytes = totalBytes;
+    long remainingWeight = 0;
+    for (int i = 0; i < participantCount; i++) {
+      Participant participant = participants.get(i);
+      if (participant.demandBytes == 0) {
+        participant.shareBytes = 0;
+        satisfied[i] = true;
+      } else {
+        remainingWeight += participant.weight;
+      }
+    }
+    // Give participants whose demand is below their proportional share exactly their demand, and
+    // repeat with what remains until every remaining participant wants at least its share.
+    boolean satisfiedParticipant = true;
+    while (satisfiedParticipant && remainingWeight > 0) {
+      satisfiedParticipant = false;
+      for (int i = 0; i < participantCount; i++) {
+        Participant participant = participants.get(i);
+        if (!satisfied[i]
+            && participant.demandBytes * remainingWeight <= remainingBytes * participant.weight) {
+          participant.shareBytes = participant.demandBytes;
+          satisfied[i] = true;
+          satisfiedParticipant = true;
+          remainingBytes -= participant.demandBytes;
+          remainingWeight -= participant.weight;
+        }
+      }
+    }
+    for (int i = 0; i < participantCount; i++) {
+      if (!satisfied[i]) {
+        Participant participant = participants.get(i);
+        participant.shareBytes = (int) (remainingBytes * participant.weight / remainingWeight);
+      }
+    }
+  }
+
+}
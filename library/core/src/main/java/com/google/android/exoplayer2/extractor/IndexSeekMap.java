@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.util.Util;
+import java.util.Arrays;
+
+/**
+ * A {@link SeekMap} backed by an index of discrete seek points, in increasing order of time and
+ * position.
+ */
+public final class IndexSeekMap implements SeekMap {
+
+  /**
+   * The times of the seek points, in microseconds.
+   */
+  public final long[] timesUs;
+
+  /**
+   * The byte offsets of the seek points.
+   */
+  public final long[] positions;
+
+  private final long durationUs;
+
+  /**
+   * @param durationUs The duration of the stream, in microseconds, or {@link
+   *     com.google.android.exoplayer2.C#TIME_UNSET} if unknown.
+   * @param timesUs The times of the seek points, in microseconds. Must not be empty.
+   * @param positions The byte offsets of the seek points.
+   */
+  public IndexSeekMap(long durationUs, long[] timesUs, long[] positions) {
+    this.durationUs = durationUs;
+    this.timesUs = timesUs;
+    this.positions = positions;
+  }
+
+  /**
+   * Returns the index of discrete seek points that backs a seek map, recovered by walking its
+   * {@link SeekMap#getSeekPoints(long)}.
+   *
+   * @param seekMap The {@link SeekMap}.
+   * @param maxPointCount The maximum number of seek points to recover.
+   * @return The index, or {@code null} if the seek map isn't seekable, or has more than {@code
+   *     maxPointCount} seek points. The latter is also the case for seek maps that interpolate seek
+   *     positions rather than indexing them.
+   */
+  public static @Nullable IndexSeekMap fromSeekMap(SeekMap seekMap, int maxPointCount) {
+    if (!seekMap.isSeekable()) {
+      return null;
+    }
+    long[] timesUs = new long[16];
+    long[] positions = new long[16];
+    int count = 0;
+    long timeUs = 0;
+    while (true) {
+      SeekPoints seekPoints = seekMap.getSeekPoints(timeUs);
+      SeekPoint seekPoint;
+      if (count == 0 || seekPoints.first.timeUs > timesUs[count - 1]) {
+        seekPoint = seekPoints.first;
+      } else if (seekPoints.second.timeUs > timesUs[count - 1]) {
+        seekPoint = seekPoints.second;
+      } else {
+        break;
+      }
+      if (count == maxPointCount) {
+        return null;
+      }
+      if (count == timesUs.length) {
+        timesUs = Arrays.copyOf(timesUs, count * 2);
+        positions = Arrays.copyOf(positions, count * 2);
+      }
+      timesUs[count] = seekPoint.timeUs;
+      positions[count] = seekPoint.position;
+      count++;
+      timeUs = seekPoint.timeUs + 1;
+    }
+    return new IndexSeekMap(
+        seekMap.getDurationUs(), Arrays.copyOf(timesUs, count), Arrays.copyOf(positions, count));
+  }
+
+  // SeekMap implementation.
+
+  @Override
+  public boolean isSeekable() {
+    return true;
+  }
+
+  @Override
+  public long getDurationUs() {
+    return durationUs;
+  }
+
+  @Override
+  public SeekPoints getSeekPoints(long timeUs) {
+    int index = Util.binarySearchFloor(timesUs, timeUs, true, true);
+    SeekPoint seekPoint = new SeekPoint(timesUs[index], positions[index]);
+    if (seekPoint.timeUs >= timeUs || index == timesUs.length - 1) {
+      return new SeekPoints(seekPoint);
+    } else {
+      return new SeekPoints(seekPoint, new SeekPoint(timesUs[index + 1], positions[index + 1]));
+    }
+  }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp3;
+
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.IndexSeekMap;
+import com.google.android.exoplayer2.extractor.MpegAudioHeader;
+import com.google.android.exoplayer2.util.LongArray;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * MP3 seeker that uses an index of frame positions, built by reading every frame of the stream or
+ * persisted by an earlier extraction of it.
+ */
+/* package */ final class IndexSeeker implements Mp3Extractor.Seeker {
+
+  /**
+   * Builds an {@link IndexSeeker} from the frames that are read contiguously from the first frame
+   * of a stream. Frames that don't directly follow the last indexed frame, for example because the
+   * extractor has seeked, are ignored until reading reaches the end of the indexed part again.
+   */
+  public static final class Builder {
+
+    private final long minTimeBetweenPointsUs;
+    private final LongArray timesUs;
+    private final LongArray positions;
+
+    private long nextFramePosition;
+    private long samplesRead;
+    private int sampleRate;
+
+    /**
+     * @param firstFramePosition The position of the first frame in the stream.
+     * @param minTimeBetweenPointsUs The minimum time between two indexed seek points, in
+     *     microseconds.
+     */
+    public Builder(long firstFramePosition, long minTimeBetweenPointsUs) {
+      this.minTimeBetweenPointsUs = minTimeBetweenPointsUs;
+      timesUs = new LongArray();
+      positions = new LongArray();
+      nextFramePosition = firstFramePosition;
+    }
+
+    /**
+     * Called when the header of a frame has been read.
+     *
+     * @param position The position of the frame.
+     * @param header The header of the frame.
+     */
+    public void onFrame(long position, MpegAudioHeader header) {
+      if (position != nextFramePosition) {
+        return;
+      }
+      sampleRate = header.sampleRate;
+      long timeUs = getTimeUs(samplesRead);
+      int pointCount = timesUs.size();
+      if (pointCount == 0 || timeUs - timesUs.get(pointCount - 1) >= minTimeBetweenPointsUs) {
+        timesUs.add(timeUs);
+        positions.add(position);
+      }
+      nextFramePosition += header.frameSize;
+      samplesRead += header.samplesPerFrame;
+    }
+
+    /**
+     * Returns an {@link IndexSeeker} if the stream has been indexed up to the given end position,
+     * or {@code null} otherwise.
+     *
+     * @param endPosition The position at which the stream ends.
+     * @return The {@link IndexSeeker}, or {@code null}.
+     */
+    public @Nullable IndexSeeker build(long endPosition) {
+      if (endPosition != nextFramePosition || timesUs.size() == 0) {
+        return null;
+      }
+      return new IndexSeeker(
+          new IndexSeekMap(getTimeUs(samplesRead), timesUs.toArray(), positions.toArray()),
+          endPosition);
+    }
+
+    private long getTimeUs(long samples) {
+      return (samples * C.MICROS_PER_SECOND) / sampleRate;
+    }
+  }
+
+  private final IndexSeekMap index;
+  private final long endPosition;
+
+  /**
+   * @param index The index of frame positions. Its first seek point must be the first frame of the
+   *     stream.
+   * @param endPosition The position at which the stream ends, or {@link C#LENGTH_UNSET} if unknown.
+   */
+  public IndexSeeker(IndexSeekMap index, long endPosition) {
+    this.index = index;
+    this.endPosition = endPosition;
+  }
+
+  @Override
+  public boolean isSeekable() {
+    return true;
+  }
+
+  @Override
+  public SeekPoints getSeekPoints(long timeUs) {
+    return index.getSeekPoints(timeUs);
+  }
+
+  @Override
+  public long getTimeUs(long position) {
+    long[] timesUs = index.timesUs;
+    long[] positions = index.positions;
+    int pointIndex = Util.binarySearchFloor(positions, position, true, true);
+    long pointPosition = positions[pointIndex];
+    long pointTimeUs = timesUs[pointIndex];
+    if (position <= pointPosition) {
+      return pointTimeUs;
+    }
+    // Interpolate between the indexed seek points either side of the position.
+    long nextPointPosition;
+    long nextPointTimeUs;
+    if (pointIndex < positions.length - 1) {
+      nextPointPosition = positions[pointIndex + 1];
+      nextPointTimeUs = timesUs[pointIndex + 1];
+    } else if (endPosition != C.LENGTH_UNSET) {
+      nextPointPosition = endPosition;
+      nextPointTimeUs = index.getDurationUs();
+    } else if (pointIndex > 0) {
+      // The end of the stream is unknown, so extrapolate from the last two indexed seek points.
+      long previousPointPosition = positions[pointIndex - 1];
+      long previousPointTimeUs = timesUs[pointIndex - 1];
+      return pointTimeUs
+          + ((position - pointPosition) * (pointTimeUs - previousPointTimeUs))
+              / (pointPosition - previousPointPosition);
+    } else {
+      return pointTimeUs;
+    }
+    if (position >= nextPointPosition) {
+      return nextPointTimeUs;
+    }
+    return pointTimeUs
+        + ((position - pointPosition) * (nextPointTimeUs - pointTimeUs))
+            / (nextPointPosition - pointPosition);
+  }
+
+  @Override
+  public long getDurationUs() {
+    return index.getDurationUs();
+  }
+
+}
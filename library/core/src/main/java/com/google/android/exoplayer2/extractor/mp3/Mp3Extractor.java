@@ -16,6 +16,7 @@
 package com.google.android.exoplayer2.extractor.mp3;
 
 import android.support.annotation.IntDef;
+import android.support.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.ParserException;
@@ -25,6 +26,7 @@ import com.google.android.exoplayer2.extractor.ExtractorOutput;
 import com.google.android.exoplayer2.extractor.ExtractorsFactory;
 import com.google.android.exoplayer2.extractor.GaplessInfoHolder;
 import com.google.android.exoplayer2.extractor.Id3Peeker;
+import com.google.android.exoplayer2.extractor.IndexSeekMap;
 import com.google.android.exoplayer2.extractor.MpegAudioHeader;
 import com.google.android.exoplayer2.extractor.PositionHolder;
 import com.google.android.exoplayer2.extractor.SeekMap;
@@ -59,7 +61,8 @@ public final class Mp3Extractor implements Extractor {
    * Flags controlling the behavior of the extractor.
    */
   @Retention(RetentionPolicy.SOURCE)
-  @IntDef(flag = true, value = {FLAG_ENABLE_CONSTANT_BITRATE_SEEKING, FLAG_DISABLE_ID3_METADATA})
+  @IntDef(flag = true, value = {FLAG_ENABLE_CONSTANT_BITRATE_SEEKING, FLAG_DISABLE_ID3_METADATA,
+      FLAG_ENABLE_INDEX_SEEKING})
   public @interface Flags {}
   /**
    * Flag to force enable seeking using a constant bitrate assumption in cases where seeking would
@@ -71,6 +74,14 @@ public final class Mp3Extractor implements Extractor {
    * required.
    */
   public static final int FLAG_DISABLE_ID3_METADATA = 2;
+  /**
+   * Flag to build an index of frame positions while reading streams that have no Xing or VBRI
+   * seeking metadata. Seeking uses a constant bitrate assumption until the whole stream has been
+   * read, after which the output {@link SeekMap} is switched to one that uses the index, making
+   * seeking exact for variable bitrate streams. An index persisted by an earlier extraction can be
+   * set with {@link #setPersistedIndex(IndexSeekMap)} to seek exactly straight away.
+   */
+  public static final int FLAG_ENABLE_INDEX_SEEKING = 4;
 
   /**
    * The maximum number of bytes to search when synchronizing, before giving up.
@@ -90,6 +101,12 @@ public final class Mp3Extractor implements Extractor {
    */
   private static final int MPEG_AUDIO_HEADER_MASK = 0xFFFE0C00;
 
+  /**
+   * The minimum time between two seek points in the index built if {@link
+   * #FLAG_ENABLE_INDEX_SEEKING} is set.
+   */
+  private static final long MIN_TIME_BETWEEN_INDEXED_POINTS_US = C.MICROS_PER_SECOND;
+
   private static final int SEEK_HEADER_XING = Util.getIntegerCodeForString("Xing");
   private static final int SEEK_HEADER_INFO = Util.getIntegerCodeForString("Info");
   private static final int SEEK_HEADER_VBRI = Util.getIntegerCodeForString("VBRI");
@@ -110,6 +127,8 @@ public final class Mp3Extractor implements Extractor {
 
   private Metadata metadata;
   private Seeker seeker;
+  private @Nullable IndexSeekMap persistedIndex;
+  private @Nullable IndexSeeker.Builder indexSeekerBuilder;
   private long basisTimeUs;
   private long samplesRead;
   private int sampleBytesRemaining;
@@ -140,6 +159,20 @@ public final class Mp3Extractor implements Extractor {
     id3Peeker = new Id3Peeker();
   }
 
+  /**
+   * Sets an index of the stream's frame positions that was persisted by an earlier extraction of
+   * the same stream, for example by {@link
+   * com.google.android.exoplayer2.upstream.cache.SeekMapCache}. If {@link
+   * #FLAG_ENABLE_INDEX_SEEKING} is set and the stream has no Xing or VBRI header, the index is used
+   * both for seeking and for deriving sample timestamps, and the stream isn't indexed again. Must
+   * be called before the extractor first reads from the stream to have an effect.
+   *
+   * @param persistedIndex The persisted index, or {@code null}.
+   */
+  public void setPersistedIndex(@Nullable IndexSeekMap persistedIndex) {
+    this.persistedIndex = persistedIndex;
+  }
+
   // Extractor implementation.
 
   @Override
@@ -183,6 +216,14 @@ public final class Mp3Extractor implements Extractor {
           || (!seeker.isSeekable() && (flags & FLAG_ENABLE_CONSTANT_BITRATE_SEEKING) != 0)) {
         seeker = getConstantBitrateSeeker(input);
       }
+      if ((flags & FLAG_ENABLE_INDEX_SEEKING) != 0 && seeker instanceof ConstantBitrateSeeker) {
+        if (persistedIndex != null && persistedIndex.positions[0] == input.getPosition()) {
+          seeker = new IndexSeeker(persistedIndex, input.getLength());
+        } else {
+          indexSeekerBuilder =
+              new IndexSeeker.Builder(input.getPosition(), MIN_TIME_BETWEEN_INDEXED_POINTS_US);
+        }
+      }
       extractorOutput.seekMap(seeker);
       trackOutput.format(
           Format.createAudioSampleFormat(
@@ -211,6 +252,7 @@ public final class Mp3Extractor implements Extractor {
     if (sampleBytesRemaining == 0) {
       extractorInput.resetPeekPosition();
       if (!extractorInput.peekFully(scratch.data, 0, 4, true)) {
+        maybeSwitchToIndexSeeker(extractorInput.getPosition());
         return RESULT_END_OF_INPUT;
       }
       scratch.setPosition(0);
@@ -223,6 +265,9 @@ public final class Mp3Extractor implements Extractor {
         return RESULT_CONTINUE;
       }
       MpegAudioHeader.populateHeader(sampleHeaderData, synchronizedHeader);
+      if (indexSeekerBuilder != null) {
+        indexSeekerBuilder.onFrame(extractorInput.getPosition(), synchronizedHeader);
+      }
       if (basisTimeUs == C.TIME_UNSET) {
         basisTimeUs = seeker.getTimeUs(extractorInput.getPosition());
         if (forcedFirstSampleTimestampUs != C.TIME_UNSET) {
@@ -248,6 +293,22 @@ public final class Mp3Extractor implements Extractor {
     return RESULT_CONTINUE;
   }
 
+  /**
+   * Switches {@link #seeker} to an {@link IndexSeeker}, and outputs it as the new {@link SeekMap},
+   * if every frame up to the given end of the stream has been indexed.
+   */
+  private void maybeSwitchToIndexSeeker(long endPosition) {
+    if (indexSeekerBuilder == null) {
+      return;
+    }
+    IndexSeeker indexSeeker = indexSeekerBuilder.build(endPosition);
+    if (indexSeeker != null) {
+      indexSeekerBuilder = null;
+      seeker = indexSeeker;
+      extractorOutput.seekMap(indexSeeker);
+    }
+  }
+
   private boolean synchronize(ExtractorInput input, boolean sniffing)
       throws IOException, InterruptedException {
     int validFrameCount = 0;
@@ -446,6 +446,87 @@ import java.util.List;
         editedDurationUs);
   }
 
+  /**
+   * Parses an stbl atom (defined in 14496-12), keeping the sample table in its compact form if
+   * possible. The sample table is parsed eagerly if the track's samples need to be rechunked, or if
+   * applying the track's edit list removes samples from the sample table.
+   *
+   * @param track Track to which this sample table corresponds.
+   * @param stblAtom stbl (sample table) atom to decode.
+   * @param gaplessInfoHolder Holder to populate with gapless playback information.
+   * @param samplesPerWindow The number of samples in each window decoded by a lazy sample table.
+   * @return Sample table described by the stbl atom.
+   * @throws ParserException If the resulting sample sequence does not contain a sync sample.
+   */
+  public static SampleTable parseStblLazily(Track track, Atom.ContainerAtom stblAtom,
+      GaplessInfoHolder gaplessInfoHolder, int samplesPerWindow) throws ParserException {
+    LazyTrackSampleTable sampleTable =
+        LazyTrackSampleTable.create(track, stblAtom, samplesPerWindow);
+    if (sampleTable == null) {
+      return parseStbl(track, stblAtom, gaplessInfoHolder);
+    }
+    if (track.editListDurations == null || gaplessInfoHolder.hasGaplessInfo()) {
+      // There is no edit list, or we are ignoring it as we already have gapless metadata to apply.
+      return sampleTable;
+    }
+
+    // Apply the edit list in the same way as parseStbl, for edit lists that don't remove samples.
+    long duration = sampleTable.getDuration();
+    int sampleCount = sampleTable.getSampleCount();
+    if (track.editListDurations.length == 1
+        && track.type == C.TRACK_TYPE_AUDIO
+        && sampleCount >= 2) {
+      long editStartTime = track.editListMediaTimes[0];
+      long editEndTime = editStartTime + Util.scaleLargeTimestamp(track.editListDurations[0],
+          track.timescale, track.movieTimescale);
+      if (canApplyEditWithGaplessInfo(sampleTable, duration, editStartTime, editEndTime)) {
+        long paddingTimeUnits = duration - editEndTime;
+        long encoderDelay = Util.scaleLargeTimestamp(editStartTime - sampleTable.getTimestamp(0),
+            track.format.sampleRate, track.timescale);
+        long encoderPadding = Util.scaleLargeTimestamp(paddingTimeUnits,
+            track.format.sampleRate, track.timescale);
+        if ((encoderDelay != 0 || encoderPadding != 0) && encoderDelay <= Integer.MAX_VALUE
+            && encoderPadding <= Integer.MAX_VALUE) {
+          gaplessInfoHolder.encoderDelay = (int) encoderDelay;
+          gaplessInfoHolder.encoderPadding = (int) encoderPadding;
+          return sampleTable;
+        }
+      }
+    }
+
+    if (track.editListDurations.length == 1 && track.editListDurations[0] == 0) {
+      long editStartTime = track.editListMediaTimes[0];
+      return sampleTable.copyWithEdit(
+          editStartTime,
+          Util.scaleLargeTimestamp(duration - editStartTime, C.MICROS_PER_SECOND, track.timescale));
+    }
+
+    if (track.editListDurations.length == 1 && track.editListMediaTimes[0] != -1) {
+      long editMediaTime = track.editListMediaTimes[0];
+      long editDuration = track.editListDurations[0];
+      long endMediaTime =
+          editMediaTime
+              + Util.scaleLargeTimestamp(editDuration, track.timescale, track.movieTimescale);
+      // Omit any sample at the end point of an edit for audio tracks.
+      boolean omitClippedSample = track.type == C.TRACK_TYPE_AUDIO;
+      int startIndex = binarySearchCeil(sampleTable, editMediaTime, true, true);
+      int endIndex = binarySearchCeil(sampleTable, endMediaTime, omitClippedSample, false);
+      if (startIndex == 0 && endIndex == sampleCount) {
+        if (!sampleTable.hasSynchronizationSample()) {
+          // See parseStbl.
+          Log.w(TAG, "Ignoring edit list: Edited sample sequence does not contain a sync sample.");
+          return sampleTable;
+        }
+        return sampleTable.copyWithEdit(
+            editMediaTime,
+            Util.scaleLargeTimestamp(editDuration, C.MICROS_PER_SECOND, track.timescale));
+      }
+    }
+
+    // The edit list removes samples, which requires the sample table to be parsed eagerly.
+    return parseStbl(track, stblAtom, gaplessInfoHolder);
+  }
+
   /**
    * Parses a udta atom.
    *
@@ -1198,6 +1279,58 @@ import java.util.List;
         && editEndTime <= duration;
   }
 
+  /**
+   * Equivalent to {@link #canApplyEditWithGaplessInfo(long[], long, long, long)} for the unedited
+   * timestamps of a {@link LazyTrackSampleTable}.
+   */
+  private static boolean canApplyEditWithGaplessInfo(
+      LazyTrackSampleTable sampleTable, long duration, long editStartTime, long editEndTime) {
+    int lastIndex = sampleTable.getSampleCount() - 1;
+    int latestDelayIndex = Util.constrainValue(MAX_GAPLESS_TRIM_SIZE_SAMPLES, 0, lastIndex);
+    int earliestPaddingIndex =
+        Util.constrainValue(
+            sampleTable.getSampleCount() - MAX_GAPLESS_TRIM_SIZE_SAMPLES, 0, lastIndex);
+    return sampleTable.getTimestamp(0) <= editStartTime
+        && editStartTime < sampleTable.getTimestamp(latestDelayIndex)
+        && sampleTable.getTimestamp(earliestPaddingIndex) < editEndTime
+        && editEndTime <= duration;
+  }
+
+  /**
+   * Equivalent to {@link Util#binarySearchCeil(long[], long, boolean, boolean)} for the unedited
+   * timestamps of a {@link LazyTrackSampleTable}.
+   */
+  private static int binarySearchCeil(
+      LazyTrackSampleTable sampleTable, long value, boolean inclusive, boolean stayInBounds) {
+    // Binary search in the same way as Arrays.binarySearch, so that the result is the same even if
+    // the timestamps aren't sorted.
+    int sampleCount = sampleTable.getSampleCount();
+    int low = 0;
+    int high = sampleCount - 1;
+    int index = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long timestamp = sampleTable.getTimestamp(mid);
+      if (timestamp < value) {
+        low = mid + 1;
+      } else if (timestamp > value) {
+        high = mid - 1;
+      } else {
+        index = mid;
+        break;
+      }
+    }
+    if (index < 0) {
+      index = low;
+    } else {
+      while ((++index) < sampleCount && sampleTable.getTimestamp(index) == value) {}
+      if (inclusive) {
+        index--;
+      }
+    }
+    return stayInBounds ? Math.min(sampleCount - 1, index) : index;
+  }
+
   private AtomParsers() {
     // Prevent instantiation.
   }
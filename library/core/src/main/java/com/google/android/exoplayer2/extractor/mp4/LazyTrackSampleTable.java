@@ -0,0 +1,830 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.Util;
+import java.util.Arrays;
+
+/**
+ * A {@link SampleTable} that keeps the sample table atoms of a track in their compact form, and
+ * decodes sample information from them on demand.
+ *
+ * <p>Samples are decoded in windows of consecutive samples. When the table is created, the state
+ * required to decode each window is recorded in a checkpoint, so that any window can be decoded
+ * without decoding the samples that precede it. Methods are synchronized because the table may be
+ * queried by a seek map on a different thread to the one that reads samples.
+ */
+/* package */ final class LazyTrackSampleTable implements SampleTable {
+
+  /**
+   * The default number of samples in a window.
+   */
+  public static final int DEFAULT_SAMPLES_PER_WINDOW = 512;
+
+  private static final String TAG = "LazyTrackSampleTable";
+
+  /**
+   * The number of values in a checkpoint.
+   */
+  private static final int CHECKPOINT_LENGTH = 20;
+  /**
+   * The index in a checkpoint of the total size of the samples that precede the window.
+   */
+  private static final int CHECKPOINT_SAMPLE_BYTES_INDEX = CHECKPOINT_LENGTH - 1;
+
+  private final Atom.LeafAtom sampleSizeAtom;
+  private final Atom.LeafAtom chunkOffsetsAtom;
+  private final Atom.LeafAtom stscAtom;
+  private final Atom.LeafAtom sttsAtom;
+  @Nullable private final Atom.LeafAtom cttsAtom;
+  @Nullable private final Atom.LeafAtom stssAtom;
+  private final long timescale;
+  private final int sampleCount;
+  private final int samplesPerWindow;
+  private final int windowCount;
+  private final int maximumSize;
+  private final long duration;
+  private final long totalSampleBytes;
+  private final int synchronizationSampleCount;
+  private final long[] checkpoints;
+  private final long[] windowFirstTimestamps;
+  private final long[] windowMaximumTimestamps;
+  private final long editMediaTime;
+  private final long durationUs;
+
+  @Nullable private final ParsableByteArray synchronizationSamples;
+  private final int synchronizationSampleEntryCount;
+  private final Cursor cursor;
+  private Window window;
+  private Window previousWindow;
+
+  /**
+   * Creates a lazy sample table from an stbl atom, decoding every sample once to record the
+   * checkpoints from which they can be decoded again.
+   *
+   * @param track Track to which this sample table corresponds.
+   * @param stblAtom stbl (sample table) atom to decode.
+   * @param samplesPerWindow The number of samples in a window.
+   * @return The sample table, or {@code null} if the sample table is empty or the track's samples
+   *     need to be rechunked, in which case the sample table should be parsed eagerly.
+   * @throws ParserException If the stbl atom has no sample size information.
+   */
+  @Nullable
+  public static LazyTrackSampleTable create(
+      Track track, Atom.ContainerAtom stblAtom, int samplesPerWindow) throws ParserException {
+    Atom.LeafAtom sampleSizeAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stsz);
+    if (sampleSizeAtom == null) {
+      sampleSizeAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stz2);
+      if (sampleSizeAtom == null) {
+        throw new ParserException("Track has no sample table size information");
+      }
+    }
+    Atom.LeafAtom chunkOffsetsAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stco);
+    if (chunkOffsetsAtom == null) {
+      chunkOffsetsAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_co64);
+    }
+    Cursor cursor =
+        new Cursor(
+            sampleSizeAtom,
+            chunkOffsetsAtom,
+            stblAtom.getLeafAtomOfType(Atom.TYPE_stsc),
+            stblAtom.getLeafAtomOfType(Atom.TYPE_stts),
+            stblAtom.getLeafAtomOfType(Atom.TYPE_ctts),
+            stblAtom.getLeafAtomOfType(Atom.TYPE_stss));
+    int sampleCount = cursor.sampleCount;
+    if (sampleCount == 0) {
+      return null;
+    }
+    if (cursor.fixedSampleSize != 0
+        && MimeTypes.AUDIO_RAW.equals(track.format.sampleMimeType)
+        && cursor.remainingTimestampDeltaChanges == 0
+        && cursor.remainingTimestampOffsetChanges == 0
+        && cursor.remainingSynchronizationSamples == 0) {
+      // Fixed sample size raw audio is rechunked.
+      return null;
+    }
+
+    int windowCount = (sampleCount + samplesPerWindow - 1) / samplesPerWindow;
+    long[] checkpoints = new long[windowCount * CHECKPOINT_LENGTH];
+    long[] windowFirstTimestamps = new long[windowCount];
+    long[] windowMaximumTimestamps = new long[windowCount];
+    int maximumSize = 0;
+    int synchronizationSampleCount = 0;
+    for (int i = 0; i < sampleCount; i++) {
+      int windowIndex = i / samplesPerWindow;
+      boolean isFirstSampleInWindow = i % samplesPerWindow == 0;
+      if (isFirstSampleInWindow) {
+        cursor.saveCheckpoint(checkpoints, windowIndex * CHECKPOINT_LENGTH);
+      }
+      cursor.readNextSample();
+      if (isFirstSampleInWindow) {
+        windowFirstTimestamps[windowIndex] = cursor.sampleTimestamp;
+        windowMaximumTimestamps[windowIndex] = cursor.sampleTimestamp;
+      } else if (cursor.sampleTimestamp > windowMaximumTimestamps[windowIndex]) {
+        windowMaximumTimestamps[windowIndex] = cursor.sampleTimestamp;
+      }
+      if (cursor.sampleSize > maximumSize) {
+        maximumSize = cursor.sampleSize;
+      }
+      if ((cursor.sampleFlags & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+        synchronizationSampleCount++;
+      }
+    }
+    cursor.checkEnded(track.id);
+    long duration = cursor.decodeTime + cursor.timestampOffset;
+
+    return new LazyTrackSampleTable(
+        sampleSizeAtom,
+        chunkOffsetsAtom,
+        stblAtom.getLeafAtomOfType(Atom.TYPE_stsc),
+        stblAtom.getLeafAtomOfType(Atom.TYPE_stts),
+        stblAtom.getLeafAtomOfType(Atom.TYPE_ctts),
+        stblAtom.getLeafAtomOfType(Atom.TYPE_stss),
+        track.timescale,
+        sampleCount,
+        samplesPerWindow,
+        maximumSize,
+        duration,
+        cursor.sampleBytes,
+        synchronizationSampleCount,
+        checkpoints,
+        windowFirstTimestamps,
+        windowMaximumTimestamps,
+        /* editMediaTime= */ 0,
+        Util.scaleLargeTimestamp(duration, C.MICROS_PER_SECOND, track.timescale));
+  }
+
+  private LazyTrackSampleTable(
+      Atom.LeafAtom sampleSizeAtom,
+      Atom.LeafAtom chunkOffsetsAtom,
+      Atom.LeafAtom stscAtom,
+      Atom.LeafAtom sttsAtom,
+      @Nullable Atom.LeafAtom cttsAtom,
+      @Nullable Atom.LeafAtom stssAtom,
+      long timescale,
+      int sampleCount,
+      int samplesPerWindow,
+      int maximumSize,
+      long duration,
+      long totalSampleBytes,
+      int synchronizationSampleCount,
+      long[] checkpoints,
+      long[] windowFirstTimestamps,
+      long[] windowMaximumTimestamps,
+      long editMediaTime,
+      long durationUs) {
+    this.sampleSizeAtom = sampleSizeAtom;
+    this.chunkOffsetsAtom = chunkOffsetsAtom;
+    this.stscAtom = stscAtom;
+    this.sttsAtom = sttsAtom;
+    this.cttsAtom = cttsAtom;
+    this.stssAtom = stssAtom;
+    this.timescale = timescale;
+    this.sampleCount = sampleCount;
+    this.samplesPerWindow = samplesPerWindow;
+    this.maximumSize = maximumSize;
+    this.duration = duration;
+    this.totalSampleBytes = totalSampleBytes;
+    this.synchronizationSampleCount = synchronizationSampleCount;
+    this.checkpoints = checkpoints;
+    this.windowFirstTimestamps = windowFirstTimestamps;
+    this.windowMaximumTimestamps = windowMaximumTimestamps;
+    this.editMediaTime = editMediaTime;
+    this.durationUs = durationUs;
+    windowCount = windowFirstTimestamps.length;
+    cursor = new Cursor(sampleSizeAtom, chunkOffsetsAtom, stscAtom, sttsAtom, cttsAtom, stssAtom);
+    synchronizationSamples = cursor.stss != null ? wrap(stssAtom) : null;
+    synchronizationSampleEntryCount = cursor.remainingSynchronizationSamples;
+    window = new Window(samplesPerWindow);
+    previousWindow = new Window(samplesPerWindow);
+  }
+
+  /**
+   * Returns a copy of this table whose sample timestamps are relative to the start of an edit that
+   * includes every sample.
+   *
+   * @param editMediaTime The media time at which the edit starts, in units of the track's
+   *     timescale.
+   * @param durationUs The duration of the edited sample table in microseconds.
+   */
+  public LazyTrackSampleTable copyWithEdit(long editMediaTime, long durationUs) {
+    return new LazyTrackSampleTable(
+        sampleSizeAtom,
+        chunkOffsetsAtom,
+        stscAtom,
+        sttsAtom,
+        cttsAtom,
+        stssAtom,
+        timescale,
+        sampleCount,
+        samplesPerWindow,
+        maximumSize,
+        duration,
+        totalSampleBytes,
+        synchronizationSampleCount,
+        checkpoints,
+        windowFirstTimestamps,
+        windowMaximumTimestamps,
+        editMediaTime,
+        durationUs);
+  }
+
+  /**
+   * Returns the duration of the samples before any edit is applied, in units of the track's
+   * timescale.
+   */
+  public long getDuration() {
+    return duration;
+  }
+
+  /**
+   * Returns the timestamp of a sample before any edit is applied, in units of the track's
+   * timescale.
+   *
+   * @param index The index of the sample.
+   */
+  public synchronized long getTimestamp(int index) {
+    return getWindow(index / samplesPerWindow).timestamps[index % samplesPerWindow];
+  }
+
+  /**
+   * Returns whether any of the samples is a synchronization sample.
+   */
+  public boolean hasSynchronizationSample() {
+    return synchronizationSampleCount > 0;
+  }
+
+  // SampleTable implementation.
+
+  @Override
+  public int getSampleCount() {
+    return sampleCount;
+  }
+
+  @Override
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  @Override
+  public long getDurationUs() {
+    return durationUs;
+  }
+
+  @Override
+  public synchronized long getOffset(int index) {
+    return getWindow(index / samplesPerWindow).offsets[index % samplesPerWindow];
+  }
+
+  @Override
+  public synchronized int getSize(int index) {
+    return getWindow(index / samplesPerWindow).sizes[index % samplesPerWindow];
+  }
+
+  @Override
+  public synchronized long getTimestampUs(int index) {
+    return getWindow(index / samplesPerWindow).timestampsUs[index % samplesPerWindow];
+  }
+
+  @Override
+  public synchronized int getFlags(int index) {
+    return getWindow(index / samplesPerWindow).flags[index % samplesPerWindow];
+  }
+
+  @Override
+  public synchronized long getSampleBytesBeforeTime(int fromIndex, long timeUs) {
+    long sampleBytes = 0;
+    int index = fromIndex;
+    int windowIndex = fromIndex / samplesPerWindow;
+    while (index < sampleCount) {
+      int windowStartIndex = windowIndex * samplesPerWindow;
+      if (index == windowStartIndex && toUs(windowMaximumTimestamps[windowIndex]) < timeUs) {
+        // Every sample in the window is before timeUs, so there's no need to decode it.
+        long nextWindowSampleBytes =
+            windowIndex + 1 < windowCount
+                ? checkpoints[(windowIndex + 1) * CHECKPOINT_LENGTH + CHECKPOINT_SAMPLE_BYTES_INDEX]
+                : totalSampleBytes;
+        sampleBytes +=
+            nextWindowSampleBytes
+                - checkpoints[windowIndex * CHECKPOINT_LENGTH + CHECKPOINT_SAMPLE_BYTES_INDEX];
+      } else {
+        Window window = getWindow(windowIndex);
+        for (int i = index - windowStartIndex; i < window.length; i++) {
+          if (window.timestampsUs[i] >= timeUs) {
+            return sampleBytes;
+          }
+          sampleBytes += window.sizes[i];
+        }
+      }
+      windowIndex++;
+      index = windowIndex * samplesPerWindow;
+    }
+    return sampleBytes;
+  }
+
+  @Override
+  public synchronized int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
+    int index = getIndexOfEarlierOrEqualTimestamp(timeUs);
+    if (index < 0) {
+      return C.INDEX_UNSET;
+    }
+    if (synchronizationSamples == null) {
+      // Every sample is a synchronization sample.
+      return index;
+    }
+    // Binary search for the last synchronization sample at or before the index.
+    int low = 0;
+    int high = synchronizationSampleEntryCount - 1;
+    int synchronizationSampleIndex = C.INDEX_UNSET;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int sampleIndex = getSynchronizationSampleIndex(mid);
+      if (sampleIndex <= index) {
+        synchronizationSampleIndex = sampleIndex;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return synchronizationSampleIndex >= 0 ? synchronizationSampleIndex : C.INDEX_UNSET;
+  }
+
+  @Override
+  public synchronized int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
+    int index = getIndexOfLaterOrEqualTimestamp(timeUs);
+    if (index >= sampleCount) {
+      return C.INDEX_UNSET;
+    }
+    if (synchronizationSamples == null) {
+      // Every sample is a synchronization sample.
+      return index;
+    }
+    // Binary search for the first synchronization sample at or after the index.
+    int low = 0;
+    int high = synchronizationSampleEntryCount - 1;
+    int synchronizationSampleIndex = C.INDEX_UNSET;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int sampleIndex = getSynchronizationSampleIndex(mid);
+      if (sampleIndex >= index) {
+        synchronizationSampleIndex = sampleIndex;
+        high = mid - 1;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return synchronizationSampleIndex < sampleCount ? synchronizationSampleIndex : C.INDEX_UNSET;
+  }
+
+  // Internal methods.
+
+  /**
+   * Returns the index of the first of the last samples whose timestamps are at or before {@code
+   * timeUs}, or -1 if there's no such sample. Equivalent to {@link Util#binarySearchFloor(long[],
+   * long, boolean, boolean)} over the timestamps of all of the samples.
+   */
+  private int getIndexOfEarlierOrEqualTimestamp(long timeUs) {
+    int windowIndex = Math.max(0, getLastWindowStartingBefore(timeUs, false));
+    Window window = getWindow(windowIndex);
+    int index = binarySearchFloor(window.timestampsUs, window.length, timeUs);
+    if (index == window.length - 1
+        && window.timestampsUs[index] < timeUs
+        && windowIndex + 1 < windowCount
+        && toUs(windowFirstTimestamps[windowIndex + 1]) == timeUs) {
+      // The first sample at timeUs starts the next window.
+      return (windowIndex + 1) * samplesPerWindow;
+    }
+    return windowIndex * samplesPerWindow + index;
+  }
+
+  /**
+   * Returns the index of the last of the first samples whose timestamps are at or after {@code
+   * timeUs}, or the sample count if there's no such sample. Equivalent to {@link
+   * Util#binarySearchCeil(long[], long, boolean, boolean)} over the timestamps of all of the
+   * samples.
+   */
+  private int getIndexOfLaterOrEqualTimestamp(long timeUs) {
+    int windowIndex = Math.max(0, getLastWindowStartingBefore(timeUs, true));
+    Window window = getWindow(windowIndex);
+    return windowIndex * samplesPerWindow
+        + binarySearchCeil(window.timestampsUs, window.length, timeUs);
+  }
+
+  /**
+   * Returns the index of the last window whose first sample's timestamp is before (or optionally
+   * at) {@code timeUs}, or -1 if there's no such window.
+   */
+  private int getLastWindowStartingBefore(long timeUs, boolean inclusive) {
+    int low = 0;
+    int high = windowCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long firstTimestampUs = toUs(windowFirstTimestamps[mid]);
+      if (firstTimestampUs < timeUs || (inclusive && firstTimestampUs == timeUs)) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high;
+  }
+
+  private int getSynchronizationSampleIndex(int entryIndex) {
+    synchronizationSamples.setPosition(Atom.FULL_HEADER_SIZE + 4 + 4 * entryIndex);
+    return synchronizationSamples.readUnsignedIntToInt() - 1;
+  }
+
+  private long toUs(long timestamp) {
+    return Util.scaleLargeTimestamp(timestamp - editMediaTime, C.MICROS_PER_SECOND, timescale);
+  }
+
+  private Window getWindow(int windowIndex) {
+    if (window.index != windowIndex) {
+      Window swap = previousWindow;
+      previousWindow = window;
+      window = swap;
+      if (window.index != windowIndex) {
+        decodeWindow(windowIndex, window);
+      }
+    }
+    return window;
+  }
+
+  private void decodeWindow(int windowIndex, Window window) {
+    int windowStartIndex = windowIndex * samplesPerWindow;
+    cursor.restoreCheckpoint(checkpoints, windowIndex * CHECKPOINT_LENGTH, windowStartIndex);
+    window.index = windowIndex;
+    window.length = Math.min(samplesPerWindow, sampleCount - windowStartIndex);
+    for (int i = 0; i < window.length; i++) {
+      cursor.readNextSample();
+      window.offsets[i] = cursor.sampleOffset;
+      window.sizes[i] = cursor.sampleSize;
+      window.timestamps[i] = cursor.sampleTimestamp;
+      window.timestampsUs[i] = toUs(cursor.sampleTimestamp);
+      window.flags[i] = cursor.sampleFlags;
+    }
+  }
+
+  private static int binarySearchFloor(long[] array, int length, long value) {
+    int index = Arrays.binarySearch(array, 0, length, value);
+    if (index < 0) {
+      return -(index + 2);
+    }
+    while ((--index) >= 0 && array[index] == value) {}
+    return index + 1;
+  }
+
+  private static int binarySearchCeil(long[] array, int length, long value) {
+    int index = Arrays.binarySearch(array, 0, length, value);
+    if (index < 0) {
+      return ~index;
+    }
+    while ((++index) < length && array[index] == value) {}
+    return index - 1;
+  }
+
+  private static ParsableByteArray wrap(Atom.LeafAtom atom) {
+    // Wrap the atom's data so that the position of the atom's own array isn't changed.
+    return new ParsableByteArray(atom.data.data, atom.data.limit());
+  }
+
+  /**
+   * Decoded information about a window of samples.
+   */
+  private static final class Window {
+
+    public final long[] offsets;
+    public final int[] sizes;
+    public final long[] timestamps;
+    public final long[] timestampsUs;
+    public final int[] flags;
+
+    public int index;
+    public int length;
+
+    public Window(int capacity) {
+      offsets = new long[capacity];
+      sizes = new int[capacity];
+      timestamps = new long[capacity];
+      timestampsUs = new long[capacity];
+      flags = new int[capacity];
+      index = C.INDEX_UNSET;
+    }
+
+  }
+
+  /**
+   * Decodes samples sequentially from the sample table atoms, in the same way as {@link
+   * AtomParsers#parseStbl}.
+   */
+  private static final class Cursor {
+
+    public final int sampleCount;
+    public final int fixedSampleSize;
+    @Nullable public final ParsableByteArray stss;
+
+    private final ParsableByteArray sampleSizes;
+    private final int sampleSizeFieldSize;
+    private final ParsableByteArray chunkOffsets;
+    private final boolean chunkOffsetsAreLongs;
+    private final int chunkCount;
+    private final ParsableByteArray stsc;
+    private final ParsableByteArray stts;
+    @Nullable private final ParsableByteArray ctts;
+
+    // Decoding state.
+    public int remainingTimestampDeltaChanges;
+    public int remainingTimestampOffsetChanges;
+    public int remainingSynchronizationSamples;
+    public long decodeTime;
+    public int timestampOffset;
+    public long sampleBytes;
+    private int sampleIndex;
+    private int chunkIndex;
+    private int remainingSamplesInChunk;
+    private long offset;
+    private int samplesPerChunk;
+    private int nextSamplesPerChunkChangeIndex;
+    private int remainingSamplesPerChunkChanges;
+    private int remainingSamplesAtTimestampDelta;
+    private int timestampDelta;
+    private int remainingSamplesAtTimestampOffset;
+    private int nextSynchronizationSampleIndex;
+
+    // The most recently read sample.
+    public long sampleOffset;
+    public int sampleSize;
+    public long sampleTimestamp;
+    public int sampleFlags;
+
+    public Cursor(
+        Atom.LeafAtom sampleSizeAtom,
+        Atom.LeafAtom chunkOffsetsAtom,
+        Atom.LeafAtom stscAtom,
+        Atom.LeafAtom sttsAtom,
+        @Nullable Atom.LeafAtom cttsAtom,
+        @Nullable Atom.LeafAtom stssAtom) {
+      sampleSizes = wrap(sampleSizeAtom);
+      sampleSizes.setPosition(Atom.FULL_HEADER_SIZE);
+      if (sampleSizeAtom.type == Atom.TYPE_stsz) {
+        fixedSampleSize = sampleSizes.readUnsignedIntToInt();
+        sampleSizeFieldSize = 32;
+      } else {
+        fixedSampleSize = 0;
+        sampleSizeFieldSize = sampleSizes.readUnsignedIntToInt() & 0x000000FF;
+      }
+      sampleCount = sampleSizes.readUnsignedIntToInt();
+
+      chunkOffsets = wrap(chunkOffsetsAtom);
+      chunkOffsetsAreLongs = chunkOffsetsAtom.type == Atom.TYPE_co64;
+      chunkOffsets.setPosition(Atom.FULL_HEADER_SIZE);
+      chunkCount = chunkOffsets.readUnsignedIntToInt();
+
+      stsc = wrap(stscAtom);
+      stsc.setPosition(Atom.FULL_HEADER_SIZE);
+      remainingSamplesPerChunkChanges = stsc.readUnsignedIntToInt();
+      Assertions.checkState(stsc.readInt() == 1, "first_chunk must be 1");
+      chunkIndex = -1;
+
+      stts = wrap(sttsAtom);
+      stts.setPosition(Atom.FULL_HEADER_SIZE);
+      remainingTimestampDeltaChanges = stts.readUnsignedIntToInt() - 1;
+      remainingSamplesAtTimestampDelta = stts.readUnsignedIntToInt();
+      timestampDelta = stts.readUnsignedIntToInt();
+
+      if (cttsAtom != null) {
+        ctts = wrap(cttsAtom);
+        ctts.setPosition(Atom.FULL_HEADER_SIZE);
+        remainingTimestampOffsetChanges = ctts.readUnsignedIntToInt();
+      } else {
+        ctts = null;
+      }
+
+      nextSynchronizationSampleIndex = C.INDEX_UNSET;
+      ParsableByteArray stss = null;
+      if (stssAtom != null) {
+        stss = wrap(stssAtom);
+        stss.setPosition(Atom.FULL_HEADER_SIZE);
+        remainingSynchronizationSamples = stss.readUnsignedIntToInt();
+        if (remainingSynchronizationSamples > 0) {
+          nextSynchronizationSampleIndex = stss.readUnsignedIntToInt() - 1;
+        } else {
+          // Ignore empty stss boxes, which causes all samples to be treated as sync samples.
+          stss = null;
+        }
+      }
+      this.stss = stss;
+    }
+
+    /**
+     * Reads the next sample into {@link #sampleOffset}, {@link #sampleSize}, {@link
+     * #sampleTimestamp} and {@link #sampleFlags}.
+     */
+    public void readNextSample() {
+      // Advance to the next chunk if necessary.
+      while (remainingSamplesInChunk == 0) {
+        Assertions.checkState(moveToNextChunk());
+        remainingSamplesInChunk = samplesPerChunk;
+      }
+
+      // Add on the timestamp offset if ctts is present.
+      if (ctts != null) {
+        while (remainingSamplesAtTimestampOffset == 0 && remainingTimestampOffsetChanges > 0) {
+          remainingSamplesAtTimestampOffset = ctts.readUnsignedIntToInt();
+          // Sample offsets are decoded as signed integers. See AtomParsers.parseStbl.
+          timestampOffset = ctts.readInt();
+          remainingTimestampOffsetChanges--;
+        }
+        remainingSamplesAtTimestampOffset--;
+      }
+
+      sampleOffset = offset;
+      sampleSize = readSampleSize(sampleIndex);
+      sampleTimestamp = decodeTime + timestampOffset;
+
+      // All samples are synchronization samples if the stss is not present.
+      sampleFlags = stss == null ? C.BUFFER_FLAG_KEY_FRAME : 0;
+      if (sampleIndex == nextSynchronizationSampleIndex) {
+        sampleFlags = C.BUFFER_FLAG_KEY_FRAME;
+        remainingSynchronizationSamples--;
+        if (remainingSynchronizationSamples > 0) {
+          nextSynchronizationSampleIndex = stss.readUnsignedIntToInt() - 1;
+        }
+      }
+
+      // Add on the duration of this sample.
+      decodeTime += timestampDelta;
+      remainingSamplesAtTimestampDelta--;
+      if (remainingSamplesAtTimestampDelta == 0 && remainingTimestampDeltaChanges > 0) {
+        remainingSamplesAtTimestampDelta = stts.readUnsignedIntToInt();
+        // Sample deltas are decoded as signed integers. See AtomParsers.parseStbl.
+        timestampDelta = stts.readInt();
+        remainingTimestampDeltaChanges--;
+      }
+
+      offset += sampleSize;
+      sampleBytes += sampleSize;
+      remainingSamplesInChunk--;
+      sampleIndex++;
+    }
+
+    /**
+     * Checks the state after reading every sample, in the same way as {@link
+     * AtomParsers#parseStbl}.
+     *
+     * @param trackId The id of the track, for logging.
+     */
+    public void checkEnded(int trackId) {
+      Assertions.checkArgument(remainingSamplesAtTimestampOffset == 0);
+      // Remove trailing ctts entries with 0-valued sample counts.
+      while (remainingTimestampOffsetChanges > 0) {
+        Assertions.checkArgument(ctts.readUnsignedIntToInt() == 0);
+        ctts.readInt(); // Ignore offset.
+        remainingTimestampOffsetChanges--;
+      }
+
+      // If the stbl's child boxes are not consistent the container is malformed, but the stream may
+      // still be playable.
+      if (remainingSynchronizationSamples != 0 || remainingSamplesAtTimestampDelta != 0
+          || remainingSamplesInChunk != 0 || remainingTimestampDeltaChanges != 0) {
+        Log.w(TAG, "Inconsistent stbl box for track " + trackId
+            + ": remainingSynchronizationSamples " + remainingSynchronizationSamples
+            + ", remainingSamplesAtTimestampDelta " + remainingSamplesAtTimestampDelta
+            + ", remainingSamplesInChunk " + remainingSamplesInChunk
+            + ", remainingTimestampDeltaChanges " + remainingTimestampDeltaChanges);
+      }
+    }
+
+    /**
+     * Saves the decoding state before the next sample to a checkpoint.
+     *
+     * @param checkpoints The array of checkpoints.
+     * @param position The position of the checkpoint in {@code checkpoints}.
+     */
+    public void saveCheckpoint(long[] checkpoints, int position) {
+      checkpoints[position++] = chunkIndex;
+      checkpoints[position++] = remainingSamplesInChunk;
+      checkpoints[position++] = offset;
+      checkpoints[position++] = stsc.getPosition();
+      checkpoints[position++] = samplesPerChunk;
+      checkpoints[position++] = nextSamplesPerChunkChangeIndex;
+      checkpoints[position++] = remainingSamplesPerChunkChanges;
+      checkpoints[position++] = stts.getPosition();
+      checkpoints[position++] = remainingTimestampDeltaChanges;
+      checkpoints[position++] = remainingSamplesAtTimestampDelta;
+      checkpoints[position++] = timestampDelta;
+      checkpoints[position++] = decodeTime;
+      checkpoints[position++] = ctts != null ? ctts.getPosition() : 0;
+      checkpoints[position++] = remainingTimestampOffsetChanges;
+      checkpoints[position++] = remainingSamplesAtTimestampOffset;
+      checkpoints[position++] = timestampOffset;
+      checkpoints[position++] = stss != null ? stss.getPosition() : 0;
+      checkpoints[position++] = remainingSynchronizationSamples;
+      checkpoints[position++] = nextSynchronizationSampleIndex;
+      checkpoints[position] = sampleBytes;
+    }
+
+    /**
+     * Restores the decoding state from a checkpoint.
+     *
+     * @param checkpoints The array of checkpoints.
+     * @param position The position of the checkpoint in {@code checkpoints}.
+     * @param sampleIndex The index of the sample that follows the checkpoint.
+     */
+    public void restoreCheckpoint(long[] checkpoints, int position, int sampleIndex) {
+      this.sampleIndex = sampleIndex;
+      chunkIndex = (int) checkpoints[position++];
+      remainingSamplesInChunk = (int) checkpoints[position++];
+      offset = checkpoints[position++];
+      stsc.setPosition((int) checkpoints[position++]);
+      samplesPerChunk = (int) checkpoints[position++];
+      nextSamplesPerChunkChangeIndex = (int) checkpoints[position++];
+      remainingSamplesPerChunkChanges = (int) checkpoints[position++];
+      stts.setPosition((int) checkpoints[position++]);
+      remainingTimestampDeltaChanges = (int) checkpoints[position++];
+      remainingSamplesAtTimestampDelta = (int) checkpoints[position++];
+      timestampDelta = (int) checkpoints[position++];
+      decodeTime = checkpoints[position++];
+      if (ctts != null) {
+        ctts.setPosition((int) checkpoints[position]);
+      }
+      position++;
+      remainingTimestampOffsetChanges = (int) checkpoints[position++];
+      remainingSamplesAtTimestampOffset = (int) checkpoints[position++];
+      timestampOffset = (int) checkpoints[position++];
+      if (stss != null) {
+        stss.setPosition((int) checkpoints[position]);
+      }
+      position++;
+      remainingSynchronizationSamples = (int) checkpoints[position++];
+      nextSynchronizationSampleIndex = (int) checkpoints[position++];
+      sampleBytes = checkpoints[position];
+    }
+
+    private boolean moveToNextChunk() {
+      if (++chunkIndex == chunkCount) {
+        return false;
+      }
+      if (chunkOffsetsAreLongs) {
+        chunkOffsets.setPosition(Atom.FULL_HEADER_SIZE + 4 + 8 * chunkIndex);
+        offset = chunkOffsets.readUnsignedLongToLong();
+      } else {
+        chunkOffsets.setPosition(Atom.FULL_HEADER_SIZE + 4 + 4 * chunkIndex);
+        offset = chunkOffsets.readUnsignedInt();
+      }
+      if (chunkIndex == nextSamplesPerChunkChangeIndex) {
+        samplesPerChunk = stsc.readUnsignedIntToInt();
+        stsc.skipBytes(4); // Skip sample_description_index
+        nextSamplesPerChunkChangeIndex = --remainingSamplesPerChunkChanges > 0
+            ? (stsc.readUnsignedIntToInt() - 1) : C.INDEX_UNSET;
+      }
+      return true;
+    }
+
+    private int readSampleSize(int sampleIndex) {
+      if (fixedSampleSize != 0) {
+        return fixedSampleSize;
+      }
+      // Sample sizes follow the field size (or fixed sample size) and the sample count.
+      int entriesPosition = Atom.FULL_HEADER_SIZE + 8;
+      switch (sampleSizeFieldSize) {
+        case 32:
+          sampleSizes.setPosition(entriesPosition + 4 * sampleIndex);
+          return sampleSizes.readUnsignedIntToInt();
+        case 16:
+          sampleSizes.setPosition(entriesPosition + 2 * sampleIndex);
+          return sampleSizes.readUnsignedShort();
+        case 8:
+          sampleSizes.setPosition(entriesPosition + sampleIndex);
+          return sampleSizes.readUnsignedByte();
+        default:
+          // Each byte holds the sizes of two samples, with the first in the upper four bits.
+          sampleSizes.setPosition(entriesPosition + sampleIndex / 2);
+          int sampleSizeByte = sampleSizes.readUnsignedByte();
+          return sampleIndex % 2 == 0 ? (sampleSizeByte & 0xF0) >> 4 : sampleSizeByte & 0x0F;
+      }
+    }
+
+  }
+
+}
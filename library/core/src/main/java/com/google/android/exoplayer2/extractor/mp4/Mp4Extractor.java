@@ -16,6 +16,7 @@
 package com.google.android.exoplayer2.extractor.mp4;
 
 import android.support.annotation.IntDef;
+import android.support.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.ParserException;
@@ -62,12 +63,19 @@ public final class Mp4Extractor implements Extractor, SeekMap {
    * Flags controlling the behavior of the extractor.
    */
   @Retention(RetentionPolicy.SOURCE)
-  @IntDef(flag = true, value = {FLAG_WORKAROUND_IGNORE_EDIT_LISTS})
+  @IntDef(flag = true, value = {FLAG_WORKAROUND_IGNORE_EDIT_LISTS, FLAG_LAZY_SAMPLE_TABLES})
   public @interface Flags {}
   /**
    * Flag to ignore any edit lists in the stream.
    */
   public static final int FLAG_WORKAROUND_IGNORE_EDIT_LISTS = 1;
+  /**
+   * Flag to keep sample tables in their compact form, decoding sample information from them as it's
+   * needed rather than before the first sample is output. This reduces memory usage and the time
+   * taken to prepare streams with many samples. Sample tables whose edit lists remove samples are
+   * still decoded up front.
+   */
+  public static final int FLAG_LAZY_SAMPLE_TABLES = 2;
 
   /**
    * Parser states.
@@ -116,7 +124,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   // Extractor outputs.
   private ExtractorOutput extractorOutput;
   private Mp4Track[] tracks;
-  private long[][] accumulatedSampleSizes;
+  private @Nullable long[][] accumulatedSampleSizes;
   private int firstVideoTrackIndex;
   private long durationUs;
   private boolean isQuickTime;
@@ -220,19 +228,19 @@ public final class Mp4Extractor implements Extractor, SeekMap {
 
     // If we have a video track, use it to establish one or two seek points.
     if (firstVideoTrackIndex != C.INDEX_UNSET) {
-      TrackSampleTable sampleTable = tracks[firstVideoTrackIndex].sampleTable;
+      SampleTable sampleTable = tracks[firstVideoTrackIndex].sampleTable;
       int sampleIndex = getSynchronizationSampleIndex(sampleTable, timeUs);
       if (sampleIndex == C.INDEX_UNSET) {
         return new SeekPoints(SeekPoint.START);
       }
-      long sampleTimeUs = sampleTable.timestampsUs[sampleIndex];
+      long sampleTimeUs = sampleTable.getTimestampUs(sampleIndex);
       firstTimeUs = sampleTimeUs;
-      firstOffset = sampleTable.offsets[sampleIndex];
-      if (sampleTimeUs < timeUs && sampleIndex < sampleTable.sampleCount - 1) {
+      firstOffset = sampleTable.getOffset(sampleIndex);
+      if (sampleTimeUs < timeUs && sampleIndex < sampleTable.getSampleCount() - 1) {
         int secondSampleIndex = sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs);
         if (secondSampleIndex != C.INDEX_UNSET && secondSampleIndex != sampleIndex) {
-          secondTimeUs = sampleTable.timestampsUs[secondSampleIndex];
-          secondOffset = sampleTable.offsets[secondSampleIndex];
+          secondTimeUs = sampleTable.getTimestampUs(secondSampleIndex);
+          secondOffset = sampleTable.getOffset(secondSampleIndex);
         }
       }
     } else {
@@ -243,7 +251,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     // Take into account other tracks.
     for (int i = 0; i < tracks.length; i++) {
       if (i != firstVideoTrackIndex) {
-        TrackSampleTable sampleTable = tracks[i].sampleTable;
+        SampleTable sampleTable = tracks[i].sampleTable;
         firstOffset = maybeAdjustSeekOffset(sampleTable, firstTimeUs, firstOffset);
         if (secondTimeUs != C.TIME_UNSET) {
           secondOffset = maybeAdjustSeekOffset(sampleTable, secondTimeUs, secondOffset);
@@ -405,16 +413,22 @@ public final class Mp4Extractor implements Extractor, SeekMap {
 
       Atom.ContainerAtom stblAtom = atom.getContainerAtomOfType(Atom.TYPE_mdia)
           .getContainerAtomOfType(Atom.TYPE_minf).getContainerAtomOfType(Atom.TYPE_stbl);
-      TrackSampleTable trackSampleTable = AtomParsers.parseStbl(track, stblAtom, gaplessInfoHolder);
-      if (trackSampleTable.sampleCount == 0) {
+      SampleTable sampleTable =
+          (flags & FLAG_LAZY_SAMPLE_TABLES) != 0
+              ? AtomParsers.parseStblLazily(
+                  track,
+                  stblAtom,
+                  gaplessInfoHolder,
+                  LazyTrackSampleTable.DEFAULT_SAMPLES_PER_WINDOW)
+              : AtomParsers.parseStbl(track, stblAtom, gaplessInfoHolder);
+      if (sampleTable.getSampleCount() == 0) {
         continue;
       }
 
-      Mp4Track mp4Track = new Mp4Track(track, trackSampleTable,
-          extractorOutput.track(i, track.type));
+      Mp4Track mp4Track = new Mp4Track(track, sampleTable, extractorOutput.track(i, track.type));
       // Each sample has up to three bytes of overhead for the start code that replaces its length.
       // Allow ten source samples per output sample, like the platform extractor.
-      int maxInputSize = trackSampleTable.maximumSize + 3 * 10;
+      int maxInputSize = sampleTable.getMaximumSize() + 3 * 10;
       Format format = track.format.copyWithMaxInputSize(maxInputSize);
       if (track.type == C.TRACK_TYPE_AUDIO) {
         if (gaplessInfoHolder.hasGaplessInfo()) {
@@ -430,7 +444,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       durationUs =
           Math.max(
               durationUs,
-              track.durationUs != C.TIME_UNSET ? track.durationUs : trackSampleTable.durationUs);
+              track.durationUs != C.TIME_UNSET ? track.durationUs : sampleTable.getDurationUs());
       if (track.type == C.TRACK_TYPE_VIDEO && firstVideoTrackIndex == C.INDEX_UNSET) {
         firstVideoTrackIndex = tracks.size();
       }
@@ -439,7 +453,12 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     this.firstVideoTrackIndex = firstVideoTrackIndex;
     this.durationUs = durationUs;
     this.tracks = tracks.toArray(new Mp4Track[tracks.size()]);
-    accumulatedSampleSizes = calculateAccumulatedSampleSizes(this.tracks);
+    // Accumulating sample sizes requires every sample of every track to be decoded, so it's skipped
+    // if sample tables are decoded lazily.
+    accumulatedSampleSizes =
+        (flags & FLAG_LAZY_SAMPLE_TABLES) != 0
+            ? null
+            : calculateAccumulatedSampleSizes(this.tracks);
 
     extractorOutput.endTracks();
     extractorOutput.seekMap(this);
@@ -473,8 +492,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     Mp4Track track = tracks[sampleTrackIndex];
     TrackOutput trackOutput = track.trackOutput;
     int sampleIndex = track.sampleIndex;
-    long position = track.sampleTable.offsets[sampleIndex];
-    int sampleSize = track.sampleTable.sizes[sampleIndex];
+    long position = track.sampleTable.getOffset(sampleIndex);
+    int sampleSize = track.sampleTable.getSize(sampleIndex);
     long skipAmount = position - inputPosition + sampleBytesWritten;
     if (skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE) {
       positionHolder.position = position;
@@ -524,8 +543,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         sampleCurrentNalBytesRemaining -= writtenBytes;
       }
     }
-    trackOutput.sampleMetadata(track.sampleTable.timestampsUs[sampleIndex],
-        track.sampleTable.flags[sampleIndex], sampleSize, 0, null);
+    trackOutput.sampleMetadata(track.sampleTable.getTimestampUs(sampleIndex),
+        track.sampleTable.getFlags(sampleIndex), sampleSize, 0, null);
     track.sampleIndex++;
     sampleTrackIndex = C.INDEX_UNSET;
     sampleBytesWritten = 0;
@@ -545,6 +564,10 @@ public final class Mp4Extractor implements Extractor, SeekMap {
    * with the next logical sample (based on sample time) exceeds {@link
    * #MAXIMUM_READ_AHEAD_BYTES_STREAM}. If this is the case, we continue with this sample even
    * though it may require a source reload.
+   *
+   * <p>If sample tables are decoded lazily, the next logical sample is the one with the smallest
+   * timestamp, and the memory required to catch up with it is the total size of the samples that
+   * precede the preferred sample in time.
    */
   private int getTrackIndexOfNextReadSample(long inputPosition) {
     long preferredSkipAmount = Long.MAX_VALUE;
@@ -557,11 +580,15 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     for (int trackIndex = 0; trackIndex < tracks.length; trackIndex++) {
       Mp4Track track = tracks[trackIndex];
       int sampleIndex = track.sampleIndex;
-      if (sampleIndex == track.sampleTable.sampleCount) {
+      if (sampleIndex == track.sampleTable.getSampleCount()) {
         continue;
       }
-      long sampleOffset = track.sampleTable.offsets[sampleIndex];
-      long sampleAccumulatedBytes = accumulatedSampleSizes[trackIndex][sampleIndex];
+      long sampleOffset = track.sampleTable.getOffset(sampleIndex);
+      // If sample tables are decoded lazily, samples are ordered by timestamp instead.
+      long sampleAccumulatedBytes =
+          accumulatedSampleSizes != null
+              ? accumulatedSampleSizes[trackIndex][sampleIndex]
+              : track.sampleTable.getTimestampUs(sampleIndex);
       long skipAmount = sampleOffset - inputPosition;
       boolean requiresReload = skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE;
       if ((!requiresReload && preferredRequiresReload)
@@ -577,19 +604,39 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         minAccumulatedBytesTrackIndex = trackIndex;
       }
     }
-    return minAccumulatedBytes == Long.MAX_VALUE
-            || !minAccumulatedBytesRequiresReload
-            || preferredAccumulatedBytes < minAccumulatedBytes + MAXIMUM_READ_AHEAD_BYTES_STREAM
+    if (minAccumulatedBytes == Long.MAX_VALUE || !minAccumulatedBytesRequiresReload) {
+      return preferredTrackIndex;
+    }
+    long readAheadBytes =
+        accumulatedSampleSizes != null
+            ? preferredAccumulatedBytes - minAccumulatedBytes
+            : getSampleBytesBeforeTime(preferredTrackIndex, preferredAccumulatedBytes);
+    return readAheadBytes < MAXIMUM_READ_AHEAD_BYTES_STREAM
         ? preferredTrackIndex
         : minAccumulatedBytesTrackIndex;
   }
 
+  /**
+   * Returns the total size of the unread samples of every track other than {@code trackIndex} whose
+   * timestamps are before {@code timeUs}.
+   */
+  private long getSampleBytesBeforeTime(int trackIndex, long timeUs) {
+    long sampleBytes = 0;
+    for (int i = 0; i < tracks.length; i++) {
+      Mp4Track track = tracks[i];
+      if (i != trackIndex && track.sampleIndex < track.sampleTable.getSampleCount()) {
+        sampleBytes += track.sampleTable.getSampleBytesBeforeTime(track.sampleIndex, timeUs);
+      }
+    }
+    return sampleBytes;
+  }
+
   /**
    * Updates every track's sample index to point its latest sync sample before/at {@code timeUs}.
    */
   private void updateSampleIndices(long timeUs) {
     for (Mp4Track track : tracks) {
-      TrackSampleTable sampleTable = track.sampleTable;
+      SampleTable sampleTable = track.sampleTable;
       int sampleIndex = sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(timeUs);
       if (sampleIndex == C.INDEX_UNSET) {
         // Handle the case where the requested time is before the first synchronization sample.
@@ -609,8 +656,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     long[] nextSampleTimesUs = new long[tracks.length];
     boolean[] tracksFinished = new boolean[tracks.length];
     for (int i = 0; i < tracks.length; i++) {
-      accumulatedSampleSizes[i] = new long[tracks[i].sampleTable.sampleCount];
-      nextSampleTimesUs[i] = tracks[i].sampleTable.timestampsUs[0];
+      accumulatedSampleSizes[i] = new long[tracks[i].sampleTable.getSampleCount()];
+      nextSampleTimesUs[i] = tracks[i].sampleTable.getTimestampUs(0);
     }
     long accumulatedSampleSize = 0;
     int finishedTracks = 0;
@@ -625,11 +672,11 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
       int trackSampleIndex = nextSampleIndex[minTimeTrackIndex];
       accumulatedSampleSizes[minTimeTrackIndex][trackSampleIndex] = accumulatedSampleSize;
-      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.sizes[trackSampleIndex];
+      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.getSize(trackSampleIndex);
       nextSampleIndex[minTimeTrackIndex] = ++trackSampleIndex;
       if (trackSampleIndex < accumulatedSampleSizes[minTimeTrackIndex].length) {
         nextSampleTimesUs[minTimeTrackIndex] =
-            tracks[minTimeTrackIndex].sampleTable.timestampsUs[trackSampleIndex];
+            tracks[minTimeTrackIndex].sampleTable.getTimestampUs(trackSampleIndex);
       } else {
         tracksFinished[minTimeTrackIndex] = true;
         finishedTracks++;
@@ -648,12 +695,12 @@ public final class Mp4Extractor implements Extractor, SeekMap {
    * @return The adjusted offset.
    */
   private static long maybeAdjustSeekOffset(
-      TrackSampleTable sampleTable, long seekTimeUs, long offset) {
+      SampleTable sampleTable, long seekTimeUs, long offset) {
     int sampleIndex = getSynchronizationSampleIndex(sampleTable, seekTimeUs);
     if (sampleIndex == C.INDEX_UNSET) {
       return offset;
     }
-    long sampleOffset = sampleTable.offsets[sampleIndex];
+    long sampleOffset = sampleTable.getOffset(sampleIndex);
     return Math.min(sampleOffset, offset);
   }
 
@@ -668,7 +715,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
    *     the first synchronization sample if located after {@code timeUs}, or {@link C#INDEX_UNSET}
    *     if there are no synchronization samples in the table.
    */
-  private static int getSynchronizationSampleIndex(TrackSampleTable sampleTable, long timeUs) {
+  private static int getSynchronizationSampleIndex(SampleTable sampleTable, long timeUs) {
     int sampleIndex = sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(timeUs);
     if (sampleIndex == C.INDEX_UNSET) {
       // Handle the case where the requested time is before the first synchronization sample.
@@ -721,12 +768,12 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   private static final class Mp4Track {
 
     public final Track track;
-    public final TrackSampleTable sampleTable;
+    public final SampleTable sampleTable;
     public final TrackOutput trackOutput;
 
     public int sampleIndex;
 
-    public Mp4Track(Track track, TrackSampleTable sampleTable, TrackOutput trackOutput) {
+    public Mp4Track(Track track, SampleTable sampleTable, TrackOutput trackOutput) {
       this.track = track;
       this.sampleTable = sampleTable;
       this.trackOutput = trackOutput;
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import com.google.android.exoplayer2.C;
+
+/**
+ * Sample information for a track in an MP4 file, indexed by sample.
+ */
+/* package */ interface SampleTable {
+
+  /**
+   * Returns the number of samples.
+   */
+  int getSampleCount();
+
+  /**
+   * Returns the maximum sample size in bytes.
+   */
+  int getMaximumSize();
+
+  /**
+   * Returns the duration of the sample table in microseconds, or {@link C#TIME_UNSET} if the sample
+   * table is empty.
+   */
+  long getDurationUs();
+
+  /**
+   * Returns the offset of a sample in bytes.
+   *
+   * @param index The index of the sample.
+   */
+  long getOffset(int index);
+
+  /**
+   * Returns the size of a sample in bytes.
+   *
+   * @param index The index of the sample.
+   */
+  int getSize(int index);
+
+  /**
+   * Returns the timestamp of a sample in microseconds.
+   *
+   * @param index The index of the sample.
+   */
+  long getTimestampUs(int index);
+
+  /**
+   * Returns the {@link C}{@code .BUFFER_FLAG_*} flags of a sample.
+   *
+   * @param index The index of the sample.
+   */
+  int getFlags(int index);
+
+  /**
+   * Returns the total size in bytes of the samples from {@code fromIndex}, up to but excluding the
+   * first of them whose timestamp is at or after {@code timeUs}.
+   *
+   * @param fromIndex The index of the first sample to include.
+   * @param timeUs The time in microseconds at which to stop.
+   * @return The total size of the samples in bytes.
+   */
+  long getSampleBytesBeforeTime(int fromIndex, long timeUs);
+
+  /**
+   * Returns the sample index of the closest synchronization sample at or before the given
+   * timestamp, if one is available.
+   *
+   * @param timeUs Timestamp adjacent to which to find a synchronization sample.
+   * @return Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
+   */
+  int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs);
+
+  /**
+   * Returns the sample index of the closest synchronization sample at or after the given timestamp,
+   * if one is available.
+   *
+   * @param timeUs Timestamp adjacent to which to find a synchronization sample.
+   * @return index Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
+   */
+  int getIndexOfLaterOrEqualSynchronizationSample(long timeUs);
+
+}
@@ -22,7 +22,7 @@ import com.google.android.exoplayer2.util.Util;
 /**
  * Sample table for a track in an MP4 file.
  */
-/* package */ final class TrackSampleTable {
+/* package */ final class TrackSampleTable implements SampleTable {
 
   /**
    * Number of samples.
@@ -74,13 +74,51 @@ import com.google.android.exoplayer2.util.Util;
     sampleCount = offsets.length;
   }
 
-  /**
-   * Returns the sample index of the closest synchronization sample at or before the given
-   * timestamp, if one is available.
-   *
-   * @param timeUs Timestamp adjacent to which to find a synchronization sample.
-   * @return Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
-   */
+  @Override
+  public int getSampleCount() {
+    return sampleCount;
+  }
+
+  @Override
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  @Override
+  public long getDurationUs() {
+    return durationUs;
+  }
+
+  @Override
+  public long getOffset(int index) {
+    return offsets[index];
+  }
+
+  @Override
+  public int getSize(int index) {
+    return sizes[index];
+  }
+
+  @Override
+  public long getTimestampUs(int index) {
+    return timestampsUs[index];
+  }
+
+  @Override
+  public int getFlags(int index) {
+    return flags[index];
+  }
+
+  @Override
+  public long getSampleBytesBeforeTime(int fromIndex, long timeUs) {
+    long sampleBytes = 0;
+    for (int i = fromIndex; i < sampleCount && timestampsUs[i] < timeUs; i++) {
+      sampleBytes += sizes[i];
+    }
+    return sampleBytes;
+  }
+
+  @Override
   public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
     // Video frame timestamps may not be sorted, so the behavior of this call can be undefined.
     // Frames are not reordered past synchronization samples so this works in practice.
@@ -93,13 +131,7 @@ import com.google.android.exoplayer2.util.Util;
     return C.INDEX_UNSET;
   }
 
-  /**
-   * Returns the sample index of the closest synchronization sample at or after the given timestamp,
-   * if one is available.
-   *
-   * @param timeUs Timestamp adjacent to which to find a synchronization sample.
-   * @return index Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
-   */
+  @Override
   public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
     int startIndex = Util.binarySearchCeil(timestampsUs, timeUs, true, false);
     for (int i = startIndex; i < timestampsUs.length; i++) {
@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.ts;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.extractor.SeekPoint;
+import com.google.android.exoplayer2.util.TimestampAdjuster;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+
+/**
+ * Seeks in MPEG-2 transport and program streams that don't have an index, by binary searching the
+ * stream for the clock references (PCR or SCR) that it carries.
+ *
+ * <p>The duration of the stream is determined from the first and the last clock reference, which
+ * are read from the start and the end of the stream before playback starts. Seek targets are then
+ * located by reading the clock references in a window of data at successively refined positions,
+ * until the unit carrying the last clock reference before the target is found.
+ */
+/* package */ final class BinarySearchSeeker {
+
+  /** Finds and reads the clock references in stream data. */
+  public interface ClockReferenceReader {
+
+    /**
+     * Returns the offset of the first unit at or after {@code offset} that carries a clock
+     * reference, or {@link C#INDEX_UNSET} if there's no such unit before {@code limit}.
+     *
+     * @param data The data to search.
+     * @param offset The offset in {@code data} at which to start searching.
+     * @param limit The limit of the valid data in {@code data}.
+     * @return The offset of the unit, or {@link C#INDEX_UNSET}.
+     */
+    int findClockReference(byte[] data, int offset, int limit);
+
+    /**
+     * Returns the 33-bit 90 kHz clock reference carried by the unit at a given offset, as found by
+     * {@link #findClockReference(byte[], int, int)}.
+     *
+     * @param data The data containing the unit.
+     * @param offset The offset of the unit in {@code data}.
+     * @return The clock reference.
+     */
+    long readClockReference(byte[] data, int offset);
+  }
+
+  /**
+   * When seeking within the source, if the offset is smaller than or equal to this value, the seek
+   * operation will be performed using a skip operation. Otherwise, the source will be reloaded at
+   * the new seek position.
+   */
+  private static final long MAX_SKIP_BYTES = 256 * 1024;
+
+  /** The value one greater than the largest representable (33 bit) clock reference. */
+  private static final long MAX_CLOCK_REFERENCE_PLUS_ONE = 0x200000000L;
+
+  /**
+   * The maximum distance between a seek target and the clock reference at which a seek completes,
+   * in 90 kHz units.
+   */
+  private static final long SEEK_TOLERANCE = 9000;
+
+  private final ClockReferenceReader clockReferenceReader;
+  private final int searchBytes;
+  private final long startPosition;
+  private final long inputLength;
+  private final byte[] searchBuffer;
+
+  private long firstClockReference;
+  private long durationClockReference;
+  private boolean durationRead;
+
+  private boolean seekPending;
+  private long targetClockReference;
+  private long floorPosition;
+  private long floorClockReference;
+  private long ceilingPosition;
+  private long ceilingClockReference;
+  private long nextSearchPosition;
+
+  /**
+   * @param clockReferenceReader Finds and reads the clock references in the stream.
+   * @param searchBytes The number of bytes to read at each search position. Must be large enough
+   *     to contain at least one clock reference.
+   * @param startPosition The position of the start of the stream.
+   * @param inputLength The length of the stream.
+   */
+  public BinarySearchSeeker(
+      ClockReferenceReader clockReferenceReader,
+      int searchBytes,
+      long startPosition,
+      long inputLength) {
+    this.clockReferenceReader = clockReferenceReader;
+    this.searchBytes = searchBytes;
+    this.startPosition = startPosition;
+    this.inputLength = inputLength;
+    searchBuffer = new byte[searchBytes];
+    firstClockReference = C.TIME_UNSET;
+    durationClockReference = C.TIME_UNSET;
+  }
+
+  /** Returns whether {@link #readDuration(ExtractorInput, PositionHolder)} has completed. */
+  public boolean isDurationRead() {
+    return durationRead;
+  }
+
+  /**
+   * Continues to read the duration of the stream, from the first and the last clock reference it
+   * contains. Returns one of the {@code RESULT_} values from {@link Extractor}. When the duration
+   * has been read, the input is returned to the start position of the stream.
+   *
+   * @param input The {@link ExtractorInput} from which data should be read.
+   * @param seekPositionHolder If {@link Extractor#RESULT_SEEK} is returned, this holder is updated
+   *     to hold the position of the required seek.
+   * @return One of the {@code RESULT_} values defined in {@link Extractor}.
+   * @throws IOException If an error occurred reading from the input.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  public int readDuration(ExtractorInput input, PositionHolder seekPositionHolder)
+      throws IOException, InterruptedException {
+    if (firstClockReference == C.TIME_UNSET) {
+      if (input.getPosition() != startPosition) {
+        return seekToPosition(input, startPosition, seekPositionHolder);
+      }
+      int limit = peekSearchWindow(input);
+      int offset = clockReferenceReader.findClockReference(searchBuffer, 0, limit);
+      if (offset == C.INDEX_UNSET) {
+        // The stream doesn't carry clock references near its start, so it can't be seeked.
+        durationRead = true;
+        return Extractor.RESULT_CONTINUE;
+      }
+      firstClockReference = clockReferenceReader.readClockReference(searchBuffer, offset);
+    }
+    if (durationClockReference == C.TIME_UNSET) {
+      long searchPosition = Math.max(startPosition, inputLength - searchBytes);
+      if (!skipInputUntilPosition(input, searchPosition)) {
+        return seekToPosition(input, searchPosition, seekPositionHolder);
+      }
+      int limit = peekSearchWindow(input);
+      long lastClockReference = C.TIME_UNSET;
+      int offset = clockReferenceReader.findClockReference(searchBuffer, 0, limit);
+      while (offset != C.INDEX_UNSET) {
+        lastClockReference = clockReferenceReader.readClockReference(searchBuffer, offset);
+        offset = clockReferenceReader.findClockReference(searchBuffer, offset + 1, limit);
+      }
+      durationClockReference =
+          lastClockReference == C.TIME_UNSET ? 0 : getRelativeClockReference(lastClockReference);
+    }
+    if (input.getPosition() != startPosition) {
+      return seekToPosition(input, startPosition, seekPositionHolder);
+    }
+    durationRead = true;
+    return Extractor.RESULT_CONTINUE;
+  }
+
+  /**
+   * Returns the {@link SeekMap} of the stream. Must only be called once {@link
+   * #isDurationRead()} returns true. The seek map is unseekable if the duration of the stream
+   * couldn't be determined.
+   */
+  public SeekMap getSeekMap() {
+    if (!isSeekable()) {
+      return new SeekMap.Unseekable(C.TIME_UNSET);
+    }
+    return new BinarySearchSeekMap(
+        startPosition, inputLength, TimestampAdjuster.ptsToUs(durationClockReference));
+  }
+
+  /**
+   * Returns whether the stream can be seeked, meaning that the seek map returned by {@link
+   * #getSeekMap()} is seekable.
+   */
+  public boolean isSeekable() {
+    return durationRead && durationClockReference != C.TIME_UNSET && durationClockReference != 0;
+  }
+
+  /**
+   * Sets the target time in microseconds within the stream to seek to. Must only be called if
+   * {@link #isSeekable()} returns true.
+   *
+   * @param timeUs The seek target, relative to the first clock reference in the stream.
+   */
+  public void setSeekTargetUs(long timeUs) {
+    if (timeUs == 0) {
+      // The stream will be read from its start, which requires no search.
+      seekPending = false;
+      return;
+    }
+    seekPending = true;
+    targetClockReference =
+        Util.constrainValue(TimestampAdjuster.usToPts(timeUs), 0, durationClockReference);
+    floorPosition = startPosition;
+    floorClockReference = 0;
+    ceilingPosition = inputLength;
+    ceilingClockReference = durationClockReference;
+    updateNextSearchPosition(/* minPosition= */ startPosition);
+  }
+
+  /** Returns whether the last operation set by {@link #setSeekTargetUs(long)} is still pending. */
+  public boolean hasPendingSeek() {
+    return seekPending;
+  }
+
+  /**
+   * Continues to handle the pending seek operation. Returns one of the {@code RESULT_} values from
+   * {@link Extractor}. When the seek completes, the input is positioned at the start of the unit
+   * that carries the last clock reference before the seek target.
+   *
+   * @param input The {@link ExtractorInput} from which data should be read.
+   * @param seekPositionHolder If {@link Extractor#RESULT_SEEK} is returned, this holder is updated
+   *     to hold the position of the required seek.
+   * @return One of the {@code RESULT_} values defined in {@link Extractor}.
+   * @throws IOException If an error occurred reading from the input.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  public int handlePendingSeek(ExtractorInput input, PositionHolder seekPositionHolder)
+      throws IOException, InterruptedException {
+    while (true) {
+      if (ceilingPosition - floorPosition <= searchBytes) {
+        // The remaining range fits in a single search window, so reading can continue from the
+        // floor position.
+        return finishSeek(input, floorPosition, seekPositionHolder);
+      }
+      long searchPosition = nextSearchPosition;
+      if (!skipInputUntilPosition(input, searchPosition)) {
+        return seekToPosition(input, searchPosition, seekPositionHolder);
+      }
+      int limit = peekSearchWindow(input);
+      int offset = clockReferenceReader.findClockReference(searchBuffer, 0, limit);
+      if (offset == C.INDEX_UNSET) {
+        updateSeekCeiling(searchPosition, ceilingClockReference);
+        continue;
+      }
+      long clockReference =
+          getRelativeClockReference(clockReferenceReader.readClockReference(searchBuffer, offset));
+      if (clockReference > targetClockReference) {
+        updateSeekCeiling(searchPosition + offset, clockReference);
+        continue;
+      }
+      // Find the last clock reference before the target in the window.
+      int nextOffset = clockReferenceReader.findClockReference(searchBuffer, offset + 1, limit);
+      boolean foundLaterClockReference = false;
+      while (nextOffset != C.INDEX_UNSET) {
+        long nextClockReference =
+            getRelativeClockReference(
+                clockReferenceReader.readClockReference(searchBuffer, nextOffset));
+        if (nextClockReference > targetClockReference) {
+          foundLaterClockReference = true;
+          break;
+        }
+        offset = nextOffset;
+        clockReference = nextClockReference;
+        nextOffset = clockReferenceReader.findClockReference(searchBuffer, offset + 1, limit);
+      }
+      long unitPosition = searchPosition + offset;
+      if (foundLaterClockReference || targetClockReference - clockReference <= SEEK_TOLERANCE) {
+        return finishSeek(input, unitPosition, seekPositionHolder);
+      }
+      floorPosition = unitPosition;
+      floorClockReference = clockReference;
+      updateNextSearchPosition(/* minPosition= */ searchPosition + limit);
+    }
+  }
+
+  // Internal methods.
+
+  private void updateSeekCeiling(long ceilingPosition, long ceilingClockReference) {
+    this.ceilingPosition = ceilingPosition;
+    this.ceilingClockReference = ceilingClockReference;
+    updateNextSearchPosition(/* minPosition= */ floorPosition);
+  }
+
+  private void updateNextSearchPosition(long minPosition) {
+    long estimatedPosition = floorPosition;
+    long clockReferenceRange = ceilingClockReference - floorClockReference;
+    if (clockReferenceRange > 0) {
+      estimatedPosition +=
+          Util.scaleLargeTimestamp(
+              targetClockReference - floorClockReference,
+              ceilingPosition - floorPosition,
+              clockReferenceRange);
+    }
+    // Under-estimate the position, so that the window read at it is likely to contain the target.
+    // Skipping forward from there is cheaper than seeking back.
+    estimatedPosition -= searchBytes / 2;
+    nextSearchPosition =
+        Util.constrainValue(
+            estimatedPosition,
+            Math.min(minPosition, ceilingPosition - searchBytes),
+            ceilingPosition - searchBytes);
+  }
+
+  private int finishSeek(ExtractorInput input, long position, PositionHolder seekPositionHolder)
+      throws IOException, InterruptedException {
+    seekPending = false;
+    input.resetPeekPosition();
+    if (!skipInputUntilPosition(input, position)) {
+      return seekToPosition(input, position, seekPositionHolder);
+    }
+    return Extractor.RESULT_CONTINUE;
+  }
+
+  private int peekSearchWindow(ExtractorInput input) throws IOException, InterruptedException {
+    int limit = (int) Math.min(searchBytes, inputLength - input.getPosition());
+    input.resetPeekPosition();
+    input.peekFully(searchBuffer, 0, limit);
+    input.resetPeekPosition();
+    return limit;
+  }
+
+  private long getRelativeClockReference(long clockReference) {
+    return (clockReference - firstClockReference + MAX_CLOCK_REFERENCE_PLUS_ONE)
+        % MAX_CLOCK_REFERENCE_PLUS_ONE;
+  }
+
+  private static boolean skipInputUntilPosition(ExtractorInput input, long position)
+      throws IOException, InterruptedException {
+    long bytesToSkip = position - input.getPosition();
+    if (bytesToSkip >= 0 && bytesToSkip <= MAX_SKIP_BYTES) {
+      input.skipFully((int) bytesToSkip);
+      return true;
+    }
+    return false;
+  }
+
+  private static int seekToPosition(
+      ExtractorInput input, long position, PositionHolder seekPositionHolder) {
+    if (position == input.getPosition()) {
+      return Extractor.RESULT_CONTINUE;
+    } else {
+      seekPositionHolder.position = position;
+      return Extractor.RESULT_SEEK;
+    }
+  }
+
+  /**
+   * A {@link SeekMap} that interpolates seek positions from the duration of the stream. The
+   * positions are only starting points: the seek target is located by {@link
+   * BinarySearchSeeker#handlePendingSeek(ExtractorInput, PositionHolder)}.
+   */
+  private static final class BinarySearchSeekMap implements SeekMap {
+
+    private final long startPosition;
+    private final long inputLength;
+    private final long durationUs;
+
+    public BinarySearchSeekMap(long startPosition, long inputLength, long durationUs) {
+      this.startPosition = startPosition;
+      this.inputLength = inputLength;
+      this.durationUs = durationUs;
+    }
+
+    @Override
+    public boolean isSeekable() {
+      return true;
+    }
+
+    @Override
+    public SeekPoints getSeekPoints(long timeUs) {
+      timeUs = Util.constrainValue(timeUs, 0, durationUs);
+      long position =
+          startPosition
+              + Util.scaleLargeTimestamp(timeUs, inputLength - startPosition, durationUs);
+      return new SeekPoints(new SeekPoint(timeUs, Math.min(position, inputLength - 1)));
+    }
+
+    @Override
+    public long getDurationUs() {
+      return durationUs;
+    }
+  }
+}
@@ -53,6 +53,7 @@ public final class PsExtractor implements Extractor {
   private static final int MPEG_PROGRAM_END_CODE = 0x000001B9;
   private static final int MAX_STREAM_ID_PLUS_ONE = 0x100;
   private static final long MAX_SEARCH_LENGTH = 1024 * 1024;
+  private static final int TIMESTAMP_SEARCH_BYTES = 20000;
 
   public static final int PRIVATE_STREAM_1 = 0xBD;
   public static final int AUDIO_STREAM = 0xC0;
@@ -66,6 +67,8 @@ public final class PsExtractor implements Extractor {
   private boolean foundAllTracks;
   private boolean foundAudioTrack;
   private boolean foundVideoTrack;
+  private boolean seekMapOutput;
+  private BinarySearchSeeker binarySearchSeeker;
 
   // Accessed only by the loading thread.
   private ExtractorOutput output;
@@ -124,12 +127,17 @@ public final class PsExtractor implements Extractor {
   @Override
   public void init(ExtractorOutput output) {
     this.output = output;
-    output.seekMap(new SeekMap.Unseekable(C.TIME_UNSET));
   }
 
   @Override
   public void seek(long position, long timeUs) {
-    timestampAdjuster.reset();
+    if (binarySearchSeeker != null && binarySearchSeeker.isSeekable()) {
+      // The timestamp adjuster is kept, so that sample timestamps remain relative to the start of
+      // the stream.
+      binarySearchSeeker.setSeekTargetUs(timeUs);
+    } else {
+      timestampAdjuster.reset();
+    }
     for (int i = 0; i < psPayloadReaders.size(); i++) {
       psPayloadReaders.valueAt(i).seek();
     }
@@ -143,6 +151,29 @@ public final class PsExtractor implements Extractor {
   @Override
   public int read(ExtractorInput input, PositionHolder seekPosition)
       throws IOException, InterruptedException {
+    if (!seekMapOutput) {
+      long inputLength = input.getLength();
+      if (inputLength == C.LENGTH_UNSET) {
+        output.seekMap(new SeekMap.Unseekable(C.TIME_UNSET));
+        seekMapOutput = true;
+      } else {
+        if (binarySearchSeeker == null) {
+          binarySearchSeeker =
+              new BinarySearchSeeker(
+                  new ScrReader(), TIMESTAMP_SEARCH_BYTES, input.getPosition(), inputLength);
+        }
+        int result = binarySearchSeeker.readDuration(input, seekPosition);
+        if (result != RESULT_CONTINUE || !binarySearchSeeker.isDurationRead()) {
+          return result;
+        }
+        output.seekMap(binarySearchSeeker.getSeekMap());
+        seekMapOutput = true;
+      }
+    }
+    if (binarySearchSeeker != null && binarySearchSeeker.hasPendingSeek()) {
+      return binarySearchSeeker.handlePendingSeek(input, seekPosition);
+    }
+
     // First peek and check what type of start code is next.
     if (!input.peekFully(psPacketBuffer.data, 0, 4, true)) {
       return RESULT_END_OF_INPUT;
@@ -237,6 +268,46 @@ public final class PsExtractor implements Extractor {
 
   // Internals.
 
+  /**
+   * Finds the system clock references in the pack headers of a program stream, for seeking.
+   */
+  private static final class ScrReader implements BinarySearchSeeker.ClockReferenceReader {
+
+    private static final int PACK_HEADER_SIZE = 14;
+
+    @Override
+    public int findClockReference(byte[] data, int offset, int limit) {
+      for (int i = offset; i + PACK_HEADER_SIZE <= limit; i++) {
+        if (data[i] == 0
+            && data[i + 1] == 0
+            && data[i + 2] == 1
+            && (data[i + 3] & 0xFF) == (PACK_START_CODE & 0xFF)
+            && (data[i + 4] & 0xC4) == 0x44
+            && (data[i + 6] & 0x04) == 0x04
+            && (data[i + 8] & 0x04) == 0x04
+            && (data[i + 9] & 0x01) == 0x01) {
+          return i;
+        }
+      }
+      return C.INDEX_UNSET;
+    }
+
+    @Override
+    public long readClockReference(byte[] data, int offset) {
+      // Read the 33-bit system_clock_reference_base, skipping the marker bits and ignoring the
+      // extension.
+      long byte4 = data[offset + 4] & 0xFF;
+      long byte6 = data[offset + 6] & 0xFF;
+      return ((byte4 & 0x38) << 27)
+          | ((byte4 & 0x03) << 28)
+          | ((data[offset + 5] & 0xFFL) << 20)
+          | ((byte6 & 0xF8) << 12)
+          | ((byte6 & 0x03) << 13)
+          | ((data[offset + 7] & 0xFFL) << 5)
+          | ((data[offset + 8] & 0xFFL) >> 3);
+    }
+  }
+
   /**
    * Parses PES packet data and extracts samples.
    */
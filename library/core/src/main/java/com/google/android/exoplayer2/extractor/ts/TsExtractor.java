@@ -107,15 +107,16 @@ public final class TsExtractor implements Extractor {
   private static final long E_AC3_FORMAT_IDENTIFIER = Util.getIntegerCodeForString("EAC3");
   private static final long HEVC_FORMAT_IDENTIFIER = Util.getIntegerCodeForString("HEVC");
 
-  private static final int BUFFER_SIZE = TS_PACKET_SIZE * 50;
+  private static final int BUFFER_SIZE = TS_PACKET_SIZE * 200;
   private static final int SNIFF_TS_PACKET_COUNT = 5;
+  private static final int TIMESTAMP_SEARCH_BYTES = TS_PACKET_SIZE * 600;
 
   @Mode private final int mode;
   private final List<TimestampAdjuster> timestampAdjusters;
   private final ParsableByteArray tsPacketBuffer;
-  private final SparseIntArray continuityCounters;
+  private final int[] continuityCounters; // Indexed by pid
   private final TsPayloadReader.Factory payloadReaderFactory;
-  private final SparseArray<TsPayloadReader> tsPayloadReaders; // Indexed by pid
+  private final TsPayloadReader[] tsPayloadReaders; // Indexed by pid
   private final SparseBooleanArray trackIds;
 
   // Accessed only by the loading thread.
@@ -124,6 +125,8 @@ public final class TsExtractor implements Extractor {
   private boolean tracksEnded;
   private TsPayloadReader id3Reader;
   private int bytesSinceLastSync;
+  private boolean seekMapOutput;
+  private BinarySearchSeeker binarySearchSeeker;
 
   public TsExtractor() {
     this(0);
@@ -167,8 +170,9 @@ public final class TsExtractor implements Extractor {
     }
     tsPacketBuffer = new ParsableByteArray(new byte[BUFFER_SIZE], 0);
     trackIds = new SparseBooleanArray();
-    tsPayloadReaders = new SparseArray<>();
-    continuityCounters = new SparseIntArray();
+    tsPayloadReaders = new TsPayloadReader[MAX_PID_PLUS_ONE];
+    continuityCounters = new int[MAX_PID_PLUS_ONE];
+    Arrays.fill(continuityCounters, C.INDEX_UNSET);
     resetPayloadReaders();
   }
 
@@ -195,17 +199,26 @@ public final class TsExtractor implements Extractor {
   @Override
   public void init(ExtractorOutput output) {
     this.output = output;
-    output.seekMap(new SeekMap.Unseekable(C.TIME_UNSET));
+    if (mode == MODE_HLS) {
+      output.seekMap(new SeekMap.Unseekable(C.TIME_UNSET));
+      seekMapOutput = true;
+    }
   }
 
   @Override
   public void seek(long position, long timeUs) {
-    int timestampAdjustersCount = timestampAdjusters.size();
-    for (int i = 0; i < timestampAdjustersCount; i++) {
-      timestampAdjusters.get(i).reset();
+    if (binarySearchSeeker != null && binarySearchSeeker.isSeekable()) {
+      // The timestamp adjusters are kept, so that sample timestamps remain relative to the start
+      // of the stream.
+      binarySearchSeeker.setSeekTargetUs(timeUs);
+    } else {
+      int timestampAdjustersCount = timestampAdjusters.size();
+      for (int i = 0; i < timestampAdjustersCount; i++) {
+        timestampAdjusters.get(i).reset();
+      }
     }
     tsPacketBuffer.reset();
-    continuityCounters.clear();
+    Arrays.fill(continuityCounters, C.INDEX_UNSET);
     // Elementary stream readers' state should be cleared to get consistent behaviours when seeking.
     resetPayloadReaders();
     bytesSinceLastSync = 0;
@@ -219,10 +232,34 @@ public final class TsExtractor implements Extractor {
   @Override
   public int read(ExtractorInput input, PositionHolder seekPosition)
       throws IOException, InterruptedException {
+    if (!seekMapOutput) {
+      long inputLength = input.getLength();
+      if (inputLength == C.LENGTH_UNSET) {
+        output.seekMap(new SeekMap.Unseekable(C.TIME_UNSET));
+        seekMapOutput = true;
+      } else {
+        if (binarySearchSeeker == null) {
+          binarySearchSeeker =
+              new BinarySearchSeeker(
+                  new PcrReader(), TIMESTAMP_SEARCH_BYTES, input.getPosition(), inputLength);
+        }
+        int result = binarySearchSeeker.readDuration(input, seekPosition);
+        if (result != RESULT_CONTINUE || !binarySearchSeeker.isDurationRead()) {
+          return result;
+        }
+        output.seekMap(binarySearchSeeker.getSeekMap());
+        seekMapOutput = true;
+      }
+    }
+    if (binarySearchSeeker != null && binarySearchSeeker.hasPendingSeek()) {
+      return binarySearchSeeker.handlePendingSeek(input, seekPosition);
+    }
+
     byte[] data = tsPacketBuffer.data;
 
-    // Shift bytes to the start of the buffer if there isn't enough space left at the end.
-    if (BUFFER_SIZE - tsPacketBuffer.getPosition() < TS_PACKET_SIZE) {
+    // Shift the bytes of any incomplete packet to the start of the buffer, so that as much data as
+    // possible can be read in one go.
+    if (tsPacketBuffer.getPosition() > 0) {
       int bytesLeft = tsPacketBuffer.bytesLeft();
       if (bytesLeft > 0) {
         System.arraycopy(data, tsPacketBuffer.getPosition(), data, 0, bytesLeft);
@@ -240,30 +277,47 @@ public final class TsExtractor implements Extractor {
       tsPacketBuffer.setLimit(limit + read);
     }
 
-    // Note: See ISO/IEC 13818-1, section 2.4.3.2 for details of the header format.
+    // Consume all of the complete packets in the buffer.
     int limit = tsPacketBuffer.limit();
     int position = tsPacketBuffer.getPosition();
-    int searchStart = position;
-    while (position < limit && data[position] != TS_SYNC_BYTE) {
-      position++;
-    }
-    tsPacketBuffer.setPosition(position);
+    while (true) {
+      int searchStart = position;
+      while (position < limit && data[position] != TS_SYNC_BYTE) {
+        position++;
+      }
+      tsPacketBuffer.setPosition(position);
 
-    int endOfPacket = position + TS_PACKET_SIZE;
-    if (endOfPacket > limit) {
-      bytesSinceLastSync += position - searchStart;
-      if (mode == MODE_HLS && bytesSinceLastSync > TS_PACKET_SIZE * 2) {
-        throw new ParserException("Cannot find sync byte. Most likely not a Transport Stream.");
+      int endOfPacket = position + TS_PACKET_SIZE;
+      if (endOfPacket > limit) {
+        bytesSinceLastSync += position - searchStart;
+        if (mode == MODE_HLS && bytesSinceLastSync > TS_PACKET_SIZE * 2) {
+          throw new ParserException("Cannot find sync byte. Most likely not a Transport Stream.");
+        }
+        return RESULT_CONTINUE;
       }
-      return RESULT_CONTINUE;
+      bytesSinceLastSync = 0;
+
+      consumePacket(endOfPacket, limit);
+      tsPacketBuffer.setPosition(endOfPacket);
+      position = endOfPacket;
     }
-    bytesSinceLastSync = 0;
+  }
 
+  // Internals.
+
+  /**
+   * Consumes the packet at the position of {@link #tsPacketBuffer}.
+   *
+   * @param endOfPacket The position of the end of the packet in {@link #tsPacketBuffer}.
+   * @param limit The limit of {@link #tsPacketBuffer}.
+   * @throws ParserException If an error occurs parsing the payload of the packet.
+   */
+  private void consumePacket(int endOfPacket, int limit) throws ParserException {
+    // Note: See ISO/IEC 13818-1, section 2.4.3.2 for details of the header format.
     int tsPacketHeader = tsPacketBuffer.readInt();
     if ((tsPacketHeader & 0x800000) != 0) { // transport_error_indicator
       // There are uncorrectable errors in this packet.
-      tsPacketBuffer.setPosition(endOfPacket);
-      return RESULT_CONTINUE;
+      return;
     }
     boolean payloadUnitStartIndicator = (tsPacketHeader & 0x400000) != 0;
     // Ignoring transport_priority (tsPacketHeader & 0x200000)
@@ -272,21 +326,23 @@ public final class TsExtractor implements Extractor {
     boolean adaptationFieldExists = (tsPacketHeader & 0x20) != 0;
     boolean payloadExists = (tsPacketHeader & 0x10) != 0;
 
-    TsPayloadReader payloadReader = payloadExists ? tsPayloadReaders.get(pid) : null;
+    TsPayloadReader payloadReader = payloadExists ? tsPayloadReaders[pid] : null;
     if (payloadReader == null) {
-      tsPacketBuffer.setPosition(endOfPacket);
-      return RESULT_CONTINUE;
+      return;
     }
 
     // Discontinuity check.
     if (mode != MODE_HLS) {
       int continuityCounter = tsPacketHeader & 0xF;
-      int previousCounter = continuityCounters.get(pid, continuityCounter - 1);
-      continuityCounters.put(pid, continuityCounter);
+      int previousCounter = continuityCounters[pid];
+      continuityCounters[pid] = continuityCounter;
+      if (previousCounter == C.INDEX_UNSET) {
+        // This is the first packet of the pid.
+        previousCounter = continuityCounter - 1;
+      }
       if (previousCounter == continuityCounter) {
         // Duplicate packet found.
-        tsPacketBuffer.setPosition(endOfPacket);
-        return RESULT_CONTINUE;
+        return;
       } else if (continuityCounter != ((previousCounter + 1) & 0xF)) {
         // Discontinuity found.
         payloadReader.seek();
@@ -303,26 +359,71 @@ public final class TsExtractor implements Extractor {
     tsPacketBuffer.setLimit(endOfPacket);
     payloadReader.consume(tsPacketBuffer, payloadUnitStartIndicator);
     tsPacketBuffer.setLimit(limit);
-
-    tsPacketBuffer.setPosition(endOfPacket);
-    return RESULT_CONTINUE;
   }
 
-  // Internals.
-
   private void resetPayloadReaders() {
     trackIds.clear();
-    tsPayloadReaders.clear();
+    Arrays.fill(tsPayloadReaders, null);
     SparseArray<TsPayloadReader> initialPayloadReaders =
         payloadReaderFactory.createInitialPayloadReaders();
     int initialPayloadReadersSize = initialPayloadReaders.size();
     for (int i = 0; i < initialPayloadReadersSize; i++) {
-      tsPayloadReaders.put(initialPayloadReaders.keyAt(i), initialPayloadReaders.valueAt(i));
+      tsPayloadReaders[initialPayloadReaders.keyAt(i)] = initialPayloadReaders.valueAt(i);
     }
-    tsPayloadReaders.put(TS_PAT_PID, new SectionReader(new PatReader()));
+    tsPayloadReaders[TS_PAT_PID] = new SectionReader(new PatReader());
     id3Reader = null;
   }
 
+  /**
+   * Finds the program clock references in transport stream packets, for seeking. Only the clock
+   * references carried by the first PID found to carry one are used.
+   */
+  private static final class PcrReader implements BinarySearchSeeker.ClockReferenceReader {
+
+    private int pcrPid;
+
+    public PcrReader() {
+      pcrPid = C.INDEX_UNSET;
+    }
+
+    @Override
+    public int findClockReference(byte[] data, int offset, int limit) {
+      for (int i = offset; i + TS_PACKET_SIZE <= limit; i++) {
+        if (data[i] != TS_SYNC_BYTE
+            || (i + TS_PACKET_SIZE < limit && data[i + TS_PACKET_SIZE] != TS_SYNC_BYTE)) {
+          continue;
+        }
+        // Note: See ISO/IEC 13818-1, section 2.4.3.4 for details of the adaptation field format.
+        boolean transportErrorIndicator = (data[i + 1] & 0x80) != 0;
+        boolean adaptationFieldExists = (data[i + 3] & 0x20) != 0;
+        if (transportErrorIndicator
+            || !adaptationFieldExists
+            || (data[i + 4] & 0xFF) < 7
+            || (data[i + 5] & 0x10) == 0) { // PCR_flag
+          continue;
+        }
+        int pid = ((data[i + 1] & 0x1F) << 8) | (data[i + 2] & 0xFF);
+        if (pcrPid == C.INDEX_UNSET) {
+          pcrPid = pid;
+        }
+        if (pid == pcrPid) {
+          return i;
+        }
+      }
+      return C.INDEX_UNSET;
+    }
+
+    @Override
+    public long readClockReference(byte[] data, int offset) {
+      // Read the 33-bit program_clock_reference_base, ignoring the extension.
+      return ((data[offset + 6] & 0xFFL) << 25)
+          | ((data[offset + 7] & 0xFFL) << 17)
+          | ((data[offset + 8] & 0xFFL) << 9)
+          | ((data[offset + 9] & 0xFFL) << 1)
+          | ((data[offset + 10] & 0xFFL) >> 7);
+    }
+  }
+
   /**
    * Parses Program Association Table data.
    */
@@ -361,12 +462,12 @@ public final class TsExtractor implements Extractor {
           patScratch.skipBits(13); // network_PID (13)
         } else {
           int pid = patScratch.readBits(13);
-          tsPayloadReaders.put(pid, new SectionReader(new PmtReader(pid)));
+          tsPayloadReaders[pid] = new SectionReader(new PmtReader(pid));
           remainingPmts++;
         }
       }
       if (mode != MODE_HLS) {
-        tsPayloadReaders.remove(TS_PAT_PID);
+        tsPayloadReaders[TS_PAT_PID] = null;
       }
     }
 
@@ -483,7 +584,7 @@ public final class TsExtractor implements Extractor {
             reader.init(timestampAdjuster, output,
                 new TrackIdGenerator(programNumber, trackId, MAX_PID_PLUS_ONE));
           }
-          tsPayloadReaders.put(trackIdToPidScratch.valueAt(i), reader);
+          tsPayloadReaders[trackIdToPidScratch.valueAt(i)] = reader;
         }
       }
 
@@ -494,7 +595,7 @@ public final class TsExtractor implements Extractor {
           tracksEnded = true;
         }
       } else {
-        tsPayloadReaders.remove(pid);
+        tsPayloadReaders[pid] = null;
         remainingPmts = mode == MODE_SINGLE_PMT ? 0 : remainingPmts - 1;
         if (remainingPmts == 0) {
           output.endTracks();
@@ -37,6 +37,7 @@ public final class DownloaderConstructorHelper {
   private final Factory cacheReadDataSourceFactory;
   private final DataSink.Factory cacheWriteDataSinkFactory;
   private final PriorityTaskManager priorityTaskManager;
+  private final int maxParallelDownloads;
 
   /**
    * @param cache Cache instance to be used to store downloaded data.
@@ -63,12 +64,44 @@ public final class DownloaderConstructorHelper {
       @Nullable Factory cacheReadDataSourceFactory,
       @Nullable DataSink.Factory cacheWriteDataSinkFactory,
       @Nullable PriorityTaskManager priorityTaskManager) {
+    this(
+        cache,
+        upstreamDataSourceFactory,
+        cacheReadDataSourceFactory,
+        cacheWriteDataSinkFactory,
+        priorityTaskManager,
+        /* maxParallelDownloads= */ 1);
+  }
+
+  /**
+   * @param cache Cache instance to be used to store downloaded data.
+   * @param upstreamDataSourceFactory A {@link Factory} for downloading data.
+   * @param cacheReadDataSourceFactory A {@link Factory} for reading data from the cache. If null
+   *     then standard {@link FileDataSource} instances will be used.
+   * @param cacheWriteDataSinkFactory A {@link DataSink.Factory} for writing data to the cache. If
+   *     null then standard {@link CacheDataSink} instances will be used.
+   * @param priorityTaskManager A {@link PriorityTaskManager} to use when downloading. If non-null,
+   *     downloaders will register as tasks with priority {@link C#PRIORITY_DOWNLOAD} whilst
+   *     downloading.
+   * @param maxParallelDownloads The maximum number of connections that a downloader uses at the
+   *     same time. A {@link SegmentDownloader} downloads this many segments in parallel, and a
+   *     {@link ProgressiveDownloader} this many byte ranges. Must be at least 1.
+   */
+  public DownloaderConstructorHelper(
+      Cache cache,
+      Factory upstreamDataSourceFactory,
+      @Nullable Factory cacheReadDataSourceFactory,
+      @Nullable DataSink.Factory cacheWriteDataSinkFactory,
+      @Nullable PriorityTaskManager priorityTaskManager,
+      int maxParallelDownloads) {
     Assertions.checkNotNull(upstreamDataSourceFactory);
+    Assertions.checkArgument(maxParallelDownloads > 0);
     this.cache = cache;
     this.upstreamDataSourceFactory = upstreamDataSourceFactory;
     this.cacheReadDataSourceFactory = cacheReadDataSourceFactory;
     this.cacheWriteDataSinkFactory = cacheWriteDataSinkFactory;
     this.priorityTaskManager = priorityTaskManager;
+    this.maxParallelDownloads = maxParallelDownloads;
   }
 
   /** Returns the {@link Cache} instance. */
@@ -83,6 +116,28 @@ public final class DownloaderConstructorHelper {
     return priorityTaskManager != null ? priorityTaskManager : new PriorityTaskManager();
   }
 
+  /** Returns the maximum number of connections that a downloader uses at the same time. */
+  public int getMaxParallelDownloads() {
+    return maxParallelDownloads;
+  }
+
+  /**
+   * Returns a new {@link DataSource} for downloading data, which doesn't write to the cache. If a
+   * {@link PriorityTaskManager} was given, the data source is registered with it.
+   */
+  /* package */ DataSource buildUpstreamDataSource() {
+    DataSource upstream = upstreamDataSourceFactory.createDataSource();
+    return priorityTaskManager == null ? upstream
+        : new PriorityDataSource(upstream, priorityTaskManager, C.PRIORITY_DOWNLOAD);
+  }
+
+  /** Returns a new {@link DataSink} for writing data to the cache. */
+  /* package */ DataSink buildCacheWriteDataSink() {
+    return cacheWriteDataSinkFactory != null
+        ? cacheWriteDataSinkFactory.createDataSink()
+        : new CacheDataSink(cache, CacheDataSource.DEFAULT_MAX_CACHE_FILE_SIZE);
+  }
+
   /**
    * Returns a new {@link CacheDataSource} instance. If {@code offline} is true, it can only read
    * data from the cache.
@@ -94,14 +149,8 @@ public final class DownloaderConstructorHelper {
       return new CacheDataSource(cache, DummyDataSource.INSTANCE,
           cacheReadDataSource, null, CacheDataSource.FLAG_BLOCK_ON_CACHE, null);
     } else {
-      DataSink cacheWriteDataSink = cacheWriteDataSinkFactory != null
-          ? cacheWriteDataSinkFactory.createDataSink()
-          : new CacheDataSink(cache, CacheDataSource.DEFAULT_MAX_CACHE_FILE_SIZE);
-      DataSource upstream = upstreamDataSourceFactory.createDataSource();
-      upstream = priorityTaskManager == null ? upstream
-          : new PriorityDataSource(upstream, priorityTaskManager, C.PRIORITY_DOWNLOAD);
-      return new CacheDataSource(cache, upstream, cacheReadDataSource,
-          cacheWriteDataSink, CacheDataSource.FLAG_BLOCK_ON_CACHE, null);
+      return new CacheDataSource(cache, buildUpstreamDataSource(), cacheReadDataSource,
+          buildCacheWriteDataSink(), CacheDataSource.FLAG_BLOCK_ON_CACHE, null);
     }
   }
 
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.offline;
+
+import android.support.annotation.NonNull;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/** Runs the tasks of a download on parallel threads. */
+/* package */ final class ParallelTaskRunner {
+
+  private ParallelTaskRunner() {}
+
+  /**
+   * Runs each of the given tasks on its own thread, and waits for all of them to complete.
+   *
+   * <p>If a task fails, or if the calling thread is interrupted, the remaining tasks are
+   * interrupted. The method only returns or throws once all of the threads have stopped, so that
+   * nothing is written to the cache afterwards.
+   *
+   * @param threadName The name of the threads.
+   * @param tasks The tasks to run.
+   * @throws IOException If a task throws an {@link IOException}.
+   * @throws InterruptedException If the calling thread or a task is interrupted.
+   */
+  public static void runAll(final String threadName, List<Callable<Void>> tasks)
+      throws IOException, InterruptedException {
+    ExecutorService executorService =
+        Executors.newFixedThreadPool(
+            tasks.size(),
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(@NonNull Runnable r) {
+                return new Thread(r, threadName);
+              }
+            });
+    CompletionService<Void> completionService = new ExecutorCompletionService<>(executorService);
+    try {
+      for (int i = 0; i < tasks.size(); i++) {
+        completionService.submit(tasks.get(i));
+      }
+      for (int i = 0; i < tasks.size(); i++) {
+        try {
+          completionService.take().get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new IllegalStateException(cause);
+        }
+      }
+    } finally {
+      // Interrupt any remaining tasks, and wait for them to stop.
+      executorService.shutdownNow();
+      boolean interrupted = false;
+      while (true) {
+        try {
+          if (executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+            break;
+          }
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+}
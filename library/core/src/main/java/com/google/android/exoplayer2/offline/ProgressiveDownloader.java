@@ -17,25 +17,47 @@
 
 import android.net.Uri;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSink;
+import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.cache.Cache;
 import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
 import com.google.android.exoplayer2.upstream.cache.CacheUtil;
 import com.google.android.exoplayer2.upstream.cache.CacheUtil.CachingCounters;
 import com.google.android.exoplayer2.util.PriorityTaskManager;
+import com.google.android.exoplayer2.util.Util;
+import java.io.EOFException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A downloader for progressive media streams.
+ *
+ * <p>If {@link DownloaderConstructorHelper#getMaxParallelDownloads()} is greater than one and the
+ * length of the stream is known, the stream is split into byte ranges which are downloaded over
+ * that many connections at the same time. Downloaded data is buffered and written to the cache in
+ * pieces, each of which becomes a separate span, so that the cache only needs to be locked while a
+ * piece is being written. Byte ranges that are partially cached are resumed from the first hole.
  */
 public final class ProgressiveDownloader implements Downloader {
 
   private static final int BUFFER_SIZE_BYTES = 128 * 1024;
+  private static final int RANGE_BUFFER_SIZE_BYTES = 1024 * 1024;
+  private static final long MIN_RANGE_LENGTH_BYTES = 2 * 1024 * 1024;
+  /** The number of byte ranges per connection, so that faster connections can take on more. */
+  private static final int RANGES_PER_CONNECTION = 4;
 
   private final DataSpec dataSpec;
+  private final String key;
   private final Cache cache;
   private final CacheDataSource dataSource;
+  private final DataSource[] rangeDataSources;
+  private final DataSink[] rangeDataSinks;
   private final PriorityTaskManager priorityTaskManager;
   private final CacheUtil.CachingCounters cachingCounters;
   private final AtomicBoolean isCanceled;
@@ -49,8 +71,16 @@ public final class ProgressiveDownloader implements Downloader {
   public ProgressiveDownloader(
       Uri uri, String customCacheKey, DownloaderConstructorHelper constructorHelper) {
     this.dataSpec = new DataSpec(uri, 0, C.LENGTH_UNSET, customCacheKey, 0);
+    this.key = CacheUtil.getKey(dataSpec);
     this.cache = constructorHelper.getCache();
     this.dataSource = constructorHelper.buildCacheDataSource(false);
+    int maxParallelDownloads = constructorHelper.getMaxParallelDownloads();
+    rangeDataSources = new DataSource[maxParallelDownloads > 1 ? maxParallelDownloads : 0];
+    rangeDataSinks = new DataSink[rangeDataSources.length];
+    for (int i = 0; i < rangeDataSources.length; i++) {
+      rangeDataSources[i] = constructorHelper.buildUpstreamDataSource();
+      rangeDataSinks[i] = constructorHelper.buildCacheWriteDataSink();
+    }
     this.priorityTaskManager = constructorHelper.getPriorityTaskManager();
     cachingCounters = new CachingCounters();
     isCanceled = new AtomicBoolean();
@@ -60,16 +90,22 @@ public final class ProgressiveDownloader implements Downloader {
   public void download() throws InterruptedException, IOException {
     priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
     try {
-      CacheUtil.cache(
-          dataSpec,
-          cache,
-          dataSource,
-          new byte[BUFFER_SIZE_BYTES],
-          priorityTaskManager,
-          C.PRIORITY_DOWNLOAD,
-          cachingCounters,
-          isCanceled,
-          /* enableEOFException= */ true);
+      long contentLength =
+          rangeDataSources.length > 1 ? resolveContentLength() : C.LENGTH_UNSET;
+      if (contentLength != C.LENGTH_UNSET && contentLength > MIN_RANGE_LENGTH_BYTES) {
+        downloadRangesInParallel(contentLength);
+      } else {
+        CacheUtil.cache(
+            dataSpec,
+            cache,
+            dataSource,
+            new byte[BUFFER_SIZE_BYTES],
+            priorityTaskManager,
+            C.PRIORITY_DOWNLOAD,
+            cachingCounters,
+            isCanceled,
+            /* enableEOFException= */ true);
+      }
     } finally {
       priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
     }
@@ -95,6 +131,165 @@ public final class ProgressiveDownloader implements Downloader {
 
   @Override
   public void remove() {
-    CacheUtil.remove(cache, CacheUtil.getKey(dataSpec));
+    CacheUtil.remove(cache, key);
+  }
+
+  // Internal methods.
+
+  /**
+   * Returns the length of the stream, or {@link C#LENGTH_UNSET} if it's unknown. If the length
+   * isn't stored in the cache, a connection is opened to resolve it.
+   */
+  private long resolveContentLength() throws IOException, InterruptedException {
+    long contentLength = cache.getContentLength(key);
+    if (contentLength != C.LENGTH_UNSET) {
+      return contentLength;
+    }
+    DataSource upstream = rangeDataSources[0];
+    while (true) {
+      priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
+      try {
+        contentLength = upstream.open(dataSpec);
+        if (contentLength != C.LENGTH_UNSET) {
+          cache.setContentLength(key, contentLength);
+        }
+        return contentLength;
+      } catch (PriorityTaskManager.PriorityTooLowException e) {
+        // Try again.
+      } finally {
+        Util.closeQuietly(upstream);
+      }
+    }
+  }
+
+  private void downloadRangesInParallel(final long contentLength)
+      throws IOException, InterruptedException {
+    CacheUtil.getCached(
+        new DataSpec(dataSpec.uri, 0, contentLength, key, dataSpec.flags), cache, cachingCounters);
+    final long rangeLength =
+        Math.max(
+            MIN_RANGE_LENGTH_BYTES,
+            Util.ceilDivide(contentLength, rangeDataSources.length * RANGES_PER_CONNECTION));
+    final int rangeCount = (int) Util.ceilDivide(contentLength, rangeLength);
+    int parallelDownloads = Math.min(rangeDataSources.length, rangeCount);
+    final AtomicInteger nextRangeIndex = new AtomicInteger();
+    List<Callable<Void>> tasks = new ArrayList<>(parallelDownloads);
+    for (int i = 0; i < parallelDownloads; i++) {
+      final DataSource upstream = rangeDataSources[i];
+      final DataSink dataSink = rangeDataSinks[i];
+      tasks.add(
+          new Callable<Void>() {
+            @Override
+            public Void call() throws IOException, InterruptedException {
+              byte[] buffer = new byte[RANGE_BUFFER_SIZE_BYTES];
+              int rangeIndex;
+              while ((rangeIndex = nextRangeIndex.getAndIncrement()) < rangeCount) {
+                long start = rangeIndex * rangeLength;
+                downloadRange(
+                    start, Math.min(start + rangeLength, contentLength), upstream, dataSink, buffer);
+              }
+              return null;
+            }
+          });
+    }
+    ParallelTaskRunner.runAll("ProgressiveDownloader", tasks);
+  }
+
+  /** Downloads the uncached parts of the byte range [{@code start}, {@code end}). */
+  private void downloadRange(
+      long start, long end, DataSource upstream, DataSink dataSink, byte[] buffer)
+      throws IOException, InterruptedException {
+    long position = start;
+    while (position < end) {
+      if (isCanceled.get()) {
+        throw new InterruptedException();
+      }
+      long blockLength = cache.getCachedLength(key, position, end - position);
+      if (blockLength > 0) {
+        // Skip already cached data.
+        position += blockLength;
+      } else {
+        // There is a hole in the cache which is "-blockLength" long.
+        long holeEnd = position - blockLength;
+        downloadHole(position, holeEnd, upstream, dataSink, buffer);
+        position = holeEnd;
+      }
+    }
+  }
+
+  /**
+   * Downloads the byte range [{@code start}, {@code end}), writing it to the cache each time the
+   * buffer is full.
+   */
+  private void downloadHole(
+      long start, long end, DataSource upstream, DataSink dataSink, byte[] buffer)
+      throws IOException, InterruptedException {
+    long position = start;
+    while (position < end) {
+      priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
+      int bufferedLength = 0;
+      try {
+        upstream.open(new DataSpec(dataSpec.uri, position, end - position, key, dataSpec.flags));
+        while (position < end) {
+          if (isCanceled.get() || Thread.interrupted()) {
+            throw new InterruptedException();
+          }
+          int read =
+              upstream.read(
+                  buffer,
+                  bufferedLength,
+                  (int) Math.min(buffer.length - bufferedLength, end - position - bufferedLength));
+          if (read == C.RESULT_END_OF_INPUT) {
+            throw new EOFException();
+          }
+          bufferedLength += read;
+          if (bufferedLength == buffer.length || position + bufferedLength == end) {
+            writeToCache(position, buffer, bufferedLength, dataSink);
+            position += bufferedLength;
+            bufferedLength = 0;
+          }
+        }
+      } catch (PriorityTaskManager.PriorityTooLowException e) {
+        // Keep the data read so far, and try again.
+        writeToCache(position, buffer, bufferedLength, dataSink);
+        position += bufferedLength;
+      } finally {
+        Util.closeQuietly(upstream);
+      }
+    }
+  }
+
+  /**
+   * Writes {@code length} bytes of {@code buffer} to the cache at {@code position}, skipping any
+   * parts which have been cached in the meantime.
+   */
+  private void writeToCache(long position, byte[] buffer, int length, DataSink dataSink)
+      throws IOException, InterruptedException {
+    int offset = 0;
+    while (offset < length) {
+      CacheSpan span = cache.startReadWrite(key, position + offset);
+      long spanEnd = span.isOpenEnded() ? Long.MAX_VALUE : span.position + span.length;
+      int spanLength = (int) Math.min(length - offset, spanEnd - position - offset);
+      if (!span.isCached) {
+        try {
+          dataSink.open(
+              new DataSpec(dataSpec.uri, position + offset, spanLength, key, dataSpec.flags));
+          try {
+            dataSink.write(buffer, offset, spanLength);
+          } finally {
+            dataSink.close();
+          }
+        } finally {
+          cache.releaseHoleSpan(span);
+        }
+        onBytesDownloaded(spanLength);
+      }
+      offset += spanLength;
+    }
+  }
+
+  // Byte ranges are downloaded on several threads, so updates of the counter are synchronized.
+  private synchronized void onBytesDownloaded(long bytes) {
+    cachingCounters.newlyCachedBytes += bytes;
   }
 }
@@ -29,11 +29,18 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Base class for multi segment stream downloaders.
  *
+ * <p>Segments are downloaded in order of their start times. If {@link
+ * DownloaderConstructorHelper#getMaxParallelDownloads()} is greater than one, that many
+ * segments are downloaded at the same time on separate threads, each of which respects the {@link
+ * PriorityTaskManager}.
+ *
  * @param <M> The type of the manifest object.
  * @param <K> The type of the streams key object.
  */
@@ -67,6 +74,7 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M, K>, K>
   private final PriorityTaskManager priorityTaskManager;
   private final Cache cache;
   private final CacheDataSource dataSource;
+  private final CacheDataSource[] segmentDataSources;
   private final CacheDataSource offlineDataSource;
   private final ArrayList<K> streamKeys;
   private final AtomicBoolean isCanceled;
@@ -87,6 +95,11 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M, K>, K>
     this.streamKeys = new ArrayList<>(streamKeys);
     this.cache = constructorHelper.getCache();
     this.dataSource = constructorHelper.buildCacheDataSource(false);
+    segmentDataSources = new CacheDataSource[constructorHelper.getMaxParallelDownloads()];
+    segmentDataSources[0] = dataSource;
+    for (int i = 1; i < segmentDataSources.length; i++) {
+      segmentDataSources[i] = constructorHelper.buildCacheDataSource(false);
+    }
     this.offlineDataSource = constructorHelper.buildCacheDataSource(true);
     this.priorityTaskManager = constructorHelper.getPriorityTaskManager();
     totalSegments = C.LENGTH_UNSET;
@@ -100,9 +113,6 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M, K>, K>
    * @throws IOException Thrown when there is an error downloading.
    * @throws InterruptedException If the thread has been interrupted.
    */
-  // downloadedSegments and downloadedBytes are only written from this method, and this method
-  // should not be called from more than one thread. Hence non-atomic updates are valid.
-  @SuppressWarnings("NonAtomicVolatileUpdate")
   @Override
   public final void download() throws IOException, InterruptedException {
     priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
@@ -110,24 +120,11 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M, K>, K>
     try {
       List<Segment> segments = initDownload();
       Collections.sort(segments);
-      byte[] buffer = new byte[BUFFER_SIZE_BYTES];
-      CachingCounters cachingCounters = new CachingCounters();
-      for (int i = 0; i < segments.size(); i++) {
-        try {
-          CacheUtil.cache(
-              segments.get(i).dataSpec,
-              cache,
-              dataSource,
-              buffer,
-              priorityTaskManager,
-              C.PRIORITY_DOWNLOAD,
-              cachingCounters,
-              isCanceled,
-              true);
-          downloadedSegments++;
-        } finally {
-          downloadedBytes += cachingCounters.newlyCachedBytes;
-        }
+      int parallelDownloads = Math.min(segmentDataSources.length, segments.size());
+      if (parallelDownloads <= 1) {
+        downloadSegments(segments, new AtomicInteger(), dataSource);
+      } else {
+        downloadSegmentsInParallel(segments, parallelDownloads);
       }
     } finally {
       priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
@@ -224,6 +221,69 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M, K>, K>
     return segments;
   }
 
+  /**
+   * Downloads segments until there are none left, taking the index of the next segment from a
+   * counter which may be shared with other threads.
+   */
+  private void downloadSegments(
+      List<Segment> segments, AtomicInteger nextSegmentIndex, CacheDataSource dataSource)
+      throws IOException, InterruptedException {
+    byte[] buffer = new byte[BUFFER_SIZE_BYTES];
+    CachingCounters cachingCounters = new CachingCounters();
+    int segmentIndex;
+    while ((segmentIndex = nextSegmentIndex.getAndIncrement()) < segments.size()) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      try {
+        CacheUtil.cache(
+            segments.get(segmentIndex).dataSpec,
+            cache,
+            dataSource,
+            buffer,
+            priorityTaskManager,
+            C.PRIORITY_DOWNLOAD,
+            cachingCounters,
+            isCanceled,
+            true);
+        onSegmentDownloaded();
+      } finally {
+        onBytesDownloaded(cachingCounters.newlyCachedBytes);
+      }
+    }
+  }
+
+  /** Downloads segments on {@code parallelDownloads} threads. */
+  private void downloadSegmentsInParallel(final List<Segment> segments, int parallelDownloads)
+      throws IOException, InterruptedException {
+    final AtomicInteger nextSegmentIndex = new AtomicInteger();
+    List<Callable<Void>> tasks = new ArrayList<>(parallelDownloads);
+    for (int i = 0; i < parallelDownloads; i++) {
+      final CacheDataSource dataSource = segmentDataSources[i];
+      tasks.add(
+          new Callable<Void>() {
+            @Override
+            public Void call() throws IOException, InterruptedException {
+              downloadSegments(segments, nextSegmentIndex, dataSource);
+              return null;
+            }
+          });
+    }
+    ParallelTaskRunner.runAll("SegmentDownloader", tasks);
+  }
+
+  // Segments may be downloaded on several threads, so updates of downloadedSegments and
+  // downloadedBytes are synchronized. Reads of the volatile fields don't need to be.
+  @SuppressWarnings("NonAtomicVolatileUpdate")
+  private synchronized void onSegmentDownloaded() {
+    downloadedSegments++;
+  }
+
+  @SuppressWarnings("NonAtomicVolatileUpdate")
+  private synchronized void onBytesDownloaded(long bytes) {
+    downloadedBytes += bytes;
+  }
+
   private void removeUri(Uri uri) {
     CacheUtil.remove(cache, CacheUtil.generateKey(uri));
   }
@@ -18,6 +18,7 @@ package com.google.android.exoplayer2.source;
 import android.net.Uri;
 import android.os.Handler;
 import android.support.annotation.Nullable;
+import android.util.Log;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.FormatHolder;
@@ -31,6 +32,7 @@ import com.google.android.exoplayer2.extractor.PositionHolder;
 import com.google.android.exoplayer2.extractor.SeekMap;
 import com.google.android.exoplayer2.extractor.SeekMap.SeekPoints;
 import com.google.android.exoplayer2.extractor.TrackOutput;
+import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
 import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispatcher;
 import com.google.android.exoplayer2.source.SampleQueue.UpstreamFormatChangedListener;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
@@ -39,11 +41,15 @@ import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.Loadable;
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+import com.google.android.exoplayer2.upstream.cache.SeekMapCache;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.ConditionVariable;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 
@@ -75,6 +81,8 @@ import java.util.Arrays;
    */
   private static final long DEFAULT_LAST_SAMPLE_DURATION_US = 10000;
 
+  private static final String TAG = "ExtractorMediaPeriod";
+
   private final Uri uri;
   private final DataSource dataSource;
   private final int minLoadableRetryCount;
@@ -82,7 +90,10 @@ import java.util.Arrays;
   private final Listener listener;
   private final Allocator allocator;
   @Nullable private final String customCacheKey;
+  @Nullable private final SeekMapCache seekMapCache;
   private final long continueLoadingCheckIntervalBytes;
+  @Nullable private final File backBufferSpillDirectory;
+  private final long maxBackBufferSpillBytes;
   private final Loader loader;
   private final ExtractorHolder extractorHolder;
   private final ConditionVariable loadCondition;
@@ -128,8 +139,13 @@ import java.util.Arrays;
    * @param allocator An {@link Allocator} from which to obtain media buffer allocations.
    * @param customCacheKey A custom key that uniquely identifies the original stream. Used for cache
    *     indexing. May be null.
+   * @param seekMapCache A cache in which the seek indexes of streams are persisted, or null if seek
+   *     indexes should not be persisted.
    * @param continueLoadingCheckIntervalBytes The number of bytes that should be loaded between each
    *     invocation of {@link Callback#onContinueLoadingRequested(SequenceableLoader)}.
+   * @param backBufferSpillDirectory A directory in which to create a {@link SampleSpillStore} for
+   *     each track, or null if samples discarded from the back-buffer should not be spilled.
+   * @param maxBackBufferSpillBytes The maximum number of bytes to spill for each track.
    */
   public ExtractorMediaPeriod(
       Uri uri,
@@ -140,7 +156,10 @@ import java.util.Arrays;
       Listener listener,
       Allocator allocator,
       @Nullable String customCacheKey,
-      int continueLoadingCheckIntervalBytes) {
+      @Nullable SeekMapCache seekMapCache,
+      int continueLoadingCheckIntervalBytes,
+      @Nullable File backBufferSpillDirectory,
+      long maxBackBufferSpillBytes) {
     this.uri = uri;
     this.dataSource = dataSource;
     this.minLoadableRetryCount = minLoadableRetryCount;
@@ -148,7 +167,10 @@ import java.util.Arrays;
     this.listener = listener;
     this.allocator = allocator;
     this.customCacheKey = customCacheKey;
+    this.seekMapCache = seekMapCache;
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
+    this.backBufferSpillDirectory = backBufferSpillDirectory;
+    this.maxBackBufferSpillBytes = maxBackBufferSpillBytes;
     loader = new Loader("Loader:ExtractorMediaPeriod");
     extractorHolder = new ExtractorHolder(extractors, this);
     loadCondition = new ConditionVariable();
@@ -198,6 +220,8 @@ import java.util.Arrays;
   public void onLoaderReleased() {
     for (SampleQueue sampleQueue : sampleQueues) {
       sampleQueue.reset();
+      // Release the queue's spill store, if any.
+      sampleQueue.setSpillStore(null);
     }
     extractorHolder.release();
   }
@@ -586,7 +610,7 @@ import java.util.Arrays;
 
   @Override
   public void seekMap(SeekMap seekMap) {
-    this.seekMap = seekMap;
+    this.seekMap = seekMapCache != null ? updateSeekMapCache(seekMap) : seekMap;
     handler.post(maybeFinishPrepareRunnable);
   }
 
@@ -600,7 +624,14 @@ import java.util.Arrays;
   // Internal methods.
 
   private void maybeFinishPrepare() {
-    if (released || prepared || seekMap == null || !sampleQueuesBuilt) {
+    if (released || seekMap == null) {
+      return;
+    }
+    if (prepared) {
+      maybeUpdateDurationFromSeekMap();
+      return;
+    }
+    if (!sampleQueuesBuilt) {
       return;
     }
     for (SampleQueue sampleQueue : sampleQueues) {
@@ -616,6 +647,10 @@ import java.util.Arrays;
     trackFormatNotificationSent = new boolean[trackCount];
     durationUs = seekMap.getDurationUs();
     for (int i = 0; i < trackCount; i++) {
+      if (backBufferSpillDirectory != null) {
+        sampleQueues[i].setSpillStore(
+            new SampleSpillStore(backBufferSpillDirectory, maxBackBufferSpillBytes));
+      }
       Format trackFormat = sampleQueues[i].getUpstreamFormat();
       trackArray[i] = new TrackGroup(trackFormat);
       String mimeType = trackFormat.sampleMimeType;
@@ -633,6 +668,52 @@ import java.util.Arrays;
     callback.onPrepared(this);
   }
 
+  /**
+   * Updates {@link #durationUs} if the extractor has output a seek map with a different duration
+   * after the period was prepared.
+   */
+  private void maybeUpdateDurationFromSeekMap() {
+    long seekMapDurationUs = seekMap.getDurationUs();
+    if (seekMapDurationUs != C.TIME_UNSET && seekMapDurationUs != durationUs) {
+      durationUs = seekMapDurationUs;
+      listener.onSourceInfoRefreshed(durationUs, seekMap.isSeekable());
+    }
+  }
+
+  /**
+   * Persists a seek map output by the extractor in {@link #seekMapCache}, or returns the seek map
+   * persisted for this stream if the extractor's seek map isn't seekable. Called by the loading
+   * thread.
+   *
+   * <p>Seekable seek maps output by the extractor are always preferred, since some extractors derive
+   * sample timestamps from their own seek map. The MP3 extractor does so in any case, and is given
+   * the persisted index before it reads instead (see {@link Mp3Extractor#setPersistedIndex}). An
+   * extractor that outputs a seek map more than once has refined it, so the new seek map replaces
+   * any persisted one.
+   */
+  private SeekMap updateSeekMapCache(SeekMap seekMap) {
+    String key = getCacheKey();
+    if (!seekMap.isSeekable()) {
+      if (extractorHolder.extractor instanceof Mp3Extractor) {
+        return seekMap;
+      }
+      SeekMap cachedSeekMap = seekMapCache.get(key);
+      return cachedSeekMap != null ? cachedSeekMap : seekMap;
+    }
+    try {
+      if (this.seekMap != null || seekMapCache.get(key) == null) {
+        seekMapCache.put(key, seekMap);
+      }
+    } catch (CacheException e) {
+      Log.w(TAG, "Failed to persist seek map", e);
+    }
+    return seekMap;
+  }
+
+  private String getCacheKey() {
+    return customCacheKey != null ? customCacheKey : CacheUtil.generateKey(uri);
+  }
+
   private void copyLengthFromLoader(ExtractingLoadable loadable) {
     if (length == C.LENGTH_UNSET) {
       length = loadable.length;
@@ -851,6 +932,9 @@ import java.util.Arrays;
           }
           input = new DefaultExtractorInput(dataSource, position, length);
           Extractor extractor = extractorHolder.selectExtractor(input, dataSource.getUri());
+          if (seekMapCache != null && seekMap == null && extractor instanceof Mp3Extractor) {
+            ((Mp3Extractor) extractor).setPersistedIndex(seekMapCache.get(getCacheKey()));
+          }
           if (pendingExtractorSeek) {
             extractor.seek(position, seekTimeUs);
             pendingExtractorSeek = false;
@@ -27,7 +27,9 @@ import com.google.android.exoplayer2.extractor.ExtractorsFactory;
 import com.google.android.exoplayer2.source.ads.AdsMediaSource;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.cache.SeekMapCache;
 import com.google.android.exoplayer2.util.Assertions;
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -95,7 +97,10 @@ public final class ExtractorMediaSource extends BaseMediaSource
   private final ExtractorsFactory extractorsFactory;
   private final int minLoadableRetryCount;
   private final String customCacheKey;
+  private final @Nullable SeekMapCache seekMapCache;
   private final int continueLoadingCheckIntervalBytes;
+  private final @Nullable File backBufferSpillDirectory;
+  private final long maxBackBufferSpillBytes;
   private final @Nullable Object tag;
 
   private long timelineDurationUs;
@@ -108,9 +113,12 @@ public final class ExtractorMediaSource extends BaseMediaSource
 
     private @Nullable ExtractorsFactory extractorsFactory;
     private @Nullable String customCacheKey;
+    private @Nullable SeekMapCache seekMapCache;
     private @Nullable Object tag;
     private int minLoadableRetryCount;
     private int continueLoadingCheckIntervalBytes;
+    private @Nullable File backBufferSpillDirectory;
+    private long maxBackBufferSpillBytes;
     private boolean isCreateCalled;
 
     /**
@@ -155,6 +163,26 @@ public final class ExtractorMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the cache in which seek indexes are persisted. A persisted index is used when a stream
+     * is reopened and its extractor can't provide a seekable {@link
+     * com.google.android.exoplayer2.extractor.SeekMap} of its own. An {@link
+     * com.google.android.exoplayer2.extractor.mp3.Mp3Extractor} with {@link
+     * com.google.android.exoplayer2.extractor.mp3.Mp3Extractor#FLAG_ENABLE_INDEX_SEEKING} set uses
+     * the persisted index of its frames instead of indexing the stream again. Indexes are keyed by
+     * the custom cache key if set, or by the {@link Uri} of the stream otherwise. The default value
+     * is {@code null}, meaning that seek indexes are not persisted.
+     *
+     * @param seekMapCache The {@link SeekMapCache}, or {@code null}.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setSeekMapCache(@Nullable SeekMapCache seekMapCache) {
+      Assertions.checkState(!isCreateCalled);
+      this.seekMapCache = seekMapCache;
+      return this;
+    }
+
     /**
      * Sets a tag for the media source which will be published in the {@link
      * com.google.android.exoplayer2.Timeline} of the source as {@link
@@ -201,6 +229,28 @@ public final class ExtractorMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets a directory to which samples are spilled when they're discarded from the back-buffer,
+     * so that seeking back to them doesn't require them to be loaded again. Each track spills to
+     * a {@link SampleSpillStore} of its own, which holds up to {@code maxBytesPerTrack} bytes. The
+     * default value is {@code null}, meaning that samples are not spilled.
+     *
+     * <p>The in-memory back-buffer is still defined by {@link
+     * com.google.android.exoplayer2.LoadControl#getBackBufferDurationUs()}. Samples older than
+     * that are spilled, and deleted once the store of their track is full.
+     *
+     * @param directory The directory, or {@code null}. Must exist.
+     * @param maxBytesPerTrack The maximum number of bytes to spill for each track.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setBackBufferSpillDirectory(@Nullable File directory, long maxBytesPerTrack) {
+      Assertions.checkState(!isCreateCalled);
+      this.backBufferSpillDirectory = directory;
+      this.maxBackBufferSpillBytes = maxBytesPerTrack;
+      return this;
+    }
+
     /**
      * Returns a new {@link ExtractorMediaSource} using the current parameters.
      *
@@ -219,7 +269,10 @@ public final class ExtractorMediaSource extends BaseMediaSource
           extractorsFactory,
           minLoadableRetryCount,
           customCacheKey,
+          seekMapCache,
           continueLoadingCheckIntervalBytes,
+          backBufferSpillDirectory,
+          maxBackBufferSpillBytes,
           tag);
     }
 
@@ -318,7 +371,10 @@ public final class ExtractorMediaSource extends BaseMediaSource
         extractorsFactory,
         minLoadableRetryCount,
         customCacheKey,
+        /* seekMapCache= */ null,
         continueLoadingCheckIntervalBytes,
+        /* backBufferSpillDirectory= */ null,
+        /* maxBackBufferSpillBytes= */ 0,
         /* tag= */ null);
     if (eventListener != null && eventHandler != null) {
       addEventListener(eventHandler, new EventListenerWrapper(eventListener));
@@ -331,14 +387,20 @@ public final class ExtractorMediaSource extends BaseMediaSource
       ExtractorsFactory extractorsFactory,
       int minLoadableRetryCount,
       @Nullable String customCacheKey,
+      @Nullable SeekMapCache seekMapCache,
       int continueLoadingCheckIntervalBytes,
+      @Nullable File backBufferSpillDirectory,
+      long maxBackBufferSpillBytes,
       @Nullable Object tag) {
     this.uri = uri;
     this.dataSourceFactory = dataSourceFactory;
     this.extractorsFactory = extractorsFactory;
     this.minLoadableRetryCount = minLoadableRetryCount;
     this.customCacheKey = customCacheKey;
+    this.seekMapCache = seekMapCache;
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
+    this.backBufferSpillDirectory = backBufferSpillDirectory;
+    this.maxBackBufferSpillBytes = maxBackBufferSpillBytes;
     this.timelineDurationUs = C.TIME_UNSET;
     this.tag = tag;
   }
@@ -365,7 +427,10 @@ public final class ExtractorMediaSource extends BaseMediaSource
         this,
         allocator,
         customCacheKey,
-        continueLoadingCheckIntervalBytes);
+        seekMapCache,
+        continueLoadingCheckIntervalBytes,
+        backBufferSpillDirectory,
+        maxBackBufferSpillBytes);
   }
 
   @Override
@@ -22,6 +22,7 @@ import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
 import com.google.android.exoplayer2.extractor.TrackOutput.CryptoData;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
+import java.util.Arrays;
 
 /**
  * A queue of metadata describing the contents of a media buffer.
@@ -39,16 +40,59 @@ import com.google.android.exoplayer2.util.Util;
 
   }
 
-  private static final int SAMPLE_CAPACITY_INCREMENT = 1000;
+  /**
+   * A holder for the metadata of a sample queued in the queue.
+   */
+  public static final class SampleMetadataHolder {
+
+    public long timeUs;
+    public int flags;
+    public int size;
+    public long offset;
+    public Format format;
+
+  }
+
+  /**
+   * Fixed size storage for the metadata of {@link #CHUNK_LENGTH} consecutive samples. The queue
+   * holds its samples in a ring of chunks, so that it can grow and shrink by adding and removing
+   * whole chunks rather than by copying the metadata of every sample it holds.
+   */
+  private static final class SampleChunk {
+
+    public final int[] sourceIds;
+    public final long[] offsets;
+    public final int[] sizes;
+    public final int[] flags;
+    public final long[] timesUs;
+    public final CryptoData[] cryptoDatas;
+    public final Format[] formats;
+
+    public SampleChunk() {
+      sourceIds = new int[CHUNK_LENGTH];
+      offsets = new long[CHUNK_LENGTH];
+      sizes = new int[CHUNK_LENGTH];
+      flags = new int[CHUNK_LENGTH];
+      timesUs = new long[CHUNK_LENGTH];
+      cryptoDatas = new CryptoData[CHUNK_LENGTH];
+      formats = new Format[CHUNK_LENGTH];
+    }
+
+  }
 
-  private int capacity;
-  private int[] sourceIds;
-  private long[] offsets;
-  private int[] sizes;
-  private int[] flags;
-  private long[] timesUs;
-  private CryptoData[] cryptoDatas;
-  private Format[] formats;
+  private static final int CHUNK_LENGTH_SHIFT = 8;
+  private static final int CHUNK_LENGTH = 1 << CHUNK_LENGTH_SHIFT;
+  private static final int CHUNK_INDEX_MASK = CHUNK_LENGTH - 1;
+  private static final int INITIAL_CHUNK_CAPACITY = 8;
+
+  // A ring of chunks, of which chunkCount starting from firstChunkIndex are in use. The capacity
+  // of the ring is always a power of two.
+  private SampleChunk[] chunks;
+  private int firstChunkIndex;
+  private int chunkCount;
+  // A chunk that was removed from the ring, retained so that a queue whose length oscillates
+  // around a chunk boundary doesn't allocate a new chunk each time it crosses it.
+  private SampleChunk spareChunk;
 
   private int length;
   private int absoluteFirstIndex;
@@ -63,14 +107,7 @@ import com.google.android.exoplayer2.util.Util;
   private int upstreamSourceId;
 
   public SampleMetadataQueue() {
-    capacity = SAMPLE_CAPACITY_INCREMENT;
-    sourceIds = new int[capacity];
-    offsets = new long[capacity];
-    timesUs = new long[capacity];
-    flags = new int[capacity];
-    sizes = new int[capacity];
-    cryptoDatas = new CryptoData[capacity];
-    formats = new Format[capacity];
+    chunks = new SampleChunk[INITIAL_CHUNK_CAPACITY];
     largestDiscardedTimestampUs = Long.MIN_VALUE;
     largestQueuedTimestampUs = Long.MIN_VALUE;
     upstreamFormatRequired = true;
@@ -90,6 +127,7 @@ import com.google.android.exoplayer2.util.Util;
     absoluteFirstIndex = 0;
     relativeFirstIndex = 0;
     readPosition = 0;
+    removeChunksAfter(0);
     upstreamKeyframeRequired = true;
     largestDiscardedTimestampUs = Long.MIN_VALUE;
     largestQueuedTimestampUs = Long.MIN_VALUE;
@@ -118,12 +156,17 @@ import com.google.android.exoplayer2.util.Util;
     Assertions.checkArgument(0 <= discardCount && discardCount <= (length - readPosition));
     length -= discardCount;
     largestQueuedTimestampUs = Math.max(largestDiscardedTimestampUs, getLargestTimestamp(length));
+    long totalBytesWritten;
     if (length == 0) {
-      return 0;
+      totalBytesWritten = 0;
     } else {
       int relativeLastWriteIndex = getRelativeIndex(length - 1);
-      return offsets[relativeLastWriteIndex] + sizes[relativeLastWriteIndex];
+      SampleChunk chunk = getChunk(relativeLastWriteIndex);
+      int chunkIndex = relativeLastWriteIndex & CHUNK_INDEX_MASK;
+      totalBytesWritten = chunk.offsets[chunkIndex] + chunk.sizes[chunkIndex];
     }
+    removeChunksAfter(relativeFirstIndex + length);
+    return totalBytesWritten;
   }
 
   public void sourceId(int sourceId) {
@@ -153,8 +196,11 @@ import com.google.android.exoplayer2.util.Util;
    * @return The source id.
    */
   public int peekSourceId() {
+    if (!hasNextSample()) {
+      return upstreamSourceId;
+    }
     int relativeReadIndex = getRelativeIndex(readPosition);
-    return hasNextSample() ? sourceIds[relativeReadIndex] : upstreamSourceId;
+    return getChunk(relativeReadIndex).sourceIds[relativeReadIndex & CHUNK_INDEX_MASK];
   }
 
   /**
@@ -188,7 +234,7 @@ import com.google.android.exoplayer2.util.Util;
 
   /** Returns the timestamp of the first sample, or {@link Long#MIN_VALUE} if the queue is empty. */
   public synchronized long getFirstTimestampUs() {
-    return length == 0 ? Long.MIN_VALUE : timesUs[relativeFirstIndex];
+    return length == 0 ? Long.MIN_VALUE : getTimeUs(relativeFirstIndex);
   }
 
   /**
@@ -237,8 +283,10 @@ import com.google.android.exoplayer2.util.Util;
     }
 
     int relativeReadIndex = getRelativeIndex(readPosition);
-    if (formatRequired || formats[relativeReadIndex] != downstreamFormat) {
-      formatHolder.format = formats[relativeReadIndex];
+    SampleChunk chunk = getChunk(relativeReadIndex);
+    int chunkIndex = relativeReadIndex & CHUNK_INDEX_MASK;
+    if (formatRequired || chunk.formats[chunkIndex] != downstreamFormat) {
+      formatHolder.format = chunk.formats[chunkIndex];
       return C.RESULT_FORMAT_READ;
     }
 
@@ -246,11 +294,11 @@ import com.google.android.exoplayer2.util.Util;
       return C.RESULT_NOTHING_READ;
     }
 
-    buffer.timeUs = timesUs[relativeReadIndex];
-    buffer.setFlags(flags[relativeReadIndex]);
-    extrasHolder.size = sizes[relativeReadIndex];
-    extrasHolder.offset = offsets[relativeReadIndex];
-    extrasHolder.cryptoData = cryptoDatas[relativeReadIndex];
+    buffer.timeUs = chunk.timesUs[chunkIndex];
+    buffer.setFlags(chunk.flags[chunkIndex]);
+    extrasHolder.size = chunk.sizes[chunkIndex];
+    extrasHolder.offset = chunk.offsets[chunkIndex];
+    extrasHolder.cryptoData = chunk.cryptoDatas[chunkIndex];
 
     readPosition++;
     return C.RESULT_BUFFER_READ;
@@ -272,11 +320,11 @@ import com.google.android.exoplayer2.util.Util;
    */
   public synchronized int advanceTo(long timeUs, boolean toKeyframe,
       boolean allowTimeBeyondBuffer) {
-    int relativeReadIndex = getRelativeIndex(readPosition);
-    if (!hasNextSample() || timeUs < timesUs[relativeReadIndex]
+    if (!hasNextSample() || timeUs < getTimeUs(getRelativeIndex(readPosition))
         || (timeUs > largestQueuedTimestampUs && !allowTimeBeyondBuffer)) {
       return SampleQueue.ADVANCE_FAILED;
     }
+    int relativeReadIndex = getRelativeIndex(readPosition);
     int offset = findSampleBefore(relativeReadIndex, length - readPosition, timeUs, toKeyframe);
     if (offset == -1) {
       return SampleQueue.ADVANCE_FAILED;
@@ -325,17 +373,63 @@ import com.google.android.exoplayer2.util.Util;
    *     {@link C#POSITION_UNSET} if no discarding of data is necessary.
    */
   public synchronized long discardTo(long timeUs, boolean toKeyframe, boolean stopAtReadPosition) {
-    if (length == 0 || timeUs < timesUs[relativeFirstIndex]) {
-      return C.POSITION_UNSET;
-    }
-    int searchLength = stopAtReadPosition && readPosition != length ? readPosition + 1 : length;
-    int discardCount = findSampleBefore(relativeFirstIndex, searchLength, timeUs, toKeyframe);
+    int discardCount = getDiscardToCount(timeUs, toKeyframe, stopAtReadPosition);
     if (discardCount == -1) {
       return C.POSITION_UNSET;
     }
     return discardSamples(discardCount);
   }
 
+  /**
+   * Returns the number of samples that {@link #discardTo(long, boolean, boolean)} would discard if
+   * called with the same arguments.
+   *
+   * @param timeUs The time to discard up to.
+   * @param toKeyframe See {@link #discardTo(long, boolean, boolean)}.
+   * @param stopAtReadPosition See {@link #discardTo(long, boolean, boolean)}.
+   * @return The number of samples, or -1 if no discarding would be necessary.
+   */
+  public synchronized int getDiscardToCount(
+      long timeUs, boolean toKeyframe, boolean stopAtReadPosition) {
+    if (length == 0 || timeUs < getTimeUs(relativeFirstIndex)) {
+      return -1;
+    }
+    int searchLength = stopAtReadPosition && readPosition != length ? readPosition + 1 : length;
+    return findSampleBefore(relativeFirstIndex, searchLength, timeUs, toKeyframe);
+  }
+
+  /**
+   * Discards the specified number of samples from the start of the queue.
+   *
+   * @param discardCount The number of samples to discard, which must be a value previously returned
+   *     by {@link #getDiscardToCount(long, boolean, boolean)} with {@code stopAtReadPosition} set to
+   *     true.
+   * @return The corresponding offset up to which data should be discarded.
+   */
+  public synchronized long discardFirstSamples(int discardCount) {
+    Assertions.checkArgument(0 <= discardCount && discardCount <= readPosition);
+    return discardSamples(discardCount);
+  }
+
+  /**
+   * Gets the metadata of a sample in the queue.
+   *
+   * @param offset The offset of the sample from the start of the queue. Must be less than the
+   *     offset of the read position, so that the sample can't be discarded from upstream.
+   * @param holder The holder into which the metadata should be written.
+   */
+  public synchronized void getSampleMetadata(int offset, SampleMetadataHolder holder) {
+    Assertions.checkArgument(0 <= offset && offset < readPosition);
+    int relativeIndex = getRelativeIndex(offset);
+    SampleChunk chunk = getChunk(relativeIndex);
+    int chunkIndex = relativeIndex & CHUNK_INDEX_MASK;
+    holder.timeUs = chunk.timesUs[chunkIndex];
+    holder.flags = chunk.flags[chunkIndex];
+    holder.size = chunk.sizes[chunkIndex];
+    holder.offset = chunk.offsets[chunkIndex];
+    holder.format = chunk.formats[chunkIndex];
+  }
+
   /**
    * Discards samples up to but not including the read position.
    *
@@ -391,52 +485,20 @@ import com.google.android.exoplayer2.util.Util;
     commitSampleTimestamp(timeUs);
 
     int relativeEndIndex = getRelativeIndex(length);
-    timesUs[relativeEndIndex] = timeUs;
-    offsets[relativeEndIndex] = offset;
-    sizes[relativeEndIndex] = size;
-    flags[relativeEndIndex] = sampleFlags;
-    cryptoDatas[relativeEndIndex] = cryptoData;
-    formats[relativeEndIndex] = upstreamFormat;
-    sourceIds[relativeEndIndex] = upstreamSourceId;
+    if ((relativeEndIndex >> CHUNK_LENGTH_SHIFT) == chunkCount) {
+      appendChunk();
+    }
+    SampleChunk chunk = getChunk(relativeEndIndex);
+    int chunkIndex = relativeEndIndex & CHUNK_INDEX_MASK;
+    chunk.timesUs[chunkIndex] = timeUs;
+    chunk.offsets[chunkIndex] = offset;
+    chunk.sizes[chunkIndex] = size;
+    chunk.flags[chunkIndex] = sampleFlags;
+    chunk.cryptoDatas[chunkIndex] = cryptoData;
+    chunk.formats[chunkIndex] = upstreamFormat;
+    chunk.sourceIds[chunkIndex] = upstreamSourceId;
 
     length++;
-    if (length == capacity) {
-      // Increase the capacity.
-      int newCapacity = capacity + SAMPLE_CAPACITY_INCREMENT;
-      int[] newSourceIds = new int[newCapacity];
-      long[] newOffsets = new long[newCapacity];
-      long[] newTimesUs = new long[newCapacity];
-      int[] newFlags = new int[newCapacity];
-      int[] newSizes = new int[newCapacity];
-      CryptoData[] newCryptoDatas = new CryptoData[newCapacity];
-      Format[] newFormats = new Format[newCapacity];
-      int beforeWrap = capacity - relativeFirstIndex;
-      System.arraycopy(offsets, relativeFirstIndex, newOffsets, 0, beforeWrap);
-      System.arraycopy(timesUs, relativeFirstIndex, newTimesUs, 0, beforeWrap);
-      System.arraycopy(flags, relativeFirstIndex, newFlags, 0, beforeWrap);
-      System.arraycopy(sizes, relativeFirstIndex, newSizes, 0, beforeWrap);
-      System.arraycopy(cryptoDatas, relativeFirstIndex, newCryptoDatas, 0, beforeWrap);
-      System.arraycopy(formats, relativeFirstIndex, newFormats, 0, beforeWrap);
-      System.arraycopy(sourceIds, relativeFirstIndex, newSourceIds, 0, beforeWrap);
-      int afterWrap = relativeFirstIndex;
-      System.arraycopy(offsets, 0, newOffsets, beforeWrap, afterWrap);
-      System.arraycopy(timesUs, 0, newTimesUs, beforeWrap, afterWrap);
-      System.arraycopy(flags, 0, newFlags, beforeWrap, afterWrap);
-      System.arraycopy(sizes, 0, newSizes, beforeWrap, afterWrap);
-      System.arraycopy(cryptoDatas, 0, newCryptoDatas, beforeWrap, afterWrap);
-      System.arraycopy(formats, 0, newFormats, beforeWrap, afterWrap);
-      System.arraycopy(sourceIds, 0, newSourceIds, beforeWrap, afterWrap);
-      offsets = newOffsets;
-      timesUs = newTimesUs;
-      flags = newFlags;
-      sizes = newSizes;
-      cryptoDatas = newCryptoDatas;
-      formats = newFormats;
-      sourceIds = newSourceIds;
-      relativeFirstIndex = 0;
-      length = capacity;
-      capacity = newCapacity;
-    }
   }
 
   public synchronized void commitSampleTimestamp(long timeUs) {
@@ -461,12 +523,9 @@ import com.google.android.exoplayer2.util.Util;
     }
     int retainCount = length;
     int relativeSampleIndex = getRelativeIndex(length - 1);
-    while (retainCount > readPosition && timesUs[relativeSampleIndex] >= timeUs) {
+    while (retainCount > readPosition && getTimeUs(relativeSampleIndex) >= timeUs) {
       retainCount--;
       relativeSampleIndex--;
-      if (relativeSampleIndex == -1) {
-        relativeSampleIndex = capacity - 1;
-      }
     }
     discardUpstreamSamples(absoluteFirstIndex + retainCount);
     return true;
@@ -491,15 +550,20 @@ import com.google.android.exoplayer2.util.Util;
     // switching to a binary search would yield any real benefit.
     int sampleCountToTarget = -1;
     int searchIndex = relativeStartIndex;
-    for (int i = 0; i < length && timesUs[searchIndex] <= timeUs; i++) {
-      if (!keyframe || (flags[searchIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+    SampleChunk chunk = getChunk(searchIndex);
+    for (int i = 0; i < length; i++) {
+      int chunkIndex = searchIndex & CHUNK_INDEX_MASK;
+      if (chunkIndex == 0) {
+        chunk = getChunk(searchIndex);
+      }
+      if (chunk.timesUs[chunkIndex] > timeUs) {
+        break;
+      }
+      if (!keyframe || (chunk.flags[chunkIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
         // We've found a suitable sample.
         sampleCountToTarget = i;
       }
       searchIndex++;
-      if (searchIndex == capacity) {
-        searchIndex = 0;
-      }
     }
     return sampleCountToTarget;
   }
@@ -513,22 +577,33 @@ import com.google.android.exoplayer2.util.Util;
   private long discardSamples(int discardCount) {
     largestDiscardedTimestampUs = Math.max(largestDiscardedTimestampUs,
         getLargestTimestamp(discardCount));
+    long discardToPosition;
+    if (discardCount == length) {
+      int relativeLastDiscardIndex = getRelativeIndex(discardCount - 1);
+      SampleChunk chunk = getChunk(relativeLastDiscardIndex);
+      int chunkIndex = relativeLastDiscardIndex & CHUNK_INDEX_MASK;
+      discardToPosition = chunk.offsets[chunkIndex] + chunk.sizes[chunkIndex];
+    } else {
+      int relativeNewFirstIndex = getRelativeIndex(discardCount);
+      discardToPosition =
+          getChunk(relativeNewFirstIndex).offsets[relativeNewFirstIndex & CHUNK_INDEX_MASK];
+    }
     length -= discardCount;
     absoluteFirstIndex += discardCount;
     relativeFirstIndex += discardCount;
-    if (relativeFirstIndex >= capacity) {
-      relativeFirstIndex -= capacity;
+    while (relativeFirstIndex >= CHUNK_LENGTH) {
+      // The first chunk no longer holds any samples.
+      recycleChunk(chunks[firstChunkIndex]);
+      chunks[firstChunkIndex] = null;
+      firstChunkIndex = (firstChunkIndex + 1) & (chunks.length - 1);
+      chunkCount--;
+      relativeFirstIndex -= CHUNK_LENGTH;
     }
     readPosition -= discardCount;
     if (readPosition < 0) {
       readPosition = 0;
     }
-    if (length == 0) {
-      int relativeLastDiscardIndex = (relativeFirstIndex == 0 ? capacity : relativeFirstIndex) - 1;
-      return offsets[relativeLastDiscardIndex] + sizes[relativeLastDiscardIndex];
-    } else {
-      return offsets[relativeFirstIndex];
-    }
+    return discardToPosition;
   }
 
   /**
@@ -546,26 +621,86 @@ import com.google.android.exoplayer2.util.Util;
     long largestTimestampUs = Long.MIN_VALUE;
     int relativeSampleIndex = getRelativeIndex(length - 1);
     for (int i = 0; i < length; i++) {
-      largestTimestampUs = Math.max(largestTimestampUs, timesUs[relativeSampleIndex]);
-      if ((flags[relativeSampleIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+      SampleChunk chunk = getChunk(relativeSampleIndex);
+      int chunkIndex = relativeSampleIndex & CHUNK_INDEX_MASK;
+      largestTimestampUs = Math.max(largestTimestampUs, chunk.timesUs[chunkIndex]);
+      if ((chunk.flags[chunkIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
         break;
       }
       relativeSampleIndex--;
-      if (relativeSampleIndex == -1) {
-        relativeSampleIndex = capacity - 1;
-      }
     }
     return largestTimestampUs;
   }
 
-   /**
-    * Returns the relative index for a given offset from the start of the queue.
-    *
-    * @param offset The offset, which must be in the range [0, length].
-    */
+  /**
+   * Returns the relative index for a given offset from the start of the queue. A relative index is
+   * the position of a sample counted from the start of the first chunk in the ring. The sample is
+   * held at index {@code relativeIndex & CHUNK_INDEX_MASK} in the chunk returned by {@link
+   * #getChunk(int)}.
+   *
+   * @param offset The offset, which must be in the range [0, length].
+   */
   private int getRelativeIndex(int offset) {
-    int relativeIndex = relativeFirstIndex + offset;
-    return relativeIndex < capacity ? relativeIndex : relativeIndex - capacity;
+    return relativeFirstIndex + offset;
+  }
+
+  /**
+   * Returns the chunk holding the sample at the specified relative index.
+   *
+   * @param relativeIndex The relative index, which must refer to a chunk in use.
+   */
+  private SampleChunk getChunk(int relativeIndex) {
+    return chunks[(firstChunkIndex + (relativeIndex >> CHUNK_LENGTH_SHIFT)) & (chunks.length - 1)];
+  }
+
+  /** Returns the timestamp of the sample at the specified relative index. */
+  private long getTimeUs(int relativeIndex) {
+    return getChunk(relativeIndex).timesUs[relativeIndex & CHUNK_INDEX_MASK];
+  }
+
+  /**
+   * Adds a chunk to the end of the ring, doubling the capacity of the ring if it's full. Only the
+   * chunk references are copied when the ring grows.
+   */
+  private void appendChunk() {
+    if (chunkCount == chunks.length) {
+      SampleChunk[] newChunks = new SampleChunk[chunks.length * 2];
+      int beforeWrap = chunks.length - firstChunkIndex;
+      System.arraycopy(chunks, firstChunkIndex, newChunks, 0, beforeWrap);
+      System.arraycopy(chunks, 0, newChunks, beforeWrap, firstChunkIndex);
+      chunks = newChunks;
+      firstChunkIndex = 0;
+    }
+    SampleChunk chunk = spareChunk != null ? spareChunk : new SampleChunk();
+    spareChunk = null;
+    chunks[(firstChunkIndex + chunkCount) & (chunks.length - 1)] = chunk;
+    chunkCount++;
+  }
+
+  /**
+   * Removes chunks from the end of the ring that aren't needed to hold samples up to the specified
+   * relative index.
+   *
+   * @param relativeEndIndex The relative index up to which (exclusive) samples are held.
+   */
+  private void removeChunksAfter(int relativeEndIndex) {
+    int requiredChunkCount = (relativeEndIndex + CHUNK_INDEX_MASK) >> CHUNK_LENGTH_SHIFT;
+    while (chunkCount > requiredChunkCount) {
+      chunkCount--;
+      int chunkIndex = (firstChunkIndex + chunkCount) & (chunks.length - 1);
+      recycleChunk(chunks[chunkIndex]);
+      chunks[chunkIndex] = null;
+    }
+    if (chunkCount == 0) {
+      firstChunkIndex = 0;
+    }
+  }
+
+  private void recycleChunk(SampleChunk chunk) {
+    // Release the formats and crypto data held by the chunk.
+    Arrays.fill(chunk.cryptoDatas, null);
+    Arrays.fill(chunk.formats, null);
+    spareChunk = chunk;
   }
 
 }
@@ -16,6 +16,7 @@
 package com.google.android.exoplayer2.source;
 
 import android.support.annotation.Nullable;
+import android.util.Log;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.FormatHolder;
@@ -23,6 +24,7 @@ import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.source.SampleMetadataQueue.SampleExtrasHolder;
+import com.google.android.exoplayer2.source.SampleMetadataQueue.SampleMetadataHolder;
 import com.google.android.exoplayer2.upstream.Allocation;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.util.ParsableByteArray;
@@ -51,7 +53,9 @@ public final class SampleQueue implements TrackOutput {
 
   public static final int ADVANCE_FAILED = -1;
 
+  private static final String TAG = "SampleQueue";
   private static final int INITIAL_SCRATCH_SIZE = 32;
+  private static final int MAX_DIRECT_WRITE_SCRATCH_SIZE = 16 * 1024;
 
   private final Allocator allocator;
   private final int allocationLength;
@@ -66,6 +70,10 @@ public final class SampleQueue implements TrackOutput {
 
   // Accessed only by the consuming thread.
   private Format downstreamFormat;
+  private @Nullable SampleSpillStore spillStore;
+  private @Nullable SampleMetadataHolder spillMetadataHolder;
+  private boolean readingSpilledSamples;
+  private boolean rewound;
 
   // Accessed only by the loading thread (or the consuming thread when there is no loading thread).
   private boolean pendingFormatAdjustment;
@@ -73,7 +81,9 @@ public final class SampleQueue implements TrackOutput {
   private long sampleOffsetUs;
   private long totalBytesWritten;
   private boolean pendingSplice;
+  private int pendingSkipSampleCount;
   private UpstreamFormatChangedListener upstreamFormatChangeListener;
+  private byte[] directWriteScratch;
 
   /**
    * @param allocator An {@link Allocator} from which allocations for sample data can be obtained.
@@ -107,12 +117,14 @@ public final class SampleQueue implements TrackOutput {
    *     must be called after the reset before any more samples can be queued.
    */
   public void reset(boolean resetUpstreamFormat) {
+    clearSpillStore();
     metadataQueue.reset(resetUpstreamFormat);
     clearAllocationNodes(firstAllocationNode);
     firstAllocationNode = new AllocationNode(0, allocationLength);
     readAllocationNode = firstAllocationNode;
     writeAllocationNode = firstAllocationNode;
     totalBytesWritten = 0;
+    pendingSkipSampleCount = 0;
     allocator.trim();
   }
 
@@ -132,6 +144,16 @@ public final class SampleQueue implements TrackOutput {
     pendingSplice = true;
   }
 
+  /**
+   * Indicates that the next samples to be queued duplicate samples that are already queued, and
+   * should be dropped.
+   *
+   * @param sampleCount The number of samples to drop.
+   */
+  public void skipUpstreamSamples(int sampleCount) {
+    pendingSkipSampleCount = sampleCount;
+  }
+
   /**
    * Returns the current absolute write index.
    */
@@ -174,11 +196,41 @@ public final class SampleQueue implements TrackOutput {
 
   // Called by the consuming thread.
 
+  /**
+   * Sets a store to which samples are written when they're discarded from the front of the queue
+   * by {@link #discardTo(long, boolean, boolean)} with {@code stopAtReadPosition} set to true. This
+   * is the case for samples that fall out of the back-buffer of an enabled track.
+   *
+   * <p>A seek within the queue, made by calling {@link #rewind()} followed by {@link
+   * #advanceTo(long, boolean, boolean)}, to a time before the first sample in the queue then reads
+   * from the store, starting at the keyframe before or at that time. Reading continues into the
+   * queue once the end of the store is reached. Encrypted samples are not written to the store.
+   * Samples read from the store become available once the store has read them ahead in the
+   * background, until which {@link #hasNextSample()} returns false.
+   *
+   * <p>The queue takes ownership of the store, which is cleared whenever samples in the queue stop
+   * being contiguous with those in the store, and when the queue is {@link #reset()}. The store is
+   * released when it's replaced by a subsequent call to this method.
+   *
+   * @param spillStore The store, or null to stop writing samples to a store and release the current
+   *     store.
+   */
+  public void setSpillStore(@Nullable SampleSpillStore spillStore) {
+    readingSpilledSamples = false;
+    if (this.spillStore != null) {
+      this.spillStore.release();
+    }
+    this.spillStore = spillStore;
+    if (spillStore != null && spillMetadataHolder == null) {
+      spillMetadataHolder = new SampleMetadataHolder();
+    }
+  }
+
   /**
    * Returns whether a sample is available to be read.
    */
   public boolean hasNextSample() {
-    return metadataQueue.hasNextSample();
+    return readingSpilledSamples ? spillStore.isReady() : metadataQueue.hasNextSample();
   }
 
   /**
@@ -235,8 +287,10 @@ public final class SampleQueue implements TrackOutput {
    * Rewinds the read position to the first sample in the queue.
    */
   public void rewind() {
+    stopReadingSpilledSamples();
     metadataQueue.rewind();
     readAllocationNode = firstAllocationNode;
+    rewound = true;
   }
 
   /**
@@ -250,20 +304,42 @@ public final class SampleQueue implements TrackOutput {
    *     which case the read position is advanced to the first remaining sample.
    */
   public void discardTo(long timeUs, boolean toKeyframe, boolean stopAtReadPosition) {
-    discardDownstreamTo(metadataQueue.discardTo(timeUs, toKeyframe, stopAtReadPosition));
+    if (spillStore == null) {
+      discardDownstreamTo(metadataQueue.discardTo(timeUs, toKeyframe, stopAtReadPosition));
+      return;
+    }
+    int discardCount = metadataQueue.getDiscardToCount(timeUs, toKeyframe, stopAtReadPosition);
+    if (discardCount == -1) {
+      return;
+    }
+    if (!stopAtReadPosition) {
+      // The discarded samples may include unread ones, so they're not written to the store.
+      if (discardCount > 0) {
+        clearSpillStore();
+      }
+      discardDownstreamTo(metadataQueue.discardTo(timeUs, toKeyframe, false));
+      return;
+    }
+    spillSamples(discardCount);
+    discardDownstreamTo(metadataQueue.discardFirstSamples(discardCount));
   }
 
   /**
    * Discards up to but not including the read position.
    */
   public void discardToRead() {
-    discardDownstreamTo(metadataQueue.discardToRead());
+    long discardToPosition = metadataQueue.discardToRead();
+    if (discardToPosition != C.POSITION_UNSET) {
+      clearSpillStore();
+    }
+    discardDownstreamTo(discardToPosition);
   }
 
   /**
    * Discards to the end of the queue. The read position is also advanced.
    */
   public void discardToEnd() {
+    clearSpillStore();
     discardDownstreamTo(metadataQueue.discardToEnd());
   }
 
@@ -273,7 +349,13 @@ public final class SampleQueue implements TrackOutput {
    * @return The number of samples that were skipped.
    */
   public int advanceToEnd() {
-    return metadataQueue.advanceToEnd();
+    rewound = false;
+    int skipCount = 0;
+    if (readingSpilledSamples) {
+      skipCount = spillStore.getRemainingSampleCount();
+      stopReadingSpilledSamples();
+    }
+    return skipCount + metadataQueue.advanceToEnd();
   }
 
   /**
@@ -290,7 +372,22 @@ public final class SampleQueue implements TrackOutput {
    *     meeting the specified criteria.
    */
   public int advanceTo(long timeUs, boolean toKeyframe, boolean allowTimeBeyondBuffer) {
-    return metadataQueue.advanceTo(timeUs, toKeyframe, allowTimeBeyondBuffer);
+    boolean seeking = rewound;
+    rewound = false;
+    if (readingSpilledSamples) {
+      return advanceSpilledSamplesTo(timeUs, toKeyframe, allowTimeBeyondBuffer);
+    }
+    int skipCount = metadataQueue.advanceTo(timeUs, toKeyframe, allowTimeBeyondBuffer);
+    if (skipCount == ADVANCE_FAILED
+        && seeking
+        && spillStore != null
+        && isBeforeQueue(timeUs, allowTimeBeyondBuffer)
+        && spillStore.seekTo(timeUs)) {
+      // Seek back into the samples that were spilled from the front of the queue.
+      readingSpilledSamples = true;
+      return 0;
+    }
+    return skipCount;
   }
 
   /**
@@ -302,7 +399,12 @@ public final class SampleQueue implements TrackOutput {
    *     of the next sample that will be written.
    */
   public boolean setReadPosition(int sampleIndex) {
-    return metadataQueue.setReadPosition(sampleIndex);
+    rewound = false;
+    if (!metadataQueue.setReadPosition(sampleIndex)) {
+      return false;
+    }
+    stopReadingSpilledSamples();
+    return true;
   }
 
   /**
@@ -323,6 +425,16 @@ public final class SampleQueue implements TrackOutput {
    */
   public int read(FormatHolder formatHolder, DecoderInputBuffer buffer, boolean formatRequired,
       boolean loadingFinished, long decodeOnlyUntilUs) {
+    rewound = false;
+    if (readingSpilledSamples) {
+      try {
+        return readSpilledSample(formatHolder, buffer, formatRequired, decodeOnlyUntilUs);
+      } catch (IOException e) {
+        // Continue from the start of the queue.
+        Log.w(TAG, "Failed to read spilled sample", e);
+        clearSpillStore();
+      }
+    }
     int result = metadataQueue.read(formatHolder, buffer, formatRequired, loadingFinished,
         downstreamFormat, extrasHolder);
     switch (result) {
@@ -350,6 +462,124 @@ public final class SampleQueue implements TrackOutput {
     }
   }
 
+  /**
+   * Reads the next sample from {@link #spillStore}.
+   *
+   * @see #read(FormatHolder, DecoderInputBuffer, boolean, boolean, long)
+   */
+  @SuppressWarnings("ReferenceEquality")
+  private int readSpilledSample(FormatHolder formatHolder, DecoderInputBuffer buffer,
+      boolean formatRequired, long decodeOnlyUntilUs) throws IOException {
+    if (!spillStore.isReady()) {
+      return C.RESULT_NOTHING_READ;
+    }
+    Format format = spillStore.peekFormat();
+    if (formatRequired || format != downstreamFormat) {
+      formatHolder.format = format;
+      downstreamFormat = format;
+      return C.RESULT_FORMAT_READ;
+    }
+    if (buffer.isFlagsOnly()) {
+      return C.RESULT_NOTHING_READ;
+    }
+    spillStore.readSample(buffer);
+    if (buffer.timeUs < decodeOnlyUntilUs) {
+      buffer.addFlag(C.BUFFER_FLAG_DECODE_ONLY);
+    }
+    if (!spillStore.hasNextSample()) {
+      stopReadingSpilledSamples();
+    }
+    return C.RESULT_BUFFER_READ;
+  }
+
+  /**
+   * Advances the read position while reading from {@link #spillStore}.
+   *
+   * @see #advanceTo(long, boolean, boolean)
+   */
+  private int advanceSpilledSamplesTo(
+      long timeUs, boolean toKeyframe, boolean allowTimeBeyondBuffer) {
+    if (!isBeforeQueue(timeUs, allowTimeBeyondBuffer)) {
+      int skipCount = metadataQueue.advanceTo(timeUs, toKeyframe, allowTimeBeyondBuffer);
+      if (skipCount != ADVANCE_FAILED) {
+        skipCount += spillStore.getRemainingSampleCount();
+        stopReadingSpilledSamples();
+        return skipCount;
+      }
+    }
+    // Samples are only read from the store starting at keyframes.
+    return spillStore.advanceTo(timeUs);
+  }
+
+  /**
+   * Returns whether the specified time is before the samples in the queue, or whether the queue is
+   * empty and an advance to the time would be permitted.
+   */
+  private boolean isBeforeQueue(long timeUs, boolean allowTimeBeyondBuffer) {
+    long firstTimestampUs = metadataQueue.getFirstTimestampUs();
+    if (firstTimestampUs != Long.MIN_VALUE) {
+      return timeUs < firstTimestampUs;
+    }
+    return allowTimeBeyondBuffer || timeUs <= metadataQueue.getLargestQueuedTimestampUs();
+  }
+
+  /**
+   * Writes the specified number of samples from the front of the queue to {@link #spillStore}.
+   * If an error occurs, the store is cleared and subsequent samples are written to the empty store.
+   *
+   * @param sampleCount The number of samples to write.
+   */
+  private void spillSamples(int sampleCount) {
+    SampleMetadataHolder holder = spillMetadataHolder;
+    AllocationNode node = firstAllocationNode;
+    for (int i = 0; i < sampleCount; i++) {
+      metadataQueue.getSampleMetadata(i, holder);
+      if ((holder.flags & C.BUFFER_FLAG_ENCRYPTED) != 0) {
+        spillStore.clear();
+        continue;
+      }
+      long position = holder.offset;
+      int remaining = holder.size;
+      if (position < node.startPosition) {
+        node = firstAllocationNode;
+      }
+      try {
+        spillStore.startSample(holder.timeUs, holder.flags, holder.size, holder.format);
+        while (remaining > 0) {
+          while (position >= node.endPosition) {
+            node = node.next;
+          }
+          int toWrite = Math.min(remaining, (int) (node.endPosition - position));
+          int offset = node.translateOffset(position);
+          if (node.allocation.data != null) {
+            spillStore.writeSampleData(node.allocation.data, offset, toWrite);
+          } else {
+            spillStore.writeSampleData(node.getReadBuffer(offset, toWrite));
+          }
+          remaining -= toWrite;
+          position += toWrite;
+        }
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to spill sample", e);
+        spillStore.clear();
+      }
+    }
+  }
+
+  private void stopReadingSpilledSamples() {
+    if (readingSpilledSamples) {
+      readingSpilledSamples = false;
+      spillStore.stopReading();
+    }
+  }
+
+  private void clearSpillStore() {
+    readingSpilledSamples = false;
+    if (spillStore != null) {
+      spillStore.clear();
+    }
+  }
+
   /**
    * Reads encryption data for the current sample.
    * <p>
@@ -438,7 +668,12 @@ public final class SampleQueue implements TrackOutput {
     while (remaining > 0) {
       int toCopy = Math.min(remaining, (int) (readAllocationNode.endPosition - absolutePosition));
       Allocation allocation = readAllocationNode.allocation;
-      target.put(allocation.data, readAllocationNode.translateOffset(absolutePosition), toCopy);
+      int offset = readAllocationNode.translateOffset(absolutePosition);
+      if (allocation.data != null) {
+        target.put(allocation.data, offset, toCopy);
+      } else {
+        target.put(readAllocationNode.getReadBuffer(offset, toCopy));
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == readAllocationNode.endPosition) {
@@ -460,8 +695,12 @@ public final class SampleQueue implements TrackOutput {
     while (remaining > 0) {
       int toCopy = Math.min(remaining, (int) (readAllocationNode.endPosition - absolutePosition));
       Allocation allocation = readAllocationNode.allocation;
-      System.arraycopy(allocation.data, readAllocationNode.translateOffset(absolutePosition),
-          target, length - remaining, toCopy);
+      int offset = readAllocationNode.translateOffset(absolutePosition);
+      if (allocation.data != null) {
+        System.arraycopy(allocation.data, offset, target, length - remaining, toCopy);
+      } else {
+        readAllocationNode.getReadBuffer(offset, toCopy).get(target, length - remaining, toCopy);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == readAllocationNode.endPosition) {
@@ -544,8 +783,23 @@ public final class SampleQueue implements TrackOutput {
   public int sampleData(ExtractorInput input, int length, boolean allowEndOfInput)
       throws IOException, InterruptedException {
     length = preAppend(length);
-    int bytesAppended = input.read(writeAllocationNode.allocation.data,
-        writeAllocationNode.translateOffset(totalBytesWritten), length);
+    Allocation allocation = writeAllocationNode.allocation;
+    int offset = writeAllocationNode.translateOffset(totalBytesWritten);
+    int bytesAppended;
+    if (allocation.data != null) {
+      bytesAppended = input.read(allocation.data, offset, length);
+    } else {
+      // The input can only be read into an array, so read into a scratch array and copy the data
+      // into the allocation's buffer.
+      if (directWriteScratch == null) {
+        directWriteScratch = new byte[Math.min(allocationLength, MAX_DIRECT_WRITE_SCRATCH_SIZE)];
+      }
+      length = Math.min(length, directWriteScratch.length);
+      bytesAppended = input.read(directWriteScratch, 0, length);
+      if (bytesAppended != C.RESULT_END_OF_INPUT) {
+        writeAllocationNode.getWriteBuffer(offset).put(directWriteScratch, 0, bytesAppended);
+      }
+    }
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
@@ -560,8 +814,13 @@ public final class SampleQueue implements TrackOutput {
   public void sampleData(ParsableByteArray buffer, int length) {
     while (length > 0) {
       int bytesAppended = preAppend(length);
-      buffer.readBytes(writeAllocationNode.allocation.data,
-          writeAllocationNode.translateOffset(totalBytesWritten), bytesAppended);
+      Allocation allocation = writeAllocationNode.allocation;
+      int offset = writeAllocationNode.translateOffset(totalBytesWritten);
+      if (allocation.data != null) {
+        buffer.readBytes(allocation.data, offset, bytesAppended);
+      } else {
+        buffer.readBytes(writeAllocationNode.getWriteBuffer(offset), bytesAppended);
+      }
       length -= bytesAppended;
       postAppend(bytesAppended);
     }
@@ -573,6 +832,10 @@ public final class SampleQueue implements TrackOutput {
     if (pendingFormatAdjustment) {
       format(lastUnadjustedFormat);
     }
+    if (pendingSkipSampleCount > 0) {
+      pendingSkipSampleCount--;
+      return;
+    }
     if (pendingSplice) {
       if ((flags & C.BUFFER_FLAG_KEY_FRAME) == 0 || !metadataQueue.attemptSplice(timeUs)) {
         return;
@@ -681,6 +944,10 @@ public final class SampleQueue implements TrackOutput {
      */
     @Nullable public AllocationNode next;
 
+    // Views of the allocation's buffer, if it has one, for the reading and the loading thread.
+    @Nullable private ByteBuffer readBuffer;
+    @Nullable private ByteBuffer writeBuffer;
+
     /**
      * @param startPosition See {@link #startPosition}.
      * @param allocationLength The length of the {@link Allocation} with which this node will be
@@ -704,8 +971,41 @@ public final class SampleQueue implements TrackOutput {
     }
 
     /**
-     * Gets the offset into the {@link #allocation}'s {@link Allocation#data} that corresponds to
-     * the specified absolute position.
+     * Returns a view of the {@link #allocation}'s {@link Allocation#buffer}, positioned for reading
+     * a range of its data. Must only be called by the reading thread.
+     *
+     * @param offset The offset of the data into the allocation's buffer.
+     * @param length The length of the data.
+     * @return The view, whose position and limit delimit the data.
+     */
+    public ByteBuffer getReadBuffer(int offset, int length) {
+      if (readBuffer == null) {
+        readBuffer = allocation.buffer.duplicate();
+      }
+      readBuffer.limit(offset + length);
+      readBuffer.position(offset);
+      return readBuffer;
+    }
+
+    /**
+     * Returns a view of the {@link #allocation}'s {@link Allocation#buffer}, positioned for writing
+     * data up to the end of the allocation. Must only be called by the loading thread.
+     *
+     * @param offset The offset into the allocation's buffer at which to write.
+     * @return The view, whose position is {@code offset}.
+     */
+    public ByteBuffer getWriteBuffer(int offset) {
+      if (writeBuffer == null) {
+        writeBuffer = allocation.buffer.duplicate();
+      }
+      writeBuffer.limit((int) (endPosition - startPosition) + allocation.offset);
+      writeBuffer.position(offset);
+      return writeBuffer;
+    }
+
+    /**
+     * Gets the offset into the {@link #allocation}'s {@link Allocation#data} or {@link
+     * Allocation#buffer} that corresponds to the specified absolute position.
      *
      * @param absolutePosition The absolute position.
      * @return The corresponding offset into the allocation's data.
@@ -721,6 +1021,8 @@ public final class SampleQueue implements TrackOutput {
      */
     public AllocationNode clear() {
       allocation = null;
+      readBuffer = null;
+      writeBuffer = null;
       AllocationNode temp = next;
       next = null;
       return temp;
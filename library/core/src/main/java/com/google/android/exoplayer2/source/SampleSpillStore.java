@@ -0,0 +1,718 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A file backed store of samples that have been discarded from the front of a {@link
+ * SampleQueue}, from which they can be read back after a backward seek.
+ *
+ * <p>Samples are appended to segment files in a directory, each sample preceded by its metadata.
+ * When the size of the store exceeds its maximum, whole segments are deleted starting from the
+ * oldest. The timestamps and positions of keyframes are indexed in memory, so that a seek to a
+ * keyframe doesn't need to read the files.
+ *
+ * <p>The files are only accessed by a background thread owned by the store. Appended samples are
+ * buffered in memory and written a buffer at a time, and samples after the read position are read
+ * ahead into memory, so that the thread using the store never blocks on disk I/O. Segment files
+ * left in the directory by a process that didn't release its stores are deleted by the background
+ * thread of the first store using the directory, before any store writes to it.
+ *
+ * <p>The store must only be accessed by the thread that consumes from the {@link SampleQueue}, and
+ * must be released by calling {@link #release()} once it's no longer needed.
+ */
+public final class SampleSpillStore {
+
+  private static final String FILE_PREFIX = "spill";
+  private static final String FILE_SUFFIX = ".spill";
+  // The timestamp, flags, size and format index of a sample.
+  private static final int SAMPLE_HEADER_LENGTH = 20;
+  private static final int TARGET_SEGMENT_COUNT = 8;
+  private static final int INITIAL_KEYFRAME_CAPACITY = 64;
+  private static final int WRITE_BUFFER_LENGTH = 64 * 1024;
+  private static final int MAX_FREE_WRITE_BUFFERS = 2;
+  private static final int READ_AHEAD_BYTES = 256 * 1024;
+
+  private static final HashSet<File> cleanedDirectories = new HashSet<>();
+
+  private final File directory;
+  private final long maxBytes;
+  private final long segmentLength;
+  private final ExecutorService executor;
+  private final ByteBuffer headerBuffer;
+  private final ArrayList<Segment> segments;
+  private final ArrayList<Format> formats;
+
+  // Keyframes with indices in [firstKeyframeIndex, keyframeCount) are held in the store.
+  private long[] keyframeTimesUs;
+  private long[] keyframePositions;
+  private int[] keyframeSampleIndices;
+  private int firstKeyframeIndex;
+  private int keyframeCount;
+
+  private long writePosition;
+  private int writeSampleIndex;
+  private int pendingSampleBytes;
+  private byte[] writeBuffer;
+  private int writeBufferLength;
+
+  private boolean reading;
+  private long readPosition;
+  private int readSampleIndex;
+
+  // Shared with the background thread, and guarded by this store.
+  private final ArrayList<byte[]> freeWriteBuffers;
+  private final ArrayDeque<SpilledSample> readAheadSamples;
+  private int readAheadGeneration;
+  private boolean readAheadInProgress;
+  private long readAheadPosition;
+  private int readAheadSampleIndex;
+  private int readAheadBytes;
+  private IOException readAheadError;
+  private IOException writeError;
+
+  /**
+   * @param directory The directory in which to create segment files. Must exist. Segment files
+   *     left in the directory by an earlier process are deleted.
+   * @param maxBytes The maximum number of bytes to store. The store is allowed to exceed this size
+   *     by up to one segment, which is an eighth of this size.
+   */
+  public SampleSpillStore(File directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    segmentLength = Math.max(1, maxBytes / TARGET_SEGMENT_COUNT);
+    executor = Util.newSingleThreadExecutor("SampleSpillStore");
+    headerBuffer = ByteBuffer.allocate(SAMPLE_HEADER_LENGTH);
+    segments = new ArrayList<>();
+    formats = new ArrayList<>();
+    keyframeTimesUs = new long[INITIAL_KEYFRAME_CAPACITY];
+    keyframePositions = new long[INITIAL_KEYFRAME_CAPACITY];
+    keyframeSampleIndices = new int[INITIAL_KEYFRAME_CAPACITY];
+    freeWriteBuffers = new ArrayList<>();
+    readAheadSamples = new ArrayDeque<>();
+    // Runs before the store's first write. Other stores using the directory also run this before
+    // their first write, and block until the directory has been cleaned.
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            maybeDeleteLeftoverFiles(SampleSpillStore.this.directory);
+          }
+        });
+  }
+
+  // Writing.
+
+  /**
+   * Starts appending a sample to the store. The sample data must then be written by one or more
+   * calls to {@link #writeSampleData(byte[], int, int)} or {@link #writeSampleData(ByteBuffer)}.
+   *
+   * @param timeUs The timestamp of the sample.
+   * @param flags The {@link C.BufferFlags} of the sample.
+   * @param size The size of the sample data.
+   * @param format The format of the sample.
+   * @throws IOException If an error occurred writing earlier samples to the store. The store
+   *     should be cleared.
+   */
+  public void startSample(long timeUs, @C.BufferFlags int flags, int size, Format format)
+      throws IOException {
+    Assertions.checkState(pendingSampleBytes == 0 && !reading);
+    IOException error;
+    synchronized (this) {
+      error = writeError;
+    }
+    if (error != null) {
+      throw error;
+    }
+    Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    if (segment == null || writePosition - segment.startPosition >= segmentLength) {
+      flushWriteBuffer();
+      segments.add(new Segment(directory, writePosition));
+    }
+    if ((flags & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+      addKeyframe(timeUs, writePosition, writeSampleIndex);
+    }
+    int formatIndex = formats.size() - 1;
+    if (formatIndex == -1 || formats.get(formatIndex) != format) {
+      formats.add(format);
+      formatIndex++;
+    }
+    headerBuffer.clear();
+    headerBuffer.putLong(timeUs).putInt(flags).putInt(size).putInt(formatIndex);
+    headerBuffer.flip();
+    write(headerBuffer);
+    pendingSampleBytes = size;
+    maybeFinishSample();
+  }
+
+  /**
+   * Writes data of the sample started by {@link #startSample(long, int, int, Format)}.
+   *
+   * @param data An array containing the data.
+   * @param offset The offset of the data in {@code data}.
+   * @param length The length of the data.
+   */
+  public void writeSampleData(byte[] data, int offset, int length) {
+    writeSampleData(ByteBuffer.wrap(data, offset, length));
+  }
+
+  /**
+   * Writes data of the sample started by {@link #startSample(long, int, int, Format)}.
+   *
+   * @param data A buffer whose remaining bytes are the data. Its position is advanced to its limit.
+   */
+  public void writeSampleData(ByteBuffer data) {
+    Assertions.checkState(data.remaining() <= pendingSampleBytes);
+    pendingSampleBytes -= data.remaining();
+    write(data);
+    maybeFinishSample();
+  }
+
+  // Reading.
+
+  /** Returns whether the read position is set and a sample is available to be read. */
+  public boolean hasNextSample() {
+    return reading && readSampleIndex < writeSampleIndex;
+  }
+
+  /**
+   * Returns whether the next sample has been read ahead from the files, so that {@link
+   * #peekFormat()} and {@link #readSample(DecoderInputBuffer)} can be called without blocking, or
+   * whether reading it failed, in which case they throw the error.
+   */
+  public boolean isReady() {
+    if (!hasNextSample()) {
+      return false;
+    }
+    maybeReadAhead();
+    synchronized (this) {
+      return !readAheadSamples.isEmpty() || readAheadError != null;
+    }
+  }
+
+  /** Returns the number of samples from the read position to the end of the store. */
+  public int getRemainingSampleCount() {
+    return reading ? writeSampleIndex - readSampleIndex : 0;
+  }
+
+  /**
+   * Attempts to set the read position to the keyframe before or at the specified time.
+   *
+   * @param timeUs The time to seek to.
+   * @return Whether the read position was set.
+   */
+  public boolean seekTo(long timeUs) {
+    int keyframeIndex = findKeyframeBefore(timeUs, firstKeyframeIndex);
+    if (keyframeIndex == C.INDEX_UNSET || pendingSampleBytes != 0) {
+      return false;
+    }
+    setReadPosition(keyframeIndex);
+    return true;
+  }
+
+  /**
+   * Attempts to advance the read position to the keyframe before or at the specified time.
+   *
+   * @param timeUs The time to advance to.
+   * @return The number of samples that were skipped if the operation was successful, which may be
+   *     equal to 0, or {@link SampleQueue#ADVANCE_FAILED} if there's no keyframe between the next
+   *     sample and the specified time.
+   */
+  public int advanceTo(long timeUs) {
+    if (!hasNextSample()) {
+      return SampleQueue.ADVANCE_FAILED;
+    }
+    int keyframeIndex = findKeyframeBefore(timeUs, findKeyframeAtOrAfter(readSampleIndex));
+    if (keyframeIndex == C.INDEX_UNSET) {
+      return SampleQueue.ADVANCE_FAILED;
+    }
+    int skipCount = keyframeSampleIndices[keyframeIndex] - readSampleIndex;
+    if (skipCount != 0) {
+      setReadPosition(keyframeIndex);
+    }
+    return skipCount;
+  }
+
+  /**
+   * Returns the format of the next sample. Must only be called if {@link #isReady()} returns true.
+   *
+   * @throws IOException If an error occurred reading the sample from the store.
+   */
+  public Format peekFormat() throws IOException {
+    return formats.get(peekSample().formatIndex);
+  }
+
+  /**
+   * Reads the next sample into a buffer, and advances the read position. Must only be called if
+   * {@link #isReady()} returns true.
+   *
+   * @param buffer The buffer into which to read the sample. Its timestamp and flags are set, and
+   *     the sample data is written to its {@link DecoderInputBuffer#data}.
+   * @throws IOException If an error occurred reading the sample from the store.
+   */
+  public void readSample(DecoderInputBuffer buffer) throws IOException {
+    SpilledSample sample = peekSample();
+    synchronized (this) {
+      readAheadSamples.removeFirst();
+      readAheadBytes -= sample.data.length;
+    }
+    buffer.timeUs = sample.timeUs;
+    buffer.setFlags(sample.flags);
+    buffer.ensureSpaceForWrite(sample.data.length);
+    buffer.data.put(sample.data);
+    readPosition = sample.position + SAMPLE_HEADER_LENGTH + sample.data.length;
+    readSampleIndex++;
+    maybeReadAhead();
+  }
+
+  /** Clears the read position, so that no samples are available to be read. */
+  public void stopReading() {
+    reading = false;
+    invalidateReadAhead();
+  }
+
+  /** Deletes all samples from the store, and clears the read position. */
+  public void clear() {
+    stopReading();
+    for (int i = 0; i < segments.size(); i++) {
+      deleteSegment(segments.get(i));
+    }
+    segments.clear();
+    formats.clear();
+    firstKeyframeIndex = 0;
+    keyframeCount = 0;
+    writePosition = 0;
+    writeSampleIndex = 0;
+    pendingSampleBytes = 0;
+    if (writeBuffer != null) {
+      recycleWriteBuffer(writeBuffer);
+      writeBuffer = null;
+      writeBufferLength = 0;
+    }
+    synchronized (this) {
+      writeError = null;
+    }
+  }
+
+  /**
+   * Deletes all samples from the store, and releases its background thread once the files have
+   * been deleted. The store must not be used after it's been released.
+   */
+  public void release() {
+    clear();
+    executor.shutdown();
+  }
+
+  // Internal methods.
+
+  private void maybeFinishSample() {
+    if (pendingSampleBytes == 0) {
+      writeSampleIndex++;
+      maybeDeleteSegments();
+    }
+  }
+
+  private void maybeDeleteSegments() {
+    while (segments.size() > 1
+        && writePosition - segments.get(0).startPosition > maxBytes
+        && (!reading || readPosition >= segments.get(1).startPosition)) {
+      deleteSegment(segments.remove(0));
+      long startPosition = segments.get(0).startPosition;
+      while (firstKeyframeIndex < keyframeCount
+          && keyframePositions[firstKeyframeIndex] < startPosition) {
+        firstKeyframeIndex++;
+      }
+    }
+  }
+
+  private void addKeyframe(long timeUs, long position, int sampleIndex) {
+    if (keyframeCount == keyframeTimesUs.length) {
+      int retainedCount = keyframeCount - firstKeyframeIndex;
+      int capacity =
+          retainedCount * 2 > keyframeTimesUs.length
+              ? keyframeTimesUs.length * 2
+              : keyframeTimesUs.length;
+      keyframeTimesUs = copyRange(keyframeTimesUs, firstKeyframeIndex, retainedCount, capacity);
+      keyframePositions = copyRange(keyframePositions, firstKeyframeIndex, retainedCount, capacity);
+      int[] newSampleIndices = new int[capacity];
+      System.arraycopy(
+          keyframeSampleIndices, firstKeyframeIndex, newSampleIndices, 0, retainedCount);
+      keyframeSampleIndices = newSampleIndices;
+      firstKeyframeIndex = 0;
+      keyframeCount = retainedCount;
+    }
+    keyframeTimesUs[keyframeCount] = timeUs;
+    keyframePositions[keyframeCount] = position;
+    keyframeSampleIndices[keyframeCount] = sampleIndex;
+    keyframeCount++;
+  }
+
+  /**
+   * Returns the index of the last keyframe at or after {@code fromIndex} whose timestamp is before
+   * or at {@code timeUs}, or {@link C#INDEX_UNSET} if there is none.
+   */
+  private int findKeyframeBefore(long timeUs, int fromIndex) {
+    int result = C.INDEX_UNSET;
+    int low = fromIndex;
+    int high = keyframeCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (keyframeTimesUs[mid] <= timeUs) {
+        result = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return result;
+  }
+
+  /** Returns the index of the first keyframe whose sample index is at least {@code sampleIndex}. */
+  private int findKeyframeAtOrAfter(int sampleIndex) {
+    int index = Arrays.binarySearch(keyframeSampleIndices, firstKeyframeIndex, keyframeCount,
+        sampleIndex);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  private void setReadPosition(int keyframeIndex) {
+    reading = true;
+    readPosition = keyframePositions[keyframeIndex];
+    readSampleIndex = keyframeSampleIndices[keyframeIndex];
+    synchronized (this) {
+      invalidateReadAhead();
+      readAheadPosition = readPosition;
+      readAheadSampleIndex = readSampleIndex;
+    }
+    maybeReadAhead();
+  }
+
+  private synchronized SpilledSample peekSample() throws IOException {
+    Assertions.checkState(hasNextSample());
+    SpilledSample sample = readAheadSamples.peekFirst();
+    if (sample == null) {
+      if (readAheadError != null) {
+        throw readAheadError;
+      }
+      throw new IllegalStateException();
+    }
+    return sample;
+  }
+
+  /** Discards samples that have been read ahead, and the results of any read-ahead in progress. */
+  private synchronized void invalidateReadAhead() {
+    readAheadGeneration++;
+    readAheadInProgress = false;
+    readAheadSamples.clear();
+    readAheadBytes = 0;
+    readAheadError = null;
+  }
+
+  private void maybeReadAhead() {
+    ReadAheadTask task;
+    synchronized (this) {
+      if (!reading
+          || readAheadInProgress
+          || readAheadError != null
+          || readAheadBytes >= READ_AHEAD_BYTES / 2
+          || readAheadSampleIndex >= writeSampleIndex) {
+        return;
+      }
+      readAheadInProgress = true;
+      task =
+          new ReadAheadTask(
+              readAheadGeneration,
+              readAheadPosition,
+              writeSampleIndex - readAheadSampleIndex,
+              new ArrayList<>(segments));
+    }
+    // The samples to read may still be buffered in memory.
+    flushWriteBuffer();
+    executor.execute(task);
+  }
+
+  private synchronized void onReadAheadFinished(
+      int generation, ArrayList<SpilledSample> samples, long position, IOException error) {
+    if (generation != readAheadGeneration) {
+      return;
+    }
+    for (int i = 0; i < samples.size(); i++) {
+      SpilledSample sample = samples.get(i);
+      readAheadSamples.addLast(sample);
+      readAheadBytes += sample.data.length;
+    }
+    readAheadPosition = position;
+    readAheadSampleIndex += samples.size();
+    readAheadError = error;
+    readAheadInProgress = false;
+  }
+
+  private void write(ByteBuffer data) {
+    while (data.hasRemaining()) {
+      if (writeBuffer == null) {
+        writeBuffer = obtainWriteBuffer();
+      }
+      int length = Math.min(data.remaining(), WRITE_BUFFER_LENGTH - writeBufferLength);
+      data.get(writeBuffer, writeBufferLength, length);
+      writeBufferLength += length;
+      writePosition += length;
+      if (writeBufferLength == WRITE_BUFFER_LENGTH) {
+        flushWriteBuffer();
+      }
+    }
+  }
+
+  private void flushWriteBuffer() {
+    if (writeBufferLength == 0) {
+      return;
+    }
+    Segment segment = segments.get(segments.size() - 1);
+    long filePosition = writePosition - writeBufferLength - segment.startPosition;
+    executor.execute(new WriteTask(segment, filePosition, writeBuffer, writeBufferLength));
+    writeBuffer = null;
+    writeBufferLength = 0;
+  }
+
+  private void deleteSegment(final Segment segment) {
+    segment.deleteRequested = true;
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            segment.delete();
+          }
+        });
+  }
+
+  private synchronized byte[] obtainWriteBuffer() {
+    return freeWriteBuffers.isEmpty()
+        ? new byte[WRITE_BUFFER_LENGTH]
+        : freeWriteBuffers.remove(freeWriteBuffers.size() - 1);
+  }
+
+  private synchronized void recycleWriteBuffer(byte[] buffer) {
+    if (freeWriteBuffers.size() < MAX_FREE_WRITE_BUFFERS) {
+      freeWriteBuffers.add(buffer);
+    }
+  }
+
+  private synchronized void onWriteError(Segment segment, IOException error) {
+    // Errors writing to a segment that's being deleted don't affect the samples in the store.
+    if (!segment.deleteRequested && writeError == null) {
+      writeError = error;
+    }
+  }
+
+  private static void maybeDeleteLeftoverFiles(File directory) {
+    synchronized (cleanedDirectories) {
+      if (!cleanedDirectories.add(directory.getAbsoluteFile())) {
+        return;
+      }
+      File[] files = directory.listFiles();
+      if (files == null) {
+        return;
+      }
+      for (File file : files) {
+        String name = file.getName();
+        if (name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX)) {
+          file.delete();
+        }
+      }
+    }
+  }
+
+  private static long[] copyRange(long[] array, int from, int length, int capacity) {
+    long[] copy = new long[capacity];
+    System.arraycopy(array, from, copy, 0, length);
+    return copy;
+  }
+
+  private static final class SpilledSample {
+
+    public final long position;
+    public final long timeUs;
+    public final int flags;
+    public final int formatIndex;
+    public final byte[] data;
+
+    public SpilledSample(long position, long timeUs, int flags, int formatIndex, byte[] data) {
+      this.position = position;
+      this.timeUs = timeUs;
+      this.flags = flags;
+      this.formatIndex = formatIndex;
+      this.data = data;
+    }
+
+  }
+
+  /**
+   * A segment file. Its file is created, written, read and deleted only by the background thread.
+   */
+  private static final class Segment {
+
+    public final File directory;
+    public final long startPosition;
+
+    public volatile boolean deleteRequested;
+
+    private File file;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+
+    public Segment(File directory, long startPosition) {
+      this.directory = directory;
+      this.startPosition = startPosition;
+    }
+
+    public void write(long filePosition, ByteBuffer data) throws IOException {
+      if (channel == null) {
+        file = File.createTempFile(FILE_PREFIX, FILE_SUFFIX, directory);
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+      }
+      while (data.hasRemaining()) {
+        filePosition += channel.write(data, filePosition);
+      }
+    }
+
+    public void read(long filePosition, ByteBuffer target) throws IOException {
+      if (channel == null) {
+        throw new EOFException();
+      }
+      while (target.hasRemaining()) {
+        int bytesRead = channel.read(target, filePosition);
+        if (bytesRead == -1) {
+          throw new EOFException();
+        }
+        filePosition += bytesRead;
+      }
+    }
+
+    public void delete() {
+      if (channel == null) {
+        return;
+      }
+      try {
+        randomAccessFile.close();
+      } catch (IOException e) {
+        // Ignore. The file is deleted regardless.
+      }
+      file.delete();
+      channel = null;
+    }
+
+  }
+
+  private final class WriteTask implements Runnable {
+
+    private final Segment segment;
+    private final long filePosition;
+    private final byte[] data;
+    private final int length;
+
+    public WriteTask(Segment segment, long filePosition, byte[] data, int length) {
+      this.segment = segment;
+      this.filePosition = filePosition;
+      this.data = data;
+      this.length = length;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (!segment.deleteRequested) {
+          segment.write(filePosition, ByteBuffer.wrap(data, 0, length));
+        }
+      } catch (IOException e) {
+        onWriteError(segment, e);
+      } finally {
+        recycleWriteBuffer(data);
+      }
+    }
+
+  }
+
+  private final class ReadAheadTask implements Runnable {
+
+    private final int generation;
+    private final long startPosition;
+    private final int maxSampleCount;
+    private final ArrayList<Segment> segments;
+
+    public ReadAheadTask(
+        int generation, long startPosition, int maxSampleCount, ArrayList<Segment> segments) {
+      this.generation = generation;
+      this.startPosition = startPosition;
+      this.maxSampleCount = maxSampleCount;
+      this.segments = segments;
+    }
+
+    @Override
+    public void run() {
+      ArrayList<SpilledSample> samples = new ArrayList<>();
+      ByteBuffer header = ByteBuffer.allocate(SAMPLE_HEADER_LENGTH);
+      long position = startPosition;
+      int bytesRead = 0;
+      IOException error = null;
+      try {
+        while (samples.size() < maxSampleCount && bytesRead < READ_AHEAD_BYTES) {
+          header.clear();
+          read(position, header);
+          header.flip();
+          long timeUs = header.getLong();
+          int flags = header.getInt();
+          byte[] data = new byte[header.getInt()];
+          int formatIndex = header.getInt();
+          read(position + SAMPLE_HEADER_LENGTH, ByteBuffer.wrap(data));
+          samples.add(new SpilledSample(position, timeUs, flags, formatIndex, data));
+          position += SAMPLE_HEADER_LENGTH + data.length;
+          bytesRead += SAMPLE_HEADER_LENGTH + data.length;
+        }
+      } catch (IOException e) {
+        error = e;
+      }
+      onReadAheadFinished(generation, samples, position, error);
+    }
+
+    private void read(long position, ByteBuffer target) throws IOException {
+      Segment segment = null;
+      for (int i = segments.size() - 1; i >= 0; i--) {
+        segment = segments.get(i);
+        if (segment.startPosition <= position) {
+          break;
+        }
+      }
+      segment.read(position - segment.startPosition, target);
+    }
+
+  }
+
+}
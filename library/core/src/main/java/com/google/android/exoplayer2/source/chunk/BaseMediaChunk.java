@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2.source.chunk;
 
+import android.support.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.upstream.DataSource;
@@ -33,6 +34,7 @@ public abstract class BaseMediaChunk extends MediaChunk {
 
   private BaseMediaChunkOutput output;
   private int[] firstSampleIndices;
+  private @Nullable DataSource prefetchedDataSource;
 
   /**
    * @param dataSource The source from which the data should be loaded.
@@ -87,4 +89,20 @@ public abstract class BaseMediaChunk extends MediaChunk {
     return output;
   }
 
+  /**
+   * Sets a {@link DataSource} that reads the chunk's data from memory, where it was loaded ahead of
+   * the chunk. The chunk is then loaded from this source instead of {@link #dataSource}.
+   */
+  /* package */ final void setPrefetchedDataSource(DataSource prefetchedDataSource) {
+    this.prefetchedDataSource = prefetchedDataSource;
+  }
+
+  /**
+   * Returns the {@link DataSource} from which the chunk should be loaded. This is {@link
+   * #dataSource}, unless the chunk's data was loaded ahead of the chunk.
+   */
+  protected final DataSource getLoadDataSource() {
+    return prefetchedDataSource != null ? prefetchedDataSource : dataSource;
+  }
+
 }
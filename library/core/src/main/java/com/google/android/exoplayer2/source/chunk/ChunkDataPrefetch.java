@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.chunk;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.Loader.Loadable;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Loads the data of a {@link BaseMediaChunk} into memory while earlier chunks are still loading.
+ * Once loaded, the chunk can be loaded from the data in memory by passing {@link
+ * #createDataSource()} to {@link BaseMediaChunk#setPrefetchedDataSource(DataSource)}.
+ *
+ * <p>The data is held in allocations obtained from an {@link Allocator}, so that it counts towards
+ * the buffered data. The allocations are returned by {@link #discard()}.
+ */
+/* package */ final class ChunkDataPrefetch implements Loadable {
+
+  private static final int MAX_SCRATCH_SIZE = 32 * 1024;
+
+  /** The chunk whose data is loaded. */
+  public final BaseMediaChunk chunk;
+
+  private final DataSource dataSource;
+  private final Allocator allocator;
+  private final int allocationLength;
+  private final ArrayList<Allocation> allocations;
+
+  // Published to other threads by the write to loadCompleted.
+  private long length;
+
+  private boolean loading;
+  private boolean discarded;
+  private volatile boolean loadCompleted;
+  private volatile boolean loadCanceled;
+
+  /**
+   * @param chunk The chunk whose data should be loaded.
+   * @param dataSource The source from which the data should be loaded. Must not be used by the
+   *     chunk itself, since the two may load at the same time.
+   * @param allocator The {@link Allocator} from which allocations for the data are obtained.
+   */
+  public ChunkDataPrefetch(BaseMediaChunk chunk, DataSource dataSource, Allocator allocator) {
+    this.chunk = chunk;
+    this.dataSource = dataSource;
+    this.allocator = allocator;
+    allocationLength = allocator.getIndividualAllocationLength();
+    allocations = new ArrayList<>();
+  }
+
+  /** Returns whether the data has been loaded completely. */
+  public boolean isLoadCompleted() {
+    return loadCompleted;
+  }
+
+  /**
+   * Returns a {@link DataSource} that reads the loaded data. Must only be called once the data has
+   * been loaded completely, and the source must not be used after {@link #discard()} is called.
+   */
+  public DataSource createDataSource() {
+    return new PrefetchedDataSource(
+        chunk.dataSpec.absoluteStreamPosition,
+        allocations.toArray(new Allocation[allocations.size()]),
+        allocationLength,
+        length);
+  }
+
+  /**
+   * Cancels the load if it's still in progress, and returns the allocations holding the data to
+   * the allocator. If the data is still being loaded, the allocations are returned once the load
+   * ends.
+   */
+  public synchronized void discard() {
+    loadCanceled = true;
+    discarded = true;
+    if (!loading) {
+      releaseAllocations();
+    }
+  }
+
+  // Loadable implementation.
+
+  @Override
+  public void cancelLoad() {
+    loadCanceled = true;
+  }
+
+  @Override
+  public boolean isLoadCanceled() {
+    return loadCanceled;
+  }
+
+  @Override
+  public void load() throws IOException, InterruptedException {
+    synchronized (this) {
+      if (discarded) {
+        return;
+      }
+      loading = true;
+    }
+    try {
+      dataSource.open(chunk.dataSpec);
+      byte[] scratch = null;
+      int bytesRead = 0;
+      while (bytesRead != C.RESULT_END_OF_INPUT && !loadCanceled) {
+        int offset = (int) (length % allocationLength);
+        if (offset == 0) {
+          allocations.add(allocator.allocate());
+        }
+        Allocation allocation = allocations.get(allocations.size() - 1);
+        int readLength = allocationLength - offset;
+        if (allocation.data != null) {
+          bytesRead = dataSource.read(allocation.data, allocation.offset + offset, readLength);
+        } else {
+          // The data source can only read into an array, so read into a scratch array and copy the
+          // data into the allocation's buffer.
+          if (scratch == null) {
+            scratch = new byte[Math.min(allocationLength, MAX_SCRATCH_SIZE)];
+          }
+          bytesRead = dataSource.read(scratch, 0, Math.min(readLength, scratch.length));
+          if (bytesRead != C.RESULT_END_OF_INPUT) {
+            ByteBuffer buffer = allocation.buffer.duplicate();
+            buffer.position(allocation.offset + offset);
+            buffer.put(scratch, 0, bytesRead);
+          }
+        }
+        if (bytesRead != C.RESULT_END_OF_INPUT) {
+          length += bytesRead;
+        }
+      }
+      if (allocations.size() > (length + allocationLength - 1) / allocationLength) {
+        // The last allocation was obtained before reading the end of the input.
+        allocator.release(allocations.remove(allocations.size() - 1));
+      }
+      loadCompleted = !loadCanceled;
+    } finally {
+      Util.closeQuietly(dataSource);
+      synchronized (this) {
+        loading = false;
+        if (discarded || !loadCompleted) {
+          releaseAllocations();
+        }
+      }
+    }
+  }
+
+  private void releaseAllocations() {
+    if (!allocations.isEmpty()) {
+      allocator.release(allocations.toArray(new Allocation[allocations.size()]));
+      allocations.clear();
+    }
+  }
+
+  /** A {@link DataSource} that reads prefetched data. */
+  private static final class PrefetchedDataSource implements DataSource {
+
+    private final long absoluteStreamPosition;
+    private final Allocation[] allocations;
+    private final int allocationLength;
+    private final long limit;
+
+    private Uri uri;
+    private long readPosition;
+    private long bytesRemaining;
+
+    public PrefetchedDataSource(
+        long absoluteStreamPosition, Allocation[] allocations, int allocationLength, long limit) {
+      this.absoluteStreamPosition = absoluteStreamPosition;
+      this.allocations = allocations;
+      this.allocationLength = allocationLength;
+      this.limit = limit;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      uri = dataSpec.uri;
+      long position = dataSpec.absoluteStreamPosition - absoluteStreamPosition;
+      long length = dataSpec.length == C.LENGTH_UNSET ? limit - position : dataSpec.length;
+      if (position < 0 || length < 0 || position + length > limit) {
+        throw new IOException("Unsatisfiable range: [" + position + ", " + dataSpec.length
+            + "], length: " + limit);
+      }
+      readPosition = position;
+      bytesRemaining = length;
+      return bytesRemaining;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      if (readLength == 0) {
+        return 0;
+      } else if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      Allocation allocation = allocations[(int) (readPosition / allocationLength)];
+      int offsetInAllocation = (int) (readPosition % allocationLength);
+      readLength = (int) Math.min(readLength, bytesRemaining);
+      readLength = Math.min(readLength, allocationLength - offsetInAllocation);
+      if (allocation.data != null) {
+        System.arraycopy(
+            allocation.data, allocation.offset + offsetInAllocation, buffer, offset, readLength);
+      } else {
+        ByteBuffer allocationBuffer = allocation.buffer.duplicate();
+        allocationBuffer.position(allocation.offset + offsetInAllocation);
+        allocationBuffer.get(buffer, offset, readLength);
+      }
+      readPosition += readLength;
+      bytesRemaining -= readLength;
+      return readLength;
+    }
+
+    @Override
+    public Uri getUri() {
+      return uri;
+    }
+
+    @Override
+    public void close() {
+      uri = null;
+    }
+  }
+}
@@ -27,6 +27,9 @@ import com.google.android.exoplayer2.source.SampleQueue;
 import com.google.android.exoplayer2.source.SampleStream;
 import com.google.android.exoplayer2.source.SequenceableLoader;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultLoaderFactory;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
@@ -71,9 +74,15 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
   private final SampleQueue primarySampleQueue;
   private final SampleQueue[] embeddedSampleQueues;
   private final BaseMediaChunkOutput mediaChunkOutput;
+  private final Allocator allocator;
+  private final @Nullable DataSource.Factory prefetchDataSourceFactory;
+  private final Loader[] prefetchLoaders;
+  private final ArrayList<ChunkDataPrefetch> prefetches;
+  private final PrefetchCallback prefetchCallback;
 
   private Format primaryDownstreamTrackFormat;
   private @Nullable ReleaseCallback<T> releaseCallback;
+  private @Nullable ChunkDataPrefetch loadingPrefetch;
   private long pendingResetPositionUs;
   private long lastSeekPositionUs;
   /* package */ long decodeOnlyUntilPositionUs;
@@ -102,6 +111,103 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
       long positionUs,
       int minLoadableRetryCount,
       EventDispatcher eventDispatcher) {
+    this(
+        primaryTrackType,
+        embeddedTrackTypes,
+        embeddedTrackFormats,
+        chunkSource,
+        callback,
+        allocator,
+        positionUs,
+        minLoadableRetryCount,
+        eventDispatcher,
+        new DefaultLoaderFactory());
+  }
+
+  /**
+   * @param primaryTrackType The type of the primary track. One of the {@link C} {@code
+   *     TRACK_TYPE_*} constants.
+   * @param embeddedTrackTypes The types of any embedded tracks, or null.
+   * @param embeddedTrackFormats The formats of the embedded tracks, or null.
+   * @param chunkSource A {@link ChunkSource} from which chunks to load are obtained.
+   * @param callback An {@link Callback} for the stream.
+   * @param allocator An {@link Allocator} from which allocations can be obtained.
+   * @param positionUs The position from which to start loading media.
+   * @param minLoadableRetryCount The minimum number of times that the source should retry a load
+   *     before propagating an error.
+   * @param eventDispatcher A dispatcher to notify of events.
+   * @param loaderFactory A factory for the {@link Loader} that loads chunks.
+   */
+  public ChunkSampleStream(
+      int primaryTrackType,
+      int[] embeddedTrackTypes,
+      Format[] embeddedTrackFormats,
+      T chunkSource,
+      Callback<ChunkSampleStream<T>> callback,
+      Allocator allocator,
+      long positionUs,
+      int minLoadableRetryCount,
+      EventDispatcher eventDispatcher,
+      Loader.Factory loaderFactory) {
+    this(
+        primaryTrackType,
+        embeddedTrackTypes,
+        embeddedTrackFormats,
+        chunkSource,
+        callback,
+        allocator,
+        positionUs,
+        minLoadableRetryCount,
+        eventDispatcher,
+        loaderFactory,
+        /* maxParallelChunkLoads= */ 1,
+        /* prefetchDataSourceFactory= */ null);
+  }
+
+  /**
+   * Constructs an instance that may load several media chunks at the same time.
+   *
+   * <p>While a media chunk loads, the data of up to {@code maxParallelChunkLoads - 1} following
+   * media chunks is loaded into memory from data sources created by {@code
+   * prefetchDataSourceFactory}. Samples are still written to the sample queues one chunk at a time
+   * and in order, by loading each chunk from its data in memory once the chunk before it has been
+   * loaded. This hides the latency of sequential requests on high latency connections.
+   *
+   * @param primaryTrackType The type of the primary track. One of the {@link C} {@code
+   *     TRACK_TYPE_*} constants.
+   * @param embeddedTrackTypes The types of any embedded tracks, or null.
+   * @param embeddedTrackFormats The formats of the embedded tracks, or null.
+   * @param chunkSource A {@link ChunkSource} from which chunks to load are obtained.
+   * @param callback An {@link Callback} for the stream.
+   * @param allocator An {@link Allocator} from which allocations can be obtained.
+   * @param positionUs The position from which to start loading media.
+   * @param minLoadableRetryCount The minimum number of times that the source should retry a load
+   *     before propagating an error.
+   * @param eventDispatcher A dispatcher to notify of events.
+   * @param loaderFactory A factory for the {@link Loader}s that load chunks.
+   * @param maxParallelChunkLoads The maximum number of media chunks that are loaded at the same
+   *     time. Must be 1 if {@code prefetchDataSourceFactory} is null. Media chunks are only loaded
+   *     in parallel if {@code chunkSource} is a {@link PeekableChunkSource}.
+   * @param prefetchDataSourceFactory A factory for the {@link DataSource}s from which the data of
+   *     following media chunks is loaded, or null. The sources must not be shared with the chunk
+   *     source.
+   */
+  public ChunkSampleStream(
+      int primaryTrackType,
+      int[] embeddedTrackTypes,
+      Format[] embeddedTrackFormats,
+      T chunkSource,
+      Callback<ChunkSampleStream<T>> callback,
+      Allocator allocator,
+      long positionUs,
+      int minLoadableRetryCount,
+      EventDispatcher eventDispatcher,
+      Loader.Factory loaderFactory,
+      int maxParallelChunkLoads,
+      @Nullable DataSource.Factory prefetchDataSourceFactory) {
+    Assertions.checkArgument(
+        maxParallelChunkLoads == 1
+            || (maxParallelChunkLoads > 1 && prefetchDataSourceFactory != null));
     this.primaryTrackType = primaryTrackType;
     this.embeddedTrackTypes = embeddedTrackTypes;
     this.embeddedTrackFormats = embeddedTrackFormats;
@@ -109,7 +215,7 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     this.callback = callback;
     this.eventDispatcher = eventDispatcher;
     this.minLoadableRetryCount = minLoadableRetryCount;
-    loader = new Loader("Loader:ChunkSampleStream");
+    loader = loaderFactory.createLoader("Loader:ChunkSampleStream");
     nextChunkHolder = new ChunkHolder();
     mediaChunks = new ArrayList<>();
     readOnlyMediaChunks = Collections.unmodifiableList(mediaChunks);
@@ -132,6 +238,14 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     }
 
     mediaChunkOutput = new BaseMediaChunkOutput(trackTypes, sampleQueues);
+    this.allocator = allocator;
+    this.prefetchDataSourceFactory = prefetchDataSourceFactory;
+    prefetchLoaders = new Loader[maxParallelChunkLoads - 1];
+    for (int i = 0; i < prefetchLoaders.length; i++) {
+      prefetchLoaders[i] = loaderFactory.createLoader("Loader:ChunkPrefetch");
+    }
+    prefetches = new ArrayList<>();
+    prefetchCallback = new PrefetchCallback();
     pendingResetPositionUs = positionUs;
     lastSeekPositionUs = positionUs;
   }
@@ -279,6 +393,7 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
       pendingResetPositionUs = positionUs;
       loadingFinished = false;
       mediaChunks.clear();
+      cancelPrefetches();
       if (loader.isLoading()) {
         loader.cancelLoading();
       } else {
@@ -316,11 +431,19 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     for (SampleQueue embeddedSampleQueue : embeddedSampleQueues) {
       embeddedSampleQueue.discardToEnd();
     }
+    for (ChunkDataPrefetch prefetch : prefetches) {
+      prefetch.discard();
+    }
+    prefetches.clear();
+    for (Loader prefetchLoader : prefetchLoaders) {
+      prefetchLoader.release();
+    }
     loader.release(this);
   }
 
   @Override
   public void onLoaderReleased() {
+    discardLoadingPrefetch();
     primarySampleQueue.reset();
     for (SampleQueue embeddedSampleQueue : embeddedSampleQueues) {
       embeddedSampleQueue.reset();
@@ -384,6 +507,7 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
 
   @Override
   public void onLoadCompleted(Chunk loadable, long elapsedRealtimeMs, long loadDurationMs) {
+    discardLoadingPrefetch();
     chunkSource.onChunkLoadCompleted(loadable);
     eventDispatcher.loadCompleted(loadable.dataSpec, loadable.type, primaryTrackType,
         loadable.trackFormat, loadable.trackSelectionReason, loadable.trackSelectionData,
@@ -400,6 +524,8 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
         loadable.startTimeUs, loadable.endTimeUs, elapsedRealtimeMs, loadDurationMs,
         loadable.bytesLoaded());
     if (!released) {
+      // Else the prefetched data is discarded once the loader has been released.
+      discardLoadingPrefetch();
       primarySampleQueue.reset();
       for (SampleQueue embeddedSampleQueue : embeddedSampleQueues) {
         embeddedSampleQueue.reset();
@@ -423,6 +549,7 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
       } else {
         canceled = true;
         if (isMediaChunk) {
+          cancelPrefetches();
           BaseMediaChunk removed = discardUpstreamMediaChunksFromIndex(lastChunkIndex);
           Assertions.checkState(removed == loadable);
           if (mediaChunks.isEmpty()) {
@@ -436,6 +563,7 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
         loadable.startTimeUs, loadable.endTimeUs, elapsedRealtimeMs, loadDurationMs, bytesLoaded,
         error, canceled);
     if (canceled) {
+      discardLoadingPrefetch();
       callback.onContinueLoadingRequested(this);
       return Loader.DONT_RETRY;
     } else {
@@ -447,8 +575,10 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
 
   @Override
   public boolean continueLoading(long positionUs) {
-    if (loadingFinished || loader.isLoading()) {
+    if (loadingFinished) {
       return false;
+    } else if (loader.isLoading()) {
+      return maybeStartPrefetches();
     }
 
     boolean pendingReset = isPendingReset();
@@ -466,6 +596,22 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     Chunk loadable = nextChunkHolder.chunk;
     nextChunkHolder.clear();
 
+    if (!prefetches.isEmpty() && (endOfStream || loadable != null)) {
+      ChunkDataPrefetch prefetch = prefetches.get(0);
+      if (isPrefetchedChunk(prefetch, loadable)) {
+        if (!prefetch.isLoadCompleted()) {
+          // Load the chunk once its data is in memory.
+          return false;
+        }
+        prefetches.remove(0);
+        loadingPrefetch = prefetch;
+        ((BaseMediaChunk) loadable).setPrefetchedDataSource(prefetch.createDataSource());
+      } else {
+        // The chunk source has switched tracks, so the prefetched data won't be used.
+        cancelPrefetches();
+      }
+    }
+
     if (endOfStream) {
       pendingResetPositionUs = C.TIME_UNSET;
       loadingFinished = true;
@@ -491,6 +637,7 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     eventDispatcher.loadStarted(loadable.dataSpec, loadable.type, primaryTrackType,
         loadable.trackFormat, loadable.trackSelectionReason, loadable.trackSelectionData,
         loadable.startTimeUs, loadable.endTimeUs, elapsedRealtimeMs);
+    maybeStartPrefetches();
     return true;
   }
 
@@ -527,6 +674,7 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     }
 
     long endTimeUs = getLastMediaChunk().endTimeUs;
+    cancelPrefetches();
     BaseMediaChunk firstRemovedChunk = discardUpstreamMediaChunksFromIndex(newQueueSize);
     if (mediaChunks.isEmpty()) {
       pendingResetPositionUs = lastSeekPositionUs;
@@ -537,10 +685,90 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
 
   // Internal methods
 
+  /**
+   * Starts prefetching the data of the media chunks that follow the last media chunk, if there's
+   * capacity to do so and the chunk source is a {@link PeekableChunkSource}. The chunks are
+   * obtained with {@link PeekableChunkSource#peekNextChunk(MediaChunk, ChunkHolder)}, so that
+   * prefetching doesn't affect the state of the chunk source.
+   *
+   * @return Whether a prefetch was started.
+   */
+  private boolean maybeStartPrefetches() {
+    if (!(chunkSource instanceof PeekableChunkSource)
+        || isPendingReset()
+        || mediaChunks.isEmpty()) {
+      return false;
+    }
+    boolean startedPrefetch = false;
+    while (prefetches.size() < prefetchLoaders.length) {
+      Loader prefetchLoader = null;
+      for (Loader candidateLoader : prefetchLoaders) {
+        if (!candidateLoader.isLoading()) {
+          prefetchLoader = candidateLoader;
+          break;
+        }
+      }
+      if (prefetchLoader == null) {
+        break;
+      }
+      MediaChunk previousChunk =
+          prefetches.isEmpty() ? getLastMediaChunk() : prefetches.get(prefetches.size() - 1).chunk;
+      ((PeekableChunkSource) chunkSource).peekNextChunk(previousChunk, nextChunkHolder);
+      Chunk chunk = nextChunkHolder.chunk;
+      nextChunkHolder.clear();
+      if (!isMediaChunk(chunk)) {
+        // The end of the stream has been reached, or the next chunk isn't available yet or isn't a
+        // media chunk. It will be requested again once the chunks before it have been loaded.
+        break;
+      }
+      ChunkDataPrefetch prefetch =
+          new ChunkDataPrefetch(
+              (BaseMediaChunk) chunk, prefetchDataSourceFactory.createDataSource(), allocator);
+      prefetches.add(prefetch);
+      prefetchLoader.startLoading(prefetch, prefetchCallback, minLoadableRetryCount);
+      startedPrefetch = true;
+    }
+    return startedPrefetch;
+  }
+
+  private void cancelPrefetches() {
+    for (ChunkDataPrefetch prefetch : prefetches) {
+      prefetch.discard();
+    }
+    prefetches.clear();
+    for (Loader prefetchLoader : prefetchLoaders) {
+      if (prefetchLoader.isLoading()) {
+        prefetchLoader.cancelLoading();
+      }
+    }
+  }
+
+  private void discardLoadingPrefetch() {
+    if (loadingPrefetch != null) {
+      loadingPrefetch.discard();
+      loadingPrefetch = null;
+    }
+  }
+
   private boolean isMediaChunk(Chunk chunk) {
     return chunk instanceof BaseMediaChunk;
   }
 
+  /**
+   * Returns whether a chunk returned by the chunk source loads the same data as the chunk whose
+   * data is being prefetched.
+   */
+  private boolean isPrefetchedChunk(ChunkDataPrefetch prefetch, @Nullable Chunk chunk) {
+    if (!isMediaChunk(chunk)) {
+      return false;
+    }
+    DataSpec prefetchedDataSpec = prefetch.chunk.dataSpec;
+    return prefetchedDataSpec.uri.equals(chunk.dataSpec.uri)
+        && prefetchedDataSpec.absoluteStreamPosition == chunk.dataSpec.absoluteStreamPosition
+        && prefetchedDataSpec.length == chunk.dataSpec.length
+        && Util.areEqual(prefetch.chunk.trackFormat, chunk.trackFormat);
+  }
+
   /** Returns whether samples have been read from media chunk at given index. */
   private boolean haveReadFromMediaChunk(int mediaChunkIndex) {
     BaseMediaChunk mediaChunk = mediaChunks.get(mediaChunkIndex);
@@ -623,6 +851,48 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     return firstRemovedChunk;
   }
 
+  private final class PrefetchCallback implements Loader.Callback<ChunkDataPrefetch> {
+
+    @Override
+    public void onLoadCompleted(
+        ChunkDataPrefetch loadable, long elapsedRealtimeMs, long loadDurationMs) {
+      if (!prefetches.isEmpty() && prefetches.get(0) == loadable && !loader.isLoading()) {
+        // The chunk was waiting for its data.
+        callback.onContinueLoadingRequested(ChunkSampleStream.this);
+      }
+    }
+
+    @Override
+    public void onLoadCanceled(
+        ChunkDataPrefetch loadable,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        boolean released) {
+      // Do nothing.
+    }
+
+    @Override
+    public @Loader.RetryAction int onLoadError(
+        ChunkDataPrefetch loadable,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        IOException error) {
+      // Discard the prefetch and those after it. The chunks are requested from the chunk source
+      // again, and loaded without prefetching.
+      int index = prefetches.indexOf(loadable);
+      if (index != C.INDEX_UNSET) {
+        for (int i = index; i < prefetches.size(); i++) {
+          prefetches.get(i).discard();
+        }
+        Util.removeRange(prefetches, index, prefetches.size());
+        if (index == 0 && !loader.isLoading()) {
+          callback.onContinueLoadingRequested(ChunkSampleStream.this);
+        }
+      }
+      return Loader.DONT_RETRY;
+    }
+  }
+
   /**
    * A {@link SampleStream} embedded in a {@link ChunkSampleStream}.
    */
@@ -115,10 +115,11 @@ public class ContainerMediaChunk extends BaseMediaChunk {
   @Override
   public final void load() throws IOException, InterruptedException {
     DataSpec loadDataSpec = dataSpec.subrange(bytesLoaded);
+    DataSource loadDataSource = getLoadDataSource();
     try {
       // Create and open the input.
-      ExtractorInput input = new DefaultExtractorInput(dataSource,
-          loadDataSpec.absoluteStreamPosition, dataSource.open(loadDataSpec));
+      ExtractorInput input = new DefaultExtractorInput(loadDataSource,
+          loadDataSpec.absoluteStreamPosition, loadDataSource.open(loadDataSpec));
       if (bytesLoaded == 0) {
         // Configure the output and set it as the target for the extractor wrapper.
         BaseMediaChunkOutput output = getOutput();
@@ -138,7 +139,7 @@ public class ContainerMediaChunk extends BaseMediaChunk {
         bytesLoaded = (int) (input.getPosition() - dataSpec.absoluteStreamPosition);
       }
     } finally {
-      Util.closeQuietly(dataSource);
+      Util.closeQuietly(loadDataSource);
     }
     loadCompleted = true;
   }
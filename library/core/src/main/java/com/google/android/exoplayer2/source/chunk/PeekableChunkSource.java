@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.chunk;
+
+/**
+ * A {@link ChunkSource} that can return the media chunk that follows a media chunk without
+ * modifying its state. A {@link ChunkSampleStream} only loads the data of media chunks ahead of
+ * time if its chunk source implements this interface.
+ */
+public interface PeekableChunkSource extends ChunkSource {
+
+  /**
+   * Returns the media chunk that follows a media chunk, so that its data can be loaded ahead of
+   * time. Unlike {@link #getNextChunk(MediaChunk, long, long, ChunkHolder)}, this method doesn't
+   * modify the state of the source. In particular it doesn't update the track selection, and the
+   * chunk is obtained from the currently selected track. The data loaded ahead of time is only used
+   * if {@link #getNextChunk(MediaChunk, long, long, ChunkHolder)} later returns a chunk with the
+   * same URI, byte range and format.
+   * <p>
+   * If a media chunk is available then {@link ChunkHolder#chunk} is set. Else the {@link
+   * ChunkHolder} is not modified, and the chunk should be obtained from {@link
+   * #getNextChunk(MediaChunk, long, long, ChunkHolder)} once {@code previous} has been loaded.
+   *
+   * @param previous The media chunk that the returned chunk should follow.
+   * @param out A holder to populate.
+   */
+  void peekNextChunk(MediaChunk previous, ChunkHolder out);
+
+}
@@ -102,13 +102,14 @@ public final class SingleSampleMediaChunk extends BaseMediaChunk {
   @Override
   public void load() throws IOException, InterruptedException {
     DataSpec loadDataSpec = dataSpec.subrange(bytesLoaded);
+    DataSource loadDataSource = getLoadDataSource();
     try {
       // Create and open the input.
-      long length = dataSource.open(loadDataSpec);
+      long length = loadDataSource.open(loadDataSpec);
       if (length != C.LENGTH_UNSET) {
         length += bytesLoaded;
       }
-      ExtractorInput extractorInput = new DefaultExtractorInput(dataSource, bytesLoaded, length);
+      ExtractorInput extractorInput = new DefaultExtractorInput(loadDataSource, bytesLoaded, length);
       BaseMediaChunkOutput output = getOutput();
       output.setSampleOffsetUs(0);
       TrackOutput trackOutput = output.track(0, trackType);
@@ -122,7 +123,7 @@ public final class SingleSampleMediaChunk extends BaseMediaChunk {
       int sampleSize = bytesLoaded;
       trackOutput.sampleMetadata(startTimeUs, C.BUFFER_FLAG_KEY_FRAME, sampleSize, 0, null);
     } finally {
-      Util.closeQuietly(dataSource);
+      Util.closeQuietly(loadDataSource);
     }
     loadCompleted = true;
   }
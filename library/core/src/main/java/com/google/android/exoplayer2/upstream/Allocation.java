@@ -15,8 +15,11 @@
  */
 package com.google.android.exoplayer2.upstream;
 
+import android.support.annotation.Nullable;
+import java.nio.ByteBuffer;
+
 /**
- * An allocation within a byte array.
+ * An allocation within a byte array, or within a direct {@link ByteBuffer}.
  * <p>
  * The allocation's length is obtained by calling {@link Allocator#getIndividualAllocationLength()}
  * on the {@link Allocator} from which it was obtained.
@@ -24,13 +27,22 @@ package com.google.android.exoplayer2.upstream;
 public final class Allocation {
 
   /**
-   * The array containing the allocated space. The allocated space might not be at the start of the
-   * array, and so {@link #offset} must be used when indexing into it.
+   * The array containing the allocated space, or null if the allocated space is in {@link #buffer}.
+   * The allocated space might not be at the start of the array, and so {@link #offset} must be used
+   * when indexing into it.
    */
-  public final byte[] data;
+  @Nullable public final byte[] data;
 
   /**
-   * The offset of the allocated space in {@link #data}.
+   * The buffer containing the allocated space, or null if the allocated space is in {@link #data}.
+   * The buffer may be shared with other allocations, so its position and limit must not be
+   * modified. It should be accessed through a {@link ByteBuffer#duplicate()}, using {@link #offset}
+   * to index into it.
+   */
+  @Nullable public final ByteBuffer buffer;
+
+  /**
+   * The offset of the allocated space in {@link #data} or {@link #buffer}.
    */
   public final int offset;
 
@@ -40,6 +52,17 @@ public final class Allocation {
    */
   public Allocation(byte[] data, int offset) {
     this.data = data;
+    this.buffer = null;
+    this.offset = offset;
+  }
+
+  /**
+   * @param buffer The buffer containing the allocated space. Its position and limit are not used.
+   * @param offset The offset of the allocated space in {@code buffer}.
+   */
+  public Allocation(ByteBuffer buffer, int offset) {
+    this.data = null;
+    this.buffer = buffer;
     this.offset = offset;
   }
 
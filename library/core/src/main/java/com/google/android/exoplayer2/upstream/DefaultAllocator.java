@@ -17,24 +17,41 @@ package com.google.android.exoplayer2.upstream;
 
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Default implementation of {@link Allocator}.
+ *
+ * <p>Available allocations are held in a lock-free stack, so that {@link #allocate()} and {@link
+ * #release(Allocation[])} can be called from several loading threads and the playback thread
+ * without contending for a lock.
+ *
+ * <p>The allocator can optionally allocate memory in direct {@link ByteBuffer}s rather than byte
+ * arrays. Direct buffers are allocated outside of the Java heap, which reduces the pressure on the
+ * garbage collector when large buffers are used, and they can be copied into the direct buffers of
+ * decoders efficiently.
  */
 public final class DefaultAllocator implements Allocator {
 
-  private static final int AVAILABLE_EXTRA_CAPACITY = 100;
+  /**
+   * The target length of the direct buffers from which allocations are made, if the allocator
+   * allocates direct buffers. Allocating a few larger buffers is cheaper than allocating many
+   * smaller ones.
+   */
+  private static final int DIRECT_SLAB_LENGTH = 1024 * 1024;
 
   private final boolean trimOnReset;
   private final int individualAllocationSize;
+  private final boolean useDirectBuffers;
+  private final int slabAllocationCount;
   private final byte[] initialAllocationBlock;
-  private final Allocation[] singleAllocationReleaseHolder;
+  private final ByteBuffer initialAllocationBuffer;
+  private final AtomicReference<Node> availableAllocations;
+  private final AtomicInteger allocatedCount;
 
   private int targetBufferSize;
-  private int allocatedCount;
-  private int availableCount;
-  private Allocation[] availableAllocations;
 
   /**
    * Constructs an instance without creating any {@link Allocation}s up front.
@@ -59,22 +76,54 @@ public final class DefaultAllocator implements Allocator {
    */
   public DefaultAllocator(boolean trimOnReset, int individualAllocationSize,
       int initialAllocationCount) {
+    this(trimOnReset, individualAllocationSize, initialAllocationCount, false);
+  }
+
+  /**
+   * Constructs an instance with some {@link Allocation}s created up front, whose memory is
+   * optionally allocated in direct {@link ByteBuffer}s.
+   * <p>
+   * Note: {@link Allocation}s created up front will never be discarded by {@link #trim()}. If
+   * direct buffers are used, the memory of allocations discarded by {@link #trim()} is freed once
+   * all of the allocations that share the same buffer have been discarded.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param initialAllocationCount The number of allocations to create up front.
+   * @param useDirectBuffers Whether memory is allocated in direct {@link ByteBuffer}s, in which
+   *     case {@link Allocation#buffer} is set rather than {@link Allocation#data}.
+   */
+  public DefaultAllocator(boolean trimOnReset, int individualAllocationSize,
+      int initialAllocationCount, boolean useDirectBuffers) {
     Assertions.checkArgument(individualAllocationSize > 0);
     Assertions.checkArgument(initialAllocationCount >= 0);
     this.trimOnReset = trimOnReset;
     this.individualAllocationSize = individualAllocationSize;
-    this.availableCount = initialAllocationCount;
-    this.availableAllocations = new Allocation[initialAllocationCount + AVAILABLE_EXTRA_CAPACITY];
-    if (initialAllocationCount > 0) {
+    this.useDirectBuffers = useDirectBuffers;
+    slabAllocationCount = Math.max(1, DIRECT_SLAB_LENGTH / individualAllocationSize);
+    Node head = null;
+    if (initialAllocationCount > 0 && useDirectBuffers) {
+      initialAllocationBlock = null;
+      initialAllocationBuffer =
+          ByteBuffer.allocateDirect(initialAllocationCount * individualAllocationSize);
+      for (int i = initialAllocationCount - 1; i >= 0; i--) {
+        int allocationOffset = i * individualAllocationSize;
+        head = new Node(new Allocation(initialAllocationBuffer, allocationOffset), head);
+      }
+    } else if (initialAllocationCount > 0) {
       initialAllocationBlock = new byte[initialAllocationCount * individualAllocationSize];
-      for (int i = 0; i < initialAllocationCount; i++) {
+      initialAllocationBuffer = null;
+      for (int i = initialAllocationCount - 1; i >= 0; i--) {
         int allocationOffset = i * individualAllocationSize;
-        availableAllocations[i] = new Allocation(initialAllocationBlock, allocationOffset);
+        head = new Node(new Allocation(initialAllocationBlock, allocationOffset), head);
       }
     } else {
       initialAllocationBlock = null;
+      initialAllocationBuffer = null;
     }
-    singleAllocationReleaseHolder = new Allocation[1];
+    availableAllocations = new AtomicReference<>(head);
+    allocatedCount = new AtomicInteger();
   }
 
   public synchronized void reset() {
@@ -92,86 +141,84 @@ public final class DefaultAllocator implements Allocator {
   }
 
   @Override
-  public synchronized Allocation allocate() {
-    allocatedCount++;
-    Allocation allocation;
-    if (availableCount > 0) {
-      allocation = availableAllocations[--availableCount];
-      availableAllocations[availableCount] = null;
-    } else {
-      allocation = new Allocation(new byte[individualAllocationSize], 0);
-    }
-    return allocation;
+  public Allocation allocate() {
+    allocatedCount.incrementAndGet();
+    Node head;
+    do {
+      head = availableAllocations.get();
+      if (head == null) {
+        return useDirectBuffers
+            ? allocateDirectSlab()
+            : new Allocation(new byte[individualAllocationSize], 0);
+      }
+    } while (!availableAllocations.compareAndSet(head, head.next));
+    return head.allocation;
   }
 
   @Override
-  public synchronized void release(Allocation allocation) {
-    singleAllocationReleaseHolder[0] = allocation;
-    release(singleAllocationReleaseHolder);
+  public void release(Allocation allocation) {
+    checkAllocation(allocation);
+    Node node = new Node(allocation, null);
+    push(node, node);
+    allocatedCount.decrementAndGet();
   }
 
   @Override
-  public synchronized void release(Allocation[] allocations) {
-    if (availableCount + allocations.length >= availableAllocations.length) {
-      availableAllocations = Arrays.copyOf(availableAllocations,
-          Math.max(availableAllocations.length * 2, availableCount + allocations.length));
+  public void release(Allocation[] allocations) {
+    if (allocations.length == 0) {
+      return;
     }
-    for (Allocation allocation : allocations) {
-      // Weak sanity check that the allocation probably originated from this pool.
-      Assertions.checkArgument(allocation.data == initialAllocationBlock
-          || allocation.data.length == individualAllocationSize);
-      availableAllocations[availableCount++] = allocation;
+    Node tail = new Node(checkAllocation(allocations[0]), null);
+    Node head = tail;
+    for (int i = 1; i < allocations.length; i++) {
+      head = new Node(checkAllocation(allocations[i]), head);
     }
-    allocatedCount -= allocations.length;
-    // Wake up threads waiting for the allocated size to drop.
-    notifyAll();
+    push(head, tail);
+    allocatedCount.addAndGet(-allocations.length);
   }
 
   @Override
   public synchronized void trim() {
     int targetAllocationCount = Util.ceilDivide(targetBufferSize, individualAllocationSize);
-    int targetAvailableCount = Math.max(0, targetAllocationCount - allocatedCount);
-    if (targetAvailableCount >= availableCount) {
-      // We're already at or below the target.
-      return;
-    }
-
-    if (initialAllocationBlock != null) {
-      // Some allocations are backed by an initial block. We need to make sure that we hold onto all
-      // such allocations. Re-order the available allocations so that the ones backed by the initial
-      // block come first.
-      int lowIndex = 0;
-      int highIndex = availableCount - 1;
-      while (lowIndex <= highIndex) {
-        Allocation lowAllocation = availableAllocations[lowIndex];
-        if (lowAllocation.data == initialAllocationBlock) {
-          lowIndex++;
-        } else {
-          Allocation highAllocation = availableAllocations[highIndex];
-          if (highAllocation.data != initialAllocationBlock) {
-            highIndex--;
-          } else {
-            availableAllocations[lowIndex++] = highAllocation;
-            availableAllocations[highIndex--] = lowAllocation;
-          }
+    int targetAvailableCount = Math.max(0, targetAllocationCount - allocatedCount.get());
+    // Take all of the available allocations, and push back the ones to keep. Calls to allocate()
+    // in the meantime create new allocations, as they would if none were available.
+    Node head = availableAllocations.getAndSet(null);
+    int initialBlockCount = 0;
+    if (initialAllocationBlock != null || initialAllocationBuffer != null) {
+      // Allocations backed by the initial block are always kept, and count towards the target.
+      for (Node node = head; node != null; node = node.next) {
+        if (isBackedByInitialBlock(node.allocation)) {
+          initialBlockCount++;
         }
       }
-      // lowIndex is the index of the first allocation not backed by an initial block.
-      targetAvailableCount = Math.max(targetAvailableCount, lowIndex);
-      if (targetAvailableCount >= availableCount) {
-        // We're already at or below the target.
-        return;
+    }
+    int otherTargetCount = Math.max(0, targetAvailableCount - initialBlockCount);
+    // Nodes that have been published are never modified, so the kept allocations are pushed back
+    // in new nodes.
+    Node keptHead = null;
+    Node keptTail = null;
+    for (Node node = head; node != null; node = node.next) {
+      if (isBackedByInitialBlock(node.allocation)) {
+        keptHead = new Node(node.allocation, keptHead);
+      } else if (otherTargetCount > 0) {
+        keptHead = new Node(node.allocation, keptHead);
+        otherTargetCount--;
+      } else {
+        continue;
+      }
+      if (keptTail == null) {
+        keptTail = keptHead;
       }
     }
-
-    // Discard allocations beyond the target.
-    Arrays.fill(availableAllocations, targetAvailableCount, availableCount, null);
-    availableCount = targetAvailableCount;
+    if (keptHead != null) {
+      push(keptHead, keptTail);
+    }
   }
 
   @Override
-  public synchronized int getTotalBytesAllocated() {
-    return allocatedCount * individualAllocationSize;
+  public int getTotalBytesAllocated() {
+    return allocatedCount.get() * individualAllocationSize;
   }
 
   @Override
@@ -179,4 +226,67 @@ public final class DefaultAllocator implements Allocator {
     return individualAllocationSize;
   }
 
+  private Allocation checkAllocation(Allocation allocation) {
+    // Weak sanity check that the allocation probably originated from this pool.
+    if (useDirectBuffers) {
+      Assertions.checkArgument(allocation.buffer == initialAllocationBuffer
+          || allocation.buffer.capacity() == slabAllocationCount * individualAllocationSize);
+    } else {
+      Assertions.checkArgument(allocation.data == initialAllocationBlock
+          || allocation.data.length == individualAllocationSize);
+    }
+    return allocation;
+  }
+
+  private boolean isBackedByInitialBlock(Allocation allocation) {
+    return useDirectBuffers
+        ? initialAllocationBuffer != null && allocation.buffer == initialAllocationBuffer
+        : initialAllocationBlock != null && allocation.data == initialAllocationBlock;
+  }
+
+  /**
+   * Allocates a direct buffer for {@link #slabAllocationCount} allocations, returns the first of
+   * them and makes the others available.
+   */
+  private Allocation allocateDirectSlab() {
+    ByteBuffer slab = ByteBuffer.allocateDirect(slabAllocationCount * individualAllocationSize);
+    if (slabAllocationCount > 1) {
+      Node tail = new Node(new Allocation(slab, individualAllocationSize), null);
+      Node head = tail;
+      for (int i = 2; i < slabAllocationCount; i++) {
+        head = new Node(new Allocation(slab, i * individualAllocationSize), head);
+      }
+      push(head, tail);
+    }
+    return new Allocation(slab, 0);
+  }
+
+  /**
+   * Pushes a chain of unpublished nodes onto the stack of available allocations.
+   *
+   * @param head The first node of the chain.
+   * @param tail The last node of the chain, whose {@link Node#next} may be modified.
+   */
+  private void push(Node head, Node tail) {
+    Node next;
+    do {
+      next = availableAllocations.get();
+      tail.next = next;
+    } while (!availableAllocations.compareAndSet(next, head));
+  }
+
+  /** A node in the stack of available allocations. */
+  private static final class Node {
+
+    public final Allocation allocation;
+    // Only modified before the node is published by a successful compareAndSet.
+    public Node next;
+
+    public Node(Allocation allocation, Node next) {
+      this.allocation = allocation;
+      this.next = next;
+    }
+
+  }
+
 }
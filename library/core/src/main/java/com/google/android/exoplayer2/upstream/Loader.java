@@ -29,6 +29,8 @@ import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -123,6 +125,19 @@ public final class Loader implements LoaderErrorThrower {
     int onLoadError(T loadable, long elapsedRealtimeMs, long loadDurationMs, IOException error);
   }
 
+  /** Creates {@link Loader}s. */
+  public interface Factory {
+
+    /**
+     * Creates a {@link Loader}.
+     *
+     * @param threadName A name for the loader's thread, if it has a thread of its own.
+     * @return The created {@link Loader}.
+     */
+    Loader createLoader(String threadName);
+
+  }
+
   /**
    * A callback to be notified when a {@link Loader} has finished being released.
    */
@@ -145,16 +160,34 @@ public final class Loader implements LoaderErrorThrower {
   public static final int DONT_RETRY = 2;
   public static final int DONT_RETRY_FATAL = 3;
 
-  private final ExecutorService downloadExecutorService;
+  private final Executor downloadExecutor;
+  @Nullable private final ExecutorService ownedExecutorService;
 
   private LoadTask<? extends Loadable> currentTask;
   private IOException fatalError;
 
   /**
+   * Creates a loader with a thread of its own.
+   *
    * @param threadName A name for the loader's thread.
    */
   public Loader(String threadName) {
-    this.downloadExecutorService = Util.newSingleThreadExecutor(threadName);
+    ownedExecutorService = Util.newSingleThreadExecutor(threadName);
+    downloadExecutor = ownedExecutorService;
+  }
+
+  /**
+   * Creates a loader which runs its loads on an {@link Executor} that may be shared with other
+   * loaders. The loads of this loader, and the {@link ReleaseCallback} passed to {@link
+   * #release(ReleaseCallback)}, are run one at a time in the order in which they're started, as
+   * they would be on a thread of the loader's own.
+   *
+   * @param executor The {@link Executor} on which to run loads. It's not shut down when the loader
+   *     is released.
+   */
+  public Loader(Executor executor) {
+    ownedExecutorService = null;
+    downloadExecutor = new SerialExecutor(executor);
   }
 
   /**
@@ -215,9 +248,11 @@ public final class Loader implements LoaderErrorThrower {
       currentTask.cancel(true);
     }
     if (callback != null) {
-      downloadExecutorService.execute(new ReleaseTask(callback));
+      downloadExecutor.execute(new ReleaseTask(callback));
+    }
+    if (ownedExecutorService != null) {
+      ownedExecutorService.shutdown();
     }
-    downloadExecutorService.shutdown();
   }
 
   // LoaderErrorThrower implementation.
@@ -258,7 +293,7 @@ public final class Loader implements LoaderErrorThrower {
     private IOException currentError;
     private int errorCount;
 
-    private volatile Thread executorThread;
+    @Nullable private Thread executorThread;
     private volatile boolean released;
 
     public LoadTask(Looper looper, T loadable, Loader.Callback<T> callback,
@@ -296,9 +331,7 @@ public final class Loader implements LoaderErrorThrower {
         }
       } else {
         loadable.cancelLoad();
-        if (executorThread != null) {
-          executorThread.interrupt();
-        }
+        interruptExecutorThread();
       }
       if (released) {
         finish();
@@ -309,8 +342,19 @@ public final class Loader implements LoaderErrorThrower {
 
     @Override
     public void run() {
+      setExecutorThread(Thread.currentThread());
+      try {
+        runLoad();
+      } finally {
+        setExecutorThread(null);
+        // Clear any interrupt meant for this task, so that it doesn't affect the next task that
+        // runs on the thread, which may belong to another loader.
+        Thread.interrupted();
+      }
+    }
+
+    private void runLoad() {
       try {
-        executorThread = Thread.currentThread();
         if (!loadable.isLoadCanceled()) {
           TraceUtil.beginSection("load:" + loadable.getClass().getSimpleName());
           try {
@@ -408,7 +452,17 @@ public final class Loader implements LoaderErrorThrower {
 
     private void execute() {
       currentError = null;
-      downloadExecutorService.execute(currentTask);
+      downloadExecutor.execute(currentTask);
+    }
+
+    private synchronized void setExecutorThread(@Nullable Thread executorThread) {
+      this.executorThread = executorThread;
+    }
+
+    private synchronized void interruptExecutorThread() {
+      if (executorThread != null) {
+        executorThread.interrupt();
+      }
     }
 
     private void finish() {
@@ -421,6 +475,46 @@ public final class Loader implements LoaderErrorThrower {
 
   }
 
+  /** Runs tasks on an underlying {@link Executor} one at a time, in the order of submission. */
+  private static final class SerialExecutor implements Executor {
+
+    private final Executor executor;
+    private final ArrayDeque<Runnable> tasks;
+
+    @Nullable private Runnable activeTask;
+
+    public SerialExecutor(Executor executor) {
+      this.executor = executor;
+      tasks = new ArrayDeque<>();
+    }
+
+    @Override
+    public synchronized void execute(final Runnable task) {
+      tasks.add(
+          new Runnable() {
+            @Override
+            public void run() {
+              try {
+                task.run();
+              } finally {
+                scheduleNext();
+              }
+            }
+          });
+      if (activeTask == null) {
+        scheduleNext();
+      }
+    }
+
+    private synchronized void scheduleNext() {
+      activeTask = tasks.poll();
+      if (activeTask != null) {
+        executor.execute(activeTask);
+      }
+    }
+
+  }
+
   private static final class ReleaseTask implements Runnable {
 
     private final ReleaseCallback callback;
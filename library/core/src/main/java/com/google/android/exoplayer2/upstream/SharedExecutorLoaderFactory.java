@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.support.annotation.NonNull;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Loader.Factory} whose loaders share a bounded pool of threads, rather than each having a
+ * thread of its own. A single factory can be used for all of the media sources of several players.
+ *
+ * <p>Threads are created as they're needed, up to the maximum, and stop after being idle for a
+ * while. Loads that can't be run because all threads are busy are queued.
+ *
+ * <p>Note that a load occupies a thread for as long as it runs, including any time for which it's
+ * blocked. Loads that block until another load makes progress must not use this factory, since the
+ * other load may be queued behind them once every thread is occupied. For example, HLS media
+ * chunks wait for the chunk that initializes their timestamp adjuster, so {@code
+ * HlsSampleStreamWrapper} loads chunks on a thread of its own. The maximum number of threads
+ * should also be comfortably larger than the number of loads that may run at the same time, since
+ * queued loads wait for as long as every thread is busy.
+ */
+public final class SharedExecutorLoaderFactory implements Loader.Factory {
+
+  /** The default maximum number of threads. */
+  public static final int DEFAULT_MAX_THREADS = 8;
+
+  private static final long KEEP_ALIVE_TIME_MS = 10000;
+
+  private final ThreadPoolExecutor executor;
+
+  /** Creates a factory whose loaders share up to {@link #DEFAULT_MAX_THREADS} threads. */
+  public SharedExecutorLoaderFactory() {
+    this(DEFAULT_MAX_THREADS);
+  }
+
+  /**
+   * @param maxThreads The maximum number of threads shared by the loaders. Must be at least 1.
+   */
+  public SharedExecutorLoaderFactory(int maxThreads) {
+    Assertions.checkArgument(maxThreads > 0);
+    final AtomicInteger threadCount = new AtomicInteger();
+    executor =
+        new ThreadPoolExecutor(
+            maxThreads,
+            maxThreads,
+            KEEP_ALIVE_TIME_MS,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(@NonNull Runnable r) {
+                return new Thread(r, "Loader:Shared:" + threadCount.incrementAndGet());
+              }
+            });
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  @Override
+  public Loader createLoader(String threadName) {
+    return new Loader(executor);
+  }
+
+  /**
+   * Releases the factory. Must only be called once all of the loaders created by the factory have
+   * been released. Loads that are still running are allowed to finish.
+   */
+  public void release() {
+    executor.shutdown();
+  }
+
+}
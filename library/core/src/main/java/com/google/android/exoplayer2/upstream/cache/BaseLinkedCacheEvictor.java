@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Base class for {@link CacheEvictor}s that keep cached spans in intrusive doubly linked lists, so
+ * that adding, touching and removing a span take constant time.
+ *
+ * <p>Spans are looked up by key and position, which don't change when a span is touched. Spans
+ * reported before {@link #onCacheInitialized()} are ordered by their last access timestamps once
+ * the cache is initialized. Any eviction they require happens on the next write to the cache.
+ *
+ * <p>The evictor counts cache hits (touched spans), cache misses (started files) and evictions.
+ * Like the rest of the evictor, the counters aren't thread safe and should be read on a thread that
+ * doesn't race with the cache.
+ */
+public abstract class BaseLinkedCacheEvictor implements CacheEvictor {
+
+  /** A cached span tracked by the evictor. */
+  /* package */ static final class Node {
+
+    public final String key;
+    public final long position;
+    public final int hash;
+
+    public CacheSpan span;
+    @Nullable public SpanList list;
+    @Nullable public Node previous;
+    @Nullable public Node next;
+    @Nullable private Node nextInBucket;
+
+    private Node(CacheSpan span, int hash) {
+      this.key = span.key;
+      this.position = span.position;
+      this.hash = hash;
+      this.span = span;
+    }
+
+  }
+
+  /** A doubly linked list of {@link Node}s, ordered from least to most recently used. */
+  /* package */ static final class SpanList {
+
+    @Nullable private Node head;
+    @Nullable private Node tail;
+    private long bytes;
+
+    /** Returns the least recently used node, or null if the list is empty. */
+    @Nullable
+    public Node first() {
+      return head;
+    }
+
+    /** Returns the total length of the spans in the list. */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /** Appends a node which isn't in any list. */
+    public void addLast(Node node) {
+      node.list = this;
+      node.previous = tail;
+      node.next = null;
+      if (tail == null) {
+        head = node;
+      } else {
+        tail.next = node;
+      }
+      tail = node;
+      bytes += node.span.length;
+    }
+
+    /** Removes a node from this list. */
+    public void remove(Node node) {
+      if (node.previous == null) {
+        head = node.next;
+      } else {
+        node.previous.next = node.next;
+      }
+      if (node.next == null) {
+        tail = node.previous;
+      } else {
+        node.next.previous = node.previous;
+      }
+      node.list = null;
+      node.previous = null;
+      node.next = null;
+      bytes -= node.span.length;
+    }
+
+    /** Moves a node in this list to the end of the list. */
+    public void moveToLast(Node node) {
+      if (node != tail) {
+        remove(node);
+        addLast(node);
+      }
+    }
+
+  }
+
+  private static final int INITIAL_TABLE_SIZE = 64;
+
+  private final long maxBytes;
+
+  private Node[] table;
+  private int nodeCount;
+  @Nullable private ArrayList<CacheSpan> initialSpans;
+
+  private long currentSize;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+  private long evictedBytes;
+
+  /**
+   * @param maxBytes The maximum total length of the cached spans.
+   */
+  /* package */ BaseLinkedCacheEvictor(long maxBytes) {
+    this.maxBytes = maxBytes;
+    table = new Node[INITIAL_TABLE_SIZE];
+    initialSpans = new ArrayList<>();
+  }
+
+  /** Returns the maximum total length of the cached spans. */
+  public final long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /** Returns the total length of the cached spans. */
+  public final long getCurrentSize() {
+    return currentSize;
+  }
+
+  /** Returns the number of times a cached span has been read. */
+  public final long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of times a writer has started writing to the cache. */
+  public final long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of spans evicted by this evictor. */
+  public final long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** Returns the total length of the spans evicted by this evictor. */
+  public final long getEvictedBytes() {
+    return evictedBytes;
+  }
+
+  /** Resets the hit, miss and eviction counters. */
+  public final void resetCounters() {
+    hitCount = 0;
+    missCount = 0;
+    evictionCount = 0;
+    evictedBytes = 0;
+  }
+
+  @Override
+  public final void onCacheInitialized() {
+    ArrayList<CacheSpan> spans = initialSpans;
+    if (spans == null) {
+      return;
+    }
+    initialSpans = null;
+    Collections.sort(
+        spans,
+        new Comparator<CacheSpan>() {
+          @Override
+          public int compare(CacheSpan lhs, CacheSpan rhs) {
+            if (lhs.lastAccessTimestamp != rhs.lastAccessTimestamp) {
+              return lhs.lastAccessTimestamp < rhs.lastAccessTimestamp ? -1 : 1;
+            }
+            return lhs.compareTo(rhs);
+          }
+        });
+    for (int i = 0; i < spans.size(); i++) {
+      onNodeAdded(addNode(spans.get(i)));
+    }
+  }
+
+  @Override
+  public final void onStartFile(Cache cache, String key, long position, long maxLength) {
+    missCount++;
+    evictCache(cache, maxLength);
+  }
+
+  @Override
+  public final void onSpanAdded(Cache cache, CacheSpan span) {
+    currentSize += span.length;
+    if (initialSpans != null) {
+      initialSpans.add(span);
+      return;
+    }
+    onNodeAdded(addNode(span));
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public final void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (initialSpans != null) {
+      if (initialSpans.remove(span)) {
+        currentSize -= span.length;
+      }
+      return;
+    }
+    Node node = removeNode(span.key, span.position);
+    if (node != null) {
+      currentSize -= node.span.length;
+      if (node.list != null) {
+        node.list.remove(node);
+      }
+      onNodeRemoved(node);
+    }
+  }
+
+  @Override
+  public final void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    hitCount++;
+    Node node = initialSpans == null ? getNode(oldSpan.key, oldSpan.position) : null;
+    if (node == null) {
+      onSpanRemoved(cache, oldSpan);
+      onSpanAdded(cache, newSpan);
+      return;
+    }
+    SpanList list = node.list;
+    if (list != null) {
+      // Update the length of the list in case the length of the span has changed.
+      list.remove(node);
+      node.span = newSpan;
+      list.addLast(node);
+    } else {
+      node.span = newSpan;
+    }
+    currentSize += newSpan.length - oldSpan.length;
+    onNodeTouched(node);
+    evictCache(cache, 0);
+  }
+
+  /**
+   * Called when a node has been created for a new span. The implementation should add the node to
+   * one of its lists.
+   */
+  /* package */ abstract void onNodeAdded(Node node);
+
+  /**
+   * Called when the span of a node has been read. The node has already been moved to the end of its
+   * list, and its span updated.
+   */
+  /* package */ abstract void onNodeTouched(Node node);
+
+  /**
+   * Called when the span of a node has been removed from the cache. The node has already been
+   * removed from its list.
+   */
+  /* package */ void onNodeRemoved(Node node) {
+    // Do nothing.
+  }
+
+  /** Returns the node whose span should be evicted next, or null if there are no nodes. */
+  @Nullable
+  /* package */ abstract Node selectVictim();
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (currentSize + requiredSpace > maxBytes) {
+      Node victim = selectVictim();
+      if (victim == null) {
+        return;
+      }
+      evictionCount++;
+      evictedBytes += victim.span.length;
+      try {
+        cache.removeSpan(victim.span);
+      } catch (CacheException e) {
+        // do nothing.
+      }
+    }
+  }
+
+  private Node addNode(CacheSpan span) {
+    Node node = new Node(span, hash(span.key, span.position));
+    if (nodeCount >= table.length - (table.length >> 2)) {
+      resizeTable();
+    }
+    int index = node.hash & (table.length - 1);
+    node.nextInBucket = table[index];
+    table[index] = node;
+    nodeCount++;
+    return node;
+  }
+
+  @Nullable
+  private Node getNode(String key, long position) {
+    int hash = hash(key, position);
+    Node node = table[hash & (table.length - 1)];
+    while (node != null && !(node.hash == hash && node.position == position
+        && node.key.equals(key))) {
+      node = node.nextInBucket;
+    }
+    return node;
+  }
+
+  @Nullable
+  private Node removeNode(String key, long position) {
+    int hash = hash(key, position);
+    int index = hash & (table.length - 1);
+    Node previous = null;
+    Node node = table[index];
+    while (node != null && !(node.hash == hash && node.position == position
+        && node.key.equals(key))) {
+      previous = node;
+      node = node.nextInBucket;
+    }
+    if (node != null) {
+      if (previous == null) {
+        table[index] = node.nextInBucket;
+      } else {
+        previous.nextInBucket = node.nextInBucket;
+      }
+      node.nextInBucket = null;
+      nodeCount--;
+    }
+    return node;
+  }
+
+  private void resizeTable() {
+    Node[] oldTable = table;
+    table = new Node[oldTable.length * 2];
+    for (Node bucket : oldTable) {
+      Node node = bucket;
+      while (node != null) {
+        Node next = node.nextInBucket;
+        int index = node.hash & (table.length - 1);
+        node.nextInBucket = table[index];
+        table[index] = node;
+        node = next;
+      }
+    }
+  }
+
+  private static int hash(String key, long position) {
+    int hash = key.hashCode() * 31 + (int) (position ^ (position >>> 32));
+    return hash ^ (hash >>> 16);
+  }
+
+}
@@ -95,6 +95,11 @@ import java.util.TreeSet;
     return metadata;
   }
 
+  /** Sets the metadata, replacing any existing values. */
+  public void setMetadata(DefaultContentMetadata metadata) {
+    this.metadata = metadata;
+  }
+
   /**
    * Applies {@code mutations} to the metadata.
    *
@@ -22,42 +22,77 @@ import com.google.android.exoplayer2.util.AtomicFile;
 import com.google.android.exoplayer2.util.ReusableBufferedOutputStream;
 import com.google.android.exoplayer2.util.Util;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Random;
 import java.util.Set;
+import java.util.zip.CRC32;
+import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
+import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
-/** Maintains the index of cached content. */
+/**
+ * Maintains the index of cached content.
+ *
+ * <p>By default the whole index file is rewritten whenever the index changes. If journaling is
+ * enabled, changes are instead appended as records to a journal file next to the index file, and
+ * the index file is only rewritten when the journal is compacted. Loading the index replays the
+ * journal on top of the index file.
+ */
 /*package*/ class CachedContentIndex {
 
   public static final String FILE_NAME = "cached_content_index.exi";
+  public static final String JOURNAL_FILE_NAME = FILE_NAME + ".journal";
 
   private static final int VERSION = 2;
+  private static final int JOURNAL_VERSION = 1;
 
   private static final int FLAG_ENCRYPTED_INDEX = 1;
 
+  private static final int RECORD_TYPE_ADD = 0;
+  private static final int RECORD_TYPE_REMOVE = 1;
+  private static final int RECORD_TYPE_METADATA = 2;
+
+  /**
+   * The minimum number of records the journal must contain before it's compacted. Above this, the
+   * journal is compacted when it contains more records than there are keys in the index, which
+   * keeps the amortized cost of storing a change independent of the size of the index.
+   */
+  private static final int MIN_JOURNAL_RECORDS_BEFORE_COMPACTION = 1024;
+  private static final int MAX_JOURNAL_RECORD_LENGTH = 16 * 1024 * 1024;
+
   private final HashMap<String, CachedContent> keyToContent;
   private final SparseArray<String> idToKey;
   private final AtomicFile atomicFile;
   private final Cipher cipher;
   private final SecretKeySpec secretKeySpec;
   private final boolean encrypt;
+  private final boolean journaled;
+  private final File indexFile;
+  private final File journalFile;
+  private final ArrayList<byte[]> pendingJournalRecords;
   private boolean changed;
+  private int journalRecordCount;
   private ReusableBufferedOutputStream bufferedOutputStream;
 
   /**
@@ -88,6 +123,20 @@ import javax.crypto.spec.SecretKeySpec;
    *     secretKey} is null.
    */
   public CachedContentIndex(File cacheDir, byte[] secretKey, boolean encrypt) {
+    this(cacheDir, secretKey, encrypt, false);
+  }
+
+  /**
+   * Creates a CachedContentIndex which works on the index file in the given cacheDir.
+   *
+   * @param cacheDir Directory where the index file is kept.
+   * @param secretKey 16 byte AES key for reading, and optionally writing, the cache index.
+   * @param encrypt Whether the index will be encrypted when written. Must be false if {@code
+   *     secretKey} is null.
+   * @param journaled Whether changes are appended to a journal instead of rewriting the whole
+   *     index file each time the index is stored.
+   */
+  public CachedContentIndex(File cacheDir, byte[] secretKey, boolean encrypt, boolean journaled) {
     this.encrypt = encrypt;
     if (secretKey != null) {
       Assertions.checkArgument(secretKey.length == 16);
@@ -104,25 +153,70 @@ import javax.crypto.spec.SecretKeySpec;
     }
     keyToContent = new HashMap<>();
     idToKey = new SparseArray<>();
-    atomicFile = new AtomicFile(new File(cacheDir, FILE_NAME));
+    this.journaled = journaled;
+    indexFile = new File(cacheDir, FILE_NAME);
+    atomicFile = new AtomicFile(indexFile);
+    journalFile = new File(cacheDir, JOURNAL_FILE_NAME);
+    pendingJournalRecords = new ArrayList<>();
+  }
+
+  /**
+   * Returns whether a file with the given name in the cache directory belongs to the index, rather
+   * than being a cache file.
+   */
+  public static boolean isIndexFile(String fileName) {
+    return FILE_NAME.equals(fileName) || JOURNAL_FILE_NAME.equals(fileName);
   }
 
-  /** Loads the index file. */
+  /** Loads the index file, and replays the journal if there is one. */
   public void load() {
     Assertions.checkState(!changed);
     if (!readFile()) {
       atomicFile.delete();
       keyToContent.clear();
       idToKey.clear();
+      journalFile.delete();
+      return;
+    }
+    if (journalFile.exists()) {
+      replayJournal();
+      if (!journaled) {
+        // The journal was left by an instance with journaling enabled. Force the index file to be
+        // rewritten, which deletes the journal.
+        changed = true;
+      }
     }
   }
 
-  /** Stores the index data to index file if there is a change. */
+  /**
+   * Stores the index data if there is a change. If journaling is enabled, the change is appended
+   * to the journal unless the journal needs to be compacted, in which case the index file is
+   * rewritten.
+   */
   public void store() throws CacheException {
-    if (!changed) {
+    if (journaled && !changed) {
+      if (pendingJournalRecords.isEmpty()) {
+        return;
+      }
+      // The journal can only be appended to once there's an index file on which to replay it.
+      if (indexFile.exists()
+          && journalRecordCount + pendingJournalRecords.size()
+              <= Math.max(MIN_JOURNAL_RECORDS_BEFORE_COMPACTION, keyToContent.size())) {
+        appendToJournal();
+        return;
+      }
+    } else if (!changed) {
       return;
     }
     writeFile();
+    if (journalFile.exists()) {
+      // The journal is only deleted once the index file has been written. If this fails or doesn't
+      // happen, replaying the journal on top of the new index file yields the same index, since
+      // records are applied in order and each record sets rather than modifies state.
+      journalFile.delete();
+    }
+    journalRecordCount = 0;
+    pendingJournalRecords.clear();
     changed = false;
   }
 
@@ -169,7 +263,7 @@ import javax.crypto.spec.SecretKeySpec;
     if (cachedContent != null && cachedContent.isEmpty() && !cachedContent.isLocked()) {
       keyToContent.remove(key);
       idToKey.remove(cachedContent.id);
-      changed = true;
+      onChanged(RECORD_TYPE_REMOVE, cachedContent);
     }
   }
 
@@ -199,7 +293,7 @@ import javax.crypto.spec.SecretKeySpec;
   public void applyContentMetadataMutations(String key, ContentMetadataMutations mutations) {
     CachedContent cachedContent = getOrAdd(key);
     if (cachedContent.applyMetadataMutations(mutations)) {
-      changed = true;
+      onChanged(RECORD_TYPE_METADATA, cachedContent);
     }
   }
 
@@ -310,10 +404,202 @@ import javax.crypto.spec.SecretKeySpec;
     int id = getNewId(idToKey);
     CachedContent cachedContent = new CachedContent(id, key);
     add(cachedContent);
-    changed = true;
+    onChanged(RECORD_TYPE_ADD, cachedContent);
     return cachedContent;
   }
 
+  /**
+   * Marks the index as changed. If journaling is enabled, also queues a journal record of the given
+   * type for {@code cachedContent}, to be appended when the index is next stored.
+   */
+  private void onChanged(int recordType, CachedContent cachedContent) {
+    if (!journaled) {
+      changed = true;
+      return;
+    }
+    if (changed) {
+      // The index file will be rewritten, so there's no need to journal the change.
+      return;
+    }
+    ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(recordBytes);
+    try {
+      output.writeByte(recordType);
+      output.writeInt(cachedContent.id);
+      if (recordType == RECORD_TYPE_ADD) {
+        output.writeUTF(cachedContent.key);
+      } else if (recordType == RECORD_TYPE_METADATA) {
+        ((DefaultContentMetadata) cachedContent.getMetadata()).writeToStream(output);
+      }
+      output.flush();
+    } catch (IOException e) {
+      // Should never happen when writing to a byte array. Rewrite the index file instead.
+      changed = true;
+      return;
+    }
+    pendingJournalRecords.add(recordBytes.toByteArray());
+  }
+
+  /**
+   * Replays the journal on top of the loaded index. If the journal is truncated or corrupt, the
+   * records up to the first invalid one are applied and the index is marked as changed, so that the
+   * journal is compacted by the next call to {@link #store()}.
+   */
+  private void replayJournal() {
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+      int version = input.readInt();
+      int flags = input.readInt();
+      boolean encrypted = (flags & FLAG_ENCRYPTED_INDEX) != 0;
+      if (version != JOURNAL_VERSION || (encrypted && cipher == null)) {
+        changed = true;
+        return;
+      }
+      if (encrypted != encrypt) {
+        // Force the index to be rewritten after replaying the journal.
+        changed = true;
+      }
+      while (true) {
+        int length;
+        try {
+          length = input.readInt();
+        } catch (EOFException e) {
+          // Reached the end of the journal.
+          break;
+        }
+        if (length < 0 || length > MAX_JOURNAL_RECORD_LENGTH) {
+          throw new IOException("Invalid record length: " + length);
+        }
+        byte[] record = new byte[length];
+        input.readFully(record);
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        if ((int) crc.getValue() != input.readInt()) {
+          throw new IOException("Invalid record checksum");
+        }
+        if (encrypted) {
+          record = decryptJournalRecord(record);
+        }
+        applyJournalRecord(new DataInputStream(new ByteArrayInputStream(record)));
+        journalRecordCount++;
+      }
+    } catch (IOException e) {
+      changed = true;
+    } finally {
+      Util.closeQuietly(input);
+    }
+  }
+
+  private void applyJournalRecord(DataInputStream input) throws IOException {
+    int recordType = input.readByte();
+    int id = input.readInt();
+    switch (recordType) {
+      case RECORD_TYPE_ADD:
+        String key = input.readUTF();
+        CachedContent existingContent = keyToContent.get(key);
+        if (existingContent != null) {
+          idToKey.remove(existingContent.id);
+        }
+        add(new CachedContent(id, key));
+        break;
+      case RECORD_TYPE_REMOVE:
+        String removedKey = idToKey.get(id);
+        if (removedKey != null) {
+          keyToContent.remove(removedKey);
+          idToKey.remove(id);
+        }
+        break;
+      case RECORD_TYPE_METADATA:
+        DefaultContentMetadata metadata = DefaultContentMetadata.readFromStream(input);
+        String mutatedKey = idToKey.get(id);
+        if (mutatedKey == null) {
+          throw new IOException("Metadata record for unknown id: " + id);
+        }
+        keyToContent.get(mutatedKey).setMetadata(metadata);
+        break;
+      default:
+        throw new IOException("Invalid record type: " + recordType);
+    }
+  }
+
+  private void appendToJournal() throws CacheException {
+    boolean writeHeader = journalRecordCount == 0 || !journalFile.exists();
+    DataOutputStream output = null;
+    try {
+      FileOutputStream fileOutputStream =
+          new FileOutputStream(journalFile, /* append= */ !writeHeader);
+      if (bufferedOutputStream == null) {
+        bufferedOutputStream = new ReusableBufferedOutputStream(fileOutputStream);
+      } else {
+        bufferedOutputStream.reset(fileOutputStream);
+      }
+      output = new DataOutputStream(bufferedOutputStream);
+      if (writeHeader) {
+        output.writeInt(JOURNAL_VERSION);
+        output.writeInt(encrypt ? FLAG_ENCRYPTED_INDEX : 0);
+      }
+      CRC32 crc = new CRC32();
+      for (int i = 0; i < pendingJournalRecords.size(); i++) {
+        byte[] record = pendingJournalRecords.get(i);
+        if (encrypt) {
+          record = encryptJournalRecord(record);
+        }
+        crc.reset();
+        crc.update(record);
+        output.writeInt(record.length);
+        output.write(record);
+        output.writeInt((int) crc.getValue());
+      }
+      output.flush();
+      fileOutputStream.getFD().sync();
+    } catch (IOException e) {
+      // The journal may now end with a partially written record, which would cause subsequently
+      // appended records to be dropped when the journal is replayed. Rewrite the index file on the
+      // next store instead.
+      changed = true;
+      throw new CacheException(e);
+    } finally {
+      Util.closeQuietly(output);
+    }
+    journalRecordCount += pendingJournalRecords.size();
+    pendingJournalRecords.clear();
+  }
+
+  private byte[] encryptJournalRecord(byte[] record) throws IOException {
+    byte[] initializationVector = new byte[16];
+    new Random().nextBytes(initializationVector);
+    try {
+      cipher.init(
+          Cipher.ENCRYPT_MODE, secretKeySpec, new IvParameterSpec(initializationVector));
+      byte[] encryptedRecord = cipher.doFinal(record);
+      byte[] result = new byte[initializationVector.length + encryptedRecord.length];
+      System.arraycopy(initializationVector, 0, result, 0, initializationVector.length);
+      System.arraycopy(encryptedRecord, 0, result, initializationVector.length,
+          encryptedRecord.length);
+      return result;
+    } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
+      throw new IllegalStateException(e); // Should never happen.
+    } catch (IllegalBlockSizeException | BadPaddingException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private byte[] decryptJournalRecord(byte[] record) throws IOException {
+    if (record.length < 16) {
+      throw new IOException("Invalid encrypted record");
+    }
+    try {
+      cipher.init(
+          Cipher.DECRYPT_MODE, secretKeySpec, new IvParameterSpec(record, 0, 16));
+      return cipher.doFinal(record, 16, record.length - 16);
+    } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
+      throw new IllegalStateException(e); // Should never happen.
+    } catch (IllegalBlockSizeException | BadPaddingException e) {
+      throw new IOException(e);
+    }
+  }
+
   private void add(CachedContent cachedContent) {
     keyToContent.put(cachedContent.key, cachedContent);
     idToKey.put(cachedContent.id, cachedContent.key);
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Persists the cached spans of a cache, so that they can be restored on startup without listing
+ * the cache directory and parsing the name of every cache file.
+ *
+ * <p>The manifest is written when a cache is released, and deleted as soon as it has been read.
+ * Its presence therefore indicates that the cache was shut down cleanly, and that no cache files
+ * have been added since. If it's absent, the cache directory has to be scanned instead.
+ *
+ * <p>Restored spans aren't checked against the file system. A span whose file has been deleted is
+ * detected and removed when it's accessed, in the same way as for a file deleted while the cache is
+ * in use.
+ */
+/* package */ final class CachedSpanManifest {
+
+  public static final String FILE_NAME = "cached_span_manifest.exi";
+
+  private static final int VERSION = 1;
+
+  private CachedSpanManifest() {}
+
+  /**
+   * Reads and deletes the manifest in the given cache directory.
+   *
+   * @param cacheDir The cache directory.
+   * @param index The loaded content index, used to resolve the keys of the spans.
+   * @return The cached spans, or null if there's no valid manifest. Files of spans whose ids aren't
+   *     present in {@code index} are deleted, and the spans are omitted.
+   */
+  @Nullable
+  public static ArrayList<SimpleCacheSpan> read(File cacheDir, CachedContentIndex index) {
+    File manifestFile = new File(cacheDir, FILE_NAME);
+    AtomicFile atomicFile = new AtomicFile(manifestFile);
+    long[] entries = readEntries(atomicFile);
+    // Delete the manifest before the cache is modified. If this isn't possible, the manifest might
+    // be read again after an unclean shutdown, so it can't be used.
+    atomicFile.delete();
+    if (entries == null || manifestFile.exists()) {
+      return null;
+    }
+    ArrayList<SimpleCacheSpan> spans = new ArrayList<>(entries.length / 4);
+    for (int i = 0; i < entries.length; i += 4) {
+      int id = (int) entries[i];
+      SimpleCacheSpan span =
+          SimpleCacheSpan.createCacheEntry(
+              cacheDir, id, entries[i + 1], entries[i + 2], entries[i + 3], index);
+      if (span != null) {
+        spans.add(span);
+      } else {
+        SimpleCacheSpan.getCacheFile(cacheDir, id, entries[i + 1], entries[i + 3]).delete();
+      }
+    }
+    return spans;
+  }
+
+  /**
+   * Writes a manifest of the given cached spans to the given cache directory.
+   *
+   * @param cacheDir The cache directory.
+   * @param index The content index, used to resolve the ids of the keys of the spans.
+   * @param spans The cached spans.
+   * @throws IOException If an error occurs writing the manifest.
+   */
+  public static void write(File cacheDir, CachedContentIndex index, List<SimpleCacheSpan> spans)
+      throws IOException {
+    AtomicFile atomicFile = new AtomicFile(new File(cacheDir, FILE_NAME));
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(atomicFile.startWrite()));
+      output.writeInt(VERSION);
+      output.writeInt(spans.size());
+      CRC32 crc = new CRC32();
+      for (int i = 0; i < spans.size(); i++) {
+        SimpleCacheSpan span = spans.get(i);
+        int id = index.assignIdForKey(span.key);
+        output.writeInt(id);
+        output.writeLong(span.position);
+        output.writeLong(span.length);
+        output.writeLong(span.lastAccessTimestamp);
+        updateChecksum(crc, id, span.position, span.length, span.lastAccessTimestamp);
+      }
+      output.writeLong(crc.getValue());
+      atomicFile.endWrite(output);
+      output = null;
+    } finally {
+      Util.closeQuietly(output);
+    }
+  }
+
+  /** Deletes the manifest in the given cache directory, if there is one. */
+  public static void delete(File cacheDir) {
+    new AtomicFile(new File(cacheDir, FILE_NAME)).delete();
+  }
+
+  /**
+   * Returns the entries of the manifest as consecutive (id, position, length, last access
+   * timestamp) tuples, or null if the manifest doesn't exist or is invalid.
+   */
+  @Nullable
+  private static long[] readEntries(AtomicFile atomicFile) {
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(atomicFile.openRead()));
+      int version = input.readInt();
+      int count = input.readInt();
+      if (version != VERSION || count < 0 || count > Integer.MAX_VALUE / 4) {
+        return null;
+      }
+      long[] entries = new long[count * 4];
+      CRC32 crc = new CRC32();
+      for (int i = 0; i < entries.length; i += 4) {
+        int id = input.readInt();
+        long position = input.readLong();
+        long length = input.readLong();
+        long lastAccessTimestamp = input.readLong();
+        updateChecksum(crc, id, position, length, lastAccessTimestamp);
+        entries[i] = id;
+        entries[i + 1] = position;
+        entries[i + 2] = length;
+        entries[i + 3] = lastAccessTimestamp;
+      }
+      if (input.readLong() != crc.getValue() || input.read() != -1) {
+        return null;
+      }
+      return entries;
+    } catch (IOException e) {
+      return null;
+    } finally {
+      Util.closeQuietly(input);
+    }
+  }
+
+  private static void updateChecksum(
+      CRC32 crc, int id, long position, long length, long lastAccessTimestamp) {
+    updateChecksum(crc, id);
+    updateChecksum(crc, position);
+    updateChecksum(crc, length);
+    updateChecksum(crc, lastAccessTimestamp);
+  }
+
+  private static void updateChecksum(CRC32 crc, long value) {
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      crc.update((int) (value >>> shift));
+    }
+  }
+
+}
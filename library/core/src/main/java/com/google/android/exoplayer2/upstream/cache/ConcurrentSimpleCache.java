@@ -0,0 +1,775 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import android.os.ConditionVariable;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link Cache} implementation that maintains an in-memory representation and allows concurrent
+ * access to unrelated content.
+ *
+ * <p>Unlike {@link SimpleCache}, which serializes all operations behind a single monitor, this
+ * implementation stripes locking by cache key. Operations on content with different keys, such as
+ * reading, touching and committing spans, can proceed in parallel. Only updates to the content
+ * index and to the {@link CacheEvictor} are globally coordinated:
+ *
+ * <ul>
+ *   <li>The content index, the total cache space and the queue of pending evictor events are
+ *       guarded by a global index lock, which is only held for short in-memory operations and for
+ *       persisting the index.
+ *   <li>Evictor callbacks are queued in the order in which the corresponding changes are made, and
+ *       are delivered in that order by whichever thread holds the evictor lock. Callbacks are never
+ *       delivered while a key lock is held, so the evictor is free to remove spans of any key.
+ * </ul>
+ *
+ * <p>{@link Cache.Listener}s registered for a key are notified synchronously while the lock for
+ * that key is held. They must not call back into the cache to modify content with other keys.
+ *
+ * <p>Note, only one instance of ConcurrentSimpleCache or {@link SimpleCache} is allowed for a given
+ * directory at a given time.
+ */
+public final class ConcurrentSimpleCache implements Cache {
+
+  /** The default number of lock stripes. */
+  public static final int DEFAULT_LOCK_STRIPE_COUNT = 32;
+
+  private static final String TAG = "ConcurrentSimpleCache";
+
+  private final File cacheDir;
+  private final CacheEvictor evictor;
+  private final CachedContentIndex index;
+  private final Object[] lockStripes;
+  private final Object indexLock;
+  private final Object evictorLock;
+  private final ArrayDeque<SpanEvent> pendingEvictorEvents;
+  private final ConcurrentHashMap<String, ArrayList<Listener>> listeners;
+
+  private long totalSpace;
+  private volatile boolean released;
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used.
+   */
+  public ConcurrentSimpleCache(File cacheDir, CacheEvictor evictor) {
+    this(cacheDir, evictor, null, false);
+  }
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used.
+   * @param secretKey If not null, cache keys will be stored encrypted on filesystem using AES/CBC.
+   *     The key must be 16 bytes long.
+   */
+  public ConcurrentSimpleCache(File cacheDir, CacheEvictor evictor, byte[] secretKey) {
+    this(cacheDir, evictor, secretKey, secretKey != null);
+  }
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used.
+   * @param secretKey If not null, cache keys will be stored encrypted on filesystem using AES/CBC.
+   *     The key must be 16 bytes long.
+   * @param encrypt Whether the index will be encrypted when written. Must be false if {@code
+   *     secretKey} is null.
+   */
+  public ConcurrentSimpleCache(
+      File cacheDir, CacheEvictor evictor, byte[] secretKey, boolean encrypt) {
+    this(cacheDir, evictor, secretKey, encrypt, false);
+  }
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used.
+   * @param secretKey If not null, cache keys will be stored encrypted on filesystem using AES/CBC.
+   *     The key must be 16 bytes long.
+   * @param encrypt Whether the index will be encrypted when written. Must be false if {@code
+   *     secretKey} is null.
+   * @param journalIndex Whether changes to the index are appended to a journal, which is
+   *     periodically compacted, rather than rewriting the whole index each time. Earlier versions
+   *     of the library don't read the journal, so a cache directory written with journaling enabled
+   *     shouldn't be opened by them.
+   */
+  public ConcurrentSimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      byte[] secretKey,
+      boolean encrypt,
+      boolean journalIndex) {
+    this(
+        cacheDir,
+        evictor,
+        new CachedContentIndex(cacheDir, secretKey, encrypt, journalIndex),
+        DEFAULT_LOCK_STRIPE_COUNT);
+  }
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used.
+   * @param index The CachedContentIndex to be used.
+   * @param lockStripeCount The number of locks over which cache keys are distributed. Must be a
+   *     power of two.
+   */
+  /* package */ ConcurrentSimpleCache(
+      File cacheDir, CacheEvictor evictor, CachedContentIndex index, int lockStripeCount) {
+    Assertions.checkArgument(lockStripeCount > 0 && (lockStripeCount & (lockStripeCount - 1)) == 0);
+    if (!SimpleCache.lockFolder(cacheDir)) {
+      throw new IllegalStateException("Another SimpleCache instance uses the folder: " + cacheDir);
+    }
+
+    this.cacheDir = cacheDir;
+    this.evictor = evictor;
+    this.index = index;
+    lockStripes = new Object[lockStripeCount];
+    for (int i = 0; i < lockStripeCount; i++) {
+      lockStripes[i] = new Object();
+    }
+    indexLock = new Object();
+    evictorLock = new Object();
+    pendingEvictorEvents = new ArrayDeque<>();
+    listeners = new ConcurrentHashMap<>();
+
+    // Start cache initialization. Every operation accesses the index, so holding the index lock
+    // during initialization blocks all operations until it's complete.
+    final ConditionVariable conditionVariable = new ConditionVariable();
+    new Thread("ConcurrentSimpleCache.initialize()") {
+      @Override
+      public void run() {
+        synchronized (evictorLock) {
+          synchronized (indexLock) {
+            conditionVariable.open();
+            initialize();
+          }
+          flushEvictorEvents();
+          ConcurrentSimpleCache.this.evictor.onCacheInitialized();
+        }
+      }
+    }.start();
+    conditionVariable.block();
+  }
+
+  @Override
+  public synchronized void release() throws CacheException {
+    if (released) {
+      return;
+    }
+    listeners.clear();
+    try {
+      removeStaleSpansAndCachedContents();
+      storeSpanManifest();
+    } finally {
+      SimpleCache.unlockFolder(cacheDir);
+      released = true;
+    }
+  }
+
+  @Override
+  public NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+    Assertions.checkState(!released);
+    synchronized (getLock(key)) {
+      ArrayList<Listener> listenersForKey = listeners.get(key);
+      if (listenersForKey == null) {
+        listenersForKey = new ArrayList<>();
+        listeners.put(key, listenersForKey);
+      }
+      listenersForKey.add(listener);
+      return getCachedSpans(key);
+    }
+  }
+
+  @Override
+  public void removeListener(String key, Listener listener) {
+    if (released) {
+      return;
+    }
+    synchronized (getLock(key)) {
+      ArrayList<Listener> listenersForKey = listeners.get(key);
+      if (listenersForKey != null) {
+        listenersForKey.remove(listener);
+        if (listenersForKey.isEmpty()) {
+          listeners.remove(key);
+        }
+      }
+    }
+  }
+
+  @NonNull
+  @Override
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
+    Assertions.checkState(!released);
+    synchronized (getLock(key)) {
+      CachedContent cachedContent = getCachedContent(key);
+      return cachedContent == null || cachedContent.isEmpty()
+          ? new TreeSet<CacheSpan>()
+          : new TreeSet<CacheSpan>(cachedContent.getSpans());
+    }
+  }
+
+  @Override
+  public Set<String> getKeys() {
+    Assertions.checkState(!released);
+    synchronized (indexLock) {
+      return new HashSet<>(index.getKeys());
+    }
+  }
+
+  @Override
+  public long getCacheSpace() {
+    Assertions.checkState(!released);
+    synchronized (indexLock) {
+      return totalSpace;
+    }
+  }
+
+  @Override
+  public SimpleCacheSpan startReadWrite(String key, long position)
+      throws InterruptedException, CacheException {
+    Assertions.checkState(!released);
+    Object lock = getLock(key);
+    try {
+      synchronized (lock) {
+        while (true) {
+          SimpleCacheSpan span = startReadWriteLocked(key, position);
+          if (span != null) {
+            return span;
+          } else {
+            // Write case, lock not available. We'll be woken up when a locked span with a key
+            // sharing the same lock stripe is released, or when a span with such a key is added to
+            // the cache.
+            lock.wait();
+          }
+        }
+      }
+    } finally {
+      flushEvictorEvents();
+    }
+  }
+
+  @Override
+  public SimpleCacheSpan startReadWriteNonBlocking(String key, long position)
+      throws CacheException {
+    Assertions.checkState(!released);
+    try {
+      synchronized (getLock(key)) {
+        return startReadWriteLocked(key, position);
+      }
+    } finally {
+      flushEvictorEvents();
+    }
+  }
+
+  @Override
+  public File startFile(String key, long position, long maxLength) throws CacheException {
+    Assertions.checkState(!released);
+    CachedContent cachedContent;
+    synchronized (getLock(key)) {
+      cachedContent = getCachedContent(key);
+      Assertions.checkNotNull(cachedContent);
+      Assertions.checkState(cachedContent.isLocked());
+    }
+    if (!cacheDir.exists()) {
+      // For some reason the cache directory doesn't exist. Make a best effort to create it.
+      cacheDir.mkdirs();
+      removeStaleSpansAndCachedContents();
+    }
+    synchronized (evictorLock) {
+      flushEvictorEvents();
+      evictor.onStartFile(this, key, position, maxLength);
+    }
+    return SimpleCacheSpan.getCacheFile(
+        cacheDir, cachedContent.id, position, System.currentTimeMillis());
+  }
+
+  @Override
+  public void commitFile(File file) throws CacheException {
+    Assertions.checkState(!released);
+    SimpleCacheSpan span;
+    synchronized (indexLock) {
+      span = SimpleCacheSpan.createCacheEntry(file, index);
+    }
+    Assertions.checkState(span != null);
+    Object lock = getLock(span.key);
+    try {
+      synchronized (lock) {
+        CachedContent cachedContent = getCachedContent(span.key);
+        Assertions.checkNotNull(cachedContent);
+        Assertions.checkState(cachedContent.isLocked());
+        // If the file doesn't exist, don't add it to the in-memory representation.
+        if (!file.exists()) {
+          return;
+        }
+        // If the file has length 0, delete it and don't add it to the in-memory representation.
+        if (file.length() == 0) {
+          file.delete();
+          return;
+        }
+        // Check if the span conflicts with the set content length
+        long length = ContentMetadataInternal.getContentLength(getContentMetadata(span.key));
+        if (length != C.LENGTH_UNSET) {
+          Assertions.checkState((span.position + span.length) <= length);
+        }
+        addSpan(cachedContent, span);
+        synchronized (indexLock) {
+          index.store();
+        }
+        lock.notifyAll();
+      }
+    } finally {
+      flushEvictorEvents();
+    }
+  }
+
+  @Override
+  public void releaseHoleSpan(CacheSpan holeSpan) {
+    Assertions.checkState(!released);
+    Object lock = getLock(holeSpan.key);
+    synchronized (lock) {
+      CachedContent cachedContent = getCachedContent(holeSpan.key);
+      Assertions.checkNotNull(cachedContent);
+      Assertions.checkState(cachedContent.isLocked());
+      cachedContent.setLocked(false);
+      synchronized (indexLock) {
+        index.maybeRemove(cachedContent.key);
+      }
+      lock.notifyAll();
+    }
+  }
+
+  @Override
+  public void removeSpan(CacheSpan span) throws CacheException {
+    Assertions.checkState(!released);
+    try {
+      synchronized (getLock(span.key)) {
+        removeSpanLocked(span, true);
+      }
+    } finally {
+      flushEvictorEvents();
+    }
+  }
+
+  @Override
+  public boolean isCached(String key, long position, long length) {
+    Assertions.checkState(!released);
+    synchronized (getLock(key)) {
+      CachedContent cachedContent = getCachedContent(key);
+      return cachedContent != null
+          && cachedContent.getCachedBytesLength(position, length) >= length;
+    }
+  }
+
+  @Override
+  public long getCachedLength(String key, long position, long length) {
+    Assertions.checkState(!released);
+    synchronized (getLock(key)) {
+      CachedContent cachedContent = getCachedContent(key);
+      return cachedContent != null
+          ? cachedContent.getCachedBytesLength(position, length)
+          : -length;
+    }
+  }
+
+  @Override
+  public void setContentLength(String key, long length) throws CacheException {
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataInternal.setContentLength(mutations, length);
+    applyContentMetadataMutations(key, mutations);
+  }
+
+  @Override
+  public long getContentLength(String key) {
+    return ContentMetadataInternal.getContentLength(getContentMetadata(key));
+  }
+
+  @Override
+  public void applyContentMetadataMutations(String key, ContentMetadataMutations mutations)
+      throws CacheException {
+    Assertions.checkState(!released);
+    synchronized (getLock(key)) {
+      synchronized (indexLock) {
+        index.applyContentMetadataMutations(key, mutations);
+        index.store();
+      }
+    }
+  }
+
+  @Override
+  public ContentMetadata getContentMetadata(String key) {
+    Assertions.checkState(!released);
+    synchronized (indexLock) {
+      return index.getContentMetadata(key);
+    }
+  }
+
+  /** Returns the lock guarding the spans and listeners of the content with the given key. */
+  private Object getLock(String key) {
+    int hash = key.hashCode();
+    hash ^= hash >>> 16;
+    return lockStripes[hash & (lockStripes.length - 1)];
+  }
+
+  private CachedContent getCachedContent(String key) {
+    synchronized (indexLock) {
+      return index.get(key);
+    }
+  }
+
+  /**
+   * Implements {@link #startReadWriteNonBlocking(String, long)}. Must be called with the lock for
+   * {@code key} held.
+   */
+  private SimpleCacheSpan startReadWriteLocked(String key, long position) throws CacheException {
+    SimpleCacheSpan cacheSpan = getSpan(key, position);
+
+    // Read case.
+    if (cacheSpan.isCached) {
+      // Obtain a new span with updated last access timestamp.
+      SimpleCacheSpan newCacheSpan = getCachedContent(key).touch(cacheSpan);
+      notifySpanTouched(cacheSpan, newCacheSpan);
+      return newCacheSpan;
+    }
+
+    CachedContent cachedContent;
+    synchronized (indexLock) {
+      cachedContent = index.getOrAdd(key);
+    }
+    if (!cachedContent.isLocked()) {
+      // Write case, lock available.
+      cachedContent.setLocked(true);
+      return cacheSpan;
+    }
+
+    // Write case, lock not available.
+    return null;
+  }
+
+  /**
+   * Returns the cache {@link SimpleCacheSpan} corresponding to the provided lookup {@link
+   * SimpleCacheSpan}. Must be called with the lock for {@code key} held.
+   *
+   * @param key The key of the span being requested.
+   * @param position The position of the span being requested.
+   * @return The corresponding cache {@link SimpleCacheSpan}.
+   * @see SimpleCache
+   */
+  private SimpleCacheSpan getSpan(String key, long position) throws CacheException {
+    CachedContent cachedContent = getCachedContent(key);
+    if (cachedContent == null) {
+      return SimpleCacheSpan.createOpenHole(key, position);
+    }
+    while (true) {
+      SimpleCacheSpan span = cachedContent.getSpan(position);
+      if (span.isCached && !span.file.exists()) {
+        // The file has been deleted from under us. Only the spans of this content can be scanned
+        // here, as scanning other content would require acquiring the locks of other keys.
+        removeStaleSpans(cachedContent);
+        continue;
+      }
+      return span;
+    }
+  }
+
+  /** Ensures that the cache's in-memory representation has been initialized. */
+  private void initialize() {
+    if (!cacheDir.exists()) {
+      cacheDir.mkdirs();
+      return;
+    }
+
+    index.load();
+
+    ArrayList<SimpleCacheSpan> spans = CachedSpanManifest.read(cacheDir, index);
+    if (spans != null) {
+      for (int i = 0; i < spans.size(); i++) {
+        addSpanOnInitialization(spans.get(i));
+      }
+    } else {
+      loadDirectory();
+    }
+
+    index.removeEmpty();
+    try {
+      index.store();
+    } catch (CacheException e) {
+      Log.e(TAG, "Storing index file failed", e);
+    }
+  }
+
+  /** Adds the spans of all cache files in the cache directory, and deletes invalid files. */
+  private void loadDirectory() {
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (CachedContentIndex.isIndexFile(file.getName())) {
+        continue;
+      }
+      SimpleCacheSpan span =
+          file.length() > 0 ? SimpleCacheSpan.createCacheEntry(file, index) : null;
+      if (span != null) {
+        addSpanOnInitialization(span);
+      } else {
+        file.delete();
+      }
+    }
+  }
+
+  /** Adds a span found during initialization. Must be called with the index lock held. */
+  private void addSpanOnInitialization(SimpleCacheSpan span) {
+    index.getOrAdd(span.key).addSpan(span);
+    totalSpace += span.length;
+    pendingEvictorEvents.add(new SpanEvent(null, span));
+  }
+
+  /**
+   * Stores a manifest of the cached spans, so that the cache directory doesn't need to be scanned
+   * when the cache is next initialized. Does nothing if a span is being written, since the
+   * partially written file wouldn't be cleaned up. Must be called without any key lock held.
+   */
+  private void storeSpanManifest() {
+    ArrayList<SimpleCacheSpan> spans = new ArrayList<>();
+    for (String key : getKeysSnapshot()) {
+      synchronized (getLock(key)) {
+        CachedContent cachedContent = getCachedContent(key);
+        if (cachedContent == null) {
+          continue;
+        }
+        if (cachedContent.isLocked()) {
+          return;
+        }
+        spans.addAll(cachedContent.getSpans());
+      }
+    }
+    synchronized (indexLock) {
+      try {
+        CachedSpanManifest.write(cacheDir, index, spans);
+      } catch (IOException e) {
+        Log.e(TAG, "Storing span manifest failed", e);
+        CachedSpanManifest.delete(cacheDir);
+      }
+    }
+  }
+
+  /**
+   * Adds a cached span to the in-memory representation. Must be called with the lock for the key of
+   * the span held.
+   *
+   * @param cachedContent The content to which the span belongs.
+   * @param span The span to be added.
+   */
+  private void addSpan(CachedContent cachedContent, SimpleCacheSpan span) {
+    cachedContent.addSpan(span);
+    synchronized (indexLock) {
+      totalSpace += span.length;
+      pendingEvictorEvents.add(new SpanEvent(null, span));
+    }
+    ArrayList<Listener> keyListeners = listeners.get(span.key);
+    if (keyListeners != null) {
+      for (int i = keyListeners.size() - 1; i >= 0; i--) {
+        keyListeners.get(i).onSpanAdded(this, span);
+      }
+    }
+  }
+
+  /**
+   * Removes a cached span from the in-memory representation. Must be called with the lock for the
+   * key of the span held.
+   */
+  private void removeSpanLocked(CacheSpan span, boolean removeEmptyCachedContent)
+      throws CacheException {
+    CachedContent cachedContent = getCachedContent(span.key);
+    if (cachedContent == null) {
+      return;
+    }
+    // The evictor may try to remove a span which has been touched by another thread, but for which
+    // the touch hasn't been delivered yet. Spans at the same position compare equal, so check that
+    // the cached span is the one being removed and not its replacement.
+    SimpleCacheSpan cachedSpan = cachedContent.getSpan(span.position);
+    if (!cachedSpan.isCached
+        || !cachedSpan.file.equals(span.file)
+        || !cachedContent.removeSpan(span)) {
+      return;
+    }
+    synchronized (indexLock) {
+      totalSpace -= span.length;
+      pendingEvictorEvents.add(new SpanEvent(span, null));
+    }
+    try {
+      if (removeEmptyCachedContent) {
+        synchronized (indexLock) {
+          index.maybeRemove(cachedContent.key);
+          index.store();
+        }
+      }
+    } finally {
+      ArrayList<Listener> keyListeners = listeners.get(span.key);
+      if (keyListeners != null) {
+        for (int i = keyListeners.size() - 1; i >= 0; i--) {
+          keyListeners.get(i).onSpanRemoved(this, span);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the spans of {@code cachedContent} for which files no longer exist. Must be called with
+   * the lock for the key of the content held.
+   */
+  private void removeStaleSpans(CachedContent cachedContent) throws CacheException {
+    ArrayList<CacheSpan> spansToBeRemoved = new ArrayList<>();
+    for (CacheSpan span : cachedContent.getSpans()) {
+      if (!span.file.exists()) {
+        spansToBeRemoved.add(span);
+      }
+    }
+    for (int i = 0; i < spansToBeRemoved.size(); i++) {
+      // Remove span but not CachedContent to prevent multiple index.store() calls.
+      removeSpanLocked(spansToBeRemoved.get(i), false);
+    }
+  }
+
+  /**
+   * Scans all of the cached spans in the in-memory representation, removing any for which files no
+   * longer exist. Must be called without any key lock held.
+   */
+  private void removeStaleSpansAndCachedContents() throws CacheException {
+    try {
+      for (String key : getKeysSnapshot()) {
+        synchronized (getLock(key)) {
+          CachedContent cachedContent = getCachedContent(key);
+          if (cachedContent != null) {
+            removeStaleSpans(cachedContent);
+          }
+        }
+      }
+      removeEmptyCachedContents();
+    } finally {
+      flushEvictorEvents();
+    }
+  }
+
+  /**
+   * Removes empty and not locked {@link CachedContent} instances from the index and stores it. Must
+   * be called without any key lock held.
+   */
+  private void removeEmptyCachedContents() throws CacheException {
+    for (String key : getKeysSnapshot()) {
+      synchronized (getLock(key)) {
+        synchronized (indexLock) {
+          index.maybeRemove(key);
+        }
+      }
+    }
+    synchronized (indexLock) {
+      index.store();
+    }
+  }
+
+  private String[] getKeysSnapshot() {
+    synchronized (indexLock) {
+      Set<String> keys = index.getKeys();
+      return keys.toArray(new String[keys.size()]);
+    }
+  }
+
+  /**
+   * Must be called with the lock for the key of the spans held.
+   */
+  private void notifySpanTouched(SimpleCacheSpan oldSpan, CacheSpan newSpan) {
+    synchronized (indexLock) {
+      pendingEvictorEvents.add(new SpanEvent(oldSpan, newSpan));
+    }
+    ArrayList<Listener> keyListeners = listeners.get(oldSpan.key);
+    if (keyListeners != null) {
+      for (int i = keyListeners.size() - 1; i >= 0; i--) {
+        keyListeners.get(i).onSpanTouched(this, oldSpan, newSpan);
+      }
+    }
+  }
+
+  /**
+   * Delivers pending events to the evictor, in the order in which they were queued. Must be called
+   * without any key lock held, since the evictor may remove spans of any key.
+   *
+   * <p>The evictor may remove spans from within a callback, in which case the resulting events are
+   * delivered by a nested call to this method before the removal returns. This keeps the evictor's
+   * view of the cache consistent with the cache once all queued events have been delivered.
+   */
+  private void flushEvictorEvents() {
+    synchronized (evictorLock) {
+      while (true) {
+        SpanEvent event;
+        synchronized (indexLock) {
+          event = pendingEvictorEvents.poll();
+        }
+        if (event == null) {
+          return;
+        }
+        if (event.oldSpan == null) {
+          evictor.onSpanAdded(this, event.newSpan);
+        } else if (event.newSpan == null) {
+          evictor.onSpanRemoved(this, event.oldSpan);
+        } else {
+          evictor.onSpanTouched(this, event.oldSpan, event.newSpan);
+        }
+      }
+    }
+  }
+
+  /** A queued addition, removal or touch of a span, to be delivered to the evictor. */
+  private static final class SpanEvent {
+
+    /** The removed or replaced span, or null if a span was added. */
+    public final CacheSpan oldSpan;
+    /** The added or replacing span, or null if a span was removed. */
+    public final CacheSpan newSpan;
+
+    public SpanEvent(CacheSpan oldSpan, CacheSpan newSpan) {
+      this.oldSpan = oldSpan;
+      this.newSpan = newSpan;
+    }
+
+  }
+
+}
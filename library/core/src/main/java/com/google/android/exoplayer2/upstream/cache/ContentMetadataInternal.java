@@ -25,6 +25,7 @@ import com.google.android.exoplayer2.C;
   private static final String PREFIX = ContentMetadata.INTERNAL_METADATA_NAME_PREFIX;
   private static final String METADATA_NAME_REDIRECTED_URI = PREFIX + "redir";
   private static final String METADATA_NAME_CONTENT_LENGTH = PREFIX + "len";
+  private static final String METADATA_NAME_SEEK_INDEX = PREFIX + "seek";
 
   /** Returns the content length metadata, or {@link C#LENGTH_UNSET} if not set. */
   public static long getContentLength(ContentMetadata contentMetadata) {
@@ -59,4 +60,19 @@ import com.google.android.exoplayer2.C;
   public static void removeRedirectedUri(ContentMetadataMutations mutations) {
     mutations.remove(METADATA_NAME_REDIRECTED_URI);
   }
+
+  /** Returns the serialized seek index metadata, or {@code null} if not set. */
+  public @Nullable static byte[] getSeekIndex(ContentMetadata contentMetadata) {
+    return contentMetadata.get(METADATA_NAME_SEEK_INDEX, (byte[]) null);
+  }
+
+  /** Adds a mutation to set serialized seek index metadata value. */
+  public static void setSeekIndex(ContentMetadataMutations mutations, byte[] seekIndex) {
+    mutations.set(METADATA_NAME_SEEK_INDEX, seekIndex);
+  }
+
+  /** Adds a mutation to remove serialized seek index metadata value. */
+  public static void removeSeekIndex(ContentMetadataMutations mutations) {
+    mutations.remove(METADATA_NAME_SEEK_INDEX);
+  }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+/**
+ * A count-min sketch estimating how often cached spans have been accessed recently, using four
+ * saturating 4 bit counters per element.
+ *
+ * <p>The counters are halved when the number of recorded accesses reaches ten times the number of
+ * counters per row, so that the estimates favor recent accesses. The sketch grows as the number of
+ * tracked elements grows, which discards the recorded history.
+ */
+/* package */ final class FrequencySketch {
+
+  private static final int MIN_COUNTERS = 64;
+  private static final int COUNTERS_PER_ELEMENT = 8;
+  private static final int MAX_COUNT = 15;
+  private static final long[] SEEDS =
+      new long[] {0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL,
+          0xCBF29CE484222325L};
+
+  private byte[] counters;
+  private int sampleSize;
+  private int additions;
+
+  public FrequencySketch() {
+    counters = new byte[MIN_COUNTERS];
+    sampleSize = 10 * MIN_COUNTERS / COUNTERS_PER_ELEMENT;
+  }
+
+  /**
+   * Grows the sketch if necessary, so that it can estimate the frequencies of the given number of
+   * elements accurately.
+   */
+  public void ensureCapacity(int elementCount) {
+    if (elementCount <= counters.length / COUNTERS_PER_ELEMENT) {
+      return;
+    }
+    int counterCount = counters.length;
+    while (counterCount / COUNTERS_PER_ELEMENT < elementCount && counterCount < (1 << 29)) {
+      counterCount *= 2;
+    }
+    counters = new byte[counterCount];
+    sampleSize = 10 * counterCount / COUNTERS_PER_ELEMENT;
+    additions = 0;
+  }
+
+  /** Returns the estimated number of recent accesses to the element with the given hash. */
+  public int frequency(int hash) {
+    int frequency = MAX_COUNT;
+    for (int i = 0; i < SEEDS.length; i++) {
+      frequency = Math.min(frequency, counters[indexOf(hash, i)]);
+    }
+    return frequency;
+  }
+
+  /** Records an access to the element with the given hash. */
+  public void increment(int hash) {
+    boolean incremented = false;
+    for (int i = 0; i < SEEDS.length; i++) {
+      int index = indexOf(hash, i);
+      if (counters[index] < MAX_COUNT) {
+        counters[index]++;
+        incremented = true;
+      }
+    }
+    if (incremented && ++additions >= sampleSize) {
+      reset();
+    }
+  }
+
+  private void reset() {
+    for (int i = 0; i < counters.length; i++) {
+      counters[i] = (byte) (counters[i] >> 1);
+    }
+    additions /= 2;
+  }
+
+  private int indexOf(int hash, int row) {
+    long value = (hash + SEEDS[row]) * SEEDS[row];
+    value += value >>> 32;
+    return (int) value & (counters.length - 1);
+  }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+/**
+ * Evicts least recently used cache files first. Unlike {@link LeastRecentlyUsedCacheEvictor}, spans
+ * are kept in a linked list in access order, so that all operations take constant time.
+ */
+public final class LinkedLeastRecentlyUsedCacheEvictor extends BaseLinkedCacheEvictor {
+
+  private final SpanList leastRecentlyUsed;
+
+  /**
+   * @param maxBytes The maximum total length of the cached spans.
+   */
+  public LinkedLeastRecentlyUsedCacheEvictor(long maxBytes) {
+    super(maxBytes);
+    leastRecentlyUsed = new SpanList();
+  }
+
+  @Override
+  /* package */ void onNodeAdded(Node node) {
+    leastRecentlyUsed.addLast(node);
+  }
+
+  @Override
+  /* package */ void onNodeTouched(Node node) {
+    // Do nothing. The node has already been moved to the end of the list.
+  }
+
+  @Override
+  /* package */ Node selectVictim() {
+    return leastRecentlyUsed.first();
+  }
+
+}
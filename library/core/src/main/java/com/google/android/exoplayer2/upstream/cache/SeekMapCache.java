@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.IndexSeekMap;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Persists the seek indexes of progressive streams in the content metadata of a {@link Cache}, so
+ * that content that was played before can be seeked when it's reopened, even if its index can't be
+ * reconstructed before playback starts.
+ *
+ * <p>Only seek maps that are backed by an index of discrete seek points (for example the sample
+ * tables of an MP4 file, or the cues of a Matroska file) are stored. Seek maps that estimate seek
+ * positions, such as constant bitrate seeking, are ignored. A stored index is removed together with
+ * the content metadata of its key, which happens when all of its cached data has been evicted.
+ */
+public final class SeekMapCache {
+
+  /** The maximum number of seek points stored for a single key. */
+  public static final int MAX_SEEK_POINT_COUNT = 10000;
+
+  private static final int VERSION = 1;
+
+  private final Cache cache;
+
+  /** @param cache The cache in whose content metadata seek indexes are stored. */
+  public SeekMapCache(Cache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Returns the seek index stored for a key, or {@code null} if none is stored or the stored index
+   * doesn't match the current content length of the key.
+   *
+   * @param key The cache key of the stream.
+   * @return The stored {@link IndexSeekMap}, or {@code null}.
+   */
+  public @Nullable IndexSeekMap get(String key) {
+    ContentMetadata contentMetadata = cache.getContentMetadata(key);
+    byte[] seekIndex = ContentMetadataInternal.getSeekIndex(contentMetadata);
+    if (seekIndex == null) {
+      return null;
+    }
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(seekIndex));
+    try {
+      if (input.readInt() != VERSION) {
+        return null;
+      }
+      long durationUs = input.readLong();
+      long indexContentLength = input.readLong();
+      long contentLength = ContentMetadataInternal.getContentLength(contentMetadata);
+      if (indexContentLength != C.LENGTH_UNSET
+          && contentLength != C.LENGTH_UNSET
+          && indexContentLength != contentLength) {
+        return null;
+      }
+      int count = input.readInt();
+      if (count < 2 || count > MAX_SEEK_POINT_COUNT) {
+        return null;
+      }
+      long[] timesUs = new long[count];
+      long[] positions = new long[count];
+      for (int i = 0; i < count; i++) {
+        timesUs[i] = input.readLong();
+        positions[i] = input.readLong();
+      }
+      return new IndexSeekMap(durationUs, timesUs, positions);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Stores the index of a seek map for a key, replacing any index previously stored for it. Does
+   * nothing if the seek map isn't backed by an index of at most {@link #MAX_SEEK_POINT_COUNT} seek
+   * points.
+   *
+   * @param key The cache key of the stream.
+   * @param seekMap The {@link SeekMap} output by the extractor of the stream.
+   * @return Whether an index was stored.
+   * @throws CacheException If an error occurs updating the content metadata.
+   */
+  public boolean put(String key, SeekMap seekMap) throws CacheException {
+    IndexSeekMap index = IndexSeekMap.fromSeekMap(seekMap, MAX_SEEK_POINT_COUNT);
+    if (index == null || index.timesUs.length < 2) {
+      return false;
+    }
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataInternal.setSeekIndex(
+        mutations, toByteArray(index, cache.getContentLength(key)));
+    cache.applyContentMetadataMutations(key, mutations);
+    return true;
+  }
+
+  /**
+   * Removes the index stored for a key, if any.
+   *
+   * @param key The cache key of the stream.
+   * @throws CacheException If an error occurs updating the content metadata.
+   */
+  public void remove(String key) throws CacheException {
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataInternal.removeSeekIndex(mutations);
+    cache.applyContentMetadataMutations(key, mutations);
+  }
+
+  private static byte[] toByteArray(IndexSeekMap index, long contentLength) {
+    long[] timesUs = index.timesUs;
+    long[] positions = index.positions;
+    ByteArrayOutputStream byteArrayOutputStream =
+        new ByteArrayOutputStream(28 + 16 * timesUs.length);
+    DataOutputStream output = new DataOutputStream(byteArrayOutputStream);
+    try {
+      output.writeInt(VERSION);
+      output.writeLong(index.getDurationUs());
+      output.writeLong(contentLength);
+      output.writeInt(timesUs.length);
+      for (int i = 0; i < timesUs.length; i++) {
+        output.writeLong(timesUs[i]);
+        output.writeLong(positions[i]);
+      }
+      output.flush();
+    } catch (IOException e) {
+      // Never happens when writing to a ByteArrayOutputStream.
+      throw new IllegalStateException(e);
+    }
+    return byteArrayOutputStream.toByteArray();
+  }
+}
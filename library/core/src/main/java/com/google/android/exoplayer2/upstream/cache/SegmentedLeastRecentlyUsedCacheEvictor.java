@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * Evicts cache files using a segmented least recently used policy.
+ *
+ * <p>New spans enter a probationary segment, and are promoted to a protected segment when they're
+ * read from the cache. Spans are evicted from the probationary segment first, so that data which is
+ * only written once, for example by a download or a scan through a long stream, doesn't push out
+ * data which is read repeatedly. When the protected segment exceeds its share of the cache, its
+ * least recently used spans are moved back to the probationary segment.
+ */
+public final class SegmentedLeastRecentlyUsedCacheEvictor extends BaseLinkedCacheEvictor {
+
+  /** The default fraction of the cache used by the protected segment. */
+  public static final float DEFAULT_PROTECTED_FRACTION = 0.8f;
+
+  private final long maxProtectedBytes;
+  private final SpanList probation;
+  private final SpanList protectedSegment;
+
+  /**
+   * @param maxBytes The maximum total length of the cached spans.
+   */
+  public SegmentedLeastRecentlyUsedCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_PROTECTED_FRACTION);
+  }
+
+  /**
+   * @param maxBytes The maximum total length of the cached spans.
+   * @param protectedFraction The fraction of {@code maxBytes} that spans which have been read from
+   *     the cache may occupy, between 0 and 1.
+   */
+  public SegmentedLeastRecentlyUsedCacheEvictor(long maxBytes, float protectedFraction) {
+    super(maxBytes);
+    Assertions.checkArgument(protectedFraction >= 0 && protectedFraction <= 1);
+    maxProtectedBytes = (long) (maxBytes * protectedFraction);
+    probation = new SpanList();
+    protectedSegment = new SpanList();
+  }
+
+  @Override
+  /* package */ void onNodeAdded(Node node) {
+    probation.addLast(node);
+  }
+
+  @Override
+  /* package */ void onNodeTouched(Node node) {
+    if (node.list == probation) {
+      probation.remove(node);
+      protectedSegment.addLast(node);
+    }
+    while (protectedSegment.getBytes() > maxProtectedBytes) {
+      Node demotedNode = protectedSegment.first();
+      protectedSegment.remove(demotedNode);
+      probation.addLast(demotedNode);
+    }
+  }
+
+  @Override
+  /* package */ Node selectVictim() {
+    Node victim = probation.first();
+    return victim != null ? victim : protectedSegment.first();
+  }
+
+}
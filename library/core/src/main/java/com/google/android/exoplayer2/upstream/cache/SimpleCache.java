@@ -21,6 +21,7 @@ import android.util.Log;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -108,7 +109,31 @@ public final class SimpleCache implements Cache {
    *     secretKey} is null.
    */
   public SimpleCache(File cacheDir, CacheEvictor evictor, byte[] secretKey, boolean encrypt) {
-    this(cacheDir, evictor, new CachedContentIndex(cacheDir, secretKey, encrypt));
+    this(cacheDir, evictor, secretKey, encrypt, false);
+  }
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used.
+   * @param secretKey If not null, cache keys will be stored encrypted on filesystem using AES/CBC.
+   *     The key must be 16 bytes long.
+   * @param encrypt Whether the index will be encrypted when written. Must be false if {@code
+   *     secretKey} is null.
+   * @param journalIndex Whether changes to the index are appended to a journal, which is
+   *     periodically compacted, rather than rewriting the whole index each time. Earlier versions
+   *     of the library don't read the journal, so a cache directory written with journaling enabled
+   *     shouldn't be opened by them.
+   */
+  public SimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      byte[] secretKey,
+      boolean encrypt,
+      boolean journalIndex) {
+    this(cacheDir, evictor, new CachedContentIndex(cacheDir, secretKey, encrypt, journalIndex));
   }
 
   /**
@@ -152,6 +177,7 @@ public final class SimpleCache implements Cache {
     listeners.clear();
     try {
       removeStaleSpansAndCachedContents();
+      storeSpanManifest();
     } finally {
       unlockFolder(cacheDir);
       released = true;
@@ -388,12 +414,31 @@ public final class SimpleCache implements Cache {
 
     index.load();
 
+    ArrayList<SimpleCacheSpan> spans = CachedSpanManifest.read(cacheDir, index);
+    if (spans != null) {
+      for (int i = 0; i < spans.size(); i++) {
+        addSpan(spans.get(i));
+      }
+    } else {
+      loadDirectory();
+    }
+
+    index.removeEmpty();
+    try {
+      index.store();
+    } catch (CacheException e) {
+      Log.e(TAG, "Storing index file failed", e);
+    }
+  }
+
+  /** Adds the spans of all cache files in the cache directory, and deletes invalid files. */
+  private void loadDirectory() {
     File[] files = cacheDir.listFiles();
     if (files == null) {
       return;
     }
     for (File file : files) {
-      if (file.getName().equals(CachedContentIndex.FILE_NAME)) {
+      if (CachedContentIndex.isIndexFile(file.getName())) {
         continue;
       }
       SimpleCacheSpan span =
@@ -404,12 +449,26 @@ public final class SimpleCache implements Cache {
         file.delete();
       }
     }
+  }
 
-    index.removeEmpty();
+  /**
+   * Stores a manifest of the cached spans, so that the cache directory doesn't need to be scanned
+   * when the cache is next initialized. Does nothing if a span is being written, since the
+   * partially written file wouldn't be cleaned up.
+   */
+  private void storeSpanManifest() {
+    ArrayList<SimpleCacheSpan> spans = new ArrayList<>();
+    for (CachedContent cachedContent : index.getAll()) {
+      if (cachedContent.isLocked()) {
+        return;
+      }
+      spans.addAll(cachedContent.getSpans());
+    }
     try {
-      index.store();
-    } catch (CacheException e) {
-      Log.e(TAG, "Storing index file failed", e);
+      CachedSpanManifest.write(cacheDir, index, spans);
+    } catch (IOException e) {
+      Log.e(TAG, "Storing span manifest failed", e);
+      CachedSpanManifest.delete(cacheDir);
     }
   }
 
@@ -491,14 +550,14 @@ public final class SimpleCache implements Cache {
     evictor.onSpanTouched(this, oldSpan, newSpan);
   }
 
-  private static synchronized boolean lockFolder(File cacheDir) {
+  /* package */ static synchronized boolean lockFolder(File cacheDir) {
     if (cacheFolderLockingDisabled) {
       return true;
     }
     return lockedCacheDirs.add(cacheDir.getAbsoluteFile());
   }
 
-  private static synchronized void unlockFolder(File cacheDir) {
+  /* package */ static synchronized void unlockFolder(File cacheDir) {
     if (!cacheFolderLockingDisabled) {
       lockedCacheDirs.remove(cacheDir.getAbsoluteFile());
     }
@@ -114,6 +114,26 @@ import java.util.regex.Pattern;
         Long.parseLong(matcher.group(3)), file);
   }
 
+  /**
+   * Creates a cache span from previously persisted span metadata, without accessing the underlying
+   * cache file.
+   *
+   * @param cacheDir The cache directory.
+   * @param id The cache file id.
+   * @param position The position of the stored data in the original stream.
+   * @param length The length of the stored data.
+   * @param lastAccessTimestamp The last access timestamp.
+   * @param index Cached content index.
+   * @return The span, or null if the id is not present in the content index.
+   */
+  @Nullable
+  public static SimpleCacheSpan createCacheEntry(File cacheDir, int id, long position, long length,
+      long lastAccessTimestamp, CachedContentIndex index) {
+    String key = index.getKeyForId(id);
+    return key == null ? null : new SimpleCacheSpan(key, position, length, lastAccessTimestamp,
+        getCacheFile(cacheDir, id, position, lastAccessTimestamp));
+  }
+
   /**
    * Upgrades the cache file if it is created by an earlier version of {@link SimpleCache}.
    *
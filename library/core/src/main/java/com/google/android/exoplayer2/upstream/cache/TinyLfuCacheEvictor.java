@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * Evicts cache files using a policy modeled on W-TinyLFU, which takes into account how often data
+ * has been accessed as well as how recently.
+ *
+ * <p>New spans enter a small least recently used admission window. Spans leaving the window compete
+ * with the next victim of the main cache, which is a segmented least recently used cache (see
+ * {@link SegmentedLeastRecentlyUsedCacheEvictor}), and only enter the main cache if they've been
+ * accessed more often. Access frequencies are estimated by a compact sketch which also remembers
+ * spans that have been evicted. This makes the policy resistant to one-off scans, such as
+ * downloads, while still adapting to changes in popularity. It's well suited to caches of media
+ * segments shared by many viewers.
+ */
+public final class TinyLfuCacheEvictor extends BaseLinkedCacheEvictor {
+
+  /** The default fraction of the cache used by the admission window. */
+  public static final float DEFAULT_WINDOW_FRACTION = 0.01f;
+  /** The default fraction of the main cache used by its protected segment. */
+  public static final float DEFAULT_PROTECTED_FRACTION = 0.8f;
+
+  private final long maxWindowBytes;
+  private final long maxMainBytes;
+  private final long maxProtectedBytes;
+  private final SpanList window;
+  private final SpanList probation;
+  private final SpanList protectedSegment;
+  private final FrequencySketch sketch;
+
+  private int nodeCount;
+
+  /**
+   * @param maxBytes The maximum total length of the cached spans.
+   */
+  public TinyLfuCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_WINDOW_FRACTION, DEFAULT_PROTECTED_FRACTION);
+  }
+
+  /**
+   * @param maxBytes The maximum total length of the cached spans.
+   * @param windowFraction The fraction of {@code maxBytes} used by the admission window, between 0
+   *     and 1.
+   * @param protectedFraction The fraction of the main cache that spans which have been read from
+   *     the main cache may occupy, between 0 and 1.
+   */
+  public TinyLfuCacheEvictor(long maxBytes, float windowFraction, float protectedFraction) {
+    super(maxBytes);
+    Assertions.checkArgument(windowFraction >= 0 && windowFraction <= 1);
+    Assertions.checkArgument(protectedFraction >= 0 && protectedFraction <= 1);
+    maxWindowBytes = (long) (maxBytes * windowFraction);
+    maxMainBytes = maxBytes - maxWindowBytes;
+    maxProtectedBytes = (long) (maxMainBytes * protectedFraction);
+    window = new SpanList();
+    probation = new SpanList();
+    protectedSegment = new SpanList();
+    sketch = new FrequencySketch();
+  }
+
+  @Override
+  /* package */ void onNodeAdded(Node node) {
+    nodeCount++;
+    sketch.ensureCapacity(nodeCount);
+    sketch.increment(node.hash);
+    window.addLast(node);
+    // Move spans which don't fit in the window to the main cache while it has space for them.
+    Node windowHead = window.first();
+    while (window.getBytes() > maxWindowBytes
+        && probation.getBytes() + protectedSegment.getBytes() + windowHead.span.length
+            <= maxMainBytes) {
+      window.remove(windowHead);
+      probation.addLast(windowHead);
+      windowHead = window.first();
+    }
+  }
+
+  @Override
+  /* package */ void onNodeTouched(Node node) {
+    sketch.increment(node.hash);
+    if (node.list == probation) {
+      probation.remove(node);
+      protectedSegment.addLast(node);
+      while (protectedSegment.getBytes() > maxProtectedBytes) {
+        Node demotedNode = protectedSegment.first();
+        protectedSegment.remove(demotedNode);
+        probation.addLast(demotedNode);
+      }
+    }
+  }
+
+  @Override
+  /* package */ void onNodeRemoved(Node node) {
+    nodeCount--;
+  }
+
+  @Override
+  /* package */ Node selectVictim() {
+    while (true) {
+      Node mainVictim = probation.first();
+      if (mainVictim == null) {
+        mainVictim = protectedSegment.first();
+      }
+      // If the window is full, its least recently used span has to compete with the main cache.
+      Node candidate = window.getBytes() >= maxWindowBytes ? window.first() : null;
+      if (candidate == null) {
+        return mainVictim != null ? mainVictim : window.first();
+      }
+      if (mainVictim != null
+          && sketch.frequency(candidate.hash) <= sketch.frequency(mainVictim.hash)) {
+        return candidate;
+      }
+      // Admit the candidate to the main cache.
+      window.remove(candidate);
+      probation.addLast(candidate);
+      if (mainVictim != null) {
+        return mainVictim;
+      }
+    }
+  }
+
+}
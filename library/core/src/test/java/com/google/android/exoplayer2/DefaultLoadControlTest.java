@@ -111,6 +111,33 @@ public class DefaultLoadControlTest {
         .isTrue();
   }
 
+  @Test
+  public void testShouldNotContinueLoading_ifBudgetShareReached_untilShareIncreased() {
+    SharedBufferBudget budget = new SharedBufferBudget(TARGET_BUFFER_BYTES);
+    builder.setPrioritizeTimeOverSizeThresholds(false);
+    builder.setSharedBufferBudget(budget, /* weight= */ 1);
+    createDefaultLoadControl();
+    DefaultAllocator otherAllocator = new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    DefaultLoadControl otherLoadControl =
+        new Builder()
+            .setAllocator(otherAllocator)
+            .setTargetBufferBytes(TARGET_BUFFER_BYTES)
+            .setSharedBufferBudget(budget, /* weight= */ 1)
+            .createDefaultLoadControl();
+    otherLoadControl.onTracksSelected(new Renderer[0], null, null);
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED)).isTrue();
+
+    // Each load control is allowed half of the budget.
+    allocator.allocate();
+    assertThat(loadControl.getBudgetParticipant().getShareBytes())
+        .isEqualTo(TARGET_BUFFER_BYTES / 2);
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED)).isFalse();
+
+    // Once the other load control is released, the whole budget is available.
+    otherLoadControl.onReleased();
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED)).isTrue();
+  }
+
   private void createDefaultLoadControl() {
     builder.setAllocator(allocator);
     builder.setTargetBufferBytes(TARGET_BUFFER_BYTES);
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.SharedBufferBudget.Participant;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link SharedBufferBudget}. */
+@RunWith(RobolectricTestRunner.class)
+public final class SharedBufferBudgetTest {
+
+  private static final int TOTAL_BYTES = 1200;
+
+  private SharedBufferBudget budget;
+
+  @Before
+  public void setUp() {
+    budget = new SharedBufferBudget(TOTAL_BYTES);
+  }
+
+  @Test
+  public void testDivideInProportionToWeights() {
+    Participant participant1 = budget.register(/* weight= */ 1);
+    Participant participant2 = budget.register(/* weight= */ 2);
+    participant1.setDemandBytes(TOTAL_BYTES);
+    participant2.setDemandBytes(TOTAL_BYTES);
+
+    assertThat(participant1.getShareBytes()).isEqualTo(400);
+    assertThat(participant2.getShareBytes()).isEqualTo(800);
+
+    participant1.setWeight(3);
+
+    assertThat(participant1.getShareBytes()).isEqualTo(720);
+    assertThat(participant2.getShareBytes()).isEqualTo(480);
+  }
+
+  @Test
+  public void testShareLimitedToDemand_remainderDividedBetweenOthers() {
+    Participant participant1 = budget.register(/* weight= */ 1);
+    Participant participant2 = budget.register(/* weight= */ 1);
+    Participant participant3 = budget.register(/* weight= */ 2);
+    participant1.setDemandBytes(100);
+    participant2.setDemandBytes(TOTAL_BYTES);
+    participant3.setDemandBytes(TOTAL_BYTES);
+
+    assertThat(participant1.getShareBytes()).isEqualTo(100);
+    assertThat(participant2.getShareBytes()).isEqualTo(366);
+    assertThat(participant3.getShareBytes()).isEqualTo(733);
+  }
+
+  @Test
+  public void testNoShareWithoutDemand() {
+    Participant participant1 = budget.register(/* weight= */ 1);
+    Participant participant2 = budget.register(/* weight= */ 1);
+    participant1.setDemandBytes(TOTAL_BYTES);
+
+    assertThat(participant1.getShareBytes()).isEqualTo(TOTAL_BYTES);
+    assertThat(participant2.getShareBytes()).isEqualTo(0);
+
+    participant2.setDemandBytes(TOTAL_BYTES);
+    participant1.setDemandBytes(0);
+
+    assertThat(participant1.getShareBytes()).isEqualTo(0);
+    assertThat(participant2.getShareBytes()).isEqualTo(TOTAL_BYTES);
+  }
+
+  @Test
+  public void testUnregister_shareDividedBetweenOthers() {
+    Participant participant1 = budget.register(/* weight= */ 1);
+    Participant participant2 = budget.register(/* weight= */ 1);
+    participant1.setDemandBytes(TOTAL_BYTES);
+    participant2.setDemandBytes(TOTAL_BYTES);
+
+    participant1.unregister();
+
+    assertThat(participant1.getShareBytes()).isEqualTo(0);
+    assertThat(participant2.getShareBytes()).isEqualTo(TOTAL_BYTES);
+  }
+}
@@ -15,9 +15,19 @@
  */
 package com.google.android.exoplayer2.extractor.mp3;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.IndexSeekMap;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.extractor.SeekPoint;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts.ExtractorFactory;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.FakeTrackOutput;
+import java.io.IOException;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
@@ -26,6 +36,12 @@ import org.robolectric.RobolectricTestRunner;
 @RunWith(RobolectricTestRunner.class)
 public final class Mp3ExtractorTest {
 
+  // MPEG-1 layer III, 44.1 kHz, mono, 1152 samples per frame.
+  private static final int FRAME_HEADER_128_KBPS = 0xFFFB90C0;
+  private static final int FRAME_SIZE_128_KBPS = 417;
+  private static final int FRAME_HEADER_320_KBPS = 0xFFFBE0C0;
+  private static final int FRAME_SIZE_320_KBPS = 1044;
+
   @Test
   public void testMp3Sample() throws Exception {
     ExtractorAsserts.assertBehavior(
@@ -49,4 +65,99 @@ public final class Mp3ExtractorTest {
         },
         "mp3/play-trimmed.mp3");
   }
+
+  @Test
+  public void testIndexSeekingWithVariableBitrate() throws Exception {
+    byte[] data = createVariableBitrateData();
+    Mp3Extractor extractor = new Mp3Extractor(Mp3Extractor.FLAG_ENABLE_INDEX_SEEKING);
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+
+    readToEnd(extractor, input);
+
+    // The constant bitrate assumption overestimates the duration, but the index is exact.
+    SeekMap seekMap = output.seekMap;
+    assertThat(seekMap).isInstanceOf(IndexSeeker.class);
+    assertThat(seekMap.getDurationUs()).isEqualTo(1044897);
+    // Seek points are at least one second apart, so the second one is for frame 39.
+    long frame39TimeUs = 1018775;
+    long frame39Position = 20 * FRAME_SIZE_128_KBPS + 19 * FRAME_SIZE_320_KBPS;
+    assertThat(seekMap.getSeekPoints(500000))
+        .isEqualTo(
+            new SeekMap.SeekPoints(
+                new SeekPoint(0, 0), new SeekPoint(frame39TimeUs, frame39Position)));
+
+    FakeTrackOutput trackOutput = output.trackOutputs.get(0);
+    trackOutput.clear();
+    input.setPosition((int) frame39Position);
+    extractor.seek(frame39Position, frame39TimeUs);
+    readToEnd(extractor, input);
+    trackOutput.assertSampleCount(1);
+    assertThat(trackOutput.getSampleTimeUs(0)).isEqualTo(frame39TimeUs);
+  }
+
+  @Test
+  public void testIndexSeekingWithPersistedIndex() throws Exception {
+    byte[] data = createVariableBitrateData();
+    long frame39TimeUs = 1018775;
+    long frame39Position = 20 * FRAME_SIZE_128_KBPS + 19 * FRAME_SIZE_320_KBPS;
+    IndexSeekMap persistedIndex =
+        new IndexSeekMap(
+            /* durationUs= */ 1044897,
+            /* timesUs= */ new long[] {0, frame39TimeUs},
+            /* positions= */ new long[] {0, frame39Position});
+    Mp3Extractor extractor = new Mp3Extractor(Mp3Extractor.FLAG_ENABLE_INDEX_SEEKING);
+    extractor.setPersistedIndex(persistedIndex);
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder().setData(data).setSimulateUnknownLength(true).build();
+
+    extractor.read(input, new PositionHolder());
+
+    // The persisted index is used straight away, even though the length of the stream is unknown.
+    SeekMap seekMap = output.seekMap;
+    assertThat(seekMap).isInstanceOf(IndexSeeker.class);
+    assertThat(seekMap.isSeekable()).isTrue();
+    assertThat(seekMap.getDurationUs()).isEqualTo(1044897);
+
+    // Sample timestamps after seeking are derived from the persisted index.
+    FakeTrackOutput trackOutput = output.trackOutputs.get(0);
+    trackOutput.clear();
+    input.setPosition((int) frame39Position);
+    extractor.seek(frame39Position, frame39TimeUs);
+    readToEnd(extractor, input);
+    trackOutput.assertSampleCount(1);
+    assertThat(trackOutput.getSampleTimeUs(0)).isEqualTo(frame39TimeUs);
+  }
+
+  /** Returns 20 frames at 128 kbps followed by 20 frames at 320 kbps, with no seeking metadata. */
+  private static byte[] createVariableBitrateData() {
+    byte[] data = new byte[20 * FRAME_SIZE_128_KBPS + 20 * FRAME_SIZE_320_KBPS];
+    int position = 0;
+    for (int i = 0; i < 40; i++) {
+      boolean lowBitrate = i < 20;
+      writeInt(data, position, lowBitrate ? FRAME_HEADER_128_KBPS : FRAME_HEADER_320_KBPS);
+      position += lowBitrate ? FRAME_SIZE_128_KBPS : FRAME_SIZE_320_KBPS;
+    }
+    return data;
+  }
+
+  private static void readToEnd(Extractor extractor, FakeExtractorInput input)
+      throws IOException, InterruptedException {
+    PositionHolder positionHolder = new PositionHolder();
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      result = extractor.read(input, positionHolder);
+      assertThat(result).isNotEqualTo(Extractor.RESULT_SEEK);
+    }
+  }
+
+  private static void writeInt(byte[] data, int position, int value) {
+    data[position] = (byte) (value >> 24);
+    data[position + 1] = (byte) (value >> 16);
+    data[position + 2] = (byte) (value >> 8);
+    data[position + 3] = (byte) value;
+  }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.extractor.GaplessInfoHolder;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Tests for {@link LazyTrackSampleTable}. */
+@RunWith(RobolectricTestRunner.class)
+public final class LazyTrackSampleTableTest {
+
+  private static final int TIMESCALE = 1000;
+  private static final int SAMPLES_PER_WINDOW = 3;
+
+  // 10 samples in chunks of 3, 3, 2 and 2 samples, with sync samples 1, 4 and 9 (1-based). The
+  // sample timestamps are 100, 300, 300, 300, 400, 500, 600, 800, 1000 and 1200 ms.
+  private static final int[] STSZ = new int[] {0, 10, 10, 20, 30, 40, 50, 60, 70, 80, 90, 100};
+  private static final int[] STCO = new int[] {4, 1000, 2000, 3000, 4000};
+  private static final int[] STSC = new int[] {2, 1, 3, 1, 3, 2, 1};
+  private static final int[] STTS = new int[] {2, 6, 100, 4, 200};
+  private static final int[] CTTS = new int[] {4, 1, 100, 1, 200, 1, 100, 7, 0};
+  private static final int[] STSS = new int[] {3, 1, 4, 9};
+
+  @Test
+  public void testSamplesMatchEagerSampleTable() throws Exception {
+    Atom.ContainerAtom stbl = createStbl(stsz(), /* includeStss= */ true);
+    Track track = createVideoTrack(/* editListDurations= */ null, /* editListMediaTimes= */ null);
+
+    assertSameSamples(track, stbl);
+  }
+
+  @Test
+  public void testSamplesMatchEagerSampleTableWithoutSyncSamples() throws Exception {
+    Atom.ContainerAtom stbl = createStbl(stsz(), /* includeStss= */ false);
+    Track track = createVideoTrack(/* editListDurations= */ null, /* editListMediaTimes= */ null);
+
+    assertSameSamples(track, stbl);
+  }
+
+  @Test
+  public void testSamplesMatchEagerSampleTableWithStz2() throws Exception {
+    // Sizes 1 to 10, packed into 4-bit fields.
+    Atom.LeafAtom stz2 =
+        createLeafAtom(Atom.TYPE_stz2, new int[] {4, 10, 0x12345678, 0x9A000000});
+    Atom.ContainerAtom stbl = createStbl(stz2, /* includeStss= */ true);
+    Track track = createVideoTrack(/* editListDurations= */ null, /* editListMediaTimes= */ null);
+
+    SampleTable sampleTable = assertSameSamples(track, stbl);
+    for (int i = 0; i < sampleTable.getSampleCount(); i++) {
+      assertThat(sampleTable.getSize(i)).isEqualTo(i + 1);
+    }
+  }
+
+  @Test
+  public void testEditIncludingAllSamplesIsAppliedLazily() throws Exception {
+    Atom.ContainerAtom stbl = createStbl(stsz(), /* includeStss= */ true);
+    Track track =
+        createVideoTrack(
+            /* editListDurations= */ new long[] {2000}, /* editListMediaTimes= */ new long[] {100});
+
+    SampleTable sampleTable = assertSameSamples(track, stbl);
+    assertThat(sampleTable).isInstanceOf(LazyTrackSampleTable.class);
+  }
+
+  @Test
+  public void testEditRemovingSamplesFallsBackToEagerSampleTable() throws Exception {
+    Atom.ContainerAtom stbl = createStbl(stsz(), /* includeStss= */ true);
+    Track track =
+        createVideoTrack(
+            /* editListDurations= */ new long[] {500}, /* editListMediaTimes= */ new long[] {300});
+
+    SampleTable sampleTable = assertSameSamples(track, stbl);
+    assertThat(sampleTable).isInstanceOf(TrackSampleTable.class);
+  }
+
+  @Test
+  public void testSampleBytesBeforeTime() throws Exception {
+    Atom.ContainerAtom stbl = createStbl(stsz(), /* includeStss= */ true);
+    Track track = createVideoTrack(/* editListDurations= */ null, /* editListMediaTimes= */ null);
+    SampleTable sampleTable =
+        LazyTrackSampleTable.create(track, stbl, SAMPLES_PER_WINDOW);
+
+    assertThat(sampleTable.getSampleBytesBeforeTime(0, 0)).isEqualTo(0);
+    assertThat(sampleTable.getSampleBytesBeforeTime(0, 300_000)).isEqualTo(10);
+    assertThat(sampleTable.getSampleBytesBeforeTime(2, 300_000)).isEqualTo(0);
+    assertThat(sampleTable.getSampleBytesBeforeTime(4, 600_000)).isEqualTo(50 + 60);
+    assertThat(sampleTable.getSampleBytesBeforeTime(3, 1_000_000))
+        .isEqualTo(40 + 50 + 60 + 70 + 80);
+    assertThat(sampleTable.getSampleBytesBeforeTime(0, Long.MAX_VALUE)).isEqualTo(550);
+  }
+
+  private static SampleTable assertSameSamples(Track track, Atom.ContainerAtom stbl)
+      throws Exception {
+    TrackSampleTable expected = AtomParsers.parseStbl(track, stbl, new GaplessInfoHolder());
+    SampleTable actual =
+        AtomParsers.parseStblLazily(track, stbl, new GaplessInfoHolder(), SAMPLES_PER_WINDOW);
+
+    assertThat(actual.getSampleCount()).isEqualTo(expected.sampleCount);
+    assertThat(actual.getMaximumSize()).isEqualTo(expected.maximumSize);
+    assertThat(actual.getDurationUs()).isEqualTo(expected.durationUs);
+    // Read the samples out of order, to decode windows out of order.
+    for (int i = expected.sampleCount - 1; i >= 0; i--) {
+      assertThat(actual.getOffset(i)).isEqualTo(expected.offsets[i]);
+      assertThat(actual.getSize(i)).isEqualTo(expected.sizes[i]);
+      assertThat(actual.getTimestampUs(i)).isEqualTo(expected.timestampsUs[i]);
+      assertThat(actual.getFlags(i)).isEqualTo(expected.flags[i]);
+    }
+    for (long timeUs = -100_000; timeUs <= 1_500_000; timeUs += 50_000) {
+      assertThat(actual.getIndexOfEarlierOrEqualSynchronizationSample(timeUs))
+          .isEqualTo(expected.getIndexOfEarlierOrEqualSynchronizationSample(timeUs));
+      assertThat(actual.getIndexOfLaterOrEqualSynchronizationSample(timeUs))
+          .isEqualTo(expected.getIndexOfLaterOrEqualSynchronizationSample(timeUs));
+      for (int i = 0; i < expected.sampleCount; i++) {
+        assertThat(actual.getSampleBytesBeforeTime(i, timeUs))
+            .isEqualTo(expected.getSampleBytesBeforeTime(i, timeUs));
+      }
+    }
+    return actual;
+  }
+
+  private static Track createVideoTrack(long[] editListDurations, long[] editListMediaTimes) {
+    Format format =
+        Format.createVideoSampleFormat(
+            /* id= */ null,
+            MimeTypes.VIDEO_H264,
+            /* codecs= */ null,
+            /* bitrate= */ Format.NO_VALUE,
+            /* maxInputSize= */ Format.NO_VALUE,
+            /* width= */ 320,
+            /* height= */ 240,
+            /* frameRate= */ Format.NO_VALUE,
+            /* initializationData= */ null,
+            /* drmInitData= */ null);
+    return new Track(
+        /* id= */ 1,
+        C.TRACK_TYPE_VIDEO,
+        TIMESCALE,
+        /* movieTimescale= */ TIMESCALE,
+        /* durationUs= */ C.TIME_UNSET,
+        format,
+        Track.TRANSFORMATION_NONE,
+        /* sampleDescriptionEncryptionBoxes= */ null,
+        /* nalUnitLengthFieldLength= */ 4,
+        editListDurations,
+        editListMediaTimes);
+  }
+
+  private static Atom.LeafAtom stsz() {
+    return createLeafAtom(Atom.TYPE_stsz, STSZ);
+  }
+
+  private static Atom.ContainerAtom createStbl(Atom.LeafAtom sampleSizeAtom, boolean includeStss) {
+    Atom.ContainerAtom stbl = new Atom.ContainerAtom(Atom.TYPE_stbl, /* endPosition= */ 0);
+    stbl.add(sampleSizeAtom);
+    stbl.add(createLeafAtom(Atom.TYPE_stco, STCO));
+    stbl.add(createLeafAtom(Atom.TYPE_stsc, STSC));
+    stbl.add(createLeafAtom(Atom.TYPE_stts, STTS));
+    stbl.add(createLeafAtom(Atom.TYPE_ctts, CTTS));
+    if (includeStss) {
+      stbl.add(createLeafAtom(Atom.TYPE_stss, STSS));
+    }
+    return stbl;
+  }
+
+  private static Atom.LeafAtom createLeafAtom(int type, int[] fields) {
+    byte[] data = new byte[Atom.FULL_HEADER_SIZE + 4 * fields.length];
+    writeInt(data, 0, data.length);
+    writeInt(data, 4, type);
+    // The version and flags are zero.
+    for (int i = 0; i < fields.length; i++) {
+      writeInt(data, Atom.FULL_HEADER_SIZE + 4 * i, fields[i]);
+    }
+    return new Atom.LeafAtom(type, new ParsableByteArray(data));
+  }
+
+  private static void writeInt(byte[] data, int position, int value) {
+    data[position] = (byte) (value >> 24);
+    data[position + 1] = (byte) (value >> 16);
+    data[position + 2] = (byte) (value >> 8);
+    data[position + 3] = (byte) value;
+  }
+
+}
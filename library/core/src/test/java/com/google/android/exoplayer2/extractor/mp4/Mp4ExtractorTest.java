@@ -39,4 +39,16 @@ public final class Mp4ExtractorTest {
         },
         "mp4/sample.mp4");
   }
+
+  @Test
+  public void testMp4SampleWithLazySampleTables() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        new ExtractorFactory() {
+          @Override
+          public Extractor create() {
+            return new Mp4Extractor(Mp4Extractor.FLAG_LAZY_SAMPLE_TABLES);
+          }
+        },
+        "mp4/sample.mp4");
+  }
 }
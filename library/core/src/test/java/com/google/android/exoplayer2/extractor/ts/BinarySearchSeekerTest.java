@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.ts;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput.SimulatedIOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link BinarySearchSeeker}. */
+@RunWith(RobolectricTestRunner.class)
+public final class BinarySearchSeekerTest {
+
+  private static final int UNIT_SIZE = 100;
+  private static final int UNIT_COUNT = 1000;
+  private static final int UNIT_DURATION = 900; // 10 ms in 90 kHz units.
+  private static final int SEARCH_BYTES = UNIT_SIZE * 10;
+  private static final int MARKER = 0xFF;
+  // Close to the 33-bit limit, so that the clock references wrap around in the stream.
+  private static final long FIRST_CLOCK_REFERENCE = 0x1FFFFFFFFL - 100 * UNIT_DURATION;
+
+  @Test
+  public void testReadDuration() throws Exception {
+    FakeExtractorInput input = createInput(createStream(), /* simulateIOErrors= */ false);
+    BinarySearchSeeker seeker = createSeeker(input);
+
+    readDuration(seeker, input);
+
+    SeekMap seekMap = seeker.getSeekMap();
+    assertThat(seekMap.isSeekable()).isTrue();
+    assertThat(seekMap.getDurationUs()).isEqualTo(9_990_000);
+    assertThat(input.getPosition()).isEqualTo(0);
+  }
+
+  @Test
+  public void testReadDurationWithoutClockReferences() throws Exception {
+    FakeExtractorInput input =
+        createInput(new byte[UNIT_SIZE * UNIT_COUNT], /* simulateIOErrors= */ false);
+    BinarySearchSeeker seeker = createSeeker(input);
+
+    readDuration(seeker, input);
+
+    assertThat(seeker.isSeekable()).isFalse();
+    assertThat(seeker.getSeekMap().isSeekable()).isFalse();
+  }
+
+  @Test
+  public void testSeek() throws Exception {
+    FakeExtractorInput input = createInput(createStream(), /* simulateIOErrors= */ false);
+    BinarySearchSeeker seeker = createSeeker(input);
+    readDuration(seeker, input);
+
+    assertSeekPosition(seeker, input, /* timeUs= */ 5_000_000, /* unitIndex= */ 500);
+    assertSeekPosition(seeker, input, /* timeUs= */ 1_234_567, /* unitIndex= */ 123);
+    assertSeekPosition(seeker, input, /* timeUs= */ 9_990_000, /* unitIndex= */ 999);
+  }
+
+  @Test
+  public void testSeekWithIOErrors() throws Exception {
+    FakeExtractorInput input = createInput(createStream(), /* simulateIOErrors= */ true);
+    BinarySearchSeeker seeker = createSeeker(input);
+    readDuration(seeker, input);
+
+    assertSeekPosition(seeker, input, /* timeUs= */ 7_654_321, /* unitIndex= */ 765);
+  }
+
+  @Test
+  public void testSeekToStartIsNotPending() throws Exception {
+    FakeExtractorInput input = createInput(createStream(), /* simulateIOErrors= */ false);
+    BinarySearchSeeker seeker = createSeeker(input);
+    readDuration(seeker, input);
+
+    seeker.setSeekTargetUs(0);
+
+    assertThat(seeker.hasPendingSeek()).isFalse();
+  }
+
+  private static void assertSeekPosition(
+      BinarySearchSeeker seeker, FakeExtractorInput input, long timeUs, int unitIndex)
+      throws Exception {
+    input.setPosition(0);
+    seeker.setSeekTargetUs(timeUs);
+    PositionHolder positionHolder = new PositionHolder();
+    while (seeker.hasPendingSeek()) {
+      try {
+        int result = seeker.handlePendingSeek(input, positionHolder);
+        if (result == Extractor.RESULT_SEEK) {
+          input.setPosition((int) positionHolder.position);
+        }
+      } catch (SimulatedIOException e) {
+        // Ignore.
+      }
+    }
+    // The seek completes at the exact unit, or at most 100 ms before it.
+    long position = input.getPosition();
+    assertThat(position % UNIT_SIZE).isEqualTo(0);
+    assertThat(position).isAtMost((long) unitIndex * UNIT_SIZE);
+    assertThat(position).isAtLeast((long) (unitIndex - 10) * UNIT_SIZE);
+  }
+
+  private static void readDuration(BinarySearchSeeker seeker, FakeExtractorInput input)
+      throws Exception {
+    PositionHolder positionHolder = new PositionHolder();
+    while (!seeker.isDurationRead()) {
+      try {
+        int result = seeker.readDuration(input, positionHolder);
+        if (result == Extractor.RESULT_SEEK) {
+          input.setPosition((int) positionHolder.position);
+        }
+      } catch (SimulatedIOException e) {
+        // Ignore.
+      }
+    }
+  }
+
+  private static BinarySearchSeeker createSeeker(FakeExtractorInput input) {
+    return new BinarySearchSeeker(
+        new FakeClockReferenceReader(), SEARCH_BYTES, /* startPosition= */ 0, input.getLength());
+  }
+
+  private static FakeExtractorInput createInput(byte[] data, boolean simulateIOErrors) {
+    return new FakeExtractorInput.Builder()
+        .setData(data)
+        .setSimulateIOErrors(simulateIOErrors)
+        .setSimulatePartialReads(simulateIOErrors)
+        .build();
+  }
+
+  /**
+   * Returns a stream of units that each start with a marker byte followed by their clock reference
+   * in five 7-bit groups, so that the marker can't occur elsewhere in the stream.
+   */
+  private static byte[] createStream() {
+    byte[] data = new byte[UNIT_SIZE * UNIT_COUNT];
+    for (int i = 0; i < UNIT_COUNT; i++) {
+      int offset = i * UNIT_SIZE;
+      long clockReference = (FIRST_CLOCK_REFERENCE + (long) i * UNIT_DURATION) & 0x1FFFFFFFFL;
+      data[offset] = (byte) MARKER;
+      for (int j = 0; j < 5; j++) {
+        data[offset + 1 + j] = (byte) ((clockReference >> (7 * (4 - j))) & 0x7F);
+      }
+    }
+    return data;
+  }
+
+  private static final class FakeClockReferenceReader
+      implements BinarySearchSeeker.ClockReferenceReader {
+
+    @Override
+    public int findClockReference(byte[] data, int offset, int limit) {
+      for (int i = offset; i + 6 <= limit; i++) {
+        if ((data[i] & 0xFF) == MARKER) {
+          return i;
+        }
+      }
+      return C.INDEX_UNSET;
+    }
+
+    @Override
+    public long readClockReference(byte[] data, int offset) {
+      long clockReference = 0;
+      for (int j = 0; j < 5; j++) {
+        clockReference = (clockReference << 7) | data[offset + 1 + j];
+      }
+      return clockReference;
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.offline;
+
+import static com.google.android.exoplayer2.testutil.CacheAsserts.assertCacheEmpty;
+import static com.google.android.exoplayer2.testutil.CacheAsserts.assertDataCached;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/** Unit tests for {@link ProgressiveDownloader}. */
+@RunWith(RobolectricTestRunner.class)
+public class ProgressiveDownloaderTest {
+
+  private static final Uri TEST_URI = Uri.parse("test_data");
+  private static final int TEST_DATA_LENGTH = 5 * 1024 * 1024 + 17;
+
+  private File tempFolder;
+  private SimpleCache cache;
+  private byte[] testData;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder = Util.createTempDirectory(RuntimeEnvironment.application, "ExoPlayerTest");
+    cache = new SimpleCache(tempFolder, new NoOpCacheEvictor());
+    testData = TestUtil.buildTestData(TEST_DATA_LENGTH);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void testDownload() throws Exception {
+    ProgressiveDownloader downloader =
+        getProgressiveDownloader(new ByteArrayDataSourceFactory(testData, -1), 1);
+    downloader.download();
+
+    assertDataCached(cache, TEST_URI, testData);
+    assertThat(downloader.getDownloadedBytes()).isEqualTo(TEST_DATA_LENGTH);
+    assertThat(downloader.getDownloadPercentage()).isWithin(0.1f).of(100f);
+  }
+
+  @Test
+  public void testDownloadInParallel() throws Exception {
+    ProgressiveDownloader downloader =
+        getProgressiveDownloader(new ByteArrayDataSourceFactory(testData, -1), 3);
+    downloader.download();
+
+    assertDataCached(cache, TEST_URI, testData);
+    assertThat(cache.getContentLength(TEST_URI.toString())).isEqualTo(TEST_DATA_LENGTH);
+    assertThat(cache.getCachedSpans(TEST_URI.toString()).size()).isGreaterThan(1);
+    assertThat(downloader.getDownloadedBytes()).isEqualTo(TEST_DATA_LENGTH);
+    assertThat(downloader.getDownloadPercentage()).isWithin(0.1f).of(100f);
+  }
+
+  @Test
+  public void testDownloadInParallelFailureResumesFromCachedData() throws Exception {
+    ByteArrayDataSourceFactory factory =
+        new ByteArrayDataSourceFactory(testData, /* failingReadIndex= */ 3);
+    ProgressiveDownloader downloader = getProgressiveDownloader(factory, 2);
+    try {
+      downloader.download();
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+    long cachedBytes = cache.getCacheSpace();
+    assertThat(cachedBytes).isGreaterThan(0L);
+
+    factory.bytesRead.set(0);
+    downloader = getProgressiveDownloader(factory, 2);
+    downloader.download();
+
+    assertDataCached(cache, TEST_URI, testData);
+    assertThat(factory.bytesRead.get()).isAtMost(TEST_DATA_LENGTH - cachedBytes);
+    assertThat(downloader.getDownloadedBytes()).isEqualTo(TEST_DATA_LENGTH);
+  }
+
+  @Test
+  public void testDownloadInParallelWithUnknownLengthFallsBackToSingleConnection()
+      throws Exception {
+    FakeDataSet fakeDataSet = new FakeDataSet();
+    fakeDataSet.newData(TEST_URI).appendReadData(testData).setSimulateUnknownLength(true);
+    ProgressiveDownloader downloader =
+        getProgressiveDownloader(new FakeDataSource.Factory(null).setFakeDataSet(fakeDataSet), 3);
+    downloader.download();
+
+    assertDataCached(cache, TEST_URI, testData);
+    assertThat(downloader.getDownloadedBytes()).isEqualTo(TEST_DATA_LENGTH);
+  }
+
+  @Test
+  public void testRemove() throws Exception {
+    ProgressiveDownloader downloader =
+        getProgressiveDownloader(new ByteArrayDataSourceFactory(testData, -1), 3);
+    downloader.download();
+    downloader.remove();
+
+    assertCacheEmpty(cache);
+  }
+
+  private ProgressiveDownloader getProgressiveDownloader(
+      DataSource.Factory factory, int maxParallelDownloads) {
+    return new ProgressiveDownloader(
+        TEST_URI,
+        /* customCacheKey= */ null,
+        new DownloaderConstructorHelper(
+            cache,
+            factory,
+            /* cacheReadDataSourceFactory= */ null,
+            /* cacheWriteDataSinkFactory= */ null,
+            /* priorityTaskManager= */ null,
+            maxParallelDownloads));
+  }
+
+  /**
+   * Creates {@link ByteArrayDataSource}s, which unlike {@link FakeDataSource}s can be read on
+   * several threads, and can optionally fail the read with a given index.
+   */
+  private static final class ByteArrayDataSourceFactory implements DataSource.Factory {
+
+    private final byte[] data;
+    private final int failingReadIndex;
+    private final AtomicInteger readCount;
+    private final AtomicLong bytesRead;
+
+    public ByteArrayDataSourceFactory(byte[] data, int failingReadIndex) {
+      this.data = data;
+      this.failingReadIndex = failingReadIndex;
+      readCount = new AtomicInteger();
+      bytesRead = new AtomicLong();
+    }
+
+    @Override
+    public DataSource createDataSource() {
+      return new DataSource() {
+
+        private final ByteArrayDataSource dataSource = new ByteArrayDataSource(data);
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+          return dataSource.open(dataSpec);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+          if (readCount.getAndIncrement() == failingReadIndex) {
+            throw new IOException();
+          }
+          int read = dataSource.read(buffer, offset, readLength);
+          if (read > 0) {
+            bytesRead.addAndGet(read);
+          }
+          return read;
+        }
+
+        @Override
+        public Uri getUri() {
+          return dataSource.getUri();
+        }
+
+        @Override
+        public void close() throws IOException {
+          dataSource.close();
+        }
+      };
+    }
+  }
+
+}
@@ -27,15 +27,19 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.FormatHolder;
 import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
 import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
 
 /**
  * Test for {@link SampleQueue}.
@@ -197,6 +201,41 @@ public final class SampleQueueTest {
     assertAllocationCount(0);
   }
 
+  @Test
+  public void testReadMultiSamplesWithDirectBuffers() {
+    allocator = new DefaultAllocator(false, ALLOCATION_SIZE, 0, /* useDirectBuffers= */ true);
+    sampleQueue = new SampleQueue(allocator);
+    writeTestData();
+    assertAllocationCount(10);
+    assertReadTestData();
+    sampleQueue.rewind();
+    assertReadTestData();
+    sampleQueue.discardToRead();
+    assertAllocationCount(0);
+  }
+
+  @Test
+  public void testReadMultiSamplesFromExtractorInputWithDirectBuffers() throws Exception {
+    allocator = new DefaultAllocator(false, ALLOCATION_SIZE, 0, /* useDirectBuffers= */ true);
+    sampleQueue = new SampleQueue(allocator);
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder()
+            .setData(TEST_DATA)
+            .setSimulatePartialReads(true)
+            .build();
+    int bytesWritten = 0;
+    while (bytesWritten < TEST_DATA.length) {
+      int length = TEST_DATA.length - bytesWritten;
+      bytesWritten += sampleQueue.sampleData(input, length, /* allowEndOfInput= */ false);
+    }
+    writeTestData(new byte[0], TEST_SAMPLE_SIZES, TEST_SAMPLE_OFFSETS, TEST_SAMPLE_TIMESTAMPS,
+        TEST_SAMPLE_FORMATS, TEST_SAMPLE_FLAGS);
+    assertAllocationCount(10);
+    assertReadTestData();
+    sampleQueue.discardToRead();
+    assertAllocationCount(0);
+  }
+
   @Test
   public void testReadMultiSamplesTwice() {
     writeTestData();
@@ -511,6 +550,125 @@ public final class SampleQueueTest {
     assertThat(sampleQueue.getLargestQueuedTimestampUs()).isEqualTo(LAST_SAMPLE_TIMESTAMP);
   }
 
+  @Test
+  public void testSamplesSpanningMultipleChunks() {
+    sampleQueue.format(TEST_FORMAT_1);
+    writeSequentialSamples(0, 1000);
+    // Should skip to the keyframe before the target time.
+    assertThat(sampleQueue.advanceTo(505_500, true, false)).isEqualTo(500);
+    assertReadFormat(false, TEST_FORMAT_1);
+    assertSequentialSampleRead(500);
+    // Should discard up to the read position.
+    sampleQueue.discardTo(700_000, false, true);
+    assertThat(sampleQueue.getFirstIndex()).isEqualTo(501);
+    assertThat(sampleQueue.getReadIndex()).isEqualTo(501);
+    sampleQueue.discardUpstreamSamples(600);
+    assertThat(sampleQueue.getWriteIndex()).isEqualTo(600);
+    for (int i = 501; i < 600; i++) {
+      assertSequentialSampleRead(i);
+    }
+    sampleQueue.discardToRead();
+    assertThat(sampleQueue.getFirstIndex()).isEqualTo(600);
+    // Should be able to write and read subsequent samples.
+    writeSequentialSamples(600, 1000);
+    for (int i = 600; i < 1600; i++) {
+      assertSequentialSampleRead(i);
+    }
+    assertNoSamplesToRead(TEST_FORMAT_1);
+  }
+
+  @Test
+  public void testSkipUpstreamSamples() {
+    sampleQueue.format(TEST_FORMAT_1);
+    writeSequentialSamples(0, 15);
+    // Queuing the samples again from the start should only append the samples that are new.
+    sampleQueue.skipUpstreamSamples(15);
+    writeSequentialSamples(0, 20);
+    assertThat(sampleQueue.getWriteIndex()).isEqualTo(20);
+    assertReadFormat(false, TEST_FORMAT_1);
+    for (int i = 0; i < 20; i++) {
+      assertSequentialSampleRead(i);
+    }
+    assertNoSamplesToRead(TEST_FORMAT_1);
+  }
+
+  @Test
+  public void testSeekBackIntoSpilledSamples() throws Exception {
+    File directory = Util.createTempDirectory(RuntimeEnvironment.application, "ExoPlayerTest");
+    try {
+      sampleQueue.setSpillStore(new SampleSpillStore(directory, 1024 * 1024));
+      sampleQueue.format(TEST_FORMAT_1);
+      writeSequentialSamples(0, 1000);
+      assertReadFormat(false, TEST_FORMAT_1);
+      for (int i = 0; i < 600; i++) {
+        assertSequentialSampleRead(i);
+      }
+      // Should spill the samples before the keyframe.
+      sampleQueue.discardTo(555_000, true, true);
+      assertThat(sampleQueue.getFirstIndex()).isEqualTo(550);
+      // Advancing without rewinding shouldn't move the read position back into spilled samples.
+      assertThat(sampleQueue.advanceTo(123_456, true, true)).isEqualTo(ADVANCE_FAILED);
+      // Seeking should read from the keyframe before the target time, and continue into the queue.
+      sampleQueue.rewind();
+      assertThat(sampleQueue.advanceTo(123_456, true, false)).isEqualTo(0);
+      for (int i = 120; i < 1000; i++) {
+        // Spilled samples are read ahead from the store in the background.
+        waitForNextSample();
+        assertSequentialSampleRead(i);
+      }
+      assertNoSamplesToRead(TEST_FORMAT_1);
+    } finally {
+      sampleQueue.reset();
+      sampleQueue.setSpillStore(null);
+      Util.recursiveDelete(directory);
+    }
+  }
+
+  @Test
+  public void testAdvanceFromSpilledSamplesIntoQueue() throws Exception {
+    File directory = Util.createTempDirectory(RuntimeEnvironment.application, "ExoPlayerTest");
+    try {
+      sampleQueue.setSpillStore(new SampleSpillStore(directory, 1024 * 1024));
+      sampleQueue.format(TEST_FORMAT_1);
+      writeSequentialSamples(0, 100);
+      sampleQueue.advanceToEnd();
+      sampleQueue.discardTo(50_000, true, true);
+      sampleQueue.rewind();
+      assertThat(sampleQueue.advanceTo(0, true, false)).isEqualTo(0);
+      // Should advance within the spilled samples.
+      assertThat(sampleQueue.advanceTo(25_000, true, true)).isEqualTo(20);
+      // Should skip the remaining spilled samples and advance within the queue.
+      assertThat(sampleQueue.advanceTo(75_000, true, true)).isEqualTo(50);
+      assertReadFormat(false, TEST_FORMAT_1);
+      assertSequentialSampleRead(70);
+    } finally {
+      sampleQueue.reset();
+      sampleQueue.setSpillStore(null);
+      Util.recursiveDelete(directory);
+    }
+  }
+
+  @Test
+  public void testDiscardUnreadSamplesClearsSpilledSamples() throws Exception {
+    File directory = Util.createTempDirectory(RuntimeEnvironment.application, "ExoPlayerTest");
+    try {
+      sampleQueue.setSpillStore(new SampleSpillStore(directory, 1024 * 1024));
+      sampleQueue.format(TEST_FORMAT_1);
+      writeSequentialSamples(0, 100);
+      sampleQueue.advanceToEnd();
+      sampleQueue.discardTo(50_000, true, true);
+      // Discarding samples that aren't spilled leaves a gap before the queue.
+      sampleQueue.discardTo(60_000, true, false);
+      sampleQueue.rewind();
+      assertThat(sampleQueue.advanceTo(0, true, false)).isEqualTo(ADVANCE_FAILED);
+      assertThat(directory.list()).isEmpty();
+    } finally {
+      sampleQueue.reset();
+      sampleQueue.setSpillStore(null);
+      Util.recursiveDelete(directory);
+    }
+  }
+
   // Internal methods.
 
   /**
@@ -542,6 +700,39 @@ public final class SampleQueueTest {
     }
   }
 
+  /**
+   * Writes single byte samples to {@code sampleQueue}, in which sample {@code i} has data {@code
+   * (byte) i} and a timestamp of {@code i} milliseconds. Every tenth sample is a keyframe.
+   *
+   * @param firstSampleIndex The index of the first sample to write.
+   * @param sampleCount The number of samples to write.
+   */
+  private void writeSequentialSamples(int firstSampleIndex, int sampleCount) {
+    for (int i = firstSampleIndex; i < firstSampleIndex + sampleCount; i++) {
+      sampleQueue.sampleData(new ParsableByteArray(new byte[] {(byte) i}), 1);
+      int flags = i % 10 == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0;
+      sampleQueue.sampleMetadata(i * 1000L, flags, 1, 0, null);
+    }
+  }
+
+  /** Waits for the queue to have a sample available to be read, failing after a timeout. */
+  private void waitForNextSample() throws InterruptedException {
+    for (int i = 0; i < 10_000 && !sampleQueue.hasNextSample(); i++) {
+      Thread.sleep(1);
+    }
+    assertThat(sampleQueue.hasNextSample()).isTrue();
+  }
+
+  /**
+   * Asserts correct reading of a sample written by {@link #writeSequentialSamples(int, int)}.
+   *
+   * @param sampleIndex The index of the sample that's expected to be read.
+   */
+  private void assertSequentialSampleRead(int sampleIndex) {
+    assertSampleRead(sampleIndex * 1000L, sampleIndex % 10 == 0, new byte[] {(byte) sampleIndex},
+        0, 1);
+  }
+
   /**
    * Asserts correct reading of standard test data from {@code sampleQueue}.
    */
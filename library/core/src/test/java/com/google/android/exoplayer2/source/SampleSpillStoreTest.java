@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/** Unit tests for {@link SampleSpillStore}. */
+@RunWith(RobolectricTestRunner.class)
+public final class SampleSpillStoreTest {
+
+  private static final int SAMPLE_SIZE = 100;
+  private static final int SAMPLE_COUNT = 100;
+  private static final byte[] TEST_DATA = TestUtil.buildTestData(SAMPLE_SIZE * SAMPLE_COUNT);
+  private static final Format FORMAT_1 = Format.createSampleFormat("1", "mimeType", 0);
+  private static final Format FORMAT_2 = Format.createSampleFormat("2", "mimeType", 0);
+
+  private File directory;
+  private DecoderInputBuffer buffer;
+  private SampleSpillStore store;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Util.createTempDirectory(RuntimeEnvironment.application, "ExoPlayerTest");
+    buffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+  }
+
+  @After
+  public void tearDown() {
+    if (store != null) {
+      store.release();
+    }
+    Util.recursiveDelete(directory);
+  }
+
+  @Test
+  public void testSeekAndRead() throws Exception {
+    store = new SampleSpillStore(directory, Long.MAX_VALUE);
+    writeSamples();
+
+    assertThat(store.hasNextSample()).isFalse();
+    assertThat(store.seekTo(-1)).isFalse();
+    assertThat(store.seekTo(42_000)).isTrue();
+
+    assertThat(store.getRemainingSampleCount()).isEqualTo(SAMPLE_COUNT - 40);
+    for (int i = 40; i < SAMPLE_COUNT; i++) {
+      assertSampleRead(i);
+    }
+    assertThat(store.hasNextSample()).isFalse();
+  }
+
+  @Test
+  public void testAdvanceTo() throws Exception {
+    store = new SampleSpillStore(directory, Long.MAX_VALUE);
+    writeSamples();
+    store.seekTo(10_000);
+    waitUntilReady();
+    store.readSample(buffer);
+
+    // The next sample isn't a keyframe, and there's no keyframe before the target time.
+    assertThat(store.advanceTo(15_000)).isEqualTo(SampleQueue.ADVANCE_FAILED);
+    assertThat(store.advanceTo(5_000)).isEqualTo(SampleQueue.ADVANCE_FAILED);
+    assertThat(store.advanceTo(35_000)).isEqualTo(19);
+    assertSampleRead(30);
+  }
+
+  @Test
+  public void testOldestSegmentsDeletedWhenFull() throws Exception {
+    // Holds about 20 samples, in segments of three samples each.
+    int maxBytes = (SAMPLE_SIZE + 20) * 20;
+    store = new SampleSpillStore(directory, maxBytes);
+    writeSamples();
+
+    assertThat(store.seekTo(50_000)).isFalse();
+    assertThat(store.seekTo(SAMPLE_COUNT * 1000)).isTrue();
+    assertSampleRead(90);
+    // Files are written and deleted in order, so all files are up to date once a sample is read.
+    assertThat(directory.list().length).isAtMost(11);
+  }
+
+  @Test
+  public void testClearDeletesSegments() throws Exception {
+    store = new SampleSpillStore(directory, (SAMPLE_SIZE + 20) * 20);
+    writeSamples();
+    // Reading a sample ensures that all samples have been written to files.
+    assertThat(store.seekTo(SAMPLE_COUNT * 1000)).isTrue();
+    waitUntilReady();
+    assertThat(directory.list()).isNotEmpty();
+
+    store.clear();
+
+    assertThat(store.seekTo(SAMPLE_COUNT * 1000)).isFalse();
+    for (int i = 0; i < 10_000 && directory.list().length > 0; i++) {
+      Thread.sleep(1);
+    }
+    assertThat(directory.list()).isEmpty();
+  }
+
+  @Test
+  public void testLeftoverSegmentsDeletedOnCreation() throws Exception {
+    File leftoverFile = new File(directory, "spill123.spill");
+    File otherFile = new File(directory, "other");
+    assertThat(leftoverFile.createNewFile()).isTrue();
+    assertThat(otherFile.createNewFile()).isTrue();
+
+    store = new SampleSpillStore(directory, Long.MAX_VALUE);
+
+    // The files are deleted on the store's background thread.
+    for (int i = 0; i < 10_000 && leftoverFile.exists(); i++) {
+      Thread.sleep(1);
+    }
+    assertThat(leftoverFile.exists()).isFalse();
+    assertThat(otherFile.exists()).isTrue();
+  }
+
+  /**
+   * Writes samples of {@link #SAMPLE_SIZE} bytes, in which sample {@code i} has a timestamp of
+   * {@code i} milliseconds. Every tenth sample is a keyframe, and the format changes halfway.
+   */
+  private void writeSamples() throws Exception {
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      int flags = i % 10 == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0;
+      Format format = i < SAMPLE_COUNT / 2 ? FORMAT_1 : FORMAT_2;
+      store.startSample(i * 1000L, flags, SAMPLE_SIZE, format);
+      // Write the data in two parts.
+      store.writeSampleData(TEST_DATA, i * SAMPLE_SIZE, 30);
+      store.writeSampleData(TEST_DATA, i * SAMPLE_SIZE + 30, SAMPLE_SIZE - 30);
+    }
+  }
+
+  /** Waits for the store to read ahead the next sample, failing after a timeout. */
+  private void waitUntilReady() throws InterruptedException {
+    for (int i = 0; i < 10_000 && !store.isReady(); i++) {
+      Thread.sleep(1);
+    }
+    assertThat(store.isReady()).isTrue();
+  }
+
+  private void assertSampleRead(int sampleIndex) throws Exception {
+    waitUntilReady();
+    assertThat(store.peekFormat()).isEqualTo(sampleIndex < SAMPLE_COUNT / 2 ? FORMAT_1 : FORMAT_2);
+    buffer.clear();
+    store.readSample(buffer);
+    assertThat(buffer.timeUs).isEqualTo(sampleIndex * 1000L);
+    assertThat(buffer.isKeyFrame()).isEqualTo(sampleIndex % 10 == 0);
+    buffer.flip();
+    byte[] data = new byte[buffer.data.remaining()];
+    buffer.data.get(data);
+    int offset = sampleIndex * SAMPLE_SIZE;
+    assertThat(data).isEqualTo(Arrays.copyOfRange(TEST_DATA, offset, offset + SAMPLE_SIZE));
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.chunk;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.source.SampleQueue;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.DummyDataSource;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link ChunkDataPrefetch}. */
+@RunWith(RobolectricTestRunner.class)
+public final class ChunkDataPrefetchTest {
+
+  private static final String URI = "http://example.com/segment";
+  private static final Format FORMAT = Format.createSampleFormat("id", "mimeType", 0);
+  private static final byte[] TEST_DATA = TestUtil.buildTestData(100 * 1024);
+  private static final int CHUNK_POSITION = 1000;
+  private static final int CHUNK_LENGTH = 50 * 1024;
+
+  @Test
+  public void testChunkLoadsFromPrefetchedData() throws Exception {
+    // The chunk's own data source fails to open, so the chunk can only load the prefetched data.
+    SingleSampleMediaChunk chunk =
+        new SingleSampleMediaChunk(
+            DummyDataSource.INSTANCE,
+            new DataSpec(Uri.parse(URI), CHUNK_POSITION, CHUNK_LENGTH, /* key= */ null),
+            FORMAT,
+            C.SELECTION_REASON_UNKNOWN,
+            /* trackSelectionData= */ null,
+            /* startTimeUs= */ 0,
+            /* endTimeUs= */ 1000,
+            /* chunkIndex= */ 0,
+            C.TRACK_TYPE_TEXT,
+            FORMAT);
+    DefaultAllocator allocator = new DefaultAllocator(true, 1024);
+    ChunkDataPrefetch prefetch =
+        new ChunkDataPrefetch(
+            chunk, new FakeDataSource(new FakeDataSet().setData(URI, TEST_DATA)), allocator);
+
+    prefetch.load();
+    assertThat(prefetch.isLoadCompleted()).isTrue();
+    // The prefetched data should count towards the allocated data.
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(CHUNK_LENGTH);
+
+    SampleQueue sampleQueue = new SampleQueue(new DefaultAllocator(true, 1024));
+    chunk.init(
+        new BaseMediaChunkOutput(
+            new int[] {C.TRACK_TYPE_TEXT}, new SampleQueue[] {sampleQueue}));
+    chunk.setPrefetchedDataSource(prefetch.createDataSource());
+    chunk.load();
+
+    assertThat(chunk.isLoadCompleted()).isTrue();
+    DecoderInputBuffer buffer =
+        new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+    FormatHolder formatHolder = new FormatHolder();
+    sampleQueue.read(formatHolder, buffer, false, false, 0);
+    assertThat(formatHolder.format).isEqualTo(FORMAT);
+    sampleQueue.read(formatHolder, buffer, false, false, 0);
+    buffer.flip();
+    byte[] sampleData = new byte[buffer.data.remaining()];
+    buffer.data.get(sampleData);
+    assertThat(sampleData)
+        .isEqualTo(
+            Arrays.copyOfRange(TEST_DATA, CHUNK_POSITION, CHUNK_POSITION + CHUNK_LENGTH));
+
+    prefetch.discard();
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void testCancelLoad() throws Exception {
+    SingleSampleMediaChunk chunk =
+        new SingleSampleMediaChunk(
+            DummyDataSource.INSTANCE,
+            new DataSpec(Uri.parse(URI)),
+            FORMAT,
+            C.SELECTION_REASON_UNKNOWN,
+            /* trackSelectionData= */ null,
+            /* startTimeUs= */ 0,
+            /* endTimeUs= */ 1000,
+            /* chunkIndex= */ 0,
+            C.TRACK_TYPE_TEXT,
+            FORMAT);
+    DefaultAllocator allocator = new DefaultAllocator(true, 1024);
+    ChunkDataPrefetch prefetch =
+        new ChunkDataPrefetch(
+            chunk, new FakeDataSource(new FakeDataSet().setData(URI, TEST_DATA)), allocator);
+
+    prefetch.cancelLoad();
+    prefetch.load();
+
+    assertThat(prefetch.isLoadCanceled()).isTrue();
+    assertThat(prefetch.isLoadCompleted()).isFalse();
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+}
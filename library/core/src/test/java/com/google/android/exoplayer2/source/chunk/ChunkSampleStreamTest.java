@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.chunk;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispatcher;
+import com.google.android.exoplayer2.source.SequenceableLoader;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.testutil.FakeAdaptiveDataSet;
+import com.google.android.exoplayer2.testutil.FakeChunkSource;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.trackselection.BaseTrackSelection;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.Loader;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link ChunkSampleStream} loading several media chunks at the same time. */
+@RunWith(RobolectricTestRunner.class)
+public final class ChunkSampleStreamTest {
+
+  private static final Format FORMAT_1 = createVideoFormat("1", 800000);
+  private static final Format FORMAT_2 = createVideoFormat("2", 1600000);
+  private static final int MAX_PARALLEL_CHUNK_LOADS = 3;
+
+  private QueuedExecutor executor;
+  private ManualTrackSelection trackSelection;
+  private FakeAdaptiveDataSet dataSet;
+  private FakeDataSource chunkDataSource;
+  private ChunkSampleStream<FakeChunkSource> sampleStream;
+  private FormatHolder formatHolder;
+  private DecoderInputBuffer buffer;
+
+  @Before
+  public void setUp() {
+    executor = new QueuedExecutor();
+    trackSelection = new ManualTrackSelection(new TrackGroup(FORMAT_1, FORMAT_2));
+    trackSelection.selectedFormat = FORMAT_1;
+    dataSet =
+        new FakeAdaptiveDataSet.Factory(C.MICROS_PER_SECOND, /* bitratePercentStdDev= */ 0)
+            .createDataSet(trackSelection.getTrackGroup(), 10 * C.MICROS_PER_SECOND);
+    chunkDataSource = new FakeDataSource(dataSet);
+    FakeChunkSource chunkSource = new FakeChunkSource(trackSelection, chunkDataSource, dataSet);
+    sampleStream =
+        new ChunkSampleStream<>(
+            C.TRACK_TYPE_VIDEO,
+            /* embeddedTrackTypes= */ null,
+            /* embeddedTrackFormats= */ null,
+            chunkSource,
+            new NoOpCallback(),
+            new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+            /* positionUs= */ 0,
+            /* minLoadableRetryCount= */ 3,
+            new EventDispatcher(),
+            new Loader.Factory() {
+              @Override
+              public Loader createLoader(String threadName) {
+                return new Loader(executor);
+              }
+            },
+            MAX_PARALLEL_CHUNK_LOADS,
+            new FakeDataSource.Factory(/* transferListener= */ null).setFakeDataSet(dataSet));
+    formatHolder = new FormatHolder();
+    buffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+  }
+
+  @After
+  public void tearDown() {
+    sampleStream.release();
+    executor.runAll();
+  }
+
+  @Test
+  public void testNextChunkLoadsFromPrefetchedData() {
+    // Loads the first chunk, and prefetches the data of the two chunks after it.
+    assertThat(sampleStream.continueLoading(/* positionUs= */ 0)).isTrue();
+    executor.runAll();
+    assertOpenedDataSpecs(dataSet.getUri(0));
+
+    assertThat(sampleStream.continueLoading(/* positionUs= */ 0)).isTrue();
+    executor.runAll();
+
+    // The second chunk should have been loaded from its prefetched data.
+    assertOpenedDataSpecs();
+    assertReadFormat(FORMAT_1);
+    assertReadSample(/* timeUs= */ 0);
+    assertReadSample(/* timeUs= */ C.MICROS_PER_SECOND);
+  }
+
+  @Test
+  public void testTrackSelectionChangeDiscardsPrefetchedData() {
+    assertThat(sampleStream.continueLoading(/* positionUs= */ 0)).isTrue();
+    executor.runAll();
+    assertOpenedDataSpecs(dataSet.getUri(0));
+
+    // Switch tracks while the data of the following chunks of the first track is prefetched.
+    trackSelection.selectedFormat = FORMAT_2;
+    assertThat(sampleStream.continueLoading(/* positionUs= */ 0)).isTrue();
+    executor.runAll();
+
+    // The second chunk should have been loaded from the newly selected track.
+    assertOpenedDataSpecs(dataSet.getUri(1));
+    assertReadFormat(FORMAT_1);
+    assertReadSample(/* timeUs= */ 0);
+    assertReadFormat(FORMAT_2);
+    assertReadSample(/* timeUs= */ C.MICROS_PER_SECOND);
+  }
+
+  private void assertOpenedDataSpecs(String... uris) {
+    DataSpec[] dataSpecs = chunkDataSource.getAndClearOpenedDataSpecs();
+    assertThat(dataSpecs).hasLength(uris.length);
+    for (int i = 0; i < uris.length; i++) {
+      assertThat(dataSpecs[i].uri.toString()).isEqualTo(uris[i]);
+    }
+  }
+
+  private void assertReadFormat(Format format) {
+    int result = sampleStream.readData(formatHolder, buffer, /* formatRequired= */ false);
+    assertThat(result).isEqualTo(C.RESULT_FORMAT_READ);
+    assertThat(formatHolder.format).isEqualTo(format);
+  }
+
+  private void assertReadSample(long timeUs) {
+    buffer.clear();
+    int result = sampleStream.readData(formatHolder, buffer, /* formatRequired= */ false);
+    assertThat(result).isEqualTo(C.RESULT_BUFFER_READ);
+    assertThat(buffer.timeUs).isEqualTo(timeUs);
+  }
+
+  private static Format createVideoFormat(String id, int bitrate) {
+    return Format.createVideoSampleFormat(
+        id,
+        MimeTypes.VIDEO_H264,
+        /* codecs= */ null,
+        bitrate,
+        /* maxInputSize= */ Format.NO_VALUE,
+        /* width= */ 1280,
+        /* height= */ 720,
+        /* frameRate= */ Format.NO_VALUE,
+        /* initializationData= */ null,
+        /* drmInitData= */ null);
+  }
+
+  /** An {@link Executor} that runs tasks on the test thread when {@link #runAll()} is called. */
+  private static final class QueuedExecutor implements Executor {
+
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    public void runAll() {
+      while (!tasks.isEmpty()) {
+        tasks.remove().run();
+      }
+    }
+  }
+
+  /** A track selection whose selected format is set by the test. */
+  private static final class ManualTrackSelection extends BaseTrackSelection {
+
+    public Format selectedFormat;
+
+    public ManualTrackSelection(TrackGroup group) {
+      super(group, 0, 1);
+    }
+
+    @Override
+    public void updateSelectedTrack(
+        long playbackPositionUs, long bufferedDurationUs, long availableDurationUs) {
+      // Do nothing.
+    }
+
+    @Override
+    public int getSelectedIndex() {
+      return indexOf(selectedFormat);
+    }
+
+    @Override
+    public int getSelectionReason() {
+      return C.SELECTION_REASON_MANUAL;
+    }
+
+    @Override
+    public Object getSelectionData() {
+      return null;
+    }
+  }
+
+  private static final class NoOpCallback
+      implements SequenceableLoader.Callback<ChunkSampleStream<FakeChunkSource>> {
+
+    @Override
+    public void onContinueLoadingRequested(ChunkSampleStream<FakeChunkSource> source) {
+      // Do nothing.
+    }
+  }
+}
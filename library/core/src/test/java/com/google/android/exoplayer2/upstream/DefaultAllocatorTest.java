@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link DefaultAllocator}. */
+@RunWith(RobolectricTestRunner.class)
+public final class DefaultAllocatorTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+  private static final int THREAD_COUNT = 4;
+  private static final int ITERATIONS_PER_THREAD = 10000;
+
+  @Test
+  public void testAllocateAndRelease() {
+    DefaultAllocator allocator = new DefaultAllocator(true, ALLOCATION_SIZE);
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(2 * ALLOCATION_SIZE);
+
+    allocator.release(allocation1);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE);
+    allocator.release(new Allocation[] {allocation2});
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+
+    // Released allocations are reused.
+    List<Allocation> reallocated = new ArrayList<>();
+    reallocated.add(allocator.allocate());
+    reallocated.add(allocator.allocate());
+    assertThat(reallocated).containsExactly(allocation1, allocation2);
+  }
+
+  @Test
+  public void testTrimDiscardsAllocationsBeyondTarget() {
+    DefaultAllocator allocator = new DefaultAllocator(true, ALLOCATION_SIZE);
+    allocator.setTargetBufferSize(2 * ALLOCATION_SIZE);
+    Allocation[] allocations = allocate(allocator, 4);
+    allocator.release(allocations);
+
+    allocator.trim();
+
+    assertThat(countAvailable(allocator, allocations)).isEqualTo(2);
+  }
+
+  @Test
+  public void testResetKeepsInitialAllocations() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(true, ALLOCATION_SIZE, /* initialAllocationCount= */ 2);
+    allocator.setTargetBufferSize(4 * ALLOCATION_SIZE);
+    Allocation[] allocations = allocate(allocator, 4);
+    allocator.release(allocations);
+
+    allocator.reset();
+
+    Allocation[] reallocated = allocate(allocator, 4);
+    int initialBlockCount = 0;
+    int reusedCount = 0;
+    for (Allocation allocation : reallocated) {
+      if (allocation.data.length == 2 * ALLOCATION_SIZE) {
+        initialBlockCount++;
+      }
+      for (Allocation original : allocations) {
+        if (allocation == original) {
+          reusedCount++;
+        }
+      }
+    }
+    assertThat(initialBlockCount).isEqualTo(2);
+    assertThat(reusedCount).isEqualTo(2);
+  }
+
+  @Test
+  public void testAllocateDirectBuffers() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(true, ALLOCATION_SIZE, 0, /* useDirectBuffers= */ true);
+    Allocation[] allocations = allocate(allocator, 3);
+    for (Allocation allocation : allocations) {
+      assertThat(allocation.data).isNull();
+      assertThat(allocation.buffer.isDirect()).isTrue();
+      assertThat(allocation.buffer.capacity() - allocation.offset).isAtLeast(ALLOCATION_SIZE);
+    }
+    // The allocations are carved from a shared buffer without overlapping.
+    assertThat(allocations[1].buffer).isSameAs(allocations[0].buffer);
+    assertThat(allocations[0].offset).isNotEqualTo(allocations[1].offset);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(3 * ALLOCATION_SIZE);
+
+    allocator.release(allocations);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+    assertThat(countAvailable(allocator, allocations)).isEqualTo(3);
+  }
+
+  @Test
+  public void testResetKeepsInitialDirectBuffer() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(
+            true, ALLOCATION_SIZE, /* initialAllocationCount= */ 2, /* useDirectBuffers= */ true);
+    allocator.setTargetBufferSize(4 * ALLOCATION_SIZE);
+    Allocation[] allocations = allocate(allocator, 4);
+    allocator.release(allocations);
+
+    allocator.reset();
+
+    Allocation[] reallocated = allocate(allocator, 2);
+    assertThat(reallocated[0].buffer.capacity()).isEqualTo(2 * ALLOCATION_SIZE);
+    assertThat(reallocated[1].buffer).isSameAs(reallocated[0].buffer);
+  }
+
+  @Test
+  public void testConcurrentAllocateAndRelease() throws Exception {
+    final DefaultAllocator allocator = new DefaultAllocator(true, ALLOCATION_SIZE);
+    final Map<Allocation, Boolean> inUse =
+        Collections.synchronizedMap(new IdentityHashMap<Allocation, Boolean>());
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int i = 0; i < THREAD_COUNT; i++) {
+        results.add(
+            executorService.submit(
+                new Callable<Boolean>() {
+                  @Override
+                  public Boolean call() throws Exception {
+                    startLatch.await();
+                    Allocation[] batch = new Allocation[3];
+                    for (int iteration = 0; iteration < ITERATIONS_PER_THREAD; iteration++) {
+                      for (int j = 0; j < batch.length; j++) {
+                        batch[j] = allocator.allocate();
+                        if (inUse.put(batch[j], true) != null) {
+                          // The allocation was handed out twice.
+                          return false;
+                        }
+                      }
+                      for (Allocation allocation : batch) {
+                        inUse.remove(allocation);
+                      }
+                      if (iteration % 2 == 0) {
+                        allocator.release(batch);
+                      } else {
+                        for (Allocation allocation : batch) {
+                          allocator.release(allocation);
+                        }
+                      }
+                    }
+                    return true;
+                  }
+                }));
+      }
+      startLatch.countDown();
+      for (Future<Boolean> result : results) {
+        assertThat(result.get()).isTrue();
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  private static Allocation[] allocate(Allocator allocator, int count) {
+    Allocation[] allocations = new Allocation[count];
+    for (int i = 0; i < count; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    return allocations;
+  }
+
+  /** Returns how many of the given allocations are handed out again by the allocator. */
+  private static int countAvailable(Allocator allocator, Allocation[] allocations) {
+    Allocation[] reallocated = allocate(allocator, allocations.length);
+    int count = 0;
+    for (Allocation allocation : reallocated) {
+      for (Allocation original : allocations) {
+        if (allocation == original) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+}
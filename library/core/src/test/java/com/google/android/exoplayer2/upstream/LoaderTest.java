@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.upstream.Loader.Loadable;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link Loader}s that run their loads on a shared executor. */
+@RunWith(RobolectricTestRunner.class)
+public final class LoaderTest {
+
+  private static final long TIMEOUT_MS = 10000;
+
+  private ExecutorService executorService;
+
+  @Before
+  public void setUp() {
+    executorService = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testLoadersSharingExecutorLoadConcurrently() throws Exception {
+    BlockingLoadable loadable1 = new BlockingLoadable();
+    BlockingLoadable loadable2 = new BlockingLoadable();
+    Loader loader1 = new Loader(executorService);
+    Loader loader2 = new Loader(executorService);
+
+    loader1.startLoading(loadable1, new NoOpCallback(), /* defaultMinRetryCount= */ 0);
+    loader2.startLoading(loadable2, new NoOpCallback(), /* defaultMinRetryCount= */ 0);
+
+    assertThat(loadable1.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(loadable2.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    loadable1.proceed.countDown();
+    loadable2.proceed.countDown();
+    assertThat(loadable1.finished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(loadable2.finished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    loader1.release();
+    loader2.release();
+  }
+
+  @Test
+  public void testReleaseCallbackRunsAfterLoadOnSharedExecutor() throws Exception {
+    final BlockingLoadable loadable = new BlockingLoadable();
+    Loader loader = new Loader(executorService);
+    loader.startLoading(loadable, new NoOpCallback(), /* defaultMinRetryCount= */ 0);
+    assertThat(loadable.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+
+    final AtomicBoolean loadFinishedBeforeRelease = new AtomicBoolean();
+    final CountDownLatch released = new CountDownLatch(1);
+    loader.release(
+        new Loader.ReleaseCallback() {
+          @Override
+          public void onLoaderReleased() {
+            loadFinishedBeforeRelease.set(loadable.finished.getCount() == 0);
+            released.countDown();
+          }
+        });
+
+    assertThat(released.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(loadFinishedBeforeRelease.get()).isTrue();
+    assertThat(loadable.interrupted.get()).isTrue();
+  }
+
+  @Test
+  public void testReleasingLoaderDoesNotInterruptLoadOfOtherLoader() throws Exception {
+    ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
+    try {
+      BlockingLoadable loadable1 = new BlockingLoadable();
+      Loader loader1 = new Loader(singleThreadExecutor);
+      loader1.startLoading(loadable1, new NoOpCallback(), /* defaultMinRetryCount= */ 0);
+      assertThat(loadable1.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+      BlockingLoadable loadable2 = new BlockingLoadable();
+      Loader loader2 = new Loader(singleThreadExecutor);
+      loader2.startLoading(loadable2, new NoOpCallback(), /* defaultMinRetryCount= */ 0);
+
+      loader1.release();
+      assertThat(loadable2.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+      loadable2.proceed.countDown();
+
+      assertThat(loadable2.finished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+      assertThat(loadable1.interrupted.get()).isTrue();
+      assertThat(loadable2.interrupted.get()).isFalse();
+      loader2.release();
+    } finally {
+      singleThreadExecutor.shutdownNow();
+    }
+  }
+
+  /** A {@link Loadable} whose load blocks until it's allowed to proceed, or it's interrupted. */
+  private static final class BlockingLoadable implements Loadable {
+
+    public final CountDownLatch started;
+    public final CountDownLatch proceed;
+    public final CountDownLatch finished;
+    public final AtomicBoolean interrupted;
+
+    private volatile boolean canceled;
+
+    public BlockingLoadable() {
+      started = new CountDownLatch(1);
+      proceed = new CountDownLatch(1);
+      finished = new CountDownLatch(1);
+      interrupted = new AtomicBoolean();
+    }
+
+    @Override
+    public void cancelLoad() {
+      canceled = true;
+    }
+
+    @Override
+    public boolean isLoadCanceled() {
+      return canceled;
+    }
+
+    @Override
+    public void load() throws IOException, InterruptedException {
+      started.countDown();
+      try {
+        proceed.await();
+      } catch (InterruptedException e) {
+        interrupted.set(true);
+      } finally {
+        finished.countDown();
+      }
+    }
+  }
+
+  private static final class NoOpCallback implements Loader.Callback<BlockingLoadable> {
+
+    @Override
+    public void onLoadCompleted(
+        BlockingLoadable loadable, long elapsedRealtimeMs, long loadDurationMs) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onLoadCanceled(
+        BlockingLoadable loadable, long elapsedRealtimeMs, long loadDurationMs, boolean released) {
+      // Do nothing.
+    }
+
+    @Override
+    public int onLoadError(
+        BlockingLoadable loadable, long elapsedRealtimeMs, long loadDurationMs, IOException error) {
+      return Loader.DONT_RETRY;
+    }
+  }
+
+}
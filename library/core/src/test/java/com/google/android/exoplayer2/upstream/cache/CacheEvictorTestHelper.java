@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static org.mockito.Mockito.doAnswer;
+
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import java.io.File;
+import java.util.ArrayList;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Adds and touches spans of a mocked {@link Cache} for testing a {@link CacheEvictor}, and records
+ * the spans that the evictor removes from the cache.
+ */
+/* package */ final class CacheEvictorTestHelper {
+
+  /** The mocked cache. Removing a span from it notifies the evictor. */
+  public final Cache cache;
+  /** The spans removed from {@link #cache}, in the order in which they were removed. */
+  public final ArrayList<CacheSpan> removedSpans;
+
+  private CacheEvictor evictor;
+
+  public CacheEvictorTestHelper() throws CacheException {
+    cache = Mockito.mock(Cache.class);
+    removedSpans = new ArrayList<>();
+    doAnswer(
+            new Answer<Object>() {
+              @Override
+              public Object answer(InvocationOnMock invocation) throws Throwable {
+                CacheSpan span = (CacheSpan) invocation.getArguments()[0];
+                removedSpans.add(span);
+                evictor.onSpanRemoved(cache, span);
+                return null;
+              }
+            })
+        .when(cache)
+        .removeSpan(Mockito.any(CacheSpan.class));
+  }
+
+  /**
+   * Sets the evictor under test.
+   *
+   * @param evictor The evictor.
+   * @return The evictor, for convenience.
+   */
+  public <T extends CacheEvictor> T setEvictor(T evictor) {
+    this.evictor = evictor;
+    return evictor;
+  }
+
+  /** Starts a file for a new span, adds the span to the evictor and returns it. */
+  public CacheSpan addSpan(String key, long length, long lastAccessTimestamp) {
+    CacheSpan span = createSpan(key, length, lastAccessTimestamp);
+    evictor.onStartFile(cache, key, 0, length);
+    evictor.onSpanAdded(cache, span);
+    return span;
+  }
+
+  /** Replaces a span with one that has a new last access timestamp, and returns the new span. */
+  public CacheSpan touchSpan(CacheSpan span, long lastAccessTimestamp) {
+    CacheSpan newSpan = createSpan(span.key, span.length, lastAccessTimestamp);
+    evictor.onSpanTouched(cache, span, newSpan);
+    return newSpan;
+  }
+
+  /** Returns a span that starts at position 0, without adding it to the evictor. */
+  public static CacheSpan createSpan(String key, long length, long lastAccessTimestamp) {
+    return new CacheSpan(key, 0, length, lastAccessTimestamp, new File(key));
+  }
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.util.Util.toByteArray;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/** Unit tests for {@link ConcurrentSimpleCache}. */
+@RunWith(RobolectricTestRunner.class)
+public class ConcurrentSimpleCacheTest {
+
+  private static final String KEY_1 = "key1";
+  private static final String KEY_2 = "key2";
+
+  private File cacheDir;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDir = Util.createTempDirectory(RuntimeEnvironment.application, "ExoPlayerTest");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Util.recursiveDelete(cacheDir);
+  }
+
+  @Test
+  public void testCommittingOneFile() throws Exception {
+    ConcurrentSimpleCache cache = getCache();
+
+    CacheSpan cacheSpan1 = cache.startReadWrite(KEY_1, 0);
+    assertThat(cacheSpan1.isCached).isFalse();
+    assertThat(cacheSpan1.isOpenEnded()).isTrue();
+
+    assertThat(cache.startReadWriteNonBlocking(KEY_1, 0)).isNull();
+    assertThat(cache.getCachedSpans(KEY_1)).isEmpty();
+    assertThat(cache.getCacheSpace()).isEqualTo(0);
+
+    addCache(cache, KEY_1, 0, 15);
+
+    assertThat(cache.getKeys()).containsExactly(KEY_1);
+    assertThat(cache.getCachedSpans(KEY_1)).contains(cacheSpan1);
+    assertThat(cache.getCacheSpace()).isEqualTo(15);
+
+    cache.releaseHoleSpan(cacheSpan1);
+
+    CacheSpan cacheSpan2 = cache.startReadWrite(KEY_1, 0);
+    assertThat(cacheSpan2.isCached).isTrue();
+    assertThat(cacheSpan2.length).isEqualTo(15);
+    assertCachedDataReadCorrect(cacheSpan2);
+  }
+
+  @Test
+  public void testReloadCache() throws Exception {
+    ConcurrentSimpleCache cache = getCache();
+    CacheSpan cacheSpan1 = cache.startReadWrite(KEY_1, 0);
+    addCache(cache, KEY_1, 0, 15);
+    cache.releaseHoleSpan(cacheSpan1);
+    cache.setContentLength(KEY_1, 150);
+    cache.release();
+
+    cache = getCache();
+
+    assertThat(cache.getContentLength(KEY_1)).isEqualTo(150);
+    assertThat(cache.getCacheSpace()).isEqualTo(15);
+    CacheSpan cacheSpan2 = cache.startReadWrite(KEY_1, 0);
+    assertCachedDataReadCorrect(cacheSpan2);
+  }
+
+  @Test
+  public void testGetCachedLength() throws Exception {
+    ConcurrentSimpleCache cache = getCache();
+    CacheSpan cacheSpan = cache.startReadWrite(KEY_1, 0);
+
+    assertThat(cache.getCachedLength(KEY_1, 0, 100)).isEqualTo(-100);
+
+    addCache(cache, KEY_1, 0, 15);
+    addCache(cache, KEY_1, 15, 35);
+    addCache(cache, KEY_1, 60, 10);
+
+    assertThat(cache.getCachedLength(KEY_1, 0, 100)).isEqualTo(50);
+    assertThat(cache.getCachedLength(KEY_1, 55, 100)).isEqualTo(-5);
+    assertThat(cache.isCached(KEY_1, 0, 50)).isTrue();
+    assertThat(cache.isCached(KEY_1, 0, 51)).isFalse();
+
+    cache.releaseHoleSpan(cacheSpan);
+  }
+
+  @Test
+  public void testEvictionRemovesLeastRecentlyUsedSpans() throws Exception {
+    ConcurrentSimpleCache cache =
+        new ConcurrentSimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(20));
+
+    CacheSpan holeSpan1 = cache.startReadWrite(KEY_1, 0);
+    addCache(cache, KEY_1, 0, 15);
+    cache.releaseHoleSpan(holeSpan1);
+    CacheSpan holeSpan2 = cache.startReadWrite(KEY_2, 0);
+    addCache(cache, KEY_2, 0, 15);
+    cache.releaseHoleSpan(holeSpan2);
+
+    assertThat(cache.getCacheSpace()).isEqualTo(15);
+    assertThat(cache.getCachedSpans(KEY_1)).isEmpty();
+    NavigableSet<CacheSpan> cachedSpans = cache.getCachedSpans(KEY_2);
+    assertThat(cachedSpans).hasSize(1);
+    assertThat(cachedSpans.first().file.exists()).isTrue();
+  }
+
+  @Test
+  public void testLockedKeyDoesNotBlockOtherKeys() throws Exception {
+    final ConcurrentSimpleCache cache = getCache();
+    CacheSpan holeSpan1 = cache.startReadWrite(KEY_1, 0);
+
+    final AtomicReference<Exception> error = new AtomicReference<>();
+    Thread thread =
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              CacheSpan holeSpan2 = cache.startReadWrite(KEY_2, 0);
+              addCache(cache, KEY_2, 0, 10);
+              cache.releaseHoleSpan(holeSpan2);
+            } catch (Exception e) {
+              error.set(e);
+            }
+          }
+        };
+    thread.start();
+    thread.join();
+
+    assertThat(error.get()).isNull();
+    assertThat(cache.isCached(KEY_2, 0, 10)).isTrue();
+    cache.releaseHoleSpan(holeSpan1);
+  }
+
+  @Test
+  public void testBlockedWriterIsWokenUpWhenHoleSpanReleased() throws Exception {
+    final ConcurrentSimpleCache cache = getCache();
+    CacheSpan holeSpan = cache.startReadWrite(KEY_1, 0);
+
+    final AtomicReference<CacheSpan> span = new AtomicReference<>();
+    Thread thread =
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              span.set(cache.startReadWrite(KEY_1, 0));
+            } catch (InterruptedException | CacheException e) {
+              // Leave the span unset.
+            }
+          }
+        };
+    thread.start();
+    addCache(cache, KEY_1, 0, 15);
+    cache.releaseHoleSpan(holeSpan);
+    thread.join();
+
+    assertThat(span.get().isCached).isTrue();
+    assertCachedDataReadCorrect(span.get());
+  }
+
+  @Test
+  public void testMultipleCachesWithSameCacheDirThrowsException() throws Exception {
+    new ConcurrentSimpleCache(cacheDir, new NoOpCacheEvictor());
+
+    try {
+      new SimpleCache(cacheDir, new NoOpCacheEvictor());
+      assertWithMessage("Exception was expected").fail();
+    } catch (IllegalStateException e) {
+      // Expected. Do nothing.
+    }
+  }
+
+  private ConcurrentSimpleCache getCache() {
+    return new ConcurrentSimpleCache(cacheDir, new NoOpCacheEvictor());
+  }
+
+  private static void addCache(Cache cache, String key, int position, int length)
+      throws IOException {
+    File file = cache.startFile(key, position, length);
+    FileOutputStream fos = new FileOutputStream(file);
+    try {
+      fos.write(generateData(key, position, length));
+    } finally {
+      fos.close();
+    }
+    cache.commitFile(file);
+  }
+
+  private static void assertCachedDataReadCorrect(CacheSpan cacheSpan) throws IOException {
+    assertThat(cacheSpan.isCached).isTrue();
+    byte[] expected = generateData(cacheSpan.key, (int) cacheSpan.position, (int) cacheSpan.length);
+    FileInputStream inputStream = new FileInputStream(cacheSpan.file);
+    try {
+      assertThat(toByteArray(inputStream)).isEqualTo(expected);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  private static byte[] generateData(String key, int position, int length) {
+    byte[] bytes = new byte[length];
+    new Random((long) (key.hashCode() ^ position)).nextBytes(bytes);
+    return bytes;
+  }
+
+}
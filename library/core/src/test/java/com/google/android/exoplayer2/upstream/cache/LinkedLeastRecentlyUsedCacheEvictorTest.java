@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link LinkedLeastRecentlyUsedCacheEvictor}. */
+@RunWith(RobolectricTestRunner.class)
+public final class LinkedLeastRecentlyUsedCacheEvictorTest {
+
+  private CacheEvictorTestHelper helper;
+  private LinkedLeastRecentlyUsedCacheEvictor evictor;
+
+  @Before
+  public void setUp() throws Exception {
+    helper = new CacheEvictorTestHelper();
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedSpan() {
+    evictor = helper.setEvictor(new LinkedLeastRecentlyUsedCacheEvictor(30));
+    evictor.onCacheInitialized();
+    CacheSpan spanA = helper.addSpan("a", 10, 1);
+    CacheSpan spanB = helper.addSpan("b", 10, 2);
+    helper.addSpan("c", 10, 3);
+    helper.touchSpan(spanA, 4);
+
+    helper.addSpan("d", 10, 5);
+
+    assertThat(helper.removedSpans).containsExactly(spanB);
+    assertThat(evictor.getCurrentSize()).isEqualTo(30);
+  }
+
+  @Test
+  public void testSpansAddedBeforeInitializationAreOrderedByLastAccessTimestamp() {
+    evictor = helper.setEvictor(new LinkedLeastRecentlyUsedCacheEvictor(30));
+    CacheSpan spanA = CacheEvictorTestHelper.createSpan("a", 10, 3);
+    CacheSpan spanB = CacheEvictorTestHelper.createSpan("b", 10, 1);
+    CacheSpan spanC = CacheEvictorTestHelper.createSpan("c", 10, 2);
+    evictor.onSpanAdded(helper.cache, spanA);
+    evictor.onSpanAdded(helper.cache, spanB);
+    evictor.onSpanAdded(helper.cache, spanC);
+    evictor.onCacheInitialized();
+
+    evictor.onStartFile(helper.cache, "d", 0, 20);
+
+    assertThat(helper.removedSpans).containsExactly(spanB, spanC).inOrder();
+  }
+
+  @Test
+  public void testCountsHitsMissesAndEvictions() {
+    evictor = helper.setEvictor(new LinkedLeastRecentlyUsedCacheEvictor(10));
+    evictor.onCacheInitialized();
+    CacheSpan spanA = helper.addSpan("a", 10, 1);
+    helper.touchSpan(spanA, 2);
+    helper.addSpan("b", 10, 3);
+
+    assertThat(evictor.getHitCount()).isEqualTo(1);
+    assertThat(evictor.getMissCount()).isEqualTo(2);
+    assertThat(evictor.getEvictionCount()).isEqualTo(1);
+    assertThat(evictor.getEvictedBytes()).isEqualTo(10);
+
+    evictor.resetCounters();
+    assertThat(evictor.getHitCount()).isEqualTo(0);
+    assertThat(evictor.getMissCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testContentBiggerThanMaxSizeDoesNotThrowException() {
+    evictor = helper.setEvictor(new LinkedLeastRecentlyUsedCacheEvictor(100));
+    evictor.onCacheInitialized();
+    evictor.onStartFile(helper.cache, "key", 0, 101);
+  }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.extractor.SeekPoint;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/** Unit tests for {@link SeekMapCache}. */
+@RunWith(RobolectricTestRunner.class)
+public final class SeekMapCacheTest {
+
+  private static final String KEY = "key";
+
+  private static final ChunkIndex CHUNK_INDEX =
+      new ChunkIndex(
+          /* sizes= */ new int[] {100, 200, 300, 400},
+          /* offsets= */ new long[] {1000, 1100, 1300, 1600},
+          /* durationsUs= */ new long[] {2000, 2000, 2000, 1000},
+          /* timesUs= */ new long[] {0, 2000, 4000, 6000});
+
+  private File cacheDir;
+  private SimpleCache simpleCache;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDir = Util.createTempDirectory(RuntimeEnvironment.application, "ExoPlayerTest");
+    simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    simpleCache.release();
+    Util.recursiveDelete(cacheDir);
+  }
+
+  @Test
+  public void testPutAndGet() throws Exception {
+    SeekMapCache seekMapCache = new SeekMapCache(simpleCache);
+
+    assertThat(seekMapCache.get(KEY)).isNull();
+    assertThat(seekMapCache.put(KEY, CHUNK_INDEX)).isTrue();
+
+    assertSameSeekPoints(seekMapCache.get(KEY), CHUNK_INDEX);
+  }
+
+  @Test
+  public void testGetAfterReopeningCache() throws Exception {
+    // Content metadata is only kept for keys that have cached data.
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY, 0);
+    File file = simpleCache.startFile(KEY, 0, 10);
+    FileOutputStream outputStream = new FileOutputStream(file);
+    outputStream.write(new byte[10]);
+    outputStream.close();
+    simpleCache.commitFile(file);
+    simpleCache.releaseHoleSpan(holeSpan);
+    new SeekMapCache(simpleCache).put(KEY, CHUNK_INDEX);
+    simpleCache.release();
+    simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+
+    assertSameSeekPoints(new SeekMapCache(simpleCache).get(KEY), CHUNK_INDEX);
+  }
+
+  @Test
+  public void testRemove() throws Exception {
+    SeekMapCache seekMapCache = new SeekMapCache(simpleCache);
+    seekMapCache.put(KEY, CHUNK_INDEX);
+
+    seekMapCache.remove(KEY);
+
+    assertThat(seekMapCache.get(KEY)).isNull();
+  }
+
+  @Test
+  public void testPutUnseekableSeekMapIsIgnored() throws Exception {
+    SeekMapCache seekMapCache = new SeekMapCache(simpleCache);
+
+    assertThat(seekMapCache.put(KEY, new SeekMap.Unseekable(/* durationUs= */ 1000))).isFalse();
+    assertThat(seekMapCache.get(KEY)).isNull();
+  }
+
+  @Test
+  public void testPutInterpolatingSeekMapIsIgnored() throws Exception {
+    SeekMapCache seekMapCache = new SeekMapCache(simpleCache);
+    SeekMap interpolatingSeekMap =
+        new SeekMap() {
+          @Override
+          public boolean isSeekable() {
+            return true;
+          }
+
+          @Override
+          public long getDurationUs() {
+            return C.MICROS_PER_SECOND;
+          }
+
+          @Override
+          public SeekPoints getSeekPoints(long timeUs) {
+            return new SeekPoints(new SeekPoint(timeUs, /* position= */ timeUs / 8));
+          }
+        };
+
+    assertThat(seekMapCache.put(KEY, interpolatingSeekMap)).isFalse();
+    assertThat(seekMapCache.get(KEY)).isNull();
+  }
+
+  @Test
+  public void testGetWithChangedContentLengthReturnsNull() throws Exception {
+    SeekMapCache seekMapCache = new SeekMapCache(simpleCache);
+    simpleCache.setContentLength(KEY, 2000);
+    seekMapCache.put(KEY, CHUNK_INDEX);
+
+    simpleCache.setContentLength(KEY, 3000);
+
+    assertThat(seekMapCache.get(KEY)).isNull();
+  }
+
+  private static void assertSameSeekPoints(SeekMap actual, SeekMap expected) {
+    assertThat(actual).isNotNull();
+    assertThat(actual.isSeekable()).isTrue();
+    assertThat(actual.getDurationUs()).isEqualTo(expected.getDurationUs());
+    for (long timeUs = -500; timeUs <= 8000; timeUs += 500) {
+      assertThat(actual.getSeekPoints(timeUs)).isEqualTo(expected.getSeekPoints(timeUs));
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link SegmentedLeastRecentlyUsedCacheEvictor}. */
+@RunWith(RobolectricTestRunner.class)
+public final class SegmentedLeastRecentlyUsedCacheEvictorTest {
+
+  private CacheEvictorTestHelper helper;
+  private SegmentedLeastRecentlyUsedCacheEvictor evictor;
+
+  @Before
+  public void setUp() throws Exception {
+    helper = new CacheEvictorTestHelper();
+  }
+
+  @Test
+  public void testScanDoesNotEvictSpansWhichHaveBeenRead() {
+    evictor = helper.setEvictor(new SegmentedLeastRecentlyUsedCacheEvictor(30));
+    evictor.onCacheInitialized();
+    CacheSpan spanA = helper.addSpan("a", 10, 1);
+    helper.touchSpan(spanA, 2);
+
+    CacheSpan spanB = helper.addSpan("b", 10, 3);
+    CacheSpan spanC = helper.addSpan("c", 10, 4);
+    CacheSpan spanD = helper.addSpan("d", 10, 5);
+    helper.addSpan("e", 10, 6);
+
+    assertThat(helper.removedSpans).containsExactly(spanB, spanC).inOrder();
+    assertThat(helper.removedSpans).doesNotContain(spanD);
+  }
+
+  @Test
+  public void testProtectedSegmentOverflowIsDemoted() {
+    evictor = helper.setEvictor(new SegmentedLeastRecentlyUsedCacheEvictor(30, 0.5f));
+    evictor.onCacheInitialized();
+    CacheSpan spanA = helper.addSpan("a", 10, 1);
+    CacheSpan spanB = helper.addSpan("b", 10, 2);
+    CacheSpan spanC = helper.addSpan("c", 10, 3);
+    spanA = helper.touchSpan(spanA, 4);
+    helper.touchSpan(spanB, 5);
+
+    // The protected segment only holds one span, so the first span was demoted and is evicted after
+    // the span which was never read.
+    helper.addSpan("d", 10, 6);
+    helper.addSpan("e", 10, 7);
+
+    assertThat(helper.removedSpans).containsExactly(spanC, spanA).inOrder();
+  }
+
+}
@@ -154,6 +154,63 @@ public class SimpleCacheTest {
     assertCachedDataReadCorrect(cacheSpan2);
   }
 
+  @Test
+  public void testReloadCacheFromSpanManifest() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan cacheSpan1 = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_1, 15, 5);
+    simpleCache.releaseHoleSpan(cacheSpan1);
+    simpleCache.release();
+
+    File manifestFile = new File(cacheDir, CachedSpanManifest.FILE_NAME);
+    assertThat(manifestFile.exists()).isTrue();
+
+    // A file which isn't in the manifest is ignored.
+    File unknownFile = SimpleCacheSpan.getCacheFile(cacheDir, 0, 20, 0);
+    FileOutputStream outputStream = new FileOutputStream(unknownFile);
+    try {
+      outputStream.write(generateData(KEY_1, 20, 5));
+    } finally {
+      outputStream.close();
+    }
+    simpleCache = getSimpleCache();
+
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(20);
+    assertThat(simpleCache.getCachedSpans(KEY_1)).hasSize(2);
+    assertThat(manifestFile.exists()).isFalse();
+    CacheSpan cacheSpan2 = simpleCache.startReadWrite(KEY_1, 0);
+    assertCachedDataReadCorrect(cacheSpan2);
+  }
+
+  @Test
+  public void testReloadCacheAfterUncleanShutdownScansDirectory() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan cacheSpan1 = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(cacheSpan1);
+    simpleCache.release();
+    simpleCache = getSimpleCache();
+    simpleCache.startReadWrite(KEY_1, 15);
+    addCache(simpleCache, KEY_1, 15, 5);
+
+    // Simulate a crash by unlocking the folder without releasing the cache.
+    SimpleCache.unlockFolder(cacheDir);
+    simpleCache = getSimpleCache();
+
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(20);
+    assertThat(simpleCache.getCachedSpans(KEY_1)).hasSize(2);
+  }
+
+  @Test
+  public void testSpanManifestNotStoredWhileWriting() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    simpleCache.startReadWrite(KEY_1, 0);
+    simpleCache.release();
+
+    assertThat(new File(cacheDir, CachedSpanManifest.FILE_NAME).exists()).isFalse();
+  }
+
   @Test
   public void testEncryptedIndex() throws Exception {
     byte[] key = "Bar12345Bar12345".getBytes(C.UTF8_NAME); // 128 bit key
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link TinyLfuCacheEvictor}. */
+@RunWith(RobolectricTestRunner.class)
+public final class TinyLfuCacheEvictorTest {
+
+  private CacheEvictorTestHelper helper;
+  private TinyLfuCacheEvictor evictor;
+
+  @Before
+  public void setUp() throws Exception {
+    helper = new CacheEvictorTestHelper();
+  }
+
+  @Test
+  public void testScanDoesNotEvictFrequentlyUsedSpans() {
+    evictor = helper.setEvictor(new TinyLfuCacheEvictor(50, 0.2f, 0.8f));
+    evictor.onCacheInitialized();
+    ArrayList<CacheSpan> popularSpans = new ArrayList<>();
+    long timestamp = 0;
+    for (int i = 0; i < 4; i++) {
+      popularSpans.add(helper.addSpan("popular" + i, 10, timestamp++));
+    }
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < popularSpans.size(); j++) {
+        popularSpans.set(j, helper.touchSpan(popularSpans.get(j), timestamp++));
+      }
+    }
+
+    for (int i = 0; i < 20; i++) {
+      helper.addSpan("scan" + i, 10, timestamp++);
+    }
+
+    for (CacheSpan removedSpan : helper.removedSpans) {
+      assertThat(removedSpan.key).startsWith("scan");
+    }
+    assertThat(helper.removedSpans).hasSize(19);
+  }
+
+  @Test
+  public void testFrequentlyUsedNewSpanIsAdmitted() {
+    evictor = helper.setEvictor(new TinyLfuCacheEvictor(30, 0.34f, 0.8f));
+    evictor.onCacheInitialized();
+    CacheSpan spanA = helper.addSpan("a", 10, 1);
+    CacheSpan spanB = helper.addSpan("b", 10, 2);
+    CacheSpan spanC = helper.addSpan("c", 10, 3);
+    for (int i = 0; i < 3; i++) {
+      spanC = helper.touchSpan(spanC, 4 + i);
+    }
+
+    helper.addSpan("d", 10, 10);
+
+    assertThat(helper.removedSpans).hasSize(1);
+    assertThat(helper.removedSpans.get(0)).isAnyOf(spanA, spanB);
+  }
+
+}
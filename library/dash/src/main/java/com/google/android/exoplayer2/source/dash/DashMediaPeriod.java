@@ -16,6 +16,7 @@
 package com.google.android.exoplayer2.source.dash;
 
 import android.support.annotation.IntDef;
+import android.support.annotation.Nullable;
 import android.util.Pair;
 import android.util.SparseArray;
 import android.util.SparseIntArray;
@@ -42,6 +43,8 @@ import com.google.android.exoplayer2.source.dash.manifest.Period;
 import com.google.android.exoplayer2.source.dash.manifest.Representation;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
 import com.google.android.exoplayer2.util.MimeTypes;
 import java.io.IOException;
@@ -68,6 +71,9 @@ import java.util.List;
   private final TrackGroupArray trackGroups;
   private final TrackGroupInfo[] trackGroupInfos;
   private final CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
+  private final Loader.Factory loaderFactory;
+  private final int maxParallelChunkLoads;
+  private final @Nullable DataSource.Factory chunkPrefetchDataSourceFactory;
   private final PlayerEmsgHandler playerEmsgHandler;
   private final IdentityHashMap<ChunkSampleStream<DashChunkSource>, PlayerTrackEmsgHandler>
       trackEmsgHandlerBySampleStream;
@@ -92,6 +98,9 @@ import java.util.List;
       LoaderErrorThrower manifestLoaderErrorThrower,
       Allocator allocator,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
+      Loader.Factory loaderFactory,
+      int maxParallelChunkLoads,
+      @Nullable DataSource.Factory chunkPrefetchDataSourceFactory,
       PlayerEmsgCallback playerEmsgCallback) {
     this.id = id;
     this.manifest = manifest;
@@ -103,6 +112,9 @@ import java.util.List;
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
     this.allocator = allocator;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
+    this.loaderFactory = loaderFactory;
+    this.maxParallelChunkLoads = maxParallelChunkLoads;
+    this.chunkPrefetchDataSourceFactory = chunkPrefetchDataSourceFactory;
     playerEmsgHandler = new PlayerEmsgHandler(manifest, playerEmsgCallback, allocator);
     sampleStreams = newSampleStreamArray(0);
     eventSampleStreams = new EventSampleStream[0];
@@ -571,7 +583,10 @@ import java.util.List;
             allocator,
             positionUs,
             minLoadableRetryCount,
-            eventDispatcher);
+            eventDispatcher,
+            loaderFactory,
+            maxParallelChunkLoads,
+            chunkPrefetchDataSourceFactory);
     synchronized (this) {
       // The map is also accessed on the loading thread so synchronize access.
       trackEmsgHandlerBySampleStream.put(stream, trackPlayerEmsgHandler);
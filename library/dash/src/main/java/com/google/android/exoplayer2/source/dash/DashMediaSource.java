@@ -36,12 +36,14 @@ import com.google.android.exoplayer2.source.MediaSourceEventListener;
 import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispatcher;
 import com.google.android.exoplayer2.source.SequenceableLoader;
 import com.google.android.exoplayer2.source.ads.AdsMediaSource;
+import com.google.android.exoplayer2.source.chunk.PeekableChunkSource;
 import com.google.android.exoplayer2.source.dash.PlayerEmsgHandler.PlayerEmsgCallback;
 import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
 import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
 import com.google.android.exoplayer2.source.dash.manifest.UtcTimingElement;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DefaultLoaderFactory;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
@@ -74,6 +76,9 @@ public final class DashMediaSource extends BaseMediaSource {
 
     private @Nullable ParsingLoadable.Parser<? extends DashManifest> manifestParser;
     private CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
+    private Loader.Factory loaderFactory;
+    private int maxParallelChunkLoads;
+    private @Nullable DataSource.Factory chunkPrefetchDataSourceFactory;
     private int minLoadableRetryCount;
     private long livePresentationDelayMs;
     private boolean isCreateCalled;
@@ -96,6 +101,8 @@ public final class DashMediaSource extends BaseMediaSource {
       minLoadableRetryCount = DEFAULT_MIN_LOADABLE_RETRY_COUNT;
       livePresentationDelayMs = DEFAULT_LIVE_PRESENTATION_DELAY_PREFER_MANIFEST_MS;
       compositeSequenceableLoaderFactory = new DefaultCompositeSequenceableLoaderFactory();
+      loaderFactory = new DefaultLoaderFactory();
+      maxParallelChunkLoads = 1;
     }
 
     /**
@@ -178,6 +185,46 @@ public final class DashMediaSource extends BaseMediaSource {
       return this;
     }
 
+    /**
+     * Sets the factory for the {@link Loader}s that load the manifest and media chunks. The default
+     * is an instance of {@link DefaultLoaderFactory}, whose loaders each have a thread of their own.
+     *
+     * @param loaderFactory A factory for {@link Loader}s.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setLoaderFactory(Loader.Factory loaderFactory) {
+      Assertions.checkState(!isCreateCalled);
+      this.loaderFactory = Assertions.checkNotNull(loaderFactory);
+      return this;
+    }
+
+    /**
+     * Enables loading several media chunks of each track at the same time. While a chunk loads, the
+     * data of the chunks that follow it is loaded into memory, so that the latency of requests
+     * overlaps. Samples are still output one chunk at a time and in order. The default is to load
+     * one chunk at a time.
+     *
+     * <p>Chunks are only loaded in parallel if the {@link DashChunkSource}s implement {@link
+     * PeekableChunkSource}, as {@link DefaultDashChunkSource} does.
+     *
+     * @param maxParallelChunkLoads The maximum number of chunks of each track loaded at the same
+     *     time. Must be positive.
+     * @param dataSourceFactory A factory for the {@link DataSource}s from which the data of
+     *     following chunks is loaded. Each load uses a {@link DataSource} of its own, since the one
+     *     used by the {@link DashChunkSource} only supports one load at a time.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setParallelChunkLoading(
+        int maxParallelChunkLoads, DataSource.Factory dataSourceFactory) {
+      Assertions.checkState(!isCreateCalled);
+      Assertions.checkArgument(maxParallelChunkLoads > 0);
+      this.maxParallelChunkLoads = maxParallelChunkLoads;
+      this.chunkPrefetchDataSourceFactory = Assertions.checkNotNull(dataSourceFactory);
+      return this;
+    }
+
     /**
      * Returns a new {@link DashMediaSource} using the current parameters and the specified
      * sideloaded manifest.
@@ -196,6 +243,9 @@ public final class DashMediaSource extends BaseMediaSource {
           /* manifestParser= */ null,
           chunkSourceFactory,
           compositeSequenceableLoaderFactory,
+          loaderFactory,
+          maxParallelChunkLoads,
+          chunkPrefetchDataSourceFactory,
           minLoadableRetryCount,
           livePresentationDelayMs,
           tag);
@@ -236,6 +286,9 @@ public final class DashMediaSource extends BaseMediaSource {
           manifestParser,
           chunkSourceFactory,
           compositeSequenceableLoaderFactory,
+          loaderFactory,
+          maxParallelChunkLoads,
+          chunkPrefetchDataSourceFactory,
           minLoadableRetryCount,
           livePresentationDelayMs,
           tag);
@@ -297,6 +350,9 @@ public final class DashMediaSource extends BaseMediaSource {
   private final DataSource.Factory manifestDataSourceFactory;
   private final DashChunkSource.Factory chunkSourceFactory;
   private final CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
+  private final Loader.Factory loaderFactory;
+  private final int maxParallelChunkLoads;
+  private final @Nullable DataSource.Factory chunkPrefetchDataSourceFactory;
   private final int minLoadableRetryCount;
   private final long livePresentationDelayMs;
   private final EventDispatcher manifestEventDispatcher;
@@ -373,6 +429,9 @@ public final class DashMediaSource extends BaseMediaSource {
         /* manifestParser= */ null,
         chunkSourceFactory,
         new DefaultCompositeSequenceableLoaderFactory(),
+        new DefaultLoaderFactory(),
+        /* maxParallelChunkLoads= */ 1,
+        /* chunkPrefetchDataSourceFactory= */ null,
         minLoadableRetryCount,
         DEFAULT_LIVE_PRESENTATION_DELAY_PREFER_MANIFEST_MS,
         /* tag= */ null);
@@ -470,6 +529,9 @@ public final class DashMediaSource extends BaseMediaSource {
         manifestParser,
         chunkSourceFactory,
         new DefaultCompositeSequenceableLoaderFactory(),
+        new DefaultLoaderFactory(),
+        /* maxParallelChunkLoads= */ 1,
+        /* chunkPrefetchDataSourceFactory= */ null,
         minLoadableRetryCount,
         livePresentationDelayMs,
         /* tag= */ null);
@@ -485,6 +547,9 @@ public final class DashMediaSource extends BaseMediaSource {
       ParsingLoadable.Parser<? extends DashManifest> manifestParser,
       DashChunkSource.Factory chunkSourceFactory,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
+      Loader.Factory loaderFactory,
+      int maxParallelChunkLoads,
+      @Nullable DataSource.Factory chunkPrefetchDataSourceFactory,
       int minLoadableRetryCount,
       long livePresentationDelayMs,
       @Nullable Object tag) {
@@ -497,6 +562,9 @@ public final class DashMediaSource extends BaseMediaSource {
     this.minLoadableRetryCount = minLoadableRetryCount;
     this.livePresentationDelayMs = livePresentationDelayMs;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
+    this.loaderFactory = loaderFactory;
+    this.maxParallelChunkLoads = maxParallelChunkLoads;
+    this.chunkPrefetchDataSourceFactory = chunkPrefetchDataSourceFactory;
     this.tag = tag;
     sideloadedManifest = manifest != null;
     manifestEventDispatcher = createEventDispatcher(/* mediaPeriodId= */ null);
@@ -548,7 +616,7 @@ public final class DashMediaSource extends BaseMediaSource {
       processManifest(false);
     } else {
       dataSource = manifestDataSourceFactory.createDataSource();
-      loader = new Loader("Loader:DashMediaSource");
+      loader = loaderFactory.createLoader("Loader:DashMediaSource");
       handler = new Handler();
       startLoadingManifest();
     }
@@ -576,6 +644,9 @@ public final class DashMediaSource extends BaseMediaSource {
             manifestLoadErrorThrower,
             allocator,
             compositeSequenceableLoaderFactory,
+            loaderFactory,
+            maxParallelChunkLoads,
+            chunkPrefetchDataSourceFactory,
             playerEmsgCallback);
     periodsById.put(mediaPeriod.id, mediaPeriod);
     return mediaPeriod;
@@ -36,6 +36,7 @@ import com.google.android.exoplayer2.source.chunk.ChunkedTrackBlacklistUtil;
 import com.google.android.exoplayer2.source.chunk.ContainerMediaChunk;
 import com.google.android.exoplayer2.source.chunk.InitializationChunk;
 import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.PeekableChunkSource;
 import com.google.android.exoplayer2.source.chunk.SingleSampleMediaChunk;
 import com.google.android.exoplayer2.source.dash.PlayerEmsgHandler.PlayerTrackEmsgHandler;
 import com.google.android.exoplayer2.source.dash.manifest.AdaptationSet;
@@ -57,7 +58,7 @@ import java.util.List;
 /**
  * A default {@link DashChunkSource} implementation.
  */
-public class DefaultDashChunkSource implements DashChunkSource {
+public class DefaultDashChunkSource implements DashChunkSource, PeekableChunkSource {
 
   public static final class Factory implements DashChunkSource.Factory {
 
@@ -342,6 +343,49 @@ public class DefaultDashChunkSource implements DashChunkSource {
             seekTimeUs);
   }
 
+  @Override
+  public void peekNextChunk(MediaChunk previous, ChunkHolder out) {
+    if (fatalError != null || (playerTrackEmsgHandler != null && manifest.dynamic)) {
+      // Whether the manifest must be refreshed before the next chunk is loaded can't be determined
+      // without side effects.
+      return;
+    }
+    RepresentationHolder representationHolder =
+        representationHolders[trackSelection.getSelectedIndex()];
+    if (representationHolder.segmentIndex == null
+        || (representationHolder.extractorWrapper != null
+            && representationHolder.extractorWrapper.getSampleFormats() == null)) {
+      // Initialization and index requests have to be made first.
+      return;
+    }
+    int availableSegmentCount = representationHolder.getSegmentCount();
+    if (availableSegmentCount == DashSegmentIndex.INDEX_UNBOUNDED) {
+      // Which segments are available depends on the time at which they're requested.
+      return;
+    }
+    long firstAvailableSegmentNum = representationHolder.getFirstSegmentNum();
+    long lastAvailableSegmentNum = firstAvailableSegmentNum + availableSegmentCount - 1;
+    long segmentNum = previous.getNextChunkIndex();
+    if (segmentNum < firstAvailableSegmentNum
+        || segmentNum > lastAvailableSegmentNum
+        || (missingLastSegment && segmentNum >= lastAvailableSegmentNum)) {
+      return;
+    }
+    int maxSegmentCount =
+        (int) Math.min(maxSegmentsPerLoad, lastAvailableSegmentNum - segmentNum + 1);
+    out.chunk =
+        newMediaChunk(
+            representationHolder,
+            dataSource,
+            trackType,
+            trackSelection.getSelectedFormat(),
+            trackSelection.getSelectionReason(),
+            trackSelection.getSelectionData(),
+            segmentNum,
+            maxSegmentCount,
+            /* seekTimeUs= */ C.TIME_UNSET);
+  }
+
   @Override
   public void onChunkLoadCompleted(Chunk chunk) {
     if (chunk instanceof InitializationChunk) {
@@ -142,6 +142,65 @@ public class DashDownloaderTest {
     assertCachedData(cache, fakeDataSet);
   }
 
+  @Test
+  public void testDownloadAllRepresentationsInParallel() throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .setRandomData("audio_segment_2", 5)
+            .setRandomData("audio_segment_3", 6)
+            .setRandomData("text_segment_1", 1)
+            .setRandomData("text_segment_2", 2)
+            .setRandomData("text_segment_3", 3)
+            .setRandomData("period_2_segment_1", 1)
+            .setRandomData("period_2_segment_2", 2)
+            .setRandomData("period_2_segment_3", 3);
+
+    DashDownloader dashDownloader =
+        getDashDownloader(
+            new Factory(null).setFakeDataSet(fakeDataSet), /* maxParallelDownloads= */ 3);
+    dashDownloader.download();
+
+    assertCachedData(cache, fakeDataSet);
+    assertThat(dashDownloader.getDownloadPercentage()).isEqualTo(100f);
+    assertThat(dashDownloader.getDownloadedBytes())
+        .isEqualTo(10 + 4 + 5 + 6 + 1 + 2 + 3 + 1 + 2 + 3);
+  }
+
+  @Test
+  public void testDownloadRepresentationFailureInParallel() throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .newData("audio_segment_2")
+            .appendReadData(TestUtil.buildTestData(2))
+            .appendReadError(new IOException())
+            .appendReadData(TestUtil.buildTestData(3))
+            .endData()
+            .setRandomData("audio_segment_3", 6);
+
+    DashDownloader dashDownloader =
+        getDashDownloader(
+            new Factory(null).setFakeDataSet(fakeDataSet),
+            /* maxParallelDownloads= */ 2,
+            new RepresentationKey(0, 0, 0));
+    try {
+      dashDownloader.download();
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+    assertThat(dashDownloader.getDownloadPercentage()).isLessThan(100f);
+
+    dashDownloader.download();
+    assertCachedData(cache, fakeDataSet);
+    assertThat(dashDownloader.getDownloadedBytes()).isEqualTo(10 + 4 + 5 + 6);
+  }
+
   @Test
   public void testProgressiveDownload() throws Exception {
     FakeDataSet fakeDataSet =
@@ -308,6 +367,19 @@ public class DashDownloaderTest {
         TEST_MPD_URI, keysList(keys), new DownloaderConstructorHelper(cache, factory));
   }
 
+  private DashDownloader getDashDownloader(
+      Factory factory, int maxParallelDownloads, RepresentationKey... keys) {
+    DownloaderConstructorHelper constructorHelper =
+        new DownloaderConstructorHelper(
+            cache,
+            factory,
+            /* cacheReadDataSourceFactory= */ null,
+            /* cacheWriteDataSinkFactory= */ null,
+            /* priorityTaskManager= */ null,
+            maxParallelDownloads);
+    return new DashDownloader(TEST_MPD_URI, keysList(keys), constructorHelper);
+  }
+
   private static ArrayList<RepresentationKey> keysList(RepresentationKey... keys) {
     ArrayList<RepresentationKey> keysList = new ArrayList<>();
     Collections.addAll(keysList, keys);
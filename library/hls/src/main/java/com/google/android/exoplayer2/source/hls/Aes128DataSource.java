@@ -18,94 +18,227 @@ package com.google.android.exoplayer2.source.hls;
 import android.net.Uri;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.upstream.DataSource;
-import com.google.android.exoplayer2.upstream.DataSourceInputStream;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.util.Assertions;
+import java.io.EOFException;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
-import java.security.Key;
 import java.security.NoSuchAlgorithmException;
-import java.security.spec.AlgorithmParameterSpec;
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 /**
  * A {@link DataSource} that decrypts data read from an upstream source, encrypted with AES-128 with
  * a 128-bit key and PKCS7 padding.
- * <p>
- * Note that this {@link DataSource} does not support being opened from arbitrary offsets. It is
- * designed specifically for reading whole files as defined in an HLS media playlist. For this
- * reason the implementation is private to the HLS package.
+ *
+ * <p>Data is read from upstream into a block aligned scratch buffer, and decrypted with {@link
+ * Cipher#update(byte[], int, int, byte[], int)} directly into the buffer passed to {@link
+ * #read(byte[], int, int)} whenever it's large enough to hold the output.
+ *
+ * <p>The source is designed specifically for reading whole segments as defined in an HLS media
+ * playlist. If constructed with the position of the segment, it can also be opened from a position
+ * within the segment, in which case the initialization vector is derived from the preceding cipher
+ * block. The data is always read to the end of the segment. For this reason the implementation is
+ * private to the HLS package.
  */
 /* package */ final class Aes128DataSource implements DataSource {
 
+  private static final int BLOCK_SIZE = 16;
+  private static final int SCRATCH_SIZE = 1024 * BLOCK_SIZE;
+  private static final int MIN_DIRECT_READ_LENGTH = 256 * BLOCK_SIZE;
+
   private final DataSource upstream;
-  private final byte[] encryptionKey;
+  private final SecretKeySpec encryptionKey;
   private final byte[] encryptionIv;
+  private final long segmentPosition;
 
-  private CipherInputStream cipherInputStream;
+  private Cipher cipher;
+  private byte[] scratch;
+  private byte[] output;
+  private boolean opened;
+  private boolean inputEnded;
+  private int bytesToSkip;
+  private int outputOffset;
+  private int outputLength;
 
   /**
+   * Constructs an instance that reads whole segments, each starting at the position of the {@link
+   * DataSpec} with which it's opened.
+   *
    * @param upstream The upstream {@link DataSource}.
    * @param encryptionKey The encryption key.
    * @param encryptionIv The encryption initialization vector.
    */
   public Aes128DataSource(DataSource upstream, byte[] encryptionKey, byte[] encryptionIv) {
+    this(upstream, encryptionKey, encryptionIv, C.POSITION_UNSET);
+  }
+
+  /**
+   * Constructs an instance that reads the segment starting at {@code segmentPosition}, and can be
+   * opened from any position within it.
+   *
+   * @param upstream The upstream {@link DataSource}.
+   * @param encryptionKey The encryption key.
+   * @param encryptionIv The encryption initialization vector.
+   * @param segmentPosition The absolute stream position of the start of the segment, or {@link
+   *     C#POSITION_UNSET} if each {@link DataSpec} starts at the beginning of a segment.
+   */
+  public Aes128DataSource(
+      DataSource upstream, byte[] encryptionKey, byte[] encryptionIv, long segmentPosition) {
     this.upstream = upstream;
-    this.encryptionKey = encryptionKey;
+    this.encryptionKey = new SecretKeySpec(encryptionKey, "AES");
     this.encryptionIv = encryptionIv;
+    this.segmentPosition = segmentPosition;
   }
 
   @Override
   public long open(DataSpec dataSpec) throws IOException {
-    Cipher cipher;
-    try {
-      cipher = Cipher.getInstance("AES/CBC/PKCS7Padding");
-    } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-      throw new RuntimeException(e);
+    if (cipher == null) {
+      try {
+        // For AES, PKCS5Padding is the same as PKCS7 padding. Unlike PKCS7Padding, it's supported by
+        // the platform's default provider, which is typically hardware accelerated.
+        cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+      } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+        throw new RuntimeException(e);
+      }
+      scratch = new byte[SCRATCH_SIZE];
+      output = new byte[SCRATCH_SIZE + BLOCK_SIZE];
     }
+    inputEnded = false;
+    outputLength = 0;
 
-    Key cipherKey = new SecretKeySpec(encryptionKey, "AES");
-    AlgorithmParameterSpec cipherIV = new IvParameterSpec(encryptionIv);
+    // Open upstream at the start of the cipher block containing the requested position, or at the
+    // start of the block before it if its cipher text is needed as the initialization vector.
+    long offset =
+        segmentPosition == C.POSITION_UNSET
+            ? 0
+            : dataSpec.absoluteStreamPosition - segmentPosition;
+    Assertions.checkArgument(offset >= 0);
+    long blockOffset = offset - offset % BLOCK_SIZE;
+    bytesToSkip = (int) (offset - blockOffset);
+    long upstreamOffset = blockOffset == 0 ? 0 : blockOffset - BLOCK_SIZE;
+    long positionDelta = offset - upstreamOffset;
+    DataSpec upstreamDataSpec =
+        new DataSpec(
+            dataSpec.uri,
+            dataSpec.postBody,
+            dataSpec.absoluteStreamPosition - positionDelta,
+            dataSpec.position - positionDelta,
+            dataSpec.length == C.LENGTH_UNSET ? C.LENGTH_UNSET : dataSpec.length + positionDelta,
+            dataSpec.key,
+            dataSpec.flags);
+    opened = true;
+    upstream.open(upstreamDataSpec);
 
+    byte[] iv = encryptionIv;
+    if (blockOffset != 0) {
+      iv = new byte[BLOCK_SIZE];
+      readFullyFromUpstream(iv);
+    }
     try {
-      cipher.init(Cipher.DECRYPT_MODE, cipherKey, cipherIV);
+      cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
     } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
       throw new RuntimeException(e);
     }
+    return C.LENGTH_UNSET;
+  }
 
-    DataSourceInputStream inputStream = new DataSourceInputStream(upstream, dataSpec);
-    cipherInputStream = new CipherInputStream(inputStream, cipher);
-    inputStream.open();
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    Assertions.checkState(opened);
+    if (readLength == 0) {
+      return 0;
+    }
+    while (true) {
+      if (outputLength > 0) {
+        int bytesRead = Math.min(readLength, outputLength);
+        System.arraycopy(output, outputOffset, buffer, offset, bytesRead);
+        outputOffset += bytesRead;
+        outputLength -= bytesRead;
+        return bytesRead;
+      } else if (inputEnded) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesDecrypted = decrypt(buffer, offset, readLength);
+      if (bytesDecrypted > 0) {
+        return bytesDecrypted;
+      }
+    }
+  }
 
-    return C.LENGTH_UNSET;
+  @Override
+  public Uri getUri() {
+    return upstream.getUri();
   }
 
   @Override
   public void close() throws IOException {
-    if (cipherInputStream != null) {
-      cipherInputStream = null;
+    if (opened) {
+      opened = false;
       upstream.close();
     }
   }
 
-  @Override
-  public int read(byte[] buffer, int offset, int readLength) throws IOException {
-    Assertions.checkState(cipherInputStream != null);
-    int bytesRead = cipherInputStream.read(buffer, offset, readLength);
-    if (bytesRead < 0) {
-      return C.RESULT_END_OF_INPUT;
+  /**
+   * Reads and decrypts data from upstream, either into {@code buffer} or, if it may not be large
+   * enough or the decrypted data starts with bytes to skip, into {@link #output}.
+   *
+   * @return The number of bytes decrypted into {@code buffer}.
+   */
+  private int decrypt(byte[] buffer, int offset, int readLength) throws IOException {
+    // If the buffer is large, read no more than can be decrypted into it, allowing for a block held
+    // by the cipher. Else decrypt a whole scratch buffer at a time, to limit the calls per byte.
+    int maxInputLength =
+        bytesToSkip == 0 && readLength >= MIN_DIRECT_READ_LENGTH
+            ? Math.min(SCRATCH_SIZE, readLength - BLOCK_SIZE)
+            : SCRATCH_SIZE;
+    int inputLength = upstream.read(scratch, 0, maxInputLength);
+    boolean decryptIntoBuffer;
+    try {
+      if (inputLength == C.RESULT_END_OF_INPUT) {
+        inputEnded = true;
+        decryptIntoBuffer = bytesToSkip == 0 && cipher.getOutputSize(0) <= readLength;
+        outputLength =
+            decryptIntoBuffer ? cipher.doFinal(buffer, offset) : cipher.doFinal(output, 0);
+      } else {
+        decryptIntoBuffer = bytesToSkip == 0 && cipher.getOutputSize(inputLength) <= readLength;
+        outputLength =
+            decryptIntoBuffer
+                ? cipher.update(scratch, 0, inputLength, buffer, offset)
+                : cipher.update(scratch, 0, inputLength, output, 0);
+      }
+    } catch (ShortBufferException e) {
+      // Should never happen, since the output sizes are checked.
+      throw new IllegalStateException(e);
+    } catch (GeneralSecurityException e) {
+      throw new IOException(e);
+    }
+    if (decryptIntoBuffer) {
+      int bytesDecrypted = outputLength;
+      outputLength = 0;
+      return bytesDecrypted;
     }
-    return bytesRead;
+    int skipLength = Math.min(bytesToSkip, outputLength);
+    bytesToSkip -= skipLength;
+    outputOffset = skipLength;
+    outputLength -= skipLength;
+    return 0;
   }
 
-  @Override
-  public Uri getUri() {
-    return upstream.getUri();
+  private void readFullyFromUpstream(byte[] target) throws IOException {
+    int position = 0;
+    while (position < target.length) {
+      int bytesRead = upstream.read(target, position, target.length - position);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        throw new EOFException();
+      }
+      position += bytesRead;
+    }
   }
 
 }
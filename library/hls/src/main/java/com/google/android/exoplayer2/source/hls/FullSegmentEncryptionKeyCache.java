@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import android.net.Uri;
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An LRU cache of full segment encryption keys, keyed by key {@link Uri}.
+ *
+ * <p>A single cache is shared by the {@link HlsChunkSource}s of an {@link HlsMediaPeriod}, so that
+ * switching between variants that use the same keys, or alternating between keys, doesn't require
+ * a key to be loaded again before each media segment.
+ */
+/* package */ final class FullSegmentEncryptionKeyCache {
+
+  /** The default maximum number of keys held by the cache. */
+  public static final int DEFAULT_MAX_SIZE = 8;
+
+  private final LinkedHashMap<Uri, byte[]> keys;
+
+  /** Creates a cache holding at most {@link #DEFAULT_MAX_SIZE} keys. */
+  public FullSegmentEncryptionKeyCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /** @param maxSize The maximum number of keys held by the cache. */
+  public FullSegmentEncryptionKeyCache(final int maxSize) {
+    Assertions.checkArgument(maxSize > 0);
+    keys =
+        new LinkedHashMap<Uri, byte[]>(
+            /* initialCapacity= */ maxSize + 1, /* loadFactor= */ 1, /* accessOrder= */ true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Uri, byte[]> eldest) {
+            return size() > maxSize;
+          }
+        };
+  }
+
+  /**
+   * Returns the key for the given {@link Uri}, or null if it isn't cached. The key becomes the most
+   * recently used one.
+   */
+  public @Nullable byte[] get(Uri keyUri) {
+    return keys.get(keyUri);
+  }
+
+  /**
+   * Adds a key to the cache, evicting the least recently used key if the cache is full.
+   *
+   * @param keyUri The {@link Uri} from which the key was loaded.
+   * @param key The key.
+   */
+  public void put(Uri keyUri, byte[] key) {
+    keys.put(Assertions.checkNotNull(keyUri), Assertions.checkNotNull(key));
+  }
+}
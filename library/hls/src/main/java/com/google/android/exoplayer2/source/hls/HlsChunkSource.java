@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.source.hls;
 
 import android.net.Uri;
 import android.os.SystemClock;
+import android.util.Pair;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.source.BehindLiveWindowException;
@@ -26,7 +27,9 @@ import com.google.android.exoplayer2.source.chunk.ChunkedTrackBlacklistUtil;
 import com.google.android.exoplayer2.source.chunk.DataChunk;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMasterPlaylist.HlsUrl;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Part;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Segment;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.SegmentBase;
 import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistTracker;
 import com.google.android.exoplayer2.trackselection.BaseTrackSelection;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
@@ -88,6 +91,7 @@ import java.util.List;
   private final HlsPlaylistTracker playlistTracker;
   private final TrackGroup trackGroup;
   private final List<Format> muxedCaptionFormats;
+  private final FullSegmentEncryptionKeyCache keyCache;
 
   private boolean isTimestampMaster;
   private byte[] scratchSpace;
@@ -119,15 +123,19 @@ import java.util.List;
    *     same provider.
    * @param muxedCaptionFormats List of muxed caption {@link Format}s. Null if no closed caption
    *     information is available in the master playlist.
+   * @param keyCache A cache of full segment encryption keys. If multiple {@link HlsChunkSource}s
+   *     are used for a single playback, they should all share the same cache.
    */
   public HlsChunkSource(HlsExtractorFactory extractorFactory, HlsPlaylistTracker playlistTracker,
       HlsUrl[] variants, HlsDataSourceFactory dataSourceFactory,
-      TimestampAdjusterProvider timestampAdjusterProvider, List<Format> muxedCaptionFormats) {
+      TimestampAdjusterProvider timestampAdjusterProvider, List<Format> muxedCaptionFormats,
+      FullSegmentEncryptionKeyCache keyCache) {
     this.extractorFactory = extractorFactory;
     this.playlistTracker = playlistTracker;
     this.variants = variants;
     this.timestampAdjusterProvider = timestampAdjusterProvider;
     this.muxedCaptionFormats = muxedCaptionFormats;
+    this.keyCache = keyCache;
     liveEdgeTimeUs = C.TIME_UNSET;
     Format[] variantFormats = new Format[variants.length];
     int[] initialTrackSelection = new int[variants.length];
@@ -252,8 +260,10 @@ import java.util.List;
 
     updateLiveEdgeTimeUs(mediaPlaylist);
 
-    // Select the chunk.
+    // Select the chunk. If the previous chunk was a part of a segment, the next chunk is the next
+    // part of the same segment, until the segment is complete.
     long chunkMediaSequence;
+    int partIndex = C.INDEX_UNSET;
     if (previous == null || switchingVariant) {
       long targetPositionUs = (previous == null || independentSegments) ? loadPositionUs
           : previous.startTimeUs;
@@ -277,11 +287,17 @@ import java.util.List;
           selectedVariantIndex = oldVariantIndex;
           selectedUrl = variants[selectedVariantIndex];
           mediaPlaylist = playlistTracker.getPlaylistSnapshot(selectedUrl);
-          chunkMediaSequence = previous.getNextChunkIndex();
+          Pair<Long, Integer> nextMediaSequenceAndPartIndex =
+              getNextMediaSequenceAndPartIndex(previous, mediaPlaylist);
+          chunkMediaSequence = nextMediaSequenceAndPartIndex.first;
+          partIndex = nextMediaSequenceAndPartIndex.second;
         }
       }
     } else {
-      chunkMediaSequence = previous.getNextChunkIndex();
+      Pair<Long, Integer> nextMediaSequenceAndPartIndex =
+          getNextMediaSequenceAndPartIndex(previous, mediaPlaylist);
+      chunkMediaSequence = nextMediaSequenceAndPartIndex.first;
+      partIndex = nextMediaSequenceAndPartIndex.second;
     }
     if (chunkMediaSequence < mediaPlaylist.mediaSequence) {
       fatalError = new BehindLiveWindowException();
@@ -289,7 +305,20 @@ import java.util.List;
     }
 
     int chunkIndex = (int) (chunkMediaSequence - mediaPlaylist.mediaSequence);
-    if (chunkIndex >= mediaPlaylist.segments.size()) {
+    SegmentBase segment = null;
+    if (chunkIndex < mediaPlaylist.segments.size()) {
+      Segment completeSegment = mediaPlaylist.segments.get(chunkIndex);
+      segment = partIndex == C.INDEX_UNSET ? completeSegment : completeSegment.parts.get(partIndex);
+    } else if (chunkIndex == mediaPlaylist.segments.size()) {
+      // The segment isn't complete yet, but its first parts may be available.
+      if (partIndex == C.INDEX_UNSET) {
+        partIndex = 0;
+      }
+      if (partIndex < mediaPlaylist.trailingParts.size()) {
+        segment = mediaPlaylist.trailingParts.get(partIndex);
+      }
+    }
+    if (segment == null) {
       if (mediaPlaylist.hasEndTag) {
         out.endOfStream = true;
       } else /* Live */ {
@@ -304,19 +333,19 @@ import java.util.List;
     expectedPlaylistUrl = null;
 
     // Handle encryption.
-    HlsMediaPlaylist.Segment segment = mediaPlaylist.segments.get(chunkIndex);
-
     // Check if the segment is completely encrypted using the identity key format.
     if (segment.fullSegmentEncryptionKeyUri != null) {
       Uri keyUri = UriUtil.resolveToUri(mediaPlaylist.baseUri, segment.fullSegmentEncryptionKeyUri);
-      if (!keyUri.equals(encryptionKeyUri)) {
-        // Encryption is specified and the key has changed.
+      byte[] key = keyCache.get(keyUri);
+      if (key == null) {
+        // Encryption is specified and the key isn't cached.
         out.chunk = newEncryptionKeyChunk(keyUri, segment.encryptionIV, selectedVariantIndex,
             trackSelection.getSelectionReason(), trackSelection.getSelectionData());
         return;
       }
-      if (!Util.areEqual(segment.encryptionIV, encryptionIvString)) {
-        setEncryptionData(keyUri, segment.encryptionIV, encryptionKey);
+      if (!keyUri.equals(encryptionKeyUri)
+          || !Util.areEqual(segment.encryptionIV, encryptionIvString)) {
+        setEncryptionData(keyUri, segment.encryptionIV, key);
       }
     } else {
       clearEncryptionData();
@@ -343,6 +372,26 @@ import java.util.List;
     Uri chunkUri = UriUtil.resolveToUri(mediaPlaylist.baseUri, segment.url);
     DataSpec dataSpec = new DataSpec(chunkUri, segment.byterangeOffset, segment.byterangeLength,
         null);
+    long chunkStartTimeUs = segmentStartTimeInPeriodUs;
+    boolean skipsLoadedParts = false;
+    if (previous != null
+        && previous.hlsUrl == selectedUrl
+        && previous.partIndex != C.INDEX_UNSET
+        && partIndex == C.INDEX_UNSET
+        && chunkMediaSequence == previous.chunkIndex) {
+      // The parts of the segment were removed from the playlist before all of them were loaded.
+      // Load the remainder of the segment if the parts were byte ranges of it. Else load the whole
+      // segment and skip the samples of the parts that were loaded.
+      Segment completeSegment = mediaPlaylist.segments.get(chunkIndex);
+      long loadedPartsEndPosition =
+          getLoadedPartsEndPosition(previous, mediaPlaylist, completeSegment);
+      if (loadedPartsEndPosition != C.POSITION_UNSET) {
+        dataSpec = dataSpec.subrange(loadedPartsEndPosition - segment.byterangeOffset);
+        chunkStartTimeUs = previous.endTimeUs;
+      } else {
+        skipsLoadedParts = true;
+      }
+    }
     out.chunk =
         new HlsMediaChunk(
             extractorFactory,
@@ -353,9 +402,11 @@ import java.util.List;
             muxedCaptionFormats,
             trackSelection.getSelectionReason(),
             trackSelection.getSelectionData(),
-            segmentStartTimeInPeriodUs,
+            chunkStartTimeUs,
             segmentStartTimeInPeriodUs + segment.durationUs,
             chunkMediaSequence,
+            partIndex,
+            skipsLoadedParts,
             discontinuitySequence,
             segment.hasGapTag,
             isTimestampMaster,
@@ -366,6 +417,55 @@ import java.util.List;
             encryptionIv);
   }
 
+  /**
+   * Returns the media sequence number and the part index of the chunk that follows {@code
+   * previous}. The part index is {@link C#INDEX_UNSET} if the next chunk is a complete segment.
+   */
+  private static Pair<Long, Integer> getNextMediaSequenceAndPartIndex(
+      HlsMediaChunk previous, HlsMediaPlaylist mediaPlaylist) {
+    if (previous.partIndex == C.INDEX_UNSET) {
+      return Pair.create(previous.getNextChunkIndex(), C.INDEX_UNSET);
+    }
+    int segmentIndex = (int) (previous.chunkIndex - mediaPlaylist.mediaSequence);
+    if (segmentIndex < 0 || segmentIndex >= mediaPlaylist.segments.size()) {
+      return Pair.create(previous.chunkIndex, previous.partIndex + 1);
+    }
+    Segment segment = mediaPlaylist.segments.get(segmentIndex);
+    if (segment.parts.isEmpty()) {
+      // The segment is now complete, but its parts have been removed from the playlist. Unless the
+      // parts that were loaded cover the whole segment, the remainder of the segment is next.
+      long segmentEndPosition = segment.byterangeLength == C.LENGTH_UNSET ? C.POSITION_UNSET
+          : segment.byterangeOffset + segment.byterangeLength;
+      long loadedPartsEndPosition = getLoadedPartsEndPosition(previous, mediaPlaylist, segment);
+      return loadedPartsEndPosition != C.POSITION_UNSET
+              && loadedPartsEndPosition == segmentEndPosition
+          ? Pair.create(previous.getNextChunkIndex(), C.INDEX_UNSET)
+          : Pair.create(previous.chunkIndex, C.INDEX_UNSET);
+    }
+    if (previous.partIndex + 1 >= segment.parts.size()) {
+      // The previous chunk was the last part of a segment that is now complete.
+      return Pair.create(previous.getNextChunkIndex(), C.INDEX_UNSET);
+    }
+    return Pair.create(previous.chunkIndex, previous.partIndex + 1);
+  }
+
+  /**
+   * Returns the position up to which the parts of {@code segment} loaded by {@code previous} and
+   * the chunks that preceded it extend, if they were unencrypted byte ranges of the resource of the
+   * segment. Returns {@link C#POSITION_UNSET} otherwise.
+   */
+  private static long getLoadedPartsEndPosition(
+      HlsMediaChunk previous, HlsMediaPlaylist mediaPlaylist, Segment segment) {
+    DataSpec partDataSpec = previous.dataSpec;
+    if (partDataSpec.length == C.LENGTH_UNSET
+        || segment.fullSegmentEncryptionKeyUri != null
+        || !partDataSpec.uri.equals(UriUtil.resolveToUri(mediaPlaylist.baseUri, segment.url))) {
+      return C.POSITION_UNSET;
+    }
+    long position = partDataSpec.absoluteStreamPosition + partDataSpec.length;
+    return position > segment.byterangeOffset ? position : C.POSITION_UNSET;
+  }
+
   /**
    * Called when the {@link HlsSampleStreamWrapper} has finished loading a chunk obtained from this
    * source.
@@ -376,6 +476,7 @@ import java.util.List;
     if (chunk instanceof EncryptionKeyChunk) {
       EncryptionKeyChunk encryptionKeyChunk = (EncryptionKeyChunk) chunk;
       scratchSpace = encryptionKeyChunk.getDataHolder();
+      keyCache.put(encryptionKeyChunk.dataSpec.uri, encryptionKeyChunk.getResult());
       setEncryptionData(encryptionKeyChunk.dataSpec.uri, encryptionKeyChunk.iv,
           encryptionKeyChunk.getResult());
     }
@@ -52,6 +52,12 @@ import java.util.concurrent.atomic.AtomicInteger;
    */
   public final int uid;
 
+  /**
+   * The index of the part of the segment that the chunk contains, or {@link C#INDEX_UNSET} if the
+   * chunk contains the complete segment.
+   */
+  public final int partIndex;
+
   /**
    * The discontinuity sequence number of the chunk.
    */
@@ -64,11 +70,11 @@ import java.util.concurrent.atomic.AtomicInteger;
 
   private final DataSource initDataSource;
   private final DataSpec initDataSpec;
-  private final boolean isEncrypted;
   private final boolean isMasterTimestampSource;
   private final boolean hasGapTag;
   private final TimestampAdjuster timestampAdjuster;
   private final boolean shouldSpliceIn;
+  private final boolean skipsLoadedParts;
   private final Extractor extractor;
   private final boolean isPackedAudioExtractor;
   private final boolean reusingExtractor;
@@ -97,6 +103,9 @@ import java.util.concurrent.atomic.AtomicInteger;
    * @param startTimeUs The start time of the chunk in microseconds.
    * @param endTimeUs The end time of the chunk in microseconds.
    * @param chunkMediaSequence The media sequence number of the chunk.
+   * @param partIndex See {@link #partIndex}.
+   * @param skipsLoadedParts Whether the chunk contains a complete segment of which the preceding
+   *     chunks loaded the first parts, in which case the samples of those parts are skipped.
    * @param discontinuitySequenceNumber The discontinuity sequence number of the chunk.
    * @param hasGapTag Whether the chunk is tagged with EXT-X-GAP.
    * @param isMasterTimestampSource True if the chunk can initialize the timestamp adjuster.
@@ -120,6 +129,8 @@ import java.util.concurrent.atomic.AtomicInteger;
       long startTimeUs,
       long endTimeUs,
       long chunkMediaSequence,
+      int partIndex,
+      boolean skipsLoadedParts,
       int discontinuitySequenceNumber,
       boolean hasGapTag,
       boolean isMasterTimestampSource,
@@ -129,7 +140,7 @@ import java.util.concurrent.atomic.AtomicInteger;
       byte[] fullSegmentEncryptionKey,
       byte[] encryptionIv) {
     super(
-        buildDataSource(dataSource, fullSegmentEncryptionKey, encryptionIv),
+        buildDataSource(dataSource, dataSpec, fullSegmentEncryptionKey, encryptionIv),
         dataSpec,
         hlsUrl.format,
         trackSelectionReason,
@@ -137,19 +148,20 @@ import java.util.concurrent.atomic.AtomicInteger;
         startTimeUs,
         endTimeUs,
         chunkMediaSequence);
+    this.partIndex = partIndex;
+    this.skipsLoadedParts = skipsLoadedParts;
     this.discontinuitySequenceNumber = discontinuitySequenceNumber;
     this.initDataSpec = initDataSpec;
     this.hlsUrl = hlsUrl;
     this.isMasterTimestampSource = isMasterTimestampSource;
     this.timestampAdjuster = timestampAdjuster;
-    // Note: this.dataSource and dataSource may be different.
-    this.isEncrypted = this.dataSource instanceof Aes128DataSource;
     this.hasGapTag = hasGapTag;
     Extractor previousExtractor = null;
     if (previousChunk != null) {
       shouldSpliceIn = previousChunk.hlsUrl != hlsUrl;
+      // A segment of which parts have been loaded is parsed from its start by a new extractor.
       previousExtractor = previousChunk.discontinuitySequenceNumber != discontinuitySequenceNumber
-          || shouldSpliceIn ? null : previousChunk.extractor;
+          || shouldSpliceIn || skipsLoadedParts ? null : previousChunk.extractor;
     } else {
       shouldSpliceIn = false;
     }
@@ -184,6 +196,11 @@ import java.util.concurrent.atomic.AtomicInteger;
   public void init(HlsSampleStreamWrapper output) {
     this.output = output;
     output.init(uid, shouldSpliceIn, reusingExtractor);
+    if (skipsLoadedParts) {
+      output.skipLoadedSegmentSamples();
+    } else if (partIndex == 0) {
+      output.onSegmentPartsStarted();
+    }
     if (!reusingExtractor) {
       extractor.init(output);
     }
@@ -248,19 +265,10 @@ import java.util.concurrent.atomic.AtomicInteger;
   }
 
   private void loadMedia() throws IOException, InterruptedException {
-    // If we previously fed part of this chunk to the extractor, we need to skip it this time. For
-    // encrypted content we need to skip the data by reading it through the source, so as to ensure
-    // correct decryption of the remainder of the chunk. For clear content, we can request the
-    // remainder of the chunk directly.
-    DataSpec loadDataSpec;
-    boolean skipLoadedBytes;
-    if (isEncrypted) {
-      loadDataSpec = dataSpec;
-      skipLoadedBytes = bytesLoaded != 0;
-    } else {
-      loadDataSpec = dataSpec.subrange(bytesLoaded);
-      skipLoadedBytes = false;
-    }
+    // If we previously fed part of this chunk to the extractor, we request the remainder of the
+    // chunk directly. This is also possible for encrypted content, since Aes128DataSource derives
+    // the initialization vector for the remainder from the preceding cipher block.
+    DataSpec loadDataSpec = dataSpec.subrange(bytesLoaded);
     if (!isMasterTimestampSource) {
       timestampAdjuster.waitUntilInitialized();
     } else if (timestampAdjuster.getFirstSampleTimestampUs() == TimestampAdjuster.DO_NOT_OFFSET) {
@@ -276,9 +284,6 @@ import java.util.concurrent.atomic.AtomicInteger;
         output.setSampleOffsetUs(id3Timestamp != C.TIME_UNSET
             ? timestampAdjuster.adjustTsTimestamp(id3Timestamp) : startTimeUs);
       }
-      if (skipLoadedBytes) {
-        input.skipFully(bytesLoaded);
-      }
       try {
         int result = Extractor.RESULT_CONTINUE;
         while (result == Extractor.RESULT_CONTINUE && !loadCanceled) {
@@ -350,10 +355,11 @@ import java.util.concurrent.atomic.AtomicInteger;
    * If the segment is fully encrypted, returns an {@link Aes128DataSource} that wraps the original
    * in order to decrypt the loaded data. Else returns the original.
    */
-  private static DataSource buildDataSource(DataSource dataSource, byte[] fullSegmentEncryptionKey,
-      byte[] encryptionIv) {
+  private static DataSource buildDataSource(DataSource dataSource, DataSpec dataSpec,
+      byte[] fullSegmentEncryptionKey, byte[] encryptionIv) {
     if (fullSegmentEncryptionKey != null) {
-      return new Aes128DataSource(dataSource, fullSegmentEncryptionKey, encryptionIv);
+      return new Aes128DataSource(dataSource, fullSegmentEncryptionKey, encryptionIv,
+          dataSpec.absoluteStreamPosition);
     }
     return dataSource;
   }
@@ -38,8 +38,11 @@ import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistParser;
 import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistTracker;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DefaultLoaderFactory;
+import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import java.util.List;
 
@@ -59,6 +62,7 @@ public final class HlsMediaSource extends BaseMediaSource
     private HlsExtractorFactory extractorFactory;
     private @Nullable ParsingLoadable.Parser<HlsPlaylist> playlistParser;
     private CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
+    private Loader.Factory loaderFactory;
     private int minLoadableRetryCount;
     private boolean allowChunklessPreparation;
     private boolean isCreateCalled;
@@ -86,6 +90,7 @@ public final class HlsMediaSource extends BaseMediaSource
       extractorFactory = HlsExtractorFactory.DEFAULT;
       minLoadableRetryCount = DEFAULT_MIN_LOADABLE_RETRY_COUNT;
       compositeSequenceableLoaderFactory = new DefaultCompositeSequenceableLoaderFactory();
+      loaderFactory = new DefaultLoaderFactory();
     }
 
     /**
@@ -165,6 +170,23 @@ public final class HlsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the factory for the {@link Loader}s that load playlists. The default is an instance of
+     * {@link DefaultLoaderFactory}, whose loaders each have a thread of their own.
+     *
+     * <p>Media chunks are always loaded on threads of their own, since a chunk load may block until
+     * the load of a chunk of another track has started, which could otherwise be queued behind it.
+     *
+     * @param loaderFactory A factory for {@link Loader}s.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setLoaderFactory(Loader.Factory loaderFactory) {
+      Assertions.checkState(!isCreateCalled);
+      this.loaderFactory = Assertions.checkNotNull(loaderFactory);
+      return this;
+    }
+
     /**
      * Sets whether chunkless preparation is allowed. If true, preparation without chunk downloads
      * will be enabled for streams that provide sufficient information in their master playlist.
@@ -195,6 +217,7 @@ public final class HlsMediaSource extends BaseMediaSource
           hlsDataSourceFactory,
           extractorFactory,
           compositeSequenceableLoaderFactory,
+          loaderFactory,
           minLoadableRetryCount,
           playlistParser,
           allowChunklessPreparation,
@@ -232,6 +255,7 @@ public final class HlsMediaSource extends BaseMediaSource
   private final Uri manifestUri;
   private final HlsDataSourceFactory dataSourceFactory;
   private final CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
+  private final Loader.Factory loaderFactory;
   private final int minLoadableRetryCount;
   private final ParsingLoadable.Parser<HlsPlaylist> playlistParser;
   private final boolean allowChunklessPreparation;
@@ -308,6 +332,7 @@ public final class HlsMediaSource extends BaseMediaSource
         dataSourceFactory,
         extractorFactory,
         new DefaultCompositeSequenceableLoaderFactory(),
+        new DefaultLoaderFactory(),
         minLoadableRetryCount,
         playlistParser,
         /* allowChunklessPreparation= */ false,
@@ -322,6 +347,7 @@ public final class HlsMediaSource extends BaseMediaSource
       HlsDataSourceFactory dataSourceFactory,
       HlsExtractorFactory extractorFactory,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
+      Loader.Factory loaderFactory,
       int minLoadableRetryCount,
       ParsingLoadable.Parser<HlsPlaylist> playlistParser,
       boolean allowChunklessPreparation,
@@ -330,6 +356,7 @@ public final class HlsMediaSource extends BaseMediaSource
     this.dataSourceFactory = dataSourceFactory;
     this.extractorFactory = extractorFactory;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
+    this.loaderFactory = loaderFactory;
     this.minLoadableRetryCount = minLoadableRetryCount;
     this.playlistParser = playlistParser;
     this.allowChunklessPreparation = allowChunklessPreparation;
@@ -340,7 +367,7 @@ public final class HlsMediaSource extends BaseMediaSource
   public void prepareSourceInternal(ExoPlayer player, boolean isTopLevelSource) {
     EventDispatcher eventDispatcher = createEventDispatcher(/* mediaPeriodId= */ null);
     playlistTracker = new HlsPlaylistTracker(manifestUri, dataSourceFactory, eventDispatcher,
-        minLoadableRetryCount, this, playlistParser);
+        minLoadableRetryCount, this, playlistParser, loaderFactory);
     playlistTracker.start();
   }
 
@@ -397,8 +424,22 @@ public final class HlsMediaSource extends BaseMediaSource
           playlist.hasEndTag ? offsetFromInitialStartTimeUs + playlist.durationUs : C.TIME_UNSET;
       List<HlsMediaPlaylist.Segment> segments = playlist.segments;
       if (windowDefaultStartPositionUs == C.TIME_UNSET) {
-        windowDefaultStartPositionUs = segments.isEmpty() ? 0
-            : segments.get(Math.max(0, segments.size() - 3)).relativeStartTimeUs;
+        if (segments.isEmpty()) {
+          windowDefaultStartPositionUs = 0;
+        } else if (playlist.partHoldBackUs != C.TIME_UNSET) {
+          // Start at the segment that is the part hold back from the end of the complete segments.
+          // Parts of the segment that isn't complete yet are loaded after them.
+          int segmentIndex =
+              Util.binarySearchFloor(
+                  segments,
+                  /* value= */ playlist.durationUs - playlist.partHoldBackUs,
+                  /* inclusive= */ true,
+                  /* stayInBounds= */ true);
+          windowDefaultStartPositionUs = segments.get(segmentIndex).relativeStartTimeUs;
+        } else {
+          windowDefaultStartPositionUs =
+              segments.get(Math.max(0, segments.size() - 3)).relativeStartTimeUs;
+        }
       }
       timeline =
           new SinglePeriodTimeline(
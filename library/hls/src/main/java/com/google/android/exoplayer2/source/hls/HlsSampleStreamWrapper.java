@@ -126,6 +126,7 @@ import java.util.Arrays;
   private boolean haveAudioVideoSampleQueues;
   private boolean[] sampleQueuesEnabledStates;
   private boolean[] sampleQueueIsAudioVideoFlags;
+  private int[] segmentStartWriteIndices;
 
   private long lastSeekPositionUs;
   private long pendingResetPositionUs;
@@ -166,6 +167,7 @@ import java.util.Arrays;
     sampleQueues = new SampleQueue[0];
     sampleQueueIsAudioVideoFlags = new boolean[0];
     sampleQueuesEnabledStates = new boolean[0];
+    segmentStartWriteIndices = new int[0];
     mediaChunks = new ArrayList<>();
     hlsSampleStreams = new ArrayList<>();
     maybeFinishPrepareRunnable =
@@ -660,6 +662,32 @@ import java.util.Arrays;
     }
   }
 
+  /**
+   * Records the write positions of the sample queues at the start of a segment that is loaded in
+   * parts. Must be called after {@link #init(int, boolean, boolean)}.
+   */
+  public void onSegmentPartsStarted() {
+    segmentStartWriteIndices = new int[sampleQueues.length];
+    for (int i = 0; i < sampleQueues.length; i++) {
+      segmentStartWriteIndices[i] = sampleQueues[i].getWriteIndex();
+    }
+  }
+
+  /**
+   * Skips the samples that have been queued since the last call to {@link
+   * #onSegmentPartsStarted()}, when the segment whose parts they belong to is loaded again as a
+   * whole. Must be called after {@link #init(int, boolean, boolean)}.
+   */
+  public void skipLoadedSegmentSamples() {
+    for (int i = 0; i < sampleQueues.length; i++) {
+      // Sample queues created after the start of the segment contain only samples of its parts.
+      int segmentStartWriteIndex =
+          i < segmentStartWriteIndices.length ? segmentStartWriteIndices[i] : 0;
+      sampleQueues[i].skipUpstreamSamples(
+          Math.max(0, sampleQueues[i].getWriteIndex() - segmentStartWriteIndex));
+    }
+  }
+
   // ExtractorOutput implementation. Called by the loading thread.
 
   @Override
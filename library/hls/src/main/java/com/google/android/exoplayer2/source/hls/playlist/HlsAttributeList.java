@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer2.ParserException;
+
+/**
+ * Tokenizes the attribute list of an HLS tag, such as {@code
+ * #EXT-X-STREAM-INF:BANDWIDTH=1280000,CODECS="avc1.4d401e,mp4a.40.2"}, in a single pass.
+ *
+ * <p>The positions of attribute names and values are recorded rather than copied, so that only the
+ * values that are read allocate. An instance is reused for every tag of a playlist.
+ */
+/* package */ final class HlsAttributeList {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private String line;
+  private int attributeCount;
+  // Start and end offsets in line, four per attribute: name start, name end, value start and value
+  // end. Quoted values exclude the quotes.
+  private int[] offsets;
+
+  public HlsAttributeList() {
+    line = "";
+    offsets = new int[INITIAL_CAPACITY * 4];
+  }
+
+  /**
+   * Tokenizes the attribute list of a tag line, which starts after the first colon of the line.
+   *
+   * <p>Attributes without an {@code =} are ignored. A quoted value ends at the next quote, and may
+   * contain commas. An unquoted value ends at the next comma, excluding trailing whitespace.
+   *
+   * @param line The tag line.
+   */
+  public void parse(String line) {
+    this.line = line;
+    attributeCount = 0;
+    int length = line.length();
+    int position = line.indexOf(':') + 1;
+    if (position == 0) {
+      return;
+    }
+    while (position < length) {
+      while (position < length && line.charAt(position) == ' ') {
+        position++;
+      }
+      int nameStart = position;
+      while (position < length && line.charAt(position) != '=' && line.charAt(position) != ',') {
+        position++;
+      }
+      if (position == length || line.charAt(position) == ',') {
+        // An attribute without a value.
+        position++;
+        continue;
+      }
+      int nameEnd = position++;
+      int valueStart;
+      int valueEnd;
+      if (position < length && line.charAt(position) == '"') {
+        valueStart = ++position;
+        while (position < length && line.charAt(position) != '"') {
+          position++;
+        }
+        valueEnd = position;
+        while (position < length && line.charAt(position) != ',') {
+          position++;
+        }
+      } else {
+        valueStart = position;
+        while (position < length && line.charAt(position) != ',') {
+          position++;
+        }
+        valueEnd = position;
+        while (valueEnd > valueStart && Character.isWhitespace(line.charAt(valueEnd - 1))) {
+          valueEnd--;
+        }
+      }
+      position++;
+      addAttribute(nameStart, nameEnd, valueStart, valueEnd);
+    }
+  }
+
+  /** Returns whether the tag has an attribute with the given name. */
+  public boolean contains(String name) {
+    return indexOf(name) != -1;
+  }
+
+  /**
+   * Returns the value of an attribute, or null if the tag doesn't have it.
+   *
+   * @param name The name of the attribute.
+   * @return The value, without quotes.
+   */
+  public @Nullable String getOptional(String name) {
+    int index = indexOf(name);
+    return index == -1 ? null : line.substring(offsets[index + 2], offsets[index + 3]);
+  }
+
+  /**
+   * Returns the value of an attribute.
+   *
+   * @param name The name of the attribute.
+   * @return The value, without quotes.
+   * @throws ParserException If the tag doesn't have the attribute.
+   */
+  public String get(String name) throws ParserException {
+    int index = indexOf(name);
+    if (index == -1) {
+      throw new ParserException("Couldn't find " + name + " in " + line);
+    }
+    return line.substring(offsets[index + 2], offsets[index + 3]);
+  }
+
+  /**
+   * Returns the value of a boolean attribute, which is true if the value is {@code YES}.
+   *
+   * @param name The name of the attribute.
+   * @param defaultValue The value to return if the tag doesn't have the attribute.
+   * @return The value.
+   */
+  public boolean getBoolean(String name, boolean defaultValue) {
+    int index = indexOf(name);
+    if (index == -1) {
+      return defaultValue;
+    }
+    int valueStart = offsets[index + 2];
+    return offsets[index + 3] - valueStart == 3 && line.startsWith("YES", valueStart);
+  }
+
+  /**
+   * Returns the decimal integer at the start of the value of an attribute.
+   *
+   * @param name The name of the attribute.
+   * @return The value.
+   * @throws ParserException If the tag doesn't have the attribute, or its value doesn't start with
+   *     a decimal integer.
+   */
+  public long getLong(String name) throws ParserException {
+    int index = indexOf(name);
+    if (index == -1) {
+      throw new ParserException("Couldn't find " + name + " in " + line);
+    }
+    return parseLong(line, offsets[index + 2], offsets[index + 3]);
+  }
+
+  /**
+   * Returns the decimal integer at the start of the value of an attribute, or a default value if
+   * the tag doesn't have the attribute.
+   *
+   * @param name The name of the attribute.
+   * @param defaultValue The value to return if the tag doesn't have the attribute.
+   * @return The value.
+   * @throws ParserException If the value doesn't start with a decimal integer.
+   */
+  public long getLong(String name, long defaultValue) throws ParserException {
+    int index = indexOf(name);
+    return index == -1 ? defaultValue : parseLong(line, offsets[index + 2], offsets[index + 3]);
+  }
+
+  /**
+   * Returns the signed decimal floating point number at the start of the value of an attribute.
+   *
+   * @param name The name of the attribute.
+   * @return The value.
+   * @throws ParserException If the tag doesn't have the attribute, or its value doesn't start with
+   *     a decimal floating point number.
+   */
+  public double getDouble(String name) throws ParserException {
+    int index = indexOf(name);
+    if (index == -1) {
+      throw new ParserException("Couldn't find " + name + " in " + line);
+    }
+    return parseDouble(line, offsets[index + 2], offsets[index + 3]);
+  }
+
+  /**
+   * Parses the decimal integer at the start of a region of a string.
+   *
+   * @param string The string.
+   * @param start The start of the region.
+   * @param end The end of the region.
+   * @return The value.
+   * @throws ParserException If the region doesn't start with a decimal integer.
+   */
+  public static long parseLong(String string, int start, int end) throws ParserException {
+    long value = 0;
+    int position = start;
+    while (position < end) {
+      int digit = string.charAt(position) - '0';
+      if (digit < 0 || digit > 9) {
+        break;
+      }
+      if (value > (Long.MAX_VALUE - digit) / 10) {
+        throw new ParserException("Integer overflow in " + string);
+      }
+      value = value * 10 + digit;
+      position++;
+    }
+    if (position == start) {
+      throw new ParserException("Couldn't parse an integer in " + string);
+    }
+    return value;
+  }
+
+  /**
+   * Parses the signed decimal floating point number at the start of a region of a string.
+   *
+   * @param string The string.
+   * @param start The start of the region.
+   * @param end The end of the region.
+   * @return The value.
+   * @throws ParserException If the region doesn't start with a decimal floating point number.
+   */
+  public static double parseDouble(String string, int start, int end) throws ParserException {
+    int position = start;
+    if (position < end && string.charAt(position) == '-') {
+      position++;
+    }
+    while (position < end) {
+      char c = string.charAt(position);
+      if ((c < '0' || c > '9') && c != '.') {
+        break;
+      }
+      position++;
+    }
+    try {
+      return Double.parseDouble(string.substring(start, position));
+    } catch (NumberFormatException e) {
+      throw new ParserException(e);
+    }
+  }
+
+  private int indexOf(String name) {
+    int nameLength = name.length();
+    for (int i = 0; i < attributeCount * 4; i += 4) {
+      int nameStart = offsets[i];
+      if (offsets[i + 1] - nameStart == nameLength
+          && line.regionMatches(nameStart, name, 0, nameLength)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void addAttribute(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+    int index = attributeCount * 4;
+    if (index == offsets.length) {
+      int[] newOffsets = new int[offsets.length * 2];
+      System.arraycopy(offsets, 0, newOffsets, 0, offsets.length);
+      offsets = newOffsets;
+    }
+    offsets[index] = nameStart;
+    offsets[index + 1] = nameEnd;
+    offsets[index + 2] = valueStart;
+    offsets[index + 3] = valueEnd;
+    attributeCount++;
+  }
+
+}
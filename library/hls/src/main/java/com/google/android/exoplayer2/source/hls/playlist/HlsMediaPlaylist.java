@@ -22,6 +22,7 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.drm.DrmInitData;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -29,27 +30,247 @@ import java.util.List;
 public final class HlsMediaPlaylist extends HlsPlaylist {
 
   /** Media segment reference. */
+  public static final class Segment extends SegmentBase {
+
+    /**
+     * The parts of the segment, as defined by #EXT-X-PART, or an empty list if the playlist doesn't
+     * list the parts of the segment.
+     */
+    public final List<Part> parts;
+
+    /**
+     * @param uri See {@link #url}.
+     * @param byterangeOffset See {@link #byterangeOffset}.
+     * @param byterangeLength See {@link #byterangeLength}.
+     */
+    public Segment(String uri, long byterangeOffset, long byterangeLength) {
+      this(uri, null, 0, -1, C.TIME_UNSET, null, null, byterangeOffset, byterangeLength, false);
+    }
+
+    /**
+     * @param url See {@link #url}.
+     * @param initializationSegment See {@link #initializationSegment}.
+     * @param durationUs See {@link #durationUs}.
+     * @param relativeDiscontinuitySequence See {@link #relativeDiscontinuitySequence}.
+     * @param relativeStartTimeUs See {@link #relativeStartTimeUs}.
+     * @param fullSegmentEncryptionKeyUri See {@link #fullSegmentEncryptionKeyUri}.
+     * @param encryptionIV See {@link #encryptionIV}.
+     * @param byterangeOffset See {@link #byterangeOffset}.
+     * @param byterangeLength See {@link #byterangeLength}.
+     * @param hasGapTag See {@link #hasGapTag}.
+     */
+    public Segment(
+        String url,
+        Segment initializationSegment,
+        long durationUs,
+        int relativeDiscontinuitySequence,
+        long relativeStartTimeUs,
+        String fullSegmentEncryptionKeyUri,
+        String encryptionIV,
+        long byterangeOffset,
+        long byterangeLength,
+        boolean hasGapTag) {
+      this(
+          url,
+          initializationSegment,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag,
+          Collections.<Part>emptyList());
+    }
+
+    /**
+     * @param url See {@link #url}.
+     * @param initializationSegment See {@link #initializationSegment}.
+     * @param durationUs See {@link #durationUs}.
+     * @param relativeDiscontinuitySequence See {@link #relativeDiscontinuitySequence}.
+     * @param relativeStartTimeUs See {@link #relativeStartTimeUs}.
+     * @param fullSegmentEncryptionKeyUri See {@link #fullSegmentEncryptionKeyUri}.
+     * @param encryptionIV See {@link #encryptionIV}.
+     * @param byterangeOffset See {@link #byterangeOffset}.
+     * @param byterangeLength See {@link #byterangeLength}.
+     * @param hasGapTag See {@link #hasGapTag}.
+     * @param parts See {@link #parts}.
+     */
+    public Segment(
+        String url,
+        Segment initializationSegment,
+        long durationUs,
+        int relativeDiscontinuitySequence,
+        long relativeStartTimeUs,
+        String fullSegmentEncryptionKeyUri,
+        String encryptionIV,
+        long byterangeOffset,
+        long byterangeLength,
+        boolean hasGapTag,
+        List<Part> parts) {
+      super(
+          url,
+          initializationSegment,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag);
+      this.parts =
+          parts.isEmpty() ? Collections.<Part>emptyList() : Collections.unmodifiableList(parts);
+    }
+
+    /**
+     * Returns a segment identical to this one except for its position relative to the start of
+     * the playlist, by which its parts are moved too. Returns this segment if the position is
+     * unchanged.
+     *
+     * @param relativeStartTimeUs The relative start time of the returned segment.
+     * @param relativeDiscontinuitySequence The relative discontinuity sequence of the returned
+     *     segment.
+     * @return The segment.
+     */
+    public Segment copyWith(long relativeStartTimeUs, int relativeDiscontinuitySequence) {
+      if (relativeStartTimeUs == this.relativeStartTimeUs
+          && relativeDiscontinuitySequence == this.relativeDiscontinuitySequence) {
+        return this;
+      }
+      return new Segment(
+          url,
+          initializationSegment,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag,
+          copyPartsWith(
+              parts,
+              relativeStartTimeUs - this.relativeStartTimeUs,
+              relativeDiscontinuitySequence - this.relativeDiscontinuitySequence));
+    }
+
+  }
+
+  /**
+   * Partial segment reference, as defined by #EXT-X-PART or by a #EXT-X-PRELOAD-HINT of type
+   * {@code PART}. A part contains a portion of the media of its segment, and can be loaded before
+   * the segment is complete.
+   */
+  public static final class Part extends SegmentBase {
+
+    /** Whether the part is tagged with {@code INDEPENDENT=YES}. */
+    public final boolean isIndependent;
+    /**
+     * Whether the part is a preload hint, in which case it may not be available yet, and {@link
+     * #durationUs} is the part target duration.
+     */
+    public final boolean isPreload;
+
+    /**
+     * @param url See {@link #url}.
+     * @param initializationSegment See {@link #initializationSegment}.
+     * @param durationUs See {@link #durationUs}.
+     * @param relativeDiscontinuitySequence See {@link #relativeDiscontinuitySequence}.
+     * @param relativeStartTimeUs See {@link #relativeStartTimeUs}.
+     * @param fullSegmentEncryptionKeyUri See {@link #fullSegmentEncryptionKeyUri}.
+     * @param encryptionIV See {@link #encryptionIV}.
+     * @param byterangeOffset See {@link #byterangeOffset}.
+     * @param byterangeLength See {@link #byterangeLength}.
+     * @param hasGapTag See {@link #hasGapTag}.
+     * @param isIndependent See {@link #isIndependent}.
+     * @param isPreload See {@link #isPreload}.
+     */
+    public Part(
+        String url,
+        Segment initializationSegment,
+        long durationUs,
+        int relativeDiscontinuitySequence,
+        long relativeStartTimeUs,
+        String fullSegmentEncryptionKeyUri,
+        String encryptionIV,
+        long byterangeOffset,
+        long byterangeLength,
+        boolean hasGapTag,
+        boolean isIndependent,
+        boolean isPreload) {
+      super(
+          url,
+          initializationSegment,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag);
+      this.isIndependent = isIndependent;
+      this.isPreload = isPreload;
+    }
+
+    /**
+     * Returns a part identical to this one except for its position relative to the start of the
+     * playlist. Returns this part if the position is unchanged.
+     *
+     * @param relativeStartTimeUs The relative start time of the returned part.
+     * @param relativeDiscontinuitySequence The relative discontinuity sequence of the returned
+     *     part.
+     * @return The part.
+     */
+    public Part copyWith(long relativeStartTimeUs, int relativeDiscontinuitySequence) {
+      if (relativeStartTimeUs == this.relativeStartTimeUs
+          && relativeDiscontinuitySequence == this.relativeDiscontinuitySequence) {
+        return this;
+      }
+      return new Part(
+          url,
+          initializationSegment,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag,
+          isIndependent,
+          isPreload);
+    }
+
+  }
+
+  /** The properties shared by a {@link Segment} and a {@link Part}. */
   @SuppressWarnings("ComparableType")
-  public static final class Segment implements Comparable<Long> {
+  public static class SegmentBase implements Comparable<Long> {
 
     /**
-     * The url of the segment.
+     * The url of the segment or part.
      */
     public final String url;
     /**
-     * The media initialization section for this segment, as defined by #EXT-X-MAP. May be null if
-     * the media playlist does not define a media section for this segment. The same instance is
-     * used for all segments that share an EXT-X-MAP tag.
+     * The media initialization section for this segment or part, as defined by #EXT-X-MAP. May be
+     * null if the media playlist does not define a media section for this segment. The same
+     * instance is used for all segments that share an EXT-X-MAP tag.
      */
     @Nullable public final Segment initializationSegment;
-    /** The duration of the segment in microseconds, as defined by #EXTINF. */
+    /**
+     * The duration in microseconds, as defined by #EXTINF for a segment, or by the DURATION
+     * attribute of #EXT-X-PART for a part.
+     */
     public final long durationUs;
     /**
      * The number of #EXT-X-DISCONTINUITY tags in the playlist before the segment.
      */
     public final int relativeDiscontinuitySequence;
     /**
-     * The start time of the segment in microseconds, relative to the start of the playlist.
+     * The start time in microseconds, relative to the start of the playlist.
      */
     public final long relativeStartTimeUs;
     /**
@@ -63,40 +284,20 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
      */
     public final String encryptionIV;
     /**
-     * The segment's byte range offset, as defined by #EXT-X-BYTERANGE.
+     * The byte range offset, as defined by #EXT-X-BYTERANGE for a segment, or by the BYTERANGE
+     * attribute of #EXT-X-PART for a part.
      */
     public final long byterangeOffset;
     /**
-     * The segment's byte range length, as defined by #EXT-X-BYTERANGE, or {@link C#LENGTH_UNSET} if
-     * no byte range is specified.
+     * The byte range length, as defined by #EXT-X-BYTERANGE for a segment, or by the BYTERANGE
+     * attribute of #EXT-X-PART for a part, or {@link C#LENGTH_UNSET} if no byte range is specified.
      */
     public final long byterangeLength;
 
-    /** Whether the segment is tagged with #EXT-X-GAP. */
+    /** Whether the segment or part is tagged as a gap. */
     public final boolean hasGapTag;
 
-    /**
-     * @param uri See {@link #url}.
-     * @param byterangeOffset See {@link #byterangeOffset}.
-     * @param byterangeLength See {@link #byterangeLength}.
-     */
-    public Segment(String uri, long byterangeOffset, long byterangeLength) {
-      this(uri, null, 0, -1, C.TIME_UNSET, null, null, byterangeOffset, byterangeLength, false);
-    }
-
-    /**
-     * @param url See {@link #url}.
-     * @param initializationSegment See {@link #initializationSegment}.
-     * @param durationUs See {@link #durationUs}.
-     * @param relativeDiscontinuitySequence See {@link #relativeDiscontinuitySequence}.
-     * @param relativeStartTimeUs See {@link #relativeStartTimeUs}.
-     * @param fullSegmentEncryptionKeyUri See {@link #fullSegmentEncryptionKeyUri}.
-     * @param encryptionIV See {@link #encryptionIV}.
-     * @param byterangeOffset See {@link #byterangeOffset}.
-     * @param byterangeLength See {@link #byterangeLength}.
-     * @param hasGapTag See {@link #hasGapTag}.
-     */
-    public Segment(
+    private SegmentBase(
         String url,
         Segment initializationSegment,
         long durationUs,
@@ -185,6 +386,34 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
    * Whether the playlist contains a #EXT-X-PROGRAM-DATE-TIME tag.
    */
   public final boolean hasProgramDateTime;
+  /**
+   * The skip boundary in microseconds, as defined by the CAN-SKIP-UNTIL attribute of
+   * #EXT-X-SERVER-CONTROL, or {@link C#TIME_UNSET} if the server doesn't provide delta updates of
+   * the playlist.
+   */
+  public final long canSkipUntilUs;
+  /**
+   * Whether the server supports blocking playlist reloads, as defined by the CAN-BLOCK-RELOAD
+   * attribute of #EXT-X-SERVER-CONTROL.
+   */
+  public final boolean canBlockReload;
+  /**
+   * The part hold back in microseconds, as defined by the PART-HOLD-BACK attribute of
+   * #EXT-X-SERVER-CONTROL, or {@link C#TIME_UNSET} if not specified.
+   */
+  public final long partHoldBackUs;
+  /**
+   * The part target duration in microseconds, as defined by #EXT-X-PART-INF, or {@link
+   * C#TIME_UNSET} if the playlist doesn't list parts of segments.
+   */
+  public final long partTargetDurationUs;
+  /**
+   * The number of segments at the start of the playlist that the server replaced with
+   * #EXT-X-SKIP, because the playlist is a delta update. The skipped segments aren't in {@link
+   * #segments}, which starts at media sequence {@link #mediaSequence} {@code +
+   * skippedSegmentCount}. Zero if the playlist is complete.
+   */
+  public final int skippedSegmentCount;
   /**
    * DRM initialization data for sample decryption, or null if none of the segment uses sample
    * encryption.
@@ -195,7 +424,14 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
    */
   public final List<Segment> segments;
   /**
-   * The total duration of the playlist in microseconds.
+   * The parts of the segment that follows the last one of {@link #segments}, which isn't complete
+   * yet. If the playlist has a #EXT-X-PRELOAD-HINT of type {@code PART}, the last part is a preload
+   * hint.
+   */
+  public final List<Part> trailingParts;
+  /**
+   * The total duration of the segments of the playlist in microseconds, excluding {@link
+   * #trailingParts}.
    */
   public final long durationUs;
 
@@ -213,8 +449,14 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
    * @param hasIndependentSegmentsTag See {@link #hasIndependentSegmentsTag}.
    * @param hasEndTag See {@link #hasEndTag}.
    * @param hasProgramDateTime See {@link #hasProgramDateTime}.
+   * @param canSkipUntilUs See {@link #canSkipUntilUs}.
+   * @param canBlockReload See {@link #canBlockReload}.
+   * @param partHoldBackUs See {@link #partHoldBackUs}.
+   * @param partTargetDurationUs See {@link #partTargetDurationUs}.
+   * @param skippedSegmentCount See {@link #skippedSegmentCount}.
    * @param drmInitData See {@link #drmInitData}.
    * @param segments See {@link #segments}.
+   * @param trailingParts See {@link #trailingParts}.
    */
   public HlsMediaPlaylist(
       @PlaylistType int playlistType,
@@ -230,8 +472,14 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
       boolean hasIndependentSegmentsTag,
       boolean hasEndTag,
       boolean hasProgramDateTime,
+      long canSkipUntilUs,
+      boolean canBlockReload,
+      long partHoldBackUs,
+      long partTargetDurationUs,
+      int skippedSegmentCount,
       DrmInitData drmInitData,
-      List<Segment> segments) {
+      List<Segment> segments,
+      List<Part> trailingParts) {
     super(baseUri, tags);
     this.playlistType = playlistType;
     this.startTimeUs = startTimeUs;
@@ -243,8 +491,14 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
     this.hasIndependentSegmentsTag = hasIndependentSegmentsTag;
     this.hasEndTag = hasEndTag;
     this.hasProgramDateTime = hasProgramDateTime;
+    this.canSkipUntilUs = canSkipUntilUs;
+    this.canBlockReload = canBlockReload;
+    this.partHoldBackUs = partHoldBackUs;
+    this.partTargetDurationUs = partTargetDurationUs;
+    this.skippedSegmentCount = skippedSegmentCount;
     this.drmInitData = drmInitData;
     this.segments = Collections.unmodifiableList(segments);
+    this.trailingParts = Collections.unmodifiableList(trailingParts);
     if (!segments.isEmpty()) {
       Segment last = segments.get(segments.size() - 1);
       durationUs = last.relativeStartTimeUs + last.durationUs;
@@ -276,8 +530,13 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
     // The media sequences are equal.
     int segmentCount = segments.size();
     int otherSegmentCount = other.segments.size();
-    return segmentCount > otherSegmentCount
-        || (segmentCount == otherSegmentCount && hasEndTag && !other.hasEndTag);
+    if (segmentCount != otherSegmentCount) {
+      return segmentCount > otherSegmentCount;
+    }
+    int partCount = trailingParts.size();
+    int otherPartCount = other.trailingParts.size();
+    return partCount > otherPartCount
+        || (partCount == otherPartCount && hasEndTag && !other.hasEndTag);
   }
 
   /**
@@ -311,8 +570,14 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         hasIndependentSegmentsTag,
         hasEndTag,
         hasProgramDateTime,
+        canSkipUntilUs,
+        canBlockReload,
+        partHoldBackUs,
+        partTargetDurationUs,
+        skippedSegmentCount,
         drmInitData,
-        segments);
+        segments,
+        trailingParts);
   }
 
   /**
@@ -339,8 +604,105 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         hasIndependentSegmentsTag,
         /* hasEndTag= */ true,
         hasProgramDateTime,
+        canSkipUntilUs,
+        canBlockReload,
+        partHoldBackUs,
+        partTargetDurationUs,
+        skippedSegmentCount,
+        drmInitData,
+        segments,
+        trailingParts);
+  }
+
+  /**
+   * Returns the complete playlist of which this playlist is a delta update, taking the skipped
+   * segments from a previous snapshot of the playlist. Segments of the previous snapshot are reused
+   * where their position relative to the start of the playlist is unchanged.
+   *
+   * <p>The start time and discontinuity sequence of the returned playlist are those of this
+   * playlist. Those of the segments that follow the skipped ones are offset by the duration and
+   * discontinuities of the skipped segments.
+   *
+   * @param previousPlaylist A previous snapshot of the playlist.
+   * @return The complete playlist, or null if {@code previousPlaylist} doesn't contain all the
+   *     skipped segments.
+   */
+  @Nullable
+  public HlsMediaPlaylist copyWithSkippedSegmentsFrom(HlsMediaPlaylist previousPlaylist) {
+    if (skippedSegmentCount == 0) {
+      return this;
+    }
+    long firstSkippedIndex = mediaSequence - previousPlaylist.mediaSequence;
+    List<Segment> previousSegments = previousPlaylist.segments;
+    if (firstSkippedIndex < 0
+        || firstSkippedIndex + skippedSegmentCount > previousSegments.size()) {
+      return null;
+    }
+    int firstIndex = (int) firstSkippedIndex;
+    Segment firstSkippedSegment = previousSegments.get(firstIndex);
+    long startTimeOffsetUs = firstSkippedSegment.relativeStartTimeUs;
+    int discontinuitySequenceOffset = firstSkippedSegment.relativeDiscontinuitySequence;
+    ArrayList<Segment> segments = new ArrayList<>(skippedSegmentCount + this.segments.size());
+    for (int i = firstIndex; i < firstIndex + skippedSegmentCount; i++) {
+      Segment segment = previousSegments.get(i);
+      segments.add(
+          segment.copyWith(
+              segment.relativeStartTimeUs - startTimeOffsetUs,
+              segment.relativeDiscontinuitySequence - discontinuitySequenceOffset));
+    }
+    Segment lastSkippedSegment = segments.get(skippedSegmentCount - 1);
+    long skippedDurationUs = lastSkippedSegment.relativeStartTimeUs + lastSkippedSegment.durationUs;
+    int skippedDiscontinuityCount = lastSkippedSegment.relativeDiscontinuitySequence;
+    for (int i = 0; i < this.segments.size(); i++) {
+      Segment segment = this.segments.get(i);
+      segments.add(
+          segment.copyWith(
+              segment.relativeStartTimeUs + skippedDurationUs,
+              segment.relativeDiscontinuitySequence + skippedDiscontinuityCount));
+    }
+    // The start time and the start offset of this playlist were derived from the segments it
+    // contains, so are adjusted for the skipped segments. A negative #EXT-X-START offset was
+    // resolved against the duration of this playlist, so the adjustment resolves it against that
+    // of the complete playlist. Non-negative offsets aren't meaningful for playlists that allow
+    // delta updates, since their first segments are removed as new ones are added.
+    return new HlsMediaPlaylist(
+        playlistType,
+        baseUri,
+        tags,
+        startOffsetUs == C.TIME_UNSET ? C.TIME_UNSET : startOffsetUs + skippedDurationUs,
+        hasProgramDateTime ? startTimeUs - skippedDurationUs : startTimeUs,
+        hasDiscontinuitySequence,
+        discontinuitySequence,
+        mediaSequence,
+        version,
+        targetDurationUs,
+        hasIndependentSegmentsTag,
+        hasEndTag,
+        hasProgramDateTime,
+        canSkipUntilUs,
+        canBlockReload,
+        partHoldBackUs,
+        partTargetDurationUs,
+        /* skippedSegmentCount= */ 0,
         drmInitData,
-        segments);
+        segments,
+        copyPartsWith(trailingParts, skippedDurationUs, skippedDiscontinuityCount));
+  }
+
+  private static List<Part> copyPartsWith(
+      List<Part> parts, long startTimeOffsetUs, int discontinuitySequenceOffset) {
+    if (parts.isEmpty() || (startTimeOffsetUs == 0 && discontinuitySequenceOffset == 0)) {
+      return parts;
+    }
+    ArrayList<Part> copiedParts = new ArrayList<>(parts.size());
+    for (int i = 0; i < parts.size(); i++) {
+      Part part = parts.get(i);
+      copiedParts.add(
+          part.copyWith(
+              part.relativeStartTimeUs + startTimeOffsetUs,
+              part.relativeDiscontinuitySequence + discontinuitySequenceOffset));
+    }
+    return copiedParts;
   }
 
 }
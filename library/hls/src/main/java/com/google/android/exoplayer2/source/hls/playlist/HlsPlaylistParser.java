@@ -23,6 +23,7 @@ import com.google.android.exoplayer2.ParserException;
 import com.google.android.exoplayer2.drm.DrmInitData;
 import com.google.android.exoplayer2.drm.DrmInitData.SchemeData;
 import com.google.android.exoplayer2.source.UnrecognizedInputFormatException;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Part;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Segment;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.util.MimeTypes;
@@ -39,8 +40,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Queue;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * HLS playlists parsing logic.
@@ -68,11 +67,17 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   private static final String TAG_KEY = "#EXT-X-KEY";
   private static final String TAG_BYTERANGE = "#EXT-X-BYTERANGE";
   private static final String TAG_GAP = "#EXT-X-GAP";
+  private static final String TAG_SERVER_CONTROL = "#EXT-X-SERVER-CONTROL";
+  private static final String TAG_SKIP = "#EXT-X-SKIP";
+  private static final String TAG_PART_INF = "#EXT-X-PART-INF";
+  private static final String TAG_PART = "#EXT-X-PART";
+  private static final String TAG_PRELOAD_HINT = "#EXT-X-PRELOAD-HINT";
 
   private static final String TYPE_AUDIO = "AUDIO";
   private static final String TYPE_VIDEO = "VIDEO";
   private static final String TYPE_SUBTITLES = "SUBTITLES";
   private static final String TYPE_CLOSED_CAPTIONS = "CLOSED-CAPTIONS";
+  private static final String TYPE_PART = "PART";
 
   private static final String METHOD_NONE = "NONE";
   private static final String METHOD_AES_128 = "AES-128";
@@ -90,54 +95,36 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
 
   private static final String ATTR_CLOSED_CAPTIONS_NONE = "CLOSED-CAPTIONS=NONE";
 
-  private static final Pattern REGEX_AVERAGE_BANDWIDTH =
-      Pattern.compile("AVERAGE-BANDWIDTH=(\\d+)\\b");
-  private static final Pattern REGEX_AUDIO = Pattern.compile("AUDIO=\"(.+?)\"");
-  private static final Pattern REGEX_BANDWIDTH = Pattern.compile("[^-]BANDWIDTH=(\\d+)\\b");
-  private static final Pattern REGEX_CODECS = Pattern.compile("CODECS=\"(.+?)\"");
-  private static final Pattern REGEX_RESOLUTION = Pattern.compile("RESOLUTION=(\\d+x\\d+)");
-  private static final Pattern REGEX_FRAME_RATE = Pattern.compile("FRAME-RATE=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_TARGET_DURATION = Pattern.compile(TAG_TARGET_DURATION
-      + ":(\\d+)\\b");
-  private static final Pattern REGEX_VERSION = Pattern.compile(TAG_VERSION + ":(\\d+)\\b");
-  private static final Pattern REGEX_PLAYLIST_TYPE = Pattern.compile(TAG_PLAYLIST_TYPE
-      + ":(.+)\\b");
-  private static final Pattern REGEX_MEDIA_SEQUENCE = Pattern.compile(TAG_MEDIA_SEQUENCE
-      + ":(\\d+)\\b");
-  private static final Pattern REGEX_MEDIA_DURATION = Pattern.compile(TAG_MEDIA_DURATION
-      + ":([\\d\\.]+)\\b");
-  private static final Pattern REGEX_TIME_OFFSET = Pattern.compile("TIME-OFFSET=(-?[\\d\\.]+)\\b");
-  private static final Pattern REGEX_BYTERANGE = Pattern.compile(TAG_BYTERANGE
-      + ":(\\d+(?:@\\d+)?)\\b");
-  private static final Pattern REGEX_ATTR_BYTERANGE =
-      Pattern.compile("BYTERANGE=\"(\\d+(?:@\\d+)?)\\b\"");
-  private static final Pattern REGEX_METHOD =
-      Pattern.compile(
-          "METHOD=("
-              + METHOD_NONE
-              + "|"
-              + METHOD_AES_128
-              + "|"
-              + METHOD_SAMPLE_AES
-              + "|"
-              + METHOD_SAMPLE_AES_CENC
-              + "|"
-              + METHOD_SAMPLE_AES_CTR
-              + ")"
-              + "\\s*(,|$)");
-  private static final Pattern REGEX_KEYFORMAT = Pattern.compile("KEYFORMAT=\"(.+?)\"");
-  private static final Pattern REGEX_URI = Pattern.compile("URI=\"(.+?)\"");
-  private static final Pattern REGEX_IV = Pattern.compile("IV=([^,.*]+)");
-  private static final Pattern REGEX_TYPE = Pattern.compile("TYPE=(" + TYPE_AUDIO + "|" + TYPE_VIDEO
-      + "|" + TYPE_SUBTITLES + "|" + TYPE_CLOSED_CAPTIONS + ")");
-  private static final Pattern REGEX_LANGUAGE = Pattern.compile("LANGUAGE=\"(.+?)\"");
-  private static final Pattern REGEX_NAME = Pattern.compile("NAME=\"(.+?)\"");
-  private static final Pattern REGEX_GROUP_ID = Pattern.compile("GROUP-ID=\"(.+?)\"");
-  private static final Pattern REGEX_INSTREAM_ID =
-      Pattern.compile("INSTREAM-ID=\"((?:CC|SERVICE)\\d+)\"");
-  private static final Pattern REGEX_AUTOSELECT = compileBooleanAttrPattern("AUTOSELECT");
-  private static final Pattern REGEX_DEFAULT = compileBooleanAttrPattern("DEFAULT");
-  private static final Pattern REGEX_FORCED = compileBooleanAttrPattern("FORCED");
+  private static final String ATTR_AVERAGE_BANDWIDTH = "AVERAGE-BANDWIDTH";
+  private static final String ATTR_AUDIO = "AUDIO";
+  private static final String ATTR_BANDWIDTH = "BANDWIDTH";
+  private static final String ATTR_CODECS = "CODECS";
+  private static final String ATTR_RESOLUTION = "RESOLUTION";
+  private static final String ATTR_FRAME_RATE = "FRAME-RATE";
+  private static final String ATTR_TIME_OFFSET = "TIME-OFFSET";
+  private static final String ATTR_BYTERANGE = "BYTERANGE";
+  private static final String ATTR_METHOD = "METHOD";
+  private static final String ATTR_KEYFORMAT = "KEYFORMAT";
+  private static final String ATTR_URI = "URI";
+  private static final String ATTR_IV = "IV";
+  private static final String ATTR_TYPE = "TYPE";
+  private static final String ATTR_LANGUAGE = "LANGUAGE";
+  private static final String ATTR_NAME = "NAME";
+  private static final String ATTR_GROUP_ID = "GROUP-ID";
+  private static final String ATTR_INSTREAM_ID = "INSTREAM-ID";
+  private static final String ATTR_AUTOSELECT = "AUTOSELECT";
+  private static final String ATTR_DEFAULT = "DEFAULT";
+  private static final String ATTR_FORCED = "FORCED";
+  private static final String ATTR_CAN_SKIP_UNTIL = "CAN-SKIP-UNTIL";
+  private static final String ATTR_SKIPPED_SEGMENTS = "SKIPPED-SEGMENTS";
+  private static final String ATTR_CAN_BLOCK_RELOAD = "CAN-BLOCK-RELOAD";
+  private static final String ATTR_PART_HOLD_BACK = "PART-HOLD-BACK";
+  private static final String ATTR_PART_TARGET = "PART-TARGET";
+  private static final String ATTR_DURATION = "DURATION";
+  private static final String ATTR_INDEPENDENT = "INDEPENDENT";
+  private static final String ATTR_GAP = "GAP";
+  private static final String ATTR_BYTERANGE_START = "BYTERANGE-START";
+  private static final String ATTR_BYTERANGE_LENGTH = "BYTERANGE-LENGTH";
 
   @Override
   public HlsPlaylist parse(Uri uri, InputStream inputStream) throws IOException {
@@ -217,6 +204,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     Format muxedAudioFormat = null;
     List<Format> muxedCaptionFormats = null;
     boolean noClosedCaptions = false;
+    HlsAttributeList attributes = new HlsAttributeList();
 
     String line;
     while (iterator.hasNext()) {
@@ -233,20 +221,21 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         mediaTags.add(line);
       } else if (line.startsWith(TAG_STREAM_INF)) {
         noClosedCaptions |= line.contains(ATTR_CLOSED_CAPTIONS_NONE);
-        int bitrate = parseIntAttr(line, REGEX_BANDWIDTH);
-        String averageBandwidthString = parseOptionalStringAttr(line, REGEX_AVERAGE_BANDWIDTH);
-        if (averageBandwidthString != null) {
-          // If available, the average bandwidth attribute is used as the variant's bitrate.
-          bitrate = Integer.parseInt(averageBandwidthString);
-        }
-        String codecs = parseOptionalStringAttr(line, REGEX_CODECS);
-        String resolutionString = parseOptionalStringAttr(line, REGEX_RESOLUTION);
+        attributes.parse(line);
+        int bitrate = (int) attributes.getLong(ATTR_BANDWIDTH);
+        // If available, the average bandwidth attribute is used as the variant's bitrate.
+        bitrate = (int) attributes.getLong(ATTR_AVERAGE_BANDWIDTH, bitrate);
+        String codecs = attributes.getOptional(ATTR_CODECS);
+        String resolutionString = attributes.getOptional(ATTR_RESOLUTION);
         int width;
         int height;
-        if (resolutionString != null) {
-          String[] widthAndHeight = resolutionString.split("x");
-          width = Integer.parseInt(widthAndHeight[0]);
-          height = Integer.parseInt(widthAndHeight[1]);
+        int separatorIndex = resolutionString != null ? resolutionString.indexOf('x') : -1;
+        if (separatorIndex != -1) {
+          width = (int) HlsAttributeList.parseLong(resolutionString, 0, separatorIndex);
+          height =
+              (int)
+                  HlsAttributeList.parseLong(
+                      resolutionString, separatorIndex + 1, resolutionString.length());
           if (width <= 0 || height <= 0) {
             // Resolution string is invalid.
             width = Format.NO_VALUE;
@@ -257,11 +246,10 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           height = Format.NO_VALUE;
         }
         float frameRate = Format.NO_VALUE;
-        String frameRateString = parseOptionalStringAttr(line, REGEX_FRAME_RATE);
-        if (frameRateString != null) {
-          frameRate = Float.parseFloat(frameRateString);
+        if (attributes.contains(ATTR_FRAME_RATE)) {
+          frameRate = (float) attributes.getDouble(ATTR_FRAME_RATE);
         }
-        String audioGroupId = parseOptionalStringAttr(line, REGEX_AUDIO);
+        String audioGroupId = attributes.getOptional(ATTR_AUDIO);
         if (audioGroupId != null && codecs != null) {
           audioGroupIdToCodecs.put(audioGroupId, Util.getCodecsOfType(codecs, C.TRACK_TYPE_AUDIO));
         }
@@ -275,14 +263,14 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     }
 
     for (int i = 0; i < mediaTags.size(); i++) {
-      line = mediaTags.get(i);
-      @C.SelectionFlags int selectionFlags = parseSelectionFlags(line);
-      String uri = parseOptionalStringAttr(line, REGEX_URI);
-      String id = parseStringAttr(line, REGEX_NAME);
-      String language = parseOptionalStringAttr(line, REGEX_LANGUAGE);
-      String groupId = parseOptionalStringAttr(line, REGEX_GROUP_ID);
+      attributes.parse(mediaTags.get(i));
+      @C.SelectionFlags int selectionFlags = parseSelectionFlags(attributes);
+      String uri = attributes.getOptional(ATTR_URI);
+      String id = attributes.get(ATTR_NAME);
+      String language = attributes.getOptional(ATTR_LANGUAGE);
+      String groupId = attributes.getOptional(ATTR_GROUP_ID);
       Format format;
-      switch (parseStringAttr(line, REGEX_TYPE)) {
+      switch (attributes.get(ATTR_TYPE)) {
         case TYPE_AUDIO:
           String codecs = audioGroupIdToCodecs.get(groupId);
           String sampleMimeType = codecs != null ? MimeTypes.getMediaMimeType(codecs) : null;
@@ -301,15 +289,19 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           subtitles.add(new HlsMasterPlaylist.HlsUrl(uri, format));
           break;
         case TYPE_CLOSED_CAPTIONS:
-          String instreamId = parseStringAttr(line, REGEX_INSTREAM_ID);
+          String instreamId = attributes.get(ATTR_INSTREAM_ID);
           String mimeType;
           int accessibilityChannel;
           if (instreamId.startsWith("CC")) {
             mimeType = MimeTypes.APPLICATION_CEA608;
-            accessibilityChannel = Integer.parseInt(instreamId.substring(2));
-          } else /* starts with SERVICE */ {
+            accessibilityChannel =
+                (int) HlsAttributeList.parseLong(instreamId, 2, instreamId.length());
+          } else if (instreamId.startsWith("SERVICE")) {
             mimeType = MimeTypes.APPLICATION_CEA708;
-            accessibilityChannel = Integer.parseInt(instreamId.substring(7));
+            accessibilityChannel =
+                (int) HlsAttributeList.parseLong(instreamId, 7, instreamId.length());
+          } else {
+            throw new ParserException("Invalid INSTREAM-ID: " + instreamId);
           }
           if (muxedCaptionFormats == null) {
             muxedCaptionFormats = new ArrayList<>();
@@ -331,10 +323,10 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   }
 
   @C.SelectionFlags
-  private static int parseSelectionFlags(String line) {
-    return (parseBooleanAttribute(line, REGEX_DEFAULT, false) ? C.SELECTION_FLAG_DEFAULT : 0)
-        | (parseBooleanAttribute(line, REGEX_FORCED, false) ? C.SELECTION_FLAG_FORCED : 0)
-        | (parseBooleanAttribute(line, REGEX_AUTOSELECT, false) ? C.SELECTION_FLAG_AUTOSELECT : 0);
+  private static int parseSelectionFlags(HlsAttributeList attributes) {
+    return (attributes.getBoolean(ATTR_DEFAULT, false) ? C.SELECTION_FLAG_DEFAULT : 0)
+        | (attributes.getBoolean(ATTR_FORCED, false) ? C.SELECTION_FLAG_FORCED : 0)
+        | (attributes.getBoolean(ATTR_AUTOSELECT, false) ? C.SELECTION_FLAG_AUTOSELECT : 0);
   }
 
   private static HlsMediaPlaylist parseMediaPlaylist(LineIterator iterator, String baseUri)
@@ -346,8 +338,14 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     long targetDurationUs = C.TIME_UNSET;
     boolean hasIndependentSegmentsTag = false;
     boolean hasEndTag = false;
+    long canSkipUntilUs = C.TIME_UNSET;
+    boolean canBlockReload = false;
+    long partHoldBackUs = C.TIME_UNSET;
+    long partTargetDurationUs = C.TIME_UNSET;
+    int skippedSegmentCount = 0;
     Segment initializationSegment = null;
     List<Segment> segments = new ArrayList<>();
+    List<Part> segmentParts = new ArrayList<>();
     List<String> tags = new ArrayList<>();
 
     long segmentDurationUs = 0;
@@ -360,10 +358,16 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     long segmentByteRangeLength = C.LENGTH_UNSET;
     long segmentMediaSequence = 0;
     boolean hasGapTag = false;
+    long partStartTimeUs = 0;
+    long partByteRangeOffset = 0;
+    String preloadHintUri = null;
+    long preloadHintByteRangeOffset = 0;
+    long preloadHintByteRangeLength = C.LENGTH_UNSET;
 
     String encryptionKeyUri = null;
     String encryptionIV = null;
     DrmInitData drmInitData = null;
+    HlsAttributeList attributes = new HlsAttributeList();
 
     String line;
     while (iterator.hasNext()) {
@@ -375,54 +379,78 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       }
 
       if (line.startsWith(TAG_PLAYLIST_TYPE)) {
-        String playlistTypeString = parseStringAttr(line, REGEX_PLAYLIST_TYPE);
+        String playlistTypeString = line.substring(line.indexOf(':') + 1);
         if ("VOD".equals(playlistTypeString)) {
           playlistType = HlsMediaPlaylist.PLAYLIST_TYPE_VOD;
         } else if ("EVENT".equals(playlistTypeString)) {
           playlistType = HlsMediaPlaylist.PLAYLIST_TYPE_EVENT;
         }
       } else if (line.startsWith(TAG_START)) {
-        startOffsetUs = (long) (parseDoubleAttr(line, REGEX_TIME_OFFSET) * C.MICROS_PER_SECOND);
+        attributes.parse(line);
+        startOffsetUs = (long) (attributes.getDouble(ATTR_TIME_OFFSET) * C.MICROS_PER_SECOND);
       } else if (line.startsWith(TAG_INIT_SEGMENT)) {
-        String uri = parseStringAttr(line, REGEX_URI);
-        String byteRange = parseOptionalStringAttr(line, REGEX_ATTR_BYTERANGE);
+        attributes.parse(line);
+        String uri = attributes.get(ATTR_URI);
+        String byteRange = attributes.getOptional(ATTR_BYTERANGE);
         if (byteRange != null) {
-          String[] splitByteRange = byteRange.split("@");
-          segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
-          if (splitByteRange.length > 1) {
-            segmentByteRangeOffset = Long.parseLong(splitByteRange[1]);
+          int separatorIndex = byteRange.indexOf('@');
+          segmentByteRangeLength =
+              HlsAttributeList.parseLong(
+                  byteRange, 0, separatorIndex != -1 ? separatorIndex : byteRange.length());
+          if (separatorIndex != -1) {
+            segmentByteRangeOffset =
+                HlsAttributeList.parseLong(byteRange, separatorIndex + 1, byteRange.length());
           }
         }
         initializationSegment = new Segment(uri, segmentByteRangeOffset, segmentByteRangeLength);
         segmentByteRangeOffset = 0;
         segmentByteRangeLength = C.LENGTH_UNSET;
       } else if (line.startsWith(TAG_TARGET_DURATION)) {
-        targetDurationUs = parseIntAttr(line, REGEX_TARGET_DURATION) * C.MICROS_PER_SECOND;
+        targetDurationUs = parseLongTagValue(line) * C.MICROS_PER_SECOND;
       } else if (line.startsWith(TAG_MEDIA_SEQUENCE)) {
-        mediaSequence = parseLongAttr(line, REGEX_MEDIA_SEQUENCE);
+        mediaSequence = parseLongTagValue(line);
         segmentMediaSequence = mediaSequence;
       } else if (line.startsWith(TAG_VERSION)) {
-        version = parseIntAttr(line, REGEX_VERSION);
+        version = (int) parseLongTagValue(line);
+      } else if (line.startsWith(TAG_SERVER_CONTROL)) {
+        attributes.parse(line);
+        if (attributes.contains(ATTR_CAN_SKIP_UNTIL)) {
+          canSkipUntilUs =
+              (long) (attributes.getDouble(ATTR_CAN_SKIP_UNTIL) * C.MICROS_PER_SECOND);
+        }
+        canBlockReload = attributes.getBoolean(ATTR_CAN_BLOCK_RELOAD, false);
+        if (attributes.contains(ATTR_PART_HOLD_BACK)) {
+          partHoldBackUs =
+              (long) (attributes.getDouble(ATTR_PART_HOLD_BACK) * C.MICROS_PER_SECOND);
+        }
+      } else if (line.startsWith(TAG_SKIP)) {
+        // The playlist is a delta update, in which the first segments are skipped.
+        attributes.parse(line);
+        skippedSegmentCount = (int) attributes.getLong(ATTR_SKIPPED_SEGMENTS);
+        segmentMediaSequence += skippedSegmentCount;
       } else if (line.startsWith(TAG_MEDIA_DURATION)) {
         segmentDurationUs =
-            (long) (parseDoubleAttr(line, REGEX_MEDIA_DURATION) * C.MICROS_PER_SECOND);
+            (long)
+                (HlsAttributeList.parseDouble(line, line.indexOf(':') + 1, line.length())
+                    * C.MICROS_PER_SECOND);
       } else if (line.startsWith(TAG_KEY)) {
-        String method = parseOptionalStringAttr(line, REGEX_METHOD);
-        String keyFormat = parseOptionalStringAttr(line, REGEX_KEYFORMAT);
+        attributes.parse(line);
+        String method = parseMethod(attributes);
+        String keyFormat = attributes.getOptional(ATTR_KEYFORMAT);
         encryptionKeyUri = null;
         encryptionIV = null;
         if (!METHOD_NONE.equals(method)) {
-          encryptionIV = parseOptionalStringAttr(line, REGEX_IV);
+          encryptionIV = attributes.getOptional(ATTR_IV);
           if (KEYFORMAT_IDENTITY.equals(keyFormat) || keyFormat == null) {
             if (METHOD_AES_128.equals(method)) {
               // The segment is fully encrypted using an identity key.
-              encryptionKeyUri = parseStringAttr(line, REGEX_URI);
+              encryptionKeyUri = attributes.get(ATTR_URI);
             } else {
               // Do nothing. Samples are encrypted using an identity key, but this is not supported.
               // Hopefully, a traditional DRM alternative is also provided.
             }
           } else if (method != null) {
-            SchemeData schemeData = parseWidevineSchemeData(line, keyFormat);
+            SchemeData schemeData = parseWidevineSchemeData(line, keyFormat, attributes);
             if (schemeData != null) {
               drmInitData =
                   new DrmInitData(
@@ -435,11 +463,14 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         }
       } else if (line.startsWith(TAG_BYTERANGE)) {
-        String byteRange = parseStringAttr(line, REGEX_BYTERANGE);
-        String[] splitByteRange = byteRange.split("@");
-        segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
-        if (splitByteRange.length > 1) {
-          segmentByteRangeOffset = Long.parseLong(splitByteRange[1]);
+        int valueIndex = line.indexOf(':') + 1;
+        int separatorIndex = line.indexOf('@', valueIndex);
+        segmentByteRangeLength =
+            HlsAttributeList.parseLong(
+                line, valueIndex, separatorIndex != -1 ? separatorIndex : line.length());
+        if (separatorIndex != -1) {
+          segmentByteRangeOffset =
+              HlsAttributeList.parseLong(line, separatorIndex + 1, line.length());
         }
       } else if (line.startsWith(TAG_DISCONTINUITY_SEQUENCE)) {
         hasDiscontinuitySequence = true;
@@ -458,15 +489,58 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         hasIndependentSegmentsTag = true;
       } else if (line.equals(TAG_ENDLIST)) {
         hasEndTag = true;
-      } else if (!line.startsWith("#")) {
-        String segmentEncryptionIV;
-        if (encryptionKeyUri == null) {
-          segmentEncryptionIV = null;
-        } else if (encryptionIV != null) {
-          segmentEncryptionIV = encryptionIV;
+      } else if (line.startsWith(TAG_PART_INF)) {
+        attributes.parse(line);
+        partTargetDurationUs =
+            (long) (attributes.getDouble(ATTR_PART_TARGET) * C.MICROS_PER_SECOND);
+      } else if (line.startsWith(TAG_PART)) {
+        // A part of the segment that follows, or of the segment that isn't complete yet if no
+        // segment follows.
+        attributes.parse(line);
+        long partDurationUs =
+            (long) (attributes.getDouble(ATTR_DURATION) * C.MICROS_PER_SECOND);
+        long partByteRangeLength = C.LENGTH_UNSET;
+        String byteRange = attributes.getOptional(ATTR_BYTERANGE);
+        if (byteRange != null) {
+          int separatorIndex = byteRange.indexOf('@');
+          partByteRangeLength =
+              HlsAttributeList.parseLong(
+                  byteRange, 0, separatorIndex != -1 ? separatorIndex : byteRange.length());
+          if (separatorIndex != -1) {
+            partByteRangeOffset =
+                HlsAttributeList.parseLong(byteRange, separatorIndex + 1, byteRange.length());
+          }
         } else {
-          segmentEncryptionIV = Long.toHexString(segmentMediaSequence);
+          partByteRangeOffset = 0;
         }
+        segmentParts.add(
+            new Part(
+                attributes.get(ATTR_URI),
+                initializationSegment,
+                partDurationUs,
+                relativeDiscontinuitySequence,
+                partStartTimeUs,
+                encryptionKeyUri,
+                getSegmentEncryptionIV(segmentMediaSequence, encryptionKeyUri, encryptionIV),
+                partByteRangeOffset,
+                partByteRangeLength,
+                attributes.getBoolean(ATTR_GAP, false),
+                attributes.getBoolean(ATTR_INDEPENDENT, false),
+                /* isPreload= */ false));
+        partStartTimeUs += partDurationUs;
+        if (partByteRangeLength != C.LENGTH_UNSET) {
+          partByteRangeOffset += partByteRangeLength;
+        }
+      } else if (line.startsWith(TAG_PRELOAD_HINT)) {
+        attributes.parse(line);
+        if (TYPE_PART.equals(attributes.getOptional(ATTR_TYPE)) && preloadHintUri == null) {
+          preloadHintUri = attributes.get(ATTR_URI);
+          preloadHintByteRangeOffset = attributes.getLong(ATTR_BYTERANGE_START, 0);
+          preloadHintByteRangeLength = attributes.getLong(ATTR_BYTERANGE_LENGTH, C.LENGTH_UNSET);
+        }
+      } else if (!line.startsWith("#")) {
+        String segmentEncryptionIV =
+            getSegmentEncryptionIV(segmentMediaSequence, encryptionKeyUri, encryptionIV);
         segmentMediaSequence++;
         if (segmentByteRangeLength == C.LENGTH_UNSET) {
           segmentByteRangeOffset = 0;
@@ -482,9 +556,15 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
                 segmentEncryptionIV,
                 segmentByteRangeOffset,
                 segmentByteRangeLength,
-                hasGapTag));
+                hasGapTag,
+                segmentParts.isEmpty() ? Collections.<Part>emptyList() : segmentParts));
         segmentStartTimeUs += segmentDurationUs;
         segmentDurationUs = 0;
+        if (!segmentParts.isEmpty()) {
+          segmentParts = new ArrayList<>();
+        }
+        partStartTimeUs = segmentStartTimeUs;
+        partByteRangeOffset = 0;
         if (segmentByteRangeLength != C.LENGTH_UNSET) {
           segmentByteRangeOffset += segmentByteRangeLength;
         }
@@ -492,6 +572,23 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         hasGapTag = false;
       }
     }
+    if (preloadHintUri != null && partTargetDurationUs != C.TIME_UNSET && !hasEndTag) {
+      // The hinted part follows the last listed one. Its duration is unknown until it's listed.
+      segmentParts.add(
+          new Part(
+              preloadHintUri,
+              initializationSegment,
+              partTargetDurationUs,
+              relativeDiscontinuitySequence,
+              partStartTimeUs,
+              encryptionKeyUri,
+              getSegmentEncryptionIV(segmentMediaSequence, encryptionKeyUri, encryptionIV),
+              preloadHintByteRangeOffset,
+              preloadHintByteRangeLength,
+              /* hasGapTag= */ false,
+              /* isIndependent= */ false,
+              /* isPreload= */ true));
+    }
     return new HlsMediaPlaylist(
         playlistType,
         baseUri,
@@ -506,14 +603,30 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         hasIndependentSegmentsTag,
         hasEndTag,
         /* hasProgramDateTime= */ playlistStartTimeUs != 0,
+        canSkipUntilUs,
+        canBlockReload,
+        partHoldBackUs,
+        partTargetDurationUs,
+        skippedSegmentCount,
         drmInitData,
-        segments);
+        segments,
+        segmentParts);
   }
 
-  private static SchemeData parseWidevineSchemeData(String line, String keyFormat)
-      throws ParserException {
+  private static String getSegmentEncryptionIV(
+      long segmentMediaSequence, String encryptionKeyUri, String encryptionIV) {
+    if (encryptionKeyUri == null) {
+      return null;
+    } else if (encryptionIV != null) {
+      return encryptionIV;
+    }
+    return Long.toHexString(segmentMediaSequence);
+  }
+
+  private static SchemeData parseWidevineSchemeData(
+      String line, String keyFormat, HlsAttributeList attributes) throws ParserException {
     if (KEYFORMAT_WIDEVINE_PSSH_BINARY.equals(keyFormat)) {
-     String uriString = parseStringAttr(line, REGEX_URI);
+     String uriString = attributes.get(ATTR_URI);
      return new SchemeData(C.WIDEVINE_UUID, MimeTypes.VIDEO_MP4,
          Base64.decode(uriString.substring(uriString.indexOf(',')), Base64.DEFAULT));
     }
@@ -527,41 +640,22 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     return null;
   }
 
-  private static int parseIntAttr(String line, Pattern pattern) throws ParserException {
-    return Integer.parseInt(parseStringAttr(line, pattern));
-  }
-
-  private static long parseLongAttr(String line, Pattern pattern) throws ParserException {
-    return Long.parseLong(parseStringAttr(line, pattern));
-  }
-
-  private static double parseDoubleAttr(String line, Pattern pattern) throws ParserException {
-    return Double.parseDouble(parseStringAttr(line, pattern));
-  }
-
-  private static String parseOptionalStringAttr(String line, Pattern pattern) {
-    Matcher matcher = pattern.matcher(line);
-    return matcher.find() ? matcher.group(1) : null;
-  }
-
-  private static String parseStringAttr(String line, Pattern pattern) throws ParserException {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find() && matcher.groupCount() == 1) {
-      return matcher.group(1);
+  /** Returns the method of an {@code #EXT-X-KEY} tag, or null if it's missing or unrecognized. */
+  private static String parseMethod(HlsAttributeList attributes) {
+    String method = attributes.getOptional(ATTR_METHOD);
+    if (METHOD_NONE.equals(method)
+        || METHOD_AES_128.equals(method)
+        || METHOD_SAMPLE_AES.equals(method)
+        || METHOD_SAMPLE_AES_CENC.equals(method)
+        || METHOD_SAMPLE_AES_CTR.equals(method)) {
+      return method;
     }
-    throw new ParserException("Couldn't match " + pattern.pattern() + " in " + line);
-  }
-
-  private static boolean parseBooleanAttribute(String line, Pattern pattern, boolean defaultValue) {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find()) {
-      return matcher.group(1).equals(BOOLEAN_TRUE);
-    }
-    return defaultValue;
+    return null;
   }
 
-  private static Pattern compileBooleanAttrPattern(String attribute) {
-    return Pattern.compile(attribute + "=(" + BOOLEAN_FALSE + "|" + BOOLEAN_TRUE + ")");
+  /** Parses the decimal integer value of a tag, such as {@code #EXT-X-TARGETDURATION:10}. */
+  private static long parseLongTagValue(String line) throws ParserException {
+    return HlsAttributeList.parseLong(line, line.indexOf(':') + 1, line.length());
   }
 
   private static class LineIterator {
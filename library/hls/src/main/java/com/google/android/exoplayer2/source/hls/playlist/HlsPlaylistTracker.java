@@ -24,6 +24,7 @@ import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispat
 import com.google.android.exoplayer2.source.chunk.ChunkedTrackBlacklistUtil;
 import com.google.android.exoplayer2.source.hls.HlsDataSourceFactory;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMasterPlaylist.HlsUrl;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Part;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Segment;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.Loader;
@@ -110,10 +111,24 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
    * which an unchanging playlist is considered stuck.
    */
   private static final double PLAYLIST_STUCK_TARGET_DURATION_COEFFICIENT = 3.5;
+  /** The query parameter with which a delta update of a media playlist is requested. */
+  private static final String QUERY_PARAMETER_SKIP = "_HLS_skip";
+  /**
+   * The query parameter with which a blocking reload requests the media playlist that contains the
+   * segment with the given media sequence number.
+   */
+  private static final String QUERY_PARAMETER_MEDIA_SEQUENCE = "_HLS_msn";
+  /**
+   * The query parameter with which a blocking reload requests the media playlist that contains the
+   * part with the given index of the segment requested with {@link
+   * #QUERY_PARAMETER_MEDIA_SEQUENCE}.
+   */
+  private static final String QUERY_PARAMETER_PART = "_HLS_part";
 
   private final Uri initialPlaylistUri;
   private final HlsDataSourceFactory dataSourceFactory;
   private final ParsingLoadable.Parser<HlsPlaylist> playlistParser;
+  private final Loader.Factory loaderFactory;
   private final int minRetryCount;
   private final IdentityHashMap<HlsUrl, MediaPlaylistBundle> playlistBundles;
   private final Handler playlistRefreshHandler;
@@ -137,19 +152,22 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
    *     {@link #maybeThrowPlaylistRefreshError(HlsUrl)} and
    *     {@link #maybeThrowPrimaryPlaylistRefreshError()} propagate any loading errors.
    * @param primaryPlaylistListener A callback for the primary playlist change events.
+   * @param playlistParser A parser for loaded playlists.
+   * @param loaderFactory A factory for the {@link Loader}s that load playlists.
    */
   public HlsPlaylistTracker(Uri initialPlaylistUri, HlsDataSourceFactory dataSourceFactory,
       EventDispatcher eventDispatcher, int minRetryCount,
       PrimaryPlaylistListener primaryPlaylistListener,
-      ParsingLoadable.Parser<HlsPlaylist> playlistParser) {
+      ParsingLoadable.Parser<HlsPlaylist> playlistParser, Loader.Factory loaderFactory) {
     this.initialPlaylistUri = initialPlaylistUri;
     this.dataSourceFactory = dataSourceFactory;
     this.eventDispatcher = eventDispatcher;
     this.minRetryCount = minRetryCount;
     this.primaryPlaylistListener = primaryPlaylistListener;
     this.playlistParser = playlistParser;
+    this.loaderFactory = loaderFactory;
     listeners = new ArrayList<>();
-    initialPlaylistLoader = new Loader("HlsPlaylistTracker:MasterPlaylist");
+    initialPlaylistLoader = loaderFactory.createLoader("HlsPlaylistTracker:MasterPlaylist");
     playlistBundles = new IdentityHashMap<>();
     playlistRefreshHandler = new Handler();
     initialStartTimeUs = C.TIME_UNSET;
@@ -476,8 +494,9 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
       Runnable {
 
     private final HlsUrl playlistUrl;
+    private final Uri playlistUri;
     private final Loader mediaPlaylistLoader;
-    private final ParsingLoadable<HlsPlaylist> mediaPlaylistLoadable;
+    private final DataSource mediaPlaylistDataSource;
 
     private HlsMediaPlaylist playlistSnapshot;
     private long lastSnapshotLoadMs;
@@ -485,15 +504,14 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
     private long earliestNextLoadTimeMs;
     private long blacklistUntilMs;
     private boolean loadPending;
+    private boolean skipNextDeltaUpdate;
     private IOException playlistError;
 
     public MediaPlaylistBundle(HlsUrl playlistUrl) {
       this.playlistUrl = playlistUrl;
-      mediaPlaylistLoader = new Loader("HlsPlaylistTracker:MediaPlaylist");
-      mediaPlaylistLoadable = new ParsingLoadable<>(
-          dataSourceFactory.createDataSource(C.DATA_TYPE_MANIFEST),
-          UriUtil.resolveToUri(masterPlaylist.baseUri, playlistUrl.url), C.DATA_TYPE_MANIFEST,
-          playlistParser);
+      playlistUri = UriUtil.resolveToUri(masterPlaylist.baseUri, playlistUrl.url);
+      mediaPlaylistLoader = loaderFactory.createLoader("HlsPlaylistTracker:MediaPlaylist");
+      mediaPlaylistDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_MANIFEST);
     }
 
     public HlsMediaPlaylist getPlaylistSnapshot() {
@@ -592,11 +610,69 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
     // Internal methods.
 
     private void loadPlaylistImmediately() {
+      Uri uri = playlistUri;
+      boolean canBlockReload = canBlockReload();
+      boolean requestDeltaUpdate = !skipNextDeltaUpdate && canRequestDeltaUpdate();
+      if (canBlockReload || requestDeltaUpdate) {
+        // The delivery directives are added in a consistent order, so that CDNs can cache the
+        // responses to equivalent requests under the same key.
+        Uri.Builder uriBuilder = uri.buildUpon();
+        if (canBlockReload) {
+          // Request the playlist that contains the next segment, or the next part of the segment
+          // that isn't complete yet. The server holds the request until that playlist is available.
+          uriBuilder.appendQueryParameter(
+              QUERY_PARAMETER_MEDIA_SEQUENCE,
+              Long.toString(playlistSnapshot.mediaSequence + playlistSnapshot.segments.size()));
+          if (playlistSnapshot.partTargetDurationUs != C.TIME_UNSET) {
+            List<Part> trailingParts = playlistSnapshot.trailingParts;
+            int nextPartIndex = trailingParts.size();
+            if (!trailingParts.isEmpty() && trailingParts.get(nextPartIndex - 1).isPreload) {
+              // The preload hint is the next part.
+              nextPartIndex--;
+            }
+            uriBuilder.appendQueryParameter(QUERY_PARAMETER_PART, Integer.toString(nextPartIndex));
+          }
+        }
+        if (requestDeltaUpdate) {
+          uriBuilder.appendQueryParameter(QUERY_PARAMETER_SKIP, "YES");
+        }
+        uri = uriBuilder.build();
+      }
+      skipNextDeltaUpdate = false;
+      ParsingLoadable<HlsPlaylist> mediaPlaylistLoadable =
+          new ParsingLoadable<>(mediaPlaylistDataSource, uri, C.DATA_TYPE_MANIFEST, playlistParser);
       mediaPlaylistLoader.startLoading(mediaPlaylistLoadable, this, minRetryCount);
     }
 
+    private boolean canBlockReload() {
+      return playlistSnapshot != null
+          && !playlistSnapshot.hasEndTag
+          && playlistSnapshot.canBlockReload;
+    }
+
+    private boolean canRequestDeltaUpdate() {
+      // A delta update skips segments up to the skip boundary from the end of the playlist, so may
+      // only be requested if the snapshot was loaded less than half the skip boundary ago.
+      return playlistSnapshot != null
+          && !playlistSnapshot.hasEndTag
+          && playlistSnapshot.canSkipUntilUs != C.TIME_UNSET
+          && SystemClock.elapsedRealtime() - lastSnapshotLoadMs
+              < C.usToMs(playlistSnapshot.canSkipUntilUs) / 2;
+    }
+
     private void processLoadedPlaylist(HlsMediaPlaylist loadedPlaylist) {
       HlsMediaPlaylist oldPlaylist = playlistSnapshot;
+      if (loadedPlaylist.skippedSegmentCount > 0) {
+        HlsMediaPlaylist completePlaylist =
+            oldPlaylist != null ? loadedPlaylist.copyWithSkippedSegmentsFrom(oldPlaylist) : null;
+        if (completePlaylist == null) {
+          // The snapshot doesn't contain all the skipped segments. Load the complete playlist.
+          skipNextDeltaUpdate = true;
+          loadPlaylistImmediately();
+          return;
+        }
+        loadedPlaylist = completePlaylist;
+      }
       long currentTimeMs = SystemClock.elapsedRealtime();
       lastSnapshotLoadMs = currentTimeMs;
       playlistSnapshot = getLatestPlaylistSnapshot(oldPlaylist, loadedPlaylist);
@@ -620,9 +696,15 @@ public final class HlsPlaylistTracker implements Loader.Callback<ParsingLoadable
         }
       }
       // Do not allow the playlist to load again within the target duration if we obtained a new
-      // snapshot, or half the target duration otherwise.
-      earliestNextLoadTimeMs = currentTimeMs + C.usToMs(playlistSnapshot != oldPlaylist
-          ? playlistSnapshot.targetDurationUs : (playlistSnapshot.targetDurationUs / 2));
+      // snapshot, or half the target duration otherwise. If the server supports blocking reloads,
+      // the next load of a new snapshot can start immediately, because the server holds it until
+      // the playlist is updated.
+      if (playlistSnapshot != oldPlaylist && canBlockReload()) {
+        earliestNextLoadTimeMs = currentTimeMs;
+      } else {
+        earliestNextLoadTimeMs = currentTimeMs + C.usToMs(playlistSnapshot != oldPlaylist
+            ? playlistSnapshot.targetDurationUs : (playlistSnapshot.targetDurationUs / 2));
+      }
       // Schedule a load if this is the primary playlist and it doesn't have an end tag. Else the
       // next load will be scheduled when refreshPlaylist is called, or when this playlist becomes
       // the primary.
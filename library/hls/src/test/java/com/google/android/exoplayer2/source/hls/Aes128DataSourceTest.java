@@ -19,9 +19,17 @@ import static com.google.common.truth.Truth.assertThat;
 
 import android.net.Uri;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
@@ -30,6 +38,44 @@ import org.robolectric.RobolectricTestRunner;
 @RunWith(RobolectricTestRunner.class)
 public class Aes128DataSourceTest {
 
+  private static final String URI = "https://example.com/segment.ts";
+  private static final byte[] KEY = TestUtil.buildTestData(16, /* seed= */ 1);
+  private static final byte[] IV = TestUtil.buildTestData(16, /* seed= */ 2);
+  private static final int SEGMENT_POSITION = 100;
+  private static final byte[] PLAIN_TEXT = TestUtil.buildTestData(50_000, /* seed= */ 3);
+
+  @Test
+  public void testReadWholeSegment() throws Exception {
+    FakeDataSource upstream = new FakeDataSource(new FakeDataSet().setData(URI, buildResource()));
+    Aes128DataSource dataSource =
+        new Aes128DataSource(upstream, KEY, IV, /* segmentPosition= */ SEGMENT_POSITION);
+
+    for (int readLength : new int[] {1, 15, 16, 17, 4096, 100_000}) {
+      byte[] data =
+          readToEnd(
+              dataSource,
+              new DataSpec(Uri.parse(URI), SEGMENT_POSITION, C.LENGTH_UNSET, null),
+              readLength);
+      assertThat(data).isEqualTo(PLAIN_TEXT);
+    }
+  }
+
+  @Test
+  public void testReadFromPositionInSegment() throws Exception {
+    FakeDataSource upstream = new FakeDataSource(new FakeDataSet().setData(URI, buildResource()));
+    Aes128DataSource dataSource =
+        new Aes128DataSource(upstream, KEY, IV, /* segmentPosition= */ SEGMENT_POSITION);
+
+    for (int offset : new int[] {1, 15, 16, 17, 32, 1000, PLAIN_TEXT.length - 1}) {
+      byte[] data =
+          readToEnd(
+              dataSource,
+              new DataSpec(Uri.parse(URI), SEGMENT_POSITION + offset, C.LENGTH_UNSET, null),
+              /* readLength= */ 4096);
+      assertThat(data).isEqualTo(Arrays.copyOfRange(PLAIN_TEXT, offset, PLAIN_TEXT.length));
+    }
+  }
+
   @Test
   public void test_OpenCallsUpstreamOpen_CloseCallsUpstreamClose() throws IOException {
     UpstreamDataSource upstream = new UpstreamDataSource();
@@ -71,6 +117,32 @@ public class Aes128DataSourceTest {
     assertThat(upstream.closedCalled).isTrue();
   }
 
+  /** Returns {@link #PLAIN_TEXT} encrypted, preceded by {@link #SEGMENT_POSITION} other bytes. */
+  private static byte[] buildResource() throws Exception {
+    Cipher cipher = Cipher.getInstance("AES/CBC/PKCS7Padding");
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY, "AES"), new IvParameterSpec(IV));
+    byte[] cipherText = cipher.doFinal(PLAIN_TEXT);
+    byte[] resource = new byte[SEGMENT_POSITION + cipherText.length];
+    System.arraycopy(cipherText, 0, resource, SEGMENT_POSITION, cipherText.length);
+    return resource;
+  }
+
+  private static byte[] readToEnd(DataSource dataSource, DataSpec dataSpec, int readLength)
+      throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[readLength];
+    try {
+      dataSource.open(dataSpec);
+      int bytesRead;
+      while ((bytesRead = dataSource.read(buffer, 0, readLength)) != C.RESULT_END_OF_INPUT) {
+        outputStream.write(buffer, 0, bytesRead);
+      }
+    } finally {
+      dataSource.close();
+    }
+    return outputStream.toByteArray();
+  }
+
   private static class UpstreamDataSource implements DataSource {
 
     public boolean opened;
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link FullSegmentEncryptionKeyCache}. */
+@RunWith(RobolectricTestRunner.class)
+public final class FullSegmentEncryptionKeyCacheTest {
+
+  private static final Uri URI_1 = Uri.parse("https://example.com/key1");
+  private static final Uri URI_2 = Uri.parse("https://example.com/key2");
+  private static final Uri URI_3 = Uri.parse("https://example.com/key3");
+  private static final byte[] KEY_1 = new byte[] {1};
+  private static final byte[] KEY_2 = new byte[] {2};
+  private static final byte[] KEY_3 = new byte[] {3};
+
+  @Test
+  public void testGet() {
+    FullSegmentEncryptionKeyCache cache = new FullSegmentEncryptionKeyCache();
+    cache.put(URI_1, KEY_1);
+
+    assertThat(cache.get(URI_1)).isEqualTo(KEY_1);
+    assertThat(cache.get(Uri.parse("https://example.com/key1"))).isEqualTo(KEY_1);
+    assertThat(cache.get(URI_2)).isNull();
+  }
+
+  @Test
+  public void testLeastRecentlyUsedKeyEvicted() {
+    FullSegmentEncryptionKeyCache cache = new FullSegmentEncryptionKeyCache(/* maxSize= */ 2);
+    cache.put(URI_1, KEY_1);
+    cache.put(URI_2, KEY_2);
+    // Using the first key makes the second one the least recently used.
+    cache.get(URI_1);
+    cache.put(URI_3, KEY_3);
+
+    assertThat(cache.get(URI_1)).isEqualTo(KEY_1);
+    assertThat(cache.get(URI_2)).isNull();
+    assertThat(cache.get(URI_3)).isEqualTo(KEY_3);
+  }
+}
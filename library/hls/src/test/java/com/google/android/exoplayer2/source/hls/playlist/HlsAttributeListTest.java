@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.android.exoplayer2.ParserException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Unit tests for {@link HlsAttributeList}. */
+@RunWith(RobolectricTestRunner.class)
+public final class HlsAttributeListTest {
+
+  @Test
+  public void testParseQuotedAndUnquotedValues() throws Exception {
+    HlsAttributeList attributes = new HlsAttributeList();
+    attributes.parse(
+        "#EXT-X-STREAM-INF:BANDWIDTH=1280000,AVERAGE-BANDWIDTH=1000000,"
+            + "CODECS=\"avc1.4d401e,mp4a.40.2\",RESOLUTION=640x360,FRAME-RATE=29.97,"
+            + "DEFAULT=YES,AUTOSELECT=NO");
+
+    assertThat(attributes.getLong("BANDWIDTH")).isEqualTo(1280000);
+    assertThat(attributes.getLong("AVERAGE-BANDWIDTH")).isEqualTo(1000000);
+    assertThat(attributes.get("CODECS")).isEqualTo("avc1.4d401e,mp4a.40.2");
+    assertThat(attributes.get("RESOLUTION")).isEqualTo("640x360");
+    assertThat(attributes.getDouble("FRAME-RATE")).isEqualTo(29.97);
+    assertThat(attributes.getBoolean("DEFAULT", false)).isTrue();
+    assertThat(attributes.getBoolean("AUTOSELECT", true)).isFalse();
+    assertThat(attributes.getBoolean("FORCED", true)).isTrue();
+  }
+
+  @Test
+  public void testNamesMatchExactly() throws Exception {
+    HlsAttributeList attributes = new HlsAttributeList();
+    attributes.parse("#EXT-X-STREAM-INF:AVERAGE-BANDWIDTH=1000000,XURI=\"a\"");
+
+    assertThat(attributes.contains("BANDWIDTH")).isFalse();
+    assertThat(attributes.getLong("BANDWIDTH", 42)).isEqualTo(42);
+    assertThat(attributes.getOptional("URI")).isNull();
+    try {
+      attributes.get("URI");
+      fail();
+    } catch (ParserException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testReuseAndManyAttributes() throws Exception {
+    HlsAttributeList attributes = new HlsAttributeList();
+    StringBuilder line = new StringBuilder("#EXT-X-TAG:");
+    for (int i = 0; i < 40; i++) {
+      line.append("A").append(i).append('=').append(i).append(',');
+    }
+    attributes.parse(line.toString());
+    assertThat(attributes.getLong("A39")).isEqualTo(39);
+
+    attributes.parse("#EXT-X-KEY:METHOD=AES-128 ,URI=\"key\",IV=0x1566B");
+    assertThat(attributes.contains("A0")).isFalse();
+    assertThat(attributes.get("METHOD")).isEqualTo("AES-128");
+    assertThat(attributes.get("IV")).isEqualTo("0x1566B");
+  }
+
+  @Test
+  public void testParseNumberPrefix() throws Exception {
+    assertThat(HlsAttributeList.parseLong("#EXT-X-TARGETDURATION:10", 22, 24)).isEqualTo(10);
+    assertThat(HlsAttributeList.parseLong("12.5", 0, 4)).isEqualTo(12);
+    assertThat(HlsAttributeList.parseDouble("#EXTINF:7.975,title", 8, 19)).isEqualTo(7.975);
+    assertThat(HlsAttributeList.parseDouble("-25#EXT", 0, 7)).isEqualTo(-25.0);
+    try {
+      HlsAttributeList.parseLong("x", 0, 1);
+      fail();
+    } catch (ParserException e) {
+      // Expected.
+    }
+  }
+
+}
@@ -19,6 +19,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import android.net.Uri;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Part;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Segment;
 import com.google.android.exoplayer2.util.Util;
 import java.io.ByteArrayInputStream;
@@ -278,4 +279,191 @@ public class HlsMediaPlaylistParserTest {
     assertThat(segments.get(1).initializationSegment.url).isEqualTo("init1.ts");
     assertThat(segments.get(3).initializationSegment.url).isEqualTo("init2.ts");
   }
+
+  @Test
+  public void testParseDeltaUpdate() throws IOException {
+    HlsMediaPlaylist playlist = parseMediaPlaylist(createDeltaUpdate());
+
+    assertThat(playlist.canSkipUntilUs).isEqualTo(12000000);
+    assertThat(playlist.mediaSequence).isEqualTo(10);
+    assertThat(playlist.skippedSegmentCount).isEqualTo(2);
+    List<Segment> segments = playlist.segments;
+    assertThat(segments).hasSize(2);
+    assertThat(segments.get(0).url).isEqualTo("12.ts");
+    assertThat(segments.get(0).relativeStartTimeUs).isEqualTo(0);
+    assertThat(segments.get(1).relativeDiscontinuitySequence).isEqualTo(1);
+    // The IV is derived from the media sequence of the segment, which accounts for skipped ones.
+    assertThat(segments.get(1).encryptionIV).isEqualTo("d");
+  }
+
+  @Test
+  public void testCopyWithSkippedSegmentsFrom() throws IOException {
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL=12.0\n"
+            + "#EXT-X-MEDIA-SEQUENCE:9\n"
+            + "#EXTINF:4.0,\n"
+            + "9.ts\n"
+            + "#EXT-X-DISCONTINUITY\n"
+            + "#EXTINF:4.0,\n"
+            + "10.ts\n"
+            + "#EXTINF:4.0,\n"
+            + "11.ts\n"
+            + "#EXTINF:4.0,\n"
+            + "12.ts\n";
+    HlsMediaPlaylist previousPlaylist = parseMediaPlaylist(previousPlaylistString);
+    HlsMediaPlaylist deltaUpdate = parseMediaPlaylist(createDeltaUpdate());
+
+    HlsMediaPlaylist playlist = deltaUpdate.copyWithSkippedSegmentsFrom(previousPlaylist);
+
+    assertThat(playlist.skippedSegmentCount).isEqualTo(0);
+    assertThat(playlist.mediaSequence).isEqualTo(10);
+    assertThat(playlist.durationUs).isEqualTo(16000000);
+    List<Segment> segments = playlist.segments;
+    assertThat(segments).hasSize(4);
+    assertThat(segments.get(0).url).isEqualTo("10.ts");
+    assertThat(segments.get(0).relativeStartTimeUs).isEqualTo(0);
+    assertThat(segments.get(0).relativeDiscontinuitySequence).isEqualTo(0);
+    assertThat(segments.get(1).url).isEqualTo("11.ts");
+    assertThat(segments.get(1).relativeStartTimeUs).isEqualTo(4000000);
+    assertThat(segments.get(2).url).isEqualTo("12.ts");
+    assertThat(segments.get(2).relativeStartTimeUs).isEqualTo(8000000);
+    assertThat(segments.get(3).url).isEqualTo("13.ts");
+    assertThat(segments.get(3).relativeStartTimeUs).isEqualTo(12000000);
+    assertThat(segments.get(3).relativeDiscontinuitySequence).isEqualTo(1);
+  }
+
+  @Test
+  public void testCopyWithSkippedSegmentsFrom_reusesUnchangedSegments() throws IOException {
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-MEDIA-SEQUENCE:10\n"
+            + "#EXTINF:4.0,\n"
+            + "10.ts\n"
+            + "#EXTINF:4.0,\n"
+            + "11.ts\n";
+    HlsMediaPlaylist previousPlaylist = parseMediaPlaylist(previousPlaylistString);
+    HlsMediaPlaylist deltaUpdate = parseMediaPlaylist(createDeltaUpdate());
+
+    HlsMediaPlaylist playlist = deltaUpdate.copyWithSkippedSegmentsFrom(previousPlaylist);
+
+    assertThat(playlist.segments.get(0)).isSameAs(previousPlaylist.segments.get(0));
+    assertThat(playlist.segments.get(1)).isSameAs(previousPlaylist.segments.get(1));
+  }
+
+  @Test
+  public void testCopyWithSkippedSegmentsFrom_withMissingSegments_returnsNull()
+      throws IOException {
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-MEDIA-SEQUENCE:11\n"
+            + "#EXTINF:4.0,\n"
+            + "11.ts\n"
+            + "#EXTINF:4.0,\n"
+            + "12.ts\n";
+    HlsMediaPlaylist previousPlaylist = parseMediaPlaylist(previousPlaylistString);
+    HlsMediaPlaylist deltaUpdate = parseMediaPlaylist(createDeltaUpdate());
+
+    assertThat(deltaUpdate.copyWithSkippedSegmentsFrom(previousPlaylist)).isNull();
+  }
+
+  @Test
+  public void testParseLowLatencyPlaylist() throws IOException {
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-VERSION:9\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,PART-HOLD-BACK=3.0\n"
+            + "#EXT-X-PART-INF:PART-TARGET=1.0\n"
+            + "#EXT-X-MEDIA-SEQUENCE:10\n"
+            + "#EXT-X-KEY:METHOD=AES-128,URI=\"key\"\n"
+            + "#EXTINF:4.0,\n"
+            + "10.ts\n"
+            + "#EXT-X-PART:DURATION=2.0,URI=\"11.ts\",BYTERANGE=\"1000@0\",INDEPENDENT=YES\n"
+            + "#EXT-X-PART:DURATION=2.0,URI=\"11.ts\",BYTERANGE=\"1500\"\n"
+            + "#EXTINF:4.0,\n"
+            + "11.ts\n"
+            + "#EXT-X-PART:DURATION=1.0,URI=\"12.0.ts\",INDEPENDENT=YES\n"
+            + "#EXT-X-PART:DURATION=1.0,URI=\"12.1.ts\",GAP=YES\n"
+            + "#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"12.2.ts\"\n";
+
+    HlsMediaPlaylist playlist = parseMediaPlaylist(playlistString);
+
+    assertThat(playlist.canBlockReload).isTrue();
+    assertThat(playlist.partHoldBackUs).isEqualTo(3000000);
+    assertThat(playlist.partTargetDurationUs).isEqualTo(1000000);
+    assertThat(playlist.durationUs).isEqualTo(8000000);
+    List<Segment> segments = playlist.segments;
+    assertThat(segments).hasSize(2);
+    assertThat(segments.get(0).parts).isEmpty();
+    List<Part> parts = segments.get(1).parts;
+    assertThat(parts).hasSize(2);
+    assertThat(parts.get(0).url).isEqualTo("11.ts");
+    assertThat(parts.get(0).relativeStartTimeUs).isEqualTo(4000000);
+    assertThat(parts.get(0).byterangeOffset).isEqualTo(0);
+    assertThat(parts.get(0).byterangeLength).isEqualTo(1000);
+    assertThat(parts.get(0).isIndependent).isTrue();
+    // A byte range without an offset continues from the end of the previous part.
+    assertThat(parts.get(1).relativeStartTimeUs).isEqualTo(6000000);
+    assertThat(parts.get(1).byterangeOffset).isEqualTo(1000);
+    assertThat(parts.get(1).isIndependent).isFalse();
+    // The IV of a part is derived from the media sequence of its segment.
+    assertThat(parts.get(1).encryptionIV).isEqualTo("b");
+
+    List<Part> trailingParts = playlist.trailingParts;
+    assertThat(trailingParts).hasSize(3);
+    assertThat(trailingParts.get(0).url).isEqualTo("12.0.ts");
+    assertThat(trailingParts.get(0).relativeStartTimeUs).isEqualTo(8000000);
+    assertThat(trailingParts.get(0).encryptionIV).isEqualTo("c");
+    assertThat(trailingParts.get(1).hasGapTag).isTrue();
+    assertThat(trailingParts.get(2).url).isEqualTo("12.2.ts");
+    assertThat(trailingParts.get(2).isPreload).isTrue();
+    assertThat(trailingParts.get(2).relativeStartTimeUs).isEqualTo(10000000);
+    assertThat(trailingParts.get(2).durationUs).isEqualTo(1000000);
+    assertThat(trailingParts.get(2).byterangeLength).isEqualTo(C.LENGTH_UNSET);
+  }
+
+  @Test
+  public void testIsNewerThan_withNewTrailingPart() throws IOException {
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-PART-INF:PART-TARGET=1.0\n"
+            + "#EXT-X-MEDIA-SEQUENCE:10\n"
+            + "#EXTINF:4.0,\n"
+            + "10.ts\n"
+            + "#EXT-X-PART:DURATION=1.0,URI=\"11.0.ts\"\n";
+    HlsMediaPlaylist playlist = parseMediaPlaylist(playlistString);
+    HlsMediaPlaylist updatedPlaylist =
+        parseMediaPlaylist(playlistString + "#EXT-X-PART:DURATION=1.0,URI=\"11.1.ts\"\n");
+
+    assertThat(updatedPlaylist.isNewerThan(playlist)).isTrue();
+    assertThat(playlist.isNewerThan(updatedPlaylist)).isFalse();
+  }
+
+  /** Returns a delta update that skips segments 10 and 11 of a live playlist. */
+  private static String createDeltaUpdate() {
+    return "#EXTM3U\n"
+        + "#EXT-X-VERSION:9\n"
+        + "#EXT-X-TARGETDURATION:4\n"
+        + "#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL=12.0\n"
+        + "#EXT-X-MEDIA-SEQUENCE:10\n"
+        + "#EXT-X-SKIP:SKIPPED-SEGMENTS=2\n"
+        + "#EXT-X-KEY:METHOD=AES-128,URI=\"key\"\n"
+        + "#EXTINF:4.0,\n"
+        + "12.ts\n"
+        + "#EXT-X-DISCONTINUITY\n"
+        + "#EXTINF:4.0,\n"
+        + "13.ts\n";
+  }
+
+  private static HlsMediaPlaylist parseMediaPlaylist(String playlistString) throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    InputStream inputStream =
+        new ByteArrayInputStream(playlistString.getBytes(Charset.forName(C.UTF8_NAME)));
+    return (HlsMediaPlaylist) new HlsPlaylistParser().parse(playlistUri, inputStream);
+  }
 }
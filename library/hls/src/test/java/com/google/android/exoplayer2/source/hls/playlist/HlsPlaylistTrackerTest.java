@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispatcher;
+import com.google.android.exoplayer2.source.hls.DefaultHlsDataSourceFactory;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Part;
+import com.google.android.exoplayer2.testutil.DummyMainThread;
+import com.google.android.exoplayer2.testutil.RobolectricUtil.CustomLooper;
+import com.google.android.exoplayer2.testutil.RobolectricUtil.CustomMessageQueue;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.DefaultLoaderFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Unit tests for {@link HlsPlaylistTracker}. */
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = {CustomLooper.class, CustomMessageQueue.class})
+public final class HlsPlaylistTrackerTest {
+
+  private static final int TIMEOUT_MS = 10000;
+
+  private FakeLowLatencyServer server;
+  private DummyMainThread mainThread;
+  private LinkedBlockingQueue<HlsMediaPlaylist> primaryPlaylists;
+  private HlsPlaylistTracker playlistTracker;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new FakeLowLatencyServer(/* firstMediaSequence= */ 10);
+    mainThread = new DummyMainThread();
+    primaryPlaylists = new LinkedBlockingQueue<>();
+  }
+
+  @After
+  public void tearDown() {
+    mainThread.runOnMainThread(
+        new Runnable() {
+          @Override
+          public void run() {
+            if (playlistTracker != null) {
+              playlistTracker.release();
+            }
+          }
+        });
+    mainThread.release();
+    server.release();
+  }
+
+  @Test
+  public void testBlockingReload_requestsNextPart() throws Exception {
+    server.publishParts(6);
+    startPlaylistTracker();
+
+    HlsMediaPlaylist playlist = takePrimaryPlaylist();
+    assertThat(playlist.mediaSequence).isEqualTo(10);
+    assertThat(playlist.segments).hasSize(1);
+    List<Part> trailingParts = playlist.trailingParts;
+    assertThat(trailingParts).hasSize(3);
+    assertThat(trailingParts.get(1).url).isEqualTo("11.1.ts");
+    assertThat(trailingParts.get(2).isPreload).isTrue();
+    assertThat(server.takeRequest()).isEqualTo("/live.m3u8");
+    assertThat(server.takeRequest()).isEqualTo("/live.m3u8?_HLS_msn=11&_HLS_part=2");
+
+    // The server holds the request until the requested part is published.
+    assertThat(primaryPlaylists.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    server.publishParts(1);
+
+    playlist = takePrimaryPlaylist();
+    assertThat(playlist.trailingParts).hasSize(4);
+    assertThat(playlist.trailingParts.get(2).url).isEqualTo("11.2.ts");
+    assertThat(playlist.trailingParts.get(2).isPreload).isFalse();
+    assertThat(server.takeRequest()).isEqualTo("/live.m3u8?_HLS_msn=11&_HLS_part=3");
+  }
+
+  @Test
+  public void testBlockingReload_afterCompleteSegment_requestsFirstPartOfNextSegment()
+      throws Exception {
+    server.publishParts(7);
+    startPlaylistTracker();
+    takePrimaryPlaylist();
+    server.takeRequest();
+    assertThat(server.takeRequest()).isEqualTo("/live.m3u8?_HLS_msn=11&_HLS_part=3");
+
+    server.publishParts(1);
+
+    HlsMediaPlaylist playlist = takePrimaryPlaylist();
+    assertThat(playlist.segments).hasSize(2);
+    assertThat(playlist.segments.get(1).parts).hasSize(FakeLowLatencyServer.PARTS_PER_SEGMENT);
+    assertThat(playlist.trailingParts).hasSize(1);
+    assertThat(server.takeRequest()).isEqualTo("/live.m3u8?_HLS_msn=12&_HLS_part=0");
+  }
+
+  private void startPlaylistTracker() {
+    mainThread.runOnMainThread(
+        new Runnable() {
+          @Override
+          public void run() {
+            playlistTracker =
+                new HlsPlaylistTracker(
+                    server.getPlaylistUri(),
+                    new DefaultHlsDataSourceFactory(new DefaultHttpDataSourceFactory("test")),
+                    new EventDispatcher(),
+                    /* minRetryCount= */ 0,
+                    new HlsPlaylistTracker.PrimaryPlaylistListener() {
+                      @Override
+                      public void onPrimaryPlaylistRefreshed(HlsMediaPlaylist mediaPlaylist) {
+                        primaryPlaylists.add(mediaPlaylist);
+                      }
+                    },
+                    new HlsPlaylistParser(),
+                    new DefaultLoaderFactory());
+            playlistTracker.start();
+          }
+        });
+  }
+
+  private HlsMediaPlaylist takePrimaryPlaylist() throws InterruptedException {
+    HlsMediaPlaylist playlist = primaryPlaylists.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    assertThat(playlist).isNotNull();
+    return playlist;
+  }
+
+  /**
+   * A local HTTP server of a live low-latency media playlist, whose parts are published by the
+   * test. Blocking playlist reloads are held until the requested part is published.
+   */
+  private static final class FakeLowLatencyServer implements HttpHandler {
+
+    public static final int PARTS_PER_SEGMENT = 4;
+
+    private static final String PLAYLIST_PATH = "/live.m3u8";
+
+    private final long firstMediaSequence;
+    private final HttpServer httpServer;
+    private final ExecutorService executorService;
+    private final LinkedBlockingQueue<String> requests;
+
+    private int publishedPartCount;
+    private boolean released;
+
+    public FakeLowLatencyServer(long firstMediaSequence) throws IOException {
+      this.firstMediaSequence = firstMediaSequence;
+      requests = new LinkedBlockingQueue<>();
+      executorService = Executors.newCachedThreadPool();
+      httpServer =
+          HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+      httpServer.createContext(PLAYLIST_PATH, this);
+      httpServer.setExecutor(executorService);
+      httpServer.start();
+    }
+
+    public Uri getPlaylistUri() {
+      return Uri.parse(
+          "http://127.0.0.1:" + httpServer.getAddress().getPort() + PLAYLIST_PATH);
+    }
+
+    /** Publishes parts of 1 second, completing a segment every {@link #PARTS_PER_SEGMENT}. */
+    public synchronized void publishParts(int partCount) {
+      publishedPartCount += partCount;
+      notifyAll();
+    }
+
+    /** Returns the path and query of the next request for the playlist. */
+    public String takeRequest() throws InterruptedException {
+      String request = requests.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      assertThat(request).isNotNull();
+      return request;
+    }
+
+    public void release() {
+      synchronized (this) {
+        released = true;
+        notifyAll();
+      }
+      httpServer.stop(/* delay= */ 0);
+      executorService.shutdownNow();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      Uri uri = Uri.parse(exchange.getRequestURI().toString());
+      requests.add(exchange.getRequestURI().toString());
+      String mediaSequenceParameter = uri.getQueryParameter("_HLS_msn");
+      String partParameter = uri.getQueryParameter("_HLS_part");
+      byte[] playlist;
+      synchronized (this) {
+        if (mediaSequenceParameter != null) {
+          long mediaSequence = Long.parseLong(mediaSequenceParameter);
+          int partIndex = partParameter != null ? Integer.parseInt(partParameter) : 0;
+          long partNumber =
+              (mediaSequence - firstMediaSequence) * PARTS_PER_SEGMENT + partIndex;
+          while (!released && publishedPartCount <= partNumber) {
+            try {
+              wait();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              break;
+            }
+          }
+        }
+        playlist = createPlaylist().getBytes(Charset.forName(C.UTF8_NAME));
+      }
+      exchange.sendResponseHeaders(200, playlist.length);
+      OutputStream outputStream = exchange.getResponseBody();
+      outputStream.write(playlist);
+      outputStream.close();
+    }
+
+    private String createPlaylist() {
+      StringBuilder builder =
+          new StringBuilder()
+              .append("#EXTM3U\n")
+              .append("#EXT-X-VERSION:9\n")
+              .append("#EXT-X-TARGETDURATION:4\n")
+              .append("#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,PART-HOLD-BACK=3.0\n")
+              .append("#EXT-X-PART-INF:PART-TARGET=1.0\n")
+              .append("#EXT-X-MEDIA-SEQUENCE:")
+              .append(firstMediaSequence)
+              .append('\n');
+      long mediaSequence = firstMediaSequence;
+      for (int i = 0; i < publishedPartCount; i++) {
+        int partIndex = i % PARTS_PER_SEGMENT;
+        builder
+            .append("#EXT-X-PART:DURATION=1.0,URI=\"")
+            .append(mediaSequence)
+            .append('.')
+            .append(partIndex)
+            .append(".ts\"")
+            .append(partIndex == 0 ? ",INDEPENDENT=YES\n" : "\n");
+        if (partIndex == PARTS_PER_SEGMENT - 1) {
+          builder.append("#EXTINF:4.0,\n").append(mediaSequence).append(".ts\n");
+          mediaSequence++;
+        }
+      }
+      builder
+          .append("#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"")
+          .append(mediaSequence)
+          .append('.')
+          .append(publishedPartCount % PARTS_PER_SEGMENT)
+          .append(".ts\"\n");
+      return builder.toString();
+    }
+
+  }
+
+}
@@ -29,6 +29,7 @@ import com.google.android.exoplayer2.source.chunk.ChunkHolder;
 import com.google.android.exoplayer2.source.chunk.ChunkedTrackBlacklistUtil;
 import com.google.android.exoplayer2.source.chunk.ContainerMediaChunk;
 import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.PeekableChunkSource;
 import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest;
 import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest.StreamElement;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
@@ -42,7 +43,7 @@ import java.util.List;
 /**
  * A default {@link SsChunkSource} implementation.
  */
-public class DefaultSsChunkSource implements SsChunkSource {
+public class DefaultSsChunkSource implements SsChunkSource, PeekableChunkSource {
 
   public static final class Factory implements SsChunkSource.Factory {
 
@@ -201,30 +202,20 @@ public class DefaultSsChunkSource implements SsChunkSource {
     long timeToLiveEdgeUs = resolveTimeToLiveEdgeUs(playbackPositionUs);
     trackSelection.updateSelectedTrack(playbackPositionUs, bufferedDurationUs, timeToLiveEdgeUs);
 
-    long chunkStartTimeUs = streamElement.getStartTimeUs(chunkIndex);
-    long chunkEndTimeUs = chunkStartTimeUs + streamElement.getChunkDurationUs(chunkIndex);
     long chunkSeekTimeUs = previous == null ? loadPositionUs : C.TIME_UNSET;
-    int currentAbsoluteChunkIndex = chunkIndex + currentManifestChunkOffset;
-
-    int trackSelectionIndex = trackSelection.getSelectedIndex();
-    ChunkExtractorWrapper extractorWrapper = extractorWrappers[trackSelectionIndex];
-
-    int manifestTrackIndex = trackSelection.getIndexInTrackGroup(trackSelectionIndex);
-    Uri uri = streamElement.buildRequestUri(manifestTrackIndex, chunkIndex);
+    out.chunk = newSelectedTrackMediaChunk(streamElement, chunkIndex, chunkSeekTimeUs);
+  }
 
-    out.chunk =
-        newMediaChunk(
-            trackSelection.getSelectedFormat(),
-            dataSource,
-            uri,
-            null,
-            currentAbsoluteChunkIndex,
-            chunkStartTimeUs,
-            chunkEndTimeUs,
-            chunkSeekTimeUs,
-            trackSelection.getSelectionReason(),
-            trackSelection.getSelectionData(),
-            extractorWrapper);
+  @Override
+  public void peekNextChunk(MediaChunk previous, ChunkHolder out) {
+    if (fatalError != null) {
+      return;
+    }
+    StreamElement streamElement = manifest.streamElements[streamElementIndex];
+    int chunkIndex = (int) (previous.getNextChunkIndex() - currentManifestChunkOffset);
+    if (chunkIndex >= 0 && chunkIndex < streamElement.chunkCount) {
+      out.chunk = newSelectedTrackMediaChunk(streamElement, chunkIndex, C.TIME_UNSET);
+    }
   }
 
   @Override
@@ -240,6 +231,32 @@ public class DefaultSsChunkSource implements SsChunkSource {
 
   // Private methods.
 
+  private MediaChunk newSelectedTrackMediaChunk(
+      StreamElement streamElement, int chunkIndex, long chunkSeekTimeUs) {
+    long chunkStartTimeUs = streamElement.getStartTimeUs(chunkIndex);
+    long chunkEndTimeUs = chunkStartTimeUs + streamElement.getChunkDurationUs(chunkIndex);
+    int currentAbsoluteChunkIndex = chunkIndex + currentManifestChunkOffset;
+
+    int trackSelectionIndex = trackSelection.getSelectedIndex();
+    ChunkExtractorWrapper extractorWrapper = extractorWrappers[trackSelectionIndex];
+
+    int manifestTrackIndex = trackSelection.getIndexInTrackGroup(trackSelectionIndex);
+    Uri uri = streamElement.buildRequestUri(manifestTrackIndex, chunkIndex);
+
+    return newMediaChunk(
+        trackSelection.getSelectedFormat(),
+        dataSource,
+        uri,
+        null,
+        currentAbsoluteChunkIndex,
+        chunkStartTimeUs,
+        chunkEndTimeUs,
+        chunkSeekTimeUs,
+        trackSelection.getSelectionReason(),
+        trackSelection.getSelectionData(),
+        extractorWrapper);
+  }
+
   private static MediaChunk newMediaChunk(
       Format format,
       DataSource dataSource,
@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2.source.smoothstreaming;
 
+import android.support.annotation.Nullable;
 import android.util.Base64;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.SeekParameters;
@@ -31,6 +32,8 @@ import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest;
 import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest.ProtectionElement;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -51,6 +54,9 @@ import java.util.ArrayList;
   private final TrackGroupArray trackGroups;
   private final TrackEncryptionBox[] trackEncryptionBoxes;
   private final CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
+  private final Loader.Factory loaderFactory;
+  private final int maxParallelChunkLoads;
+  private final @Nullable DataSource.Factory chunkPrefetchDataSourceFactory;
 
   private Callback callback;
   private SsManifest manifest;
@@ -60,14 +66,19 @@ import java.util.ArrayList;
 
   public SsMediaPeriod(SsManifest manifest, SsChunkSource.Factory chunkSourceFactory,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
-      int minLoadableRetryCount, EventDispatcher eventDispatcher,
-      LoaderErrorThrower manifestLoaderErrorThrower, Allocator allocator) {
+      Loader.Factory loaderFactory, int maxParallelChunkLoads,
+      @Nullable DataSource.Factory chunkPrefetchDataSourceFactory, int minLoadableRetryCount,
+      EventDispatcher eventDispatcher, LoaderErrorThrower manifestLoaderErrorThrower,
+      Allocator allocator) {
     this.chunkSourceFactory = chunkSourceFactory;
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
     this.minLoadableRetryCount = minLoadableRetryCount;
     this.eventDispatcher = eventDispatcher;
     this.allocator = allocator;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
+    this.loaderFactory = loaderFactory;
+    this.maxParallelChunkLoads = maxParallelChunkLoads;
+    this.chunkPrefetchDataSourceFactory = chunkPrefetchDataSourceFactory;
 
     trackGroups = buildTrackGroups(manifest);
     ProtectionElement protectionElement = manifest.protectionElement;
@@ -223,7 +234,10 @@ import java.util.ArrayList;
         allocator,
         positionUs,
         minLoadableRetryCount,
-        eventDispatcher);
+        eventDispatcher,
+        loaderFactory,
+        maxParallelChunkLoads,
+        chunkPrefetchDataSourceFactory);
   }
 
   private static TrackGroupArray buildTrackGroups(SsManifest manifest) {
@@ -34,12 +34,14 @@ import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispat
 import com.google.android.exoplayer2.source.SequenceableLoader;
 import com.google.android.exoplayer2.source.SinglePeriodTimeline;
 import com.google.android.exoplayer2.source.ads.AdsMediaSource;
+import com.google.android.exoplayer2.source.chunk.PeekableChunkSource;
 import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest;
 import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest.StreamElement;
 import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifestParser;
 import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsUtil;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DefaultLoaderFactory;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
@@ -63,6 +65,9 @@ public final class SsMediaSource extends BaseMediaSource
 
     private @Nullable ParsingLoadable.Parser<? extends SsManifest> manifestParser;
     private CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
+    private Loader.Factory loaderFactory;
+    private int maxParallelChunkLoads;
+    private @Nullable DataSource.Factory chunkPrefetchDataSourceFactory;
     private int minLoadableRetryCount;
     private long livePresentationDelayMs;
     private boolean isCreateCalled;
@@ -85,6 +90,8 @@ public final class SsMediaSource extends BaseMediaSource
       minLoadableRetryCount = DEFAULT_MIN_LOADABLE_RETRY_COUNT;
       livePresentationDelayMs = DEFAULT_LIVE_PRESENTATION_DELAY_MS;
       compositeSequenceableLoaderFactory = new DefaultCompositeSequenceableLoaderFactory();
+      loaderFactory = new DefaultLoaderFactory();
+      maxParallelChunkLoads = 1;
     }
 
     /**
@@ -163,6 +170,46 @@ public final class SsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the factory for the {@link Loader}s that load the manifest and media chunks. The default
+     * is an instance of {@link DefaultLoaderFactory}, whose loaders each have a thread of their own.
+     *
+     * @param loaderFactory A factory for {@link Loader}s.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setLoaderFactory(Loader.Factory loaderFactory) {
+      Assertions.checkState(!isCreateCalled);
+      this.loaderFactory = Assertions.checkNotNull(loaderFactory);
+      return this;
+    }
+
+    /**
+     * Enables loading several media chunks of each track at the same time. While a chunk loads, the
+     * data of the chunks that follow it is loaded into memory, so that the latency of requests
+     * overlaps. Samples are still output one chunk at a time and in order. The default is to load
+     * one chunk at a time.
+     *
+     * <p>Chunks are only loaded in parallel if the {@link SsChunkSource}s implement {@link
+     * PeekableChunkSource}, as {@link DefaultSsChunkSource} does.
+     *
+     * @param maxParallelChunkLoads The maximum number of chunks of each track loaded at the same
+     *     time. Must be positive.
+     * @param dataSourceFactory A factory for the {@link DataSource}s from which the data of
+     *     following chunks is loaded. Each load uses a {@link DataSource} of its own, since the one
+     *     used by the {@link SsChunkSource} only supports one load at a time.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setParallelChunkLoading(
+        int maxParallelChunkLoads, DataSource.Factory dataSourceFactory) {
+      Assertions.checkState(!isCreateCalled);
+      Assertions.checkArgument(maxParallelChunkLoads > 0);
+      this.maxParallelChunkLoads = maxParallelChunkLoads;
+      this.chunkPrefetchDataSourceFactory = Assertions.checkNotNull(dataSourceFactory);
+      return this;
+    }
+
     /**
      * Returns a new {@link SsMediaSource} using the current parameters and the specified sideloaded
      * manifest.
@@ -181,6 +228,9 @@ public final class SsMediaSource extends BaseMediaSource
           /* manifestParser= */ null,
           chunkSourceFactory,
           compositeSequenceableLoaderFactory,
+          loaderFactory,
+          maxParallelChunkLoads,
+          chunkPrefetchDataSourceFactory,
           minLoadableRetryCount,
           livePresentationDelayMs,
           tag);
@@ -221,6 +271,9 @@ public final class SsMediaSource extends BaseMediaSource
           manifestParser,
           chunkSourceFactory,
           compositeSequenceableLoaderFactory,
+          loaderFactory,
+          maxParallelChunkLoads,
+          chunkPrefetchDataSourceFactory,
           minLoadableRetryCount,
           livePresentationDelayMs,
           tag);
@@ -273,6 +326,9 @@ public final class SsMediaSource extends BaseMediaSource
   private final DataSource.Factory manifestDataSourceFactory;
   private final SsChunkSource.Factory chunkSourceFactory;
   private final CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
+  private final Loader.Factory loaderFactory;
+  private final int maxParallelChunkLoads;
+  private final @Nullable DataSource.Factory chunkPrefetchDataSourceFactory;
   private final int minLoadableRetryCount;
   private final long livePresentationDelayMs;
   private final EventDispatcher manifestEventDispatcher;
@@ -332,6 +388,9 @@ public final class SsMediaSource extends BaseMediaSource
         /* manifestParser= */ null,
         chunkSourceFactory,
         new DefaultCompositeSequenceableLoaderFactory(),
+        new DefaultLoaderFactory(),
+        /* maxParallelChunkLoads= */ 1,
+        /* chunkPrefetchDataSourceFactory= */ null,
         minLoadableRetryCount,
         DEFAULT_LIVE_PRESENTATION_DELAY_MS,
         /* tag= */ null);
@@ -425,6 +484,9 @@ public final class SsMediaSource extends BaseMediaSource
         manifestParser,
         chunkSourceFactory,
         new DefaultCompositeSequenceableLoaderFactory(),
+        new DefaultLoaderFactory(),
+        /* maxParallelChunkLoads= */ 1,
+        /* chunkPrefetchDataSourceFactory= */ null,
         minLoadableRetryCount,
         livePresentationDelayMs,
         /* tag= */ null);
@@ -440,6 +502,9 @@ public final class SsMediaSource extends BaseMediaSource
       ParsingLoadable.Parser<? extends SsManifest> manifestParser,
       SsChunkSource.Factory chunkSourceFactory,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
+      Loader.Factory loaderFactory,
+      int maxParallelChunkLoads,
+      @Nullable DataSource.Factory chunkPrefetchDataSourceFactory,
       int minLoadableRetryCount,
       long livePresentationDelayMs,
       @Nullable Object tag) {
@@ -450,6 +515,9 @@ public final class SsMediaSource extends BaseMediaSource
     this.manifestParser = manifestParser;
     this.chunkSourceFactory = chunkSourceFactory;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
+    this.loaderFactory = loaderFactory;
+    this.maxParallelChunkLoads = maxParallelChunkLoads;
+    this.chunkPrefetchDataSourceFactory = chunkPrefetchDataSourceFactory;
     this.minLoadableRetryCount = minLoadableRetryCount;
     this.livePresentationDelayMs = livePresentationDelayMs;
     this.manifestEventDispatcher = createEventDispatcher(/* mediaPeriodId= */ null);
@@ -467,7 +535,7 @@ public final class SsMediaSource extends BaseMediaSource
       processManifest();
     } else {
       manifestDataSource = manifestDataSourceFactory.createDataSource();
-      manifestLoader = new Loader("Loader:Manifest");
+      manifestLoader = loaderFactory.createLoader("Loader:Manifest");
       manifestLoaderErrorThrower = manifestLoader;
       manifestRefreshHandler = new Handler();
       startLoadingManifest();
@@ -484,7 +552,8 @@ public final class SsMediaSource extends BaseMediaSource
     Assertions.checkArgument(id.periodIndex == 0);
     EventDispatcher eventDispatcher = createEventDispatcher(id);
     SsMediaPeriod period = new SsMediaPeriod(manifest, chunkSourceFactory,
-        compositeSequenceableLoaderFactory, minLoadableRetryCount, eventDispatcher,
+        compositeSequenceableLoaderFactory, loaderFactory, maxParallelChunkLoads,
+        chunkPrefetchDataSourceFactory, minLoadableRetryCount, eventDispatcher,
         manifestLoaderErrorThrower, allocator);
     mediaPeriods.add(period);
     return period;
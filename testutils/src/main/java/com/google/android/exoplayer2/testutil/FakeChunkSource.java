@@ -23,6 +23,7 @@ import com.google.android.exoplayer2.source.chunk.Chunk;
 import com.google.android.exoplayer2.source.chunk.ChunkHolder;
 import com.google.android.exoplayer2.source.chunk.ChunkSource;
 import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.PeekableChunkSource;
 import com.google.android.exoplayer2.source.chunk.SingleSampleMediaChunk;
 import com.google.android.exoplayer2.testutil.FakeDataSet.FakeData.Segment;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
@@ -36,7 +37,7 @@ import java.util.List;
 /**
  * Fake {@link ChunkSource} with adaptive media chunks of a given duration.
  */
-public final class FakeChunkSource implements ChunkSource {
+public final class FakeChunkSource implements PeekableChunkSource {
 
   /**
    * Factory for a {@link FakeChunkSource}.
@@ -106,18 +107,15 @@ public final class FakeChunkSource implements ChunkSource {
     if (chunkIndex >= dataSet.getChunkCount()) {
       out.endOfStream = true;
     } else {
-      Format selectedFormat = trackSelection.getSelectedFormat();
-      long startTimeUs = dataSet.getStartTime(chunkIndex);
-      long endTimeUs = startTimeUs + dataSet.getChunkDuration(chunkIndex);
-      int trackGroupIndex = trackSelection.getIndexInTrackGroup(trackSelection.getSelectedIndex());
-      String uri = dataSet.getUri(trackGroupIndex);
-      Segment fakeDataChunk = dataSet.getData(uri).getSegments().get(chunkIndex);
-      DataSpec dataSpec = new DataSpec(Uri.parse(uri), fakeDataChunk.byteOffset,
-          fakeDataChunk.length, null);
-      int trackType = MimeTypes.getTrackType(selectedFormat.sampleMimeType);
-      out.chunk = new SingleSampleMediaChunk(dataSource, dataSpec, selectedFormat,
-          trackSelection.getSelectionReason(), trackSelection.getSelectionData(), startTimeUs,
-          endTimeUs, chunkIndex, trackType, selectedFormat);
+      out.chunk = newMediaChunk(chunkIndex);
+    }
+  }
+
+  @Override
+  public void peekNextChunk(MediaChunk previous, ChunkHolder out) {
+    int chunkIndex = (int) previous.getNextChunkIndex();
+    if (chunkIndex < dataSet.getChunkCount()) {
+      out.chunk = newMediaChunk(chunkIndex);
     }
   }
 
@@ -131,4 +129,19 @@ public final class FakeChunkSource implements ChunkSource {
     return false;
   }
 
+  private MediaChunk newMediaChunk(int chunkIndex) {
+    Format selectedFormat = trackSelection.getSelectedFormat();
+    long startTimeUs = dataSet.getStartTime(chunkIndex);
+    long endTimeUs = startTimeUs + dataSet.getChunkDuration(chunkIndex);
+    int trackGroupIndex = trackSelection.getIndexInTrackGroup(trackSelection.getSelectedIndex());
+    String uri = dataSet.getUri(trackGroupIndex);
+    Segment fakeDataChunk = dataSet.getData(uri).getSegments().get(chunkIndex);
+    DataSpec dataSpec = new DataSpec(Uri.parse(uri), fakeDataChunk.byteOffset,
+        fakeDataChunk.length, null);
+    int trackType = MimeTypes.getTrackType(selectedFormat.sampleMimeType);
+    return new SingleSampleMediaChunk(dataSource, dataSpec, selectedFormat,
+        trackSelection.getSelectionReason(), trackSelection.getSelectionData(), startTimeUs,
+        endTimeUs, chunkIndex, trackType, selectedFormat);
+  }
+
 }